@@ -0,0 +1,174 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+/**
+ * Decides how many downloads a {@link DownloadQueue} runs in parallel based on the measured throughput.
+ * The controller increases the number of parallel downloads by one as long as this increases the aggregate throughput
+ * noticeably (additive increase). If the throughput drops, the number is reduced by a factor (multiplicative decrease).
+ * If an additional download does not help, the controller goes back by one and holds that value for a while before it probes again.
+ */
+public class AdaptiveConcurrencyController {
+    private static final double decreaseFactor = 0.75;
+    private final int minimumCount;
+    private final int maximumCount;
+    private double improvementThreshold = 0.1;
+    private int samplesBeforeProbing = 6;
+    private int currentCount;
+    private double referenceThroughput = -1;
+    private Action lastAction = Action.HOLD;
+    private int samplesSinceLastChange;
+
+    /**
+     * Creates a new controller.
+     *
+     * @param initialCount The number of parallel downloads to start with
+     * @param minimumCount The minimum number of parallel downloads
+     * @param maximumCount The maximum number of parallel downloads
+     */
+    public AdaptiveConcurrencyController(int initialCount, int minimumCount, int maximumCount) {
+        if (minimumCount < 1 || maximumCount < minimumCount)
+            throw new IllegalArgumentException("Invalid bounds: " + minimumCount + " to " + maximumCount);
+        this.minimumCount = minimumCount;
+        this.maximumCount = maximumCount;
+        this.currentCount = clamp(initialCount);
+    }
+
+    /**
+     * Feeds a new throughput measurement into the controller.
+     *
+     * @param bytesPerSecond The aggregate throughput of all downloads since the last sample
+     * @param backlog        The number of entries waiting for a free worker. Without a backlog, additional workers would be idle, so the controller does not adapt.
+     * @return The number of parallel downloads to use from now on
+     */
+    public synchronized int onSample(double bytesPerSecond, int backlog) {
+        if (backlog == 0) {
+            // all downloads have a worker, so the throughput is limited by the demand and says nothing about the link
+            referenceThroughput = -1;
+            lastAction = Action.HOLD;
+            samplesSinceLastChange = 0;
+            return currentCount;
+        }
+
+        samplesSinceLastChange++;
+        if (referenceThroughput < 0) {
+            referenceThroughput = bytesPerSecond;
+            return increase();
+        }
+
+        switch (lastAction) {
+            case INCREASE:
+                if (bytesPerSecond >= referenceThroughput * (1 + improvementThreshold)) {
+                    // the last increase helped, try another one
+                    referenceThroughput = bytesPerSecond;
+                    return increase();
+                } else if (bytesPerSecond < referenceThroughput * (1 - improvementThreshold)) {
+                    referenceThroughput = bytesPerSecond;
+                    return decrease();
+                }
+                // the additional download did not help, go back and stay there
+                currentCount = clamp(currentCount - 1);
+                return hold();
+            case DECREASE:
+                referenceThroughput = bytesPerSecond;
+                lastAction = Action.HOLD;
+                return currentCount;
+            default:
+                if (bytesPerSecond < referenceThroughput * (1 - improvementThreshold)) {
+                    referenceThroughput = bytesPerSecond;
+                    return decrease();
+                } else if (samplesSinceLastChange >= samplesBeforeProbing) {
+                    referenceThroughput = bytesPerSecond;
+                    return increase();
+                }
+                return currentCount;
+        }
+    }
+
+    private int increase() {
+        if (currentCount >= maximumCount)
+            return hold();
+        currentCount++;
+        lastAction = Action.INCREASE;
+        samplesSinceLastChange = 0;
+        return currentCount;
+    }
+
+    private int decrease() {
+        currentCount = clamp((int) Math.floor(currentCount * decreaseFactor));
+        lastAction = Action.DECREASE;
+        samplesSinceLastChange = 0;
+        return currentCount;
+    }
+
+    private int hold() {
+        lastAction = Action.HOLD;
+        samplesSinceLastChange = 0;
+        return currentCount;
+    }
+
+    private int clamp(int count) {
+        return Math.max(minimumCount, Math.min(maximumCount, count));
+    }
+
+    public synchronized int getCurrentCount() {
+        return currentCount;
+    }
+
+    public int getMinimumCount() {
+        return minimumCount;
+    }
+
+    public int getMaximumCount() {
+        return maximumCount;
+    }
+
+    /**
+     * Returns the relative change of the throughput that the controller considers significant.
+     *
+     * @return The relative change of the throughput that the controller considers significant, e. g. {@code 0.1} for 10%.
+     */
+    public synchronized double getImprovementThreshold() {
+        return improvementThreshold;
+    }
+
+    public synchronized void setImprovementThreshold(double improvementThreshold) {
+        this.improvementThreshold = improvementThreshold;
+    }
+
+    /**
+     * Returns the number of samples the controller waits after a change before it tries an additional download again.
+     *
+     * @return The number of samples the controller waits after a change before it probes again.
+     */
+    public synchronized int getSamplesBeforeProbing() {
+        return samplesBeforeProbing;
+    }
+
+    public synchronized void setSamplesBeforeProbing(int samplesBeforeProbing) {
+        this.samplesBeforeProbing = samplesBeforeProbing;
+    }
+
+    private enum Action {
+        INCREASE, DECREASE, HOLD
+    }
+}
@@ -29,13 +29,14 @@ import com.github.vatbub.common.updater.VersionList;
 import config.AppConfig;
 import extended.VersionMenuItem;
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuItem;
 import javafx.stage.FileChooser;
 import mslinks.ShellLink;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang.NotImplementedException;
 import org.apache.commons.lang.SystemUtils;
 import org.jdom2.JDOMException;
@@ -47,6 +48,7 @@ import javax.swing.filechooser.FileSystemView;
 import java.awt.*;
 import java.io.*;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
@@ -60,19 +62,28 @@ import java.util.logging.Level;
  */
 public class App {
     private final List<Runnable> eventHandlersWhenLaunchedAppExits = new ArrayList<>();
-    private MVNMetadataFile releaseRepoMetadataFile;
-    private MVNMetadataFile snapshotRepoMetadataFile;
     private LocalMetadataFile localMetadataFile;
+    private long localMetadataFileLastModified;
+    private long localMetadataRevision;
     private File importFile;
     private String name;
-    private boolean cancelDownloadAndLaunch;
+    private volatile boolean cancelDownloadAndLaunch;
     private MVNCoordinates mvnCoordinates;
     private URL additionalInfoURL;
     private URL changelogURL;
+    private Version lastKnownOnlineVersion;
+    private Version lastKnownOnlineSnapshotVersion;
+    private volatile boolean cachedLastKnownUpdateAvailable;
+    private volatile boolean cachedLastKnownSnapshotUpdateAvailable;
+    private volatile long lastKnownUpdateAvailabilityCacheTime;
     private boolean specificVersionListLoaded = false;
+    private long specificVersionListRemoteRevision;
+    private long specificVersionListLocalRevision;
     private boolean deletableVersionListLoaded = false;
+    private long deletableVersionListLocalRevision;
     private ContextMenu contextMenuCache;
-    private boolean downloadPaused;
+    private final ReadOnlyBooleanWrapper downloadPaused = new ReadOnlyBooleanWrapper();
+    private final Object pauseLock = new Object();
 
     /**
      * Creates a new App with the specified name.
@@ -165,6 +176,56 @@ public class App {
         return res;
     }
 
+    /**
+     * Returns the app list that was last saved using {@link #saveAppListSnapshot(AppList)}. Reading the snapshot does not require any network access or xml parsing, so the
+     * returned list can be shown immediately while the actual list is loaded. All apps of the snapshot are decoded right away.
+     *
+     * @return The last known app list or {@code null} if no usable snapshot exists.
+     */
+    public static AppList getCachedAppList() {
+        try {
+            AppListSnapshotFile snapshotFile = new AppListSnapshotFile(AppListSnapshotFile.getDefaultFile());
+            if (!snapshotFile.exists())
+                return null;
+            return snapshotFile.getAppList();
+        } catch (IOException e) {
+            FOKLogger.log(App.class.getName(), Level.INFO, "The app list snapshot cannot be read, it will be rewritten after the app list was loaded", e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the specified app list in the {@link AppListSnapshotFile} so that it can be shown using
+     * {@link #getCachedAppList()} the next time the launcher starts. Apps whose metadata was not loaded in this
+     * session keep the last known online versions from the previous snapshot. Writes to the disk, so this should
+     * not be called on the JavaFX application thread.
+     *
+     * @param appList The app list to save
+     */
+    public static void saveAppListSnapshot(AppList appList) {
+        File file = AppListSnapshotFile.getDefaultFile();
+        try {
+            AppList previousAppList = new AppListSnapshotFile(file).getAppList();
+            for (App app : appList) {
+                App previousApp = previousAppList.getAppByMavenCoordinates(app.getMvnCoordinates());
+                if (previousApp == null)
+                    continue;
+                if (app.lastKnownOnlineVersion == null)
+                    app.lastKnownOnlineVersion = previousApp.lastKnownOnlineVersion;
+                if (app.lastKnownOnlineSnapshotVersion == null)
+                    app.lastKnownOnlineSnapshotVersion = previousApp.lastKnownOnlineSnapshotVersion;
+            }
+        } catch (IOException e) {
+            FOKLogger.log(App.class.getName(), Level.FINE, "The previous app list snapshot cannot be read, the last known versions are not carried over", e);
+        }
+
+        try {
+            AppListSnapshotFile.save(file, appList);
+        } catch (IOException e) {
+            FOKLogger.log(App.class.getName(), Level.INFO, "Unable to save the app list snapshot, the launcher will start slower next time", e);
+        }
+    }
+
     /**
      * Get a {@link List} of available apps from the server.
      *
@@ -202,20 +263,22 @@ public class App {
     }
 
     /**
-     * Clears all cached data about the app and forces it to be reloaded.
+     * Clears all cached data about the app and forces it to be reloaded, e. g. when the user requests a manual refresh.
+     * This is usually not required as the cached data is refreshed when it is outdated: The remote metadata expires
+     * in the {@link MetadataCache}, the local metadata is reloaded when its file changes on the disk and the version
+     * lists in the context menu are rebuilt when the data they were built from changed.
      * Subsequent calls to the data will take longer as the data has to be reloaded.
      * The cache is created on a lazy basis, meaning that data is only cached once a call is made to it.
      * Cached data includes:
      * <ul>
-     * <li>Release metadata from the release maven repo</li>
-     * <li>Snapshot metadata from the snapshot maven repo</li>
+     * <li>Release metadata from the release maven repo (shared with all apps with the same coordinates, see {@link MetadataCache})</li>
+     * <li>Snapshot metadata from the snapshot maven repo (shared with all apps with the same coordinates, see {@link MetadataCache})</li>
      * <li>Metadata about the locally installed versions of the app</li>
      * <li>The JavaFX context menu of this application</li>
      * </ul>
      */
     public void clearCache() {
-        releaseRepoMetadataFile = null;
-        snapshotRepoMetadataFile = null;
+        MetadataCache.getInstance().invalidate(getMvnCoordinates());
         localMetadataFile = null;
         contextMenuCache = null;
         deletableVersionListLoaded = false;
@@ -268,10 +331,7 @@ public class App {
      * @throws JDOMException If the maven metadata file is malformed
      */
     public VersionList getAllOnlineVersions() throws JDOMException, IOException {
-        if (releaseRepoMetadataFile == null) {
-            releaseRepoMetadataFile = new MVNMetadataFile(getMvnCoordinates(), false);
-        }
-        return releaseRepoMetadataFile.getVersionList().clone();
+        return getRepoMetadataFile(false).getVersionList().clone();
     }
 
     /**
@@ -280,10 +340,7 @@ public class App {
      * @throws JDOMException If the maven metadata file is malformed
      */
     public Version getLatestOnlineVersion() throws JDOMException, IOException {
-        if (releaseRepoMetadataFile == null) {
-            releaseRepoMetadataFile = new MVNMetadataFile(getMvnCoordinates(), false);
-        }
-        Version res = releaseRepoMetadataFile.getLatest().clone();
+        Version res = getRepoMetadataFile(false).getLatest().clone();
 
         if (res.isSnapshot()) {
             throw new IllegalStateException(
@@ -299,10 +356,43 @@ public class App {
      * @throws JDOMException If the maven metadata file is malformed
      */
     public Version getLatestOnlineSnapshotVersion() throws JDOMException, IOException {
-        if (snapshotRepoMetadataFile == null) {
-            snapshotRepoMetadataFile = new MVNMetadataFile(getMvnCoordinates(), true);
-        }
-        return snapshotRepoMetadataFile.getLatest().clone();
+        return getRepoMetadataFile(true).getLatest().clone();
+    }
+
+    /**
+     * Returns the latest online version of this app that is known without accessing the network: The latest version
+     * in the metadata cache if the metadata was loaded in this session or the version that was saved in the
+     * {@link AppListSnapshotFile} otherwise.
+     *
+     * @param snapshotsEnabled {@code true} to get the latest snapshot version
+     * @return The latest known online version or {@code null} if the online version was never loaded
+     */
+    public Version getLastKnownOnlineVersion(boolean snapshotsEnabled) {
+        MVNMetadataFile cachedMetadataFile = MetadataCache.getInstance().getIfPresent(getMvnCoordinates(), snapshotsEnabled);
+        if (cachedMetadataFile != null && cachedMetadataFile.getLatest() != null)
+            setLastKnownOnlineVersion(snapshotsEnabled, cachedMetadataFile.getLatest().clone());
+
+        Version res = snapshotsEnabled ? lastKnownOnlineSnapshotVersion : lastKnownOnlineVersion;
+        return res == null ? null : res.clone();
+    }
+
+    void setLastKnownOnlineVersion(boolean snapshotsEnabled, Version version) {
+        if (snapshotsEnabled)
+            lastKnownOnlineSnapshotVersion = version;
+        else
+            lastKnownOnlineVersion = version;
+    }
+
+    /**
+     * Returns the metadata of the release or snapshot repository of this app from the process-wide {@link MetadataCache}.
+     *
+     * @param enableSnapshots {@code true} to get the metadata of the snapshot repository
+     * @return The shared metadata file. Must not be modified.
+     * @throws IOException   If the maven metadata file can't be read or downloaded
+     * @throws JDOMException If the maven metadata file is malformed
+     */
+    private MVNMetadataFile getRepoMetadataFile(boolean enableSnapshots) throws JDOMException, IOException {
+        return MetadataCache.getInstance().get(getMvnCoordinates(), enableSnapshots);
     }
 
     /**
@@ -342,7 +432,7 @@ public class App {
      * @return A list of currently installed versions
      */
     public VersionList getCurrentlyInstalledVersions() {
-        if (localMetadataFile == null && !loadLocalMetadataFile()) {
+        if (!isLocalMetadataFileUpToDate() && !loadLocalMetadataFile()) {
             // something went wrong, exception already logged
             return null;
         }
@@ -374,7 +464,10 @@ public class App {
      */
     private boolean loadLocalMetadataFile() {
         try {
-            localMetadataFile = new LocalMetadataFile(getLocationOfLocalMetadataFile());
+            File location = getLocationOfLocalMetadataFile();
+            long lastModified = location.lastModified();
+            localMetadataFile = new LocalMetadataFile(location);
+            localMetadataChanged(lastModified);
             return true;
         } catch (JDOMException | IOException e) {
             FOKLogger.log(App.class.getName(), Level.SEVERE, "Cannot retrieve currently installed version of app " + this.getName()
@@ -383,6 +476,25 @@ public class App {
         }
     }
 
+    /**
+     * Returns {@code true} if the local metadata file was loaded and was not modified on the disk since.
+     *
+     * @return {@code true} if the loaded local metadata file can be used, {@code false} if it needs to be (re)loaded
+     */
+    private boolean isLocalMetadataFileUpToDate() {
+        return localMetadataFile != null && getLocationOfLocalMetadataFile().lastModified() == localMetadataFileLastModified;
+    }
+
+    /**
+     * Records that the local metadata changed so that the version lists in the context menu are rebuilt.
+     *
+     * @param lastModified The modification time of the local metadata file on the disk after the change
+     */
+    private void localMetadataChanged(long lastModified) {
+        localMetadataFileLastModified = lastModified;
+        localMetadataRevision++;
+    }
+
     /**
      * Returns the maven coordinates of this app
      *
@@ -419,14 +531,26 @@ public class App {
         return importFile;
     }
 
+    /**
+     * Marks this app as imported from the specified file without reading the file, e. g. when it is restored from an {@link AppListSnapshotFile}.
+     *
+     * @param importFile The file this app was imported from
+     */
+    void setImportFile(File importFile) {
+        this.importFile = importFile;
+    }
+
     /**
      * During context menu creation, a list of all available release and snapshot versions (if enabled) is created and cached.
      * Returns {@code true} if this list was already created and cached and {@code false} if not.
+     * Also returns {@code false} if the online or local metadata changed since the list was created.
      *
      * @return {@code true} if the specific list was already created and cached and {@code false} if not.
      */
     public boolean isSpecificVersionListLoaded() {
-        return specificVersionListLoaded;
+        return specificVersionListLoaded
+                && specificVersionListRemoteRevision == MetadataCache.getInstance().getRevision(getMvnCoordinates())
+                && specificVersionListLocalRevision == localMetadataRevision;
     }
 
     /**
@@ -437,16 +561,19 @@ public class App {
      */
     public void setSpecificVersionListLoaded(boolean specificVersionListLoaded) {
         this.specificVersionListLoaded = specificVersionListLoaded;
+        specificVersionListRemoteRevision = MetadataCache.getInstance().getRevision(getMvnCoordinates());
+        specificVersionListLocalRevision = localMetadataRevision;
     }
 
     /**
      * During context menu creation, a list of all locally installed versions is created and cached.
      * Returns {@code true} if this list was already created and cached and {@code false} if not.
+     * Also returns {@code false} if a version was downloaded or deleted since the list was created.
      *
      * @return Returns {@code true} if the deletable version list was already created and cached and {@code false} if not.
      */
     public boolean isDeletableVersionListLoaded() {
-        return deletableVersionListLoaded;
+        return deletableVersionListLoaded && deletableVersionListLocalRevision == localMetadataRevision;
     }
 
     /**
@@ -457,6 +584,7 @@ public class App {
      */
     public void setDeletableVersionListLoaded(boolean deletableVersionListLoaded) {
         this.deletableVersionListLoaded = deletableVersionListLoaded;
+        deletableVersionListLocalRevision = localMetadataRevision;
     }
 
     /**
@@ -498,18 +626,19 @@ public class App {
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     public boolean isPresentOnHardDrive(Version ver) {
         // something went wrong, exception already logged
-        return (localMetadataFile != null || loadLocalMetadataFile()) && localMetadataFile.getVersionList().contains(ver);
+        return (isLocalMetadataFileUpToDate() || loadLocalMetadataFile()) && localMetadataFile.getVersionList().contains(ver);
     }
 
     /**
      * Downloads the version info and saves it as a xml file in the app folder.
      *
      * @param versionToGet The version to get the info for
+     * @param checksum     The checksum the downloaded jar file was verified against or {@code null} if it was not verified
      * @throws IOException If the maven metadata file cannot be downloaded
      */
-    private void downloadVersionInfo(Version versionToGet)
+    private void downloadVersionInfo(Version versionToGet, @Nullable ArtifactChecksum checksum)
             throws IOException {
-        if (localMetadataFile == null && !loadLocalMetadataFile()) {
+        if (!isLocalMetadataFileUpToDate() && !loadLocalMetadataFile()) {
             // something went wrong, exception already logged
             localMetadataFile = new LocalMetadataFile();
             localMetadataFile.setVersionList(new VersionList());
@@ -529,7 +658,9 @@ public class App {
         if (!versionFound) {
             localMetadataFile.getVersionList().add(versionToGet);
         }
+        localMetadataFile.setChecksum(versionToGet, checksum);
         localMetadataFile.saveFile(getLocationOfLocalMetadataFile());
+        localMetadataChanged(getLocationOfLocalMetadataFile().lastModified());
     }
 
     /**
@@ -563,6 +694,55 @@ public class App {
         return onlineVersion.compareTo(this.getCurrentlyInstalledVersion(snapshotsEnabled)) > 0;
     }
 
+    /**
+     * Checks if an update is available for this artifact using the last known online version, so this method never
+     * accesses the network.
+     *
+     * @param snapshotsEnabled {@code true} if snapshots shall be taken into account.
+     * @return {@code true} if this app is installed and the last known online version is newer than the installed version
+     * @see #getLastKnownOnlineVersion(boolean)
+     */
+    public boolean lastKnownUpdateAvailable(boolean snapshotsEnabled) {
+        Version onlineVersion = getLastKnownOnlineVersion(snapshotsEnabled);
+        if (onlineVersion == null)
+            return false;
+
+        Version installedVersion = getCurrentlyInstalledVersion(snapshotsEnabled);
+        return installedVersion != null && onlineVersion.compareTo(installedVersion) > 0;
+    }
+
+    /**
+     * Evaluates {@link #lastKnownUpdateAvailable(boolean)} with and without snapshots and caches the results so that
+     * they can be read using {@link #isCachedLastKnownUpdateAvailable(boolean)}. Reads the local metadata file, so this
+     * should not be called on the JavaFX application thread.
+     */
+    public void cacheLastKnownUpdateAvailability() {
+        cachedLastKnownUpdateAvailable = lastKnownUpdateAvailable(false);
+        cachedLastKnownSnapshotUpdateAvailable = lastKnownUpdateAvailable(true);
+        lastKnownUpdateAvailabilityCacheTime = System.nanoTime();
+    }
+
+    /**
+     * Returns the time of the last call to {@link #cacheLastKnownUpdateAvailability()} as returned by {@link System#nanoTime()}.
+     * Used to tell whether the cached result is more recent than the result of an {@link UpdateCheck}.
+     *
+     * @return The time when the update availability was cached or {@code 0} if it was never cached
+     */
+    public long getLastKnownUpdateAvailabilityCacheTime() {
+        return lastKnownUpdateAvailabilityCacheTime;
+    }
+
+    /**
+     * Returns the result of {@link #lastKnownUpdateAvailable(boolean)} as of the last call to
+     * {@link #cacheLastKnownUpdateAvailability()}. Never accesses the disk or the network.
+     *
+     * @param snapshotsEnabled {@code true} if snapshots shall be taken into account.
+     * @return {@code true} if an update was available when the result was cached, {@code false} if not or if the result was never cached
+     */
+    public boolean isCachedLastKnownUpdateAvailable(boolean snapshotsEnabled) {
+        return snapshotsEnabled ? cachedLastKnownSnapshotUpdateAvailable : cachedLastKnownUpdateAvailable;
+    }
+
     /**
      * Downloads the artifact if necessary and launches it afterwards
      *
@@ -696,31 +876,15 @@ public class App {
     }
 
     /**
-     * Downloads this artifact.
+     * Returns the url of the jar file of the specified version in the maven repository.
      *
-     * @param versionToDownload The {@link Version} to be downloaded.
-     * @param gui               The {@link HidableUpdateProgressDialog} that represents the
-     *                          gui to inform the user about the progress.
-     * @return {@code true} if the download finished successfully, {@code false}
-     * if the download was cancelled using
-     * {@link #cancelDownloadAndLaunch()}
-     * @throws IOException If the version info cannot be read
+     * @param version The version to get the url for
+     * @return The url of the jar file of the specified version in the maven repository.
+     * @throws MalformedURLException If the repository base url and the maven coordinates do not form a valid url
      */
-    public boolean download(Version versionToDownload, @Nullable HidableUpdateProgressDialog gui)
-            throws IOException {
-
-        if (gui != null) {
-            gui.preparePhaseStarted();
-        }
-
+    public URL getArtifactURL(Version version) throws MalformedURLException {
         URL repoBaseURL;
-        URL artifactURL;
-
-        // Perform Cancel if requested
-        if (performCancelIfRequested(gui))
-            return false;
-
-        if (versionToDownload.isSnapshot()) {
+        if (version.isSnapshot()) {
             // Snapshot
             repoBaseURL = getMvnCoordinates().getSnapshotRepoBaseURL();
         } else {
@@ -735,18 +899,149 @@ public class App {
                 .append("/")
                 .append(getMvnCoordinates().getArtifactId())
                 .append("/")
-                .append(versionToDownload.getVersion())
+                .append(version.getVersion())
                 .append("/")
                 .append(getMvnCoordinates().getArtifactId())
                 .append("-")
-                .append(versionToDownload.toString());
+                .append(version.toString());
         if (getMvnCoordinates().getClassifier() != null) {
             artifactURLBuilder.append("-")
                     .append(getMvnCoordinates().getClassifier());
         }
 
         artifactURLBuilder.append(".jar");
-        artifactURL = new URL(artifactURLBuilder.toString());
+        return new URL(artifactURLBuilder.toString());
+    }
+
+    /**
+     * Returns the url of the {@link DeltaPatch} that rebuilds the jar file of the specified version from the jar file of
+     * a previous version. The patch is published next to the jar file of the new version, e. g.
+     * {@code app-1.1.jar.from-1.0.fokdelta}.
+     *
+     * @param version     The version to rebuild
+     * @param baseVersion The installed version to rebuild it from
+     * @return The url of the delta patch
+     * @throws MalformedURLException If the repository base url and the maven coordinates do not form a valid url
+     */
+    public URL getDeltaURL(Version version, Version baseVersion) throws MalformedURLException {
+        return new URL(getArtifactURL(version).toExternalForm() + ".from-" + baseVersion.toString() + ".fokdelta");
+    }
+
+    /**
+     * Returns the newest installed version that is older than the specified version and can serve as the base of a delta update.
+     *
+     * @param version The version that shall be downloaded
+     * @return The version to rebuild the specified version from or {@code null} if no older version is installed
+     */
+    @Nullable
+    private Version getDeltaBaseVersion(Version version) {
+        VersionList installedVersions = getCurrentlyInstalledVersions();
+        if (installedVersions == null)
+            return null;
+
+        Version res = null;
+        for (Version installedVersion : installedVersions) {
+            if (installedVersion.compareTo(version) < 0 && (res == null || installedVersion.compareTo(res) > 0)
+                    && getOutputFile(installedVersion).isFile())
+                res = installedVersion;
+        }
+        return res;
+    }
+
+    /**
+     * Deletes the partial downloads of all versions that are older than the specified version as they will most likely
+     * never be resumed. Only versions that are in the metadata cache are considered, so no metadata is downloaded.
+     * Versions that are being downloaded right now are skipped.
+     *
+     * @param downloadedVersion The version that was just downloaded
+     */
+    private void deleteStalePartialDownloads(Version downloadedVersion) {
+        for (boolean enableSnapshots : new boolean[]{false, true}) {
+            MVNMetadataFile cachedMetadataFile = MetadataCache.getInstance().getIfPresent(getMvnCoordinates(), enableSnapshots);
+            if (cachedMetadataFile == null || cachedMetadataFile.getVersionList() == null)
+                continue;
+
+            for (Version version : cachedMetadataFile.getVersionList()) {
+                File partFile = PartialDownloadFile.getPartFile(getOutputFile(version));
+                if (version.compareTo(downloadedVersion) >= 0 || (!partFile.exists() && !PartialDownloadFile.getSidecarFile(partFile).exists()))
+                    continue;
+
+                LockDownloadFile lockFile = getLockFile(version);
+                try {
+                    if (!lockFile.tryLock())
+                        continue;
+                    try {
+                        FOKLogger.info(App.class.getName(), "Deleting the outdated partial download of version " + version + " of " + getName());
+                        PartialDownloadFile.deletePartialDownload(partFile);
+                    } finally {
+                        lockFile.unlock();
+                    }
+                } catch (IOException e) {
+                    FOKLogger.log(App.class.getName(), Level.WARNING, "Unable to delete the outdated partial download of version " + version + " of " + getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines the size of the jar file of the specified version using a HEAD request without downloading it.
+     *
+     * @param version The version to get the size of
+     * @return The size of the jar file in bytes or {@code -1} if the server did not report the size
+     * @throws IOException If the server cannot be reached
+     */
+    public long getArtifactSize(Version version) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) getArtifactURL(version).openConnection();
+        try {
+            connection.setRequestMethod("HEAD");
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+                return -1;
+            return connection.getContentLengthLong();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Downloads this artifact.
+     *
+     * @param versionToDownload The {@link Version} to be downloaded.
+     * @param gui               The {@link HidableUpdateProgressDialog} that represents the
+     *                          gui to inform the user about the progress.
+     * @return {@code true} if the download finished successfully, {@code false}
+     * if the download was cancelled using
+     * {@link #cancelDownloadAndLaunch()}
+     * @throws IOException If the version info cannot be read
+     */
+    public boolean download(Version versionToDownload, @Nullable HidableUpdateProgressDialog gui)
+            throws IOException {
+        return download(versionToDownload, gui, null);
+    }
+
+    /**
+     * Downloads this artifact.
+     *
+     * @param versionToDownload The {@link Version} to be downloaded.
+     * @param gui               The {@link HidableUpdateProgressDialog} that represents the
+     *                          gui to inform the user about the progress.
+     * @param transferListener  A listener that is notified about the network transfers of the download or {@code null}
+     * @return {@code true} if the download finished successfully, {@code false}
+     * if the download was cancelled using
+     * {@link #cancelDownloadAndLaunch()}
+     * @throws IOException If the version info cannot be read
+     */
+    public boolean download(Version versionToDownload, @Nullable HidableUpdateProgressDialog gui, @Nullable TransferListener transferListener)
+            throws IOException {
+
+        if (gui != null) {
+            gui.preparePhaseStarted();
+        }
+
+        // Perform Cancel if requested
+        if (performCancelIfRequested(gui))
+            return false;
+
+        URL artifactURL = getArtifactURL(versionToDownload);
 
         // Perform Cancel if requested
         if (performCancelIfRequested(gui))
@@ -762,67 +1057,45 @@ public class App {
         getLockFile(versionToDownload).lock();
 
         try {
-            // Download
-            if (gui != null) {
-                gui.downloadStarted();
-            }
+            // Another thread or launcher instance might have downloaded the version while we were waiting for the lock
+            if (isPresentOnHardDrive(versionToDownload)) {
+                FOKLogger.info(App.class.getName(), "Version " + versionToDownload + " of " + getName() + " was downloaded by another thread or launcher instance, skipping the download");
+            } else {
+                // Download
+                if (gui != null) {
+                    gui.downloadStarted();
+                }
 
-            FOKLogger.info(App.class.getName(), "Downloading artifact from " + artifactURL.toString() + "...");
-            FOKLogger.info(App.class.getName(), "Downloading to: " + outputFile.getAbsolutePath());
-
-            HttpURLConnection httpConnection = (HttpURLConnection) (artifactURL.openConnection());
-            long completeFileSize = httpConnection.getContentLength();
-            //noinspection ResultOfMethodCallIgnored
-            outputFile.getParentFile().mkdirs();
-
-            try (NullOutputStream nullOutputStream = new NullOutputStream()) {
-                try (BufferedInputStream in = new BufferedInputStream(httpConnection.getInputStream())) {
-                    try (FileOutputStream fileOutputStream = new FileOutputStream(outputFile)) {
-                        try (BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(fileOutputStream, 1024)) {
-                            byte[] data = new byte[1024];
-                            long downloadedFileSize = 0;
-                            int x;
-                            while ((x = in.read(data, 0, 1024)) >= 0) {
-                                downloadedFileSize += x;
-
-                                // update progress bar
-                                if (gui != null) {
-                                    gui.downloadProgressChanged(downloadedFileSize / 1024.0,
-                                            completeFileSize / 1024.0);
-                                }
-
-                                bufferedOutputStream.write(data, 0, x);
-
-                                while (isDownloadPaused()) {
-                                    // pause
-                                    nullOutputStream.write(0);
-                                }
-
-                                // Perform Cancel if requested
-                                if (isCancelDownloadAndLaunch()) {
-                                    bufferedOutputStream.close();
-                                    fileOutputStream.close();
-                                    in.close();
-                                    Files.delete(outputFile.toPath());
-                                    getLockFile(versionToDownload).unlock();
-                                    if (gui != null) {
-                                        gui.operationCanceled();
-                                    }
-                                    resetCancelDownloadAndLaunchFlag();
-                                    return false;
-                                }
-                            }
-                        }
+                FOKLogger.info(App.class.getName(), "Downloading artifact from " + artifactURL.toString() + "...");
+                FOKLogger.info(App.class.getName(), "Downloading to: " + outputFile.getAbsolutePath());
+
+                ArtifactDownloader artifactDownloader = new ArtifactDownloader(this, artifactURL, outputFile, gui);
+                artifactDownloader.setTransferListener(transferListener);
+                artifactDownloader.setArtifactStore(ArtifactStore.getInstance());
+                Version deltaBaseVersion = getDeltaBaseVersion(versionToDownload);
+                if (deltaBaseVersion != null)
+                    artifactDownloader.setDeltaBase(getDeltaURL(versionToDownload, deltaBaseVersion), getOutputFile(deltaBaseVersion));
+                if (!artifactDownloader.download()) {
+                    // Perform Cancel if requested, the partial download is kept if it can be resumed later on.
+                    // The lock is released in the finally block.
+                    if (gui != null) {
+                        gui.operationCanceled();
                     }
+                    resetCancelDownloadAndLaunchFlag();
+                    return false;
                 }
-            }
 
-            // download version info
-            downloadVersionInfo(versionToDownload);
+                // download version info
+                downloadVersionInfo(versionToDownload, artifactDownloader.getChecksum());
+                deleteStalePartialDownloads(versionToDownload);
+            }
         } finally {
             getLockFile(versionToDownload).unlock();
         }
 
+        // the installed version changed, so an update that was available before is not anymore
+        cacheLastKnownUpdateAvailability();
+
         // Perform Cancel if requested
         if (performCancelIfRequested(gui))
             return false;
@@ -837,14 +1110,40 @@ public class App {
 
     }
 
+    /**
+     * Pauses the current download of this app. The download thread is parked and the connection to the server is released
+     * if the server supports range requests. Call {@link #resumeDownload()} to continue the download.
+     */
     public void pauseDownload() {
         setDownloadPaused(true);
     }
 
+    /**
+     * Resumes the download of this app if it was paused using {@link #pauseDownload()}.
+     */
     public void resumeDownload() {
         setDownloadPaused(false);
     }
 
+    /**
+     * Blocks the calling thread until the download is resumed or cancelled. Returns immediately if the download is not paused.
+     *
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    void awaitDownloadResumed() throws InterruptedException {
+        synchronized (pauseLock) {
+            while (isDownloadPaused() && !isCancelDownloadAndLaunch()) {
+                pauseLock.wait();
+            }
+        }
+    }
+
+    private void notifyPauseStateChanged() {
+        synchronized (pauseLock) {
+            pauseLock.notifyAll();
+        }
+    }
+
     /**
      * Cancels the download and launch process.
      */
@@ -860,6 +1159,8 @@ public class App {
      */
     public void cancelDownloadAndLaunch(HidableUpdateProgressDialog gui) {
         cancelDownloadAndLaunch = true;
+        // wake paused downloads up so that they can perform the cancel
+        notifyPauseStateChanged();
 
         if (gui != null) {
             gui.cancelRequested();
@@ -892,7 +1193,7 @@ public class App {
         return isCancelDownloadAndLaunch();
     }
 
-    private boolean isCancelDownloadAndLaunch() {
+    boolean isCancelDownloadAndLaunch() {
         return cancelDownloadAndLaunch;
     }
 
@@ -904,13 +1205,16 @@ public class App {
      */
     @SuppressWarnings("UnusedReturnValue")
     public boolean delete(Version versionToDelete) throws IOException {
-        if (localMetadataFile == null && !loadLocalMetadataFile()) {
+        if (!isLocalMetadataFileUpToDate() && !loadLocalMetadataFile()) {
             // something went wrong, exception already logged
             return false;
         }
 
+        ArtifactChecksum checksum = localMetadataFile.getChecksum(versionToDelete);
         localMetadataFile.getVersionList().remove(versionToDelete);
+        localMetadataFile.setChecksum(versionToDelete, null);
         localMetadataFile.saveFile(getLocationOfLocalMetadataFile());
+        localMetadataChanged(getLocationOfLocalMetadataFile().lastModified());
 
         // Delete the file
         String appFileName;
@@ -923,6 +1227,11 @@ public class App {
         }
 
         Files.delete(getAbsolutePathToSubfolderToSaveApps().resolve(appFileName));
+        cacheLastKnownUpdateAvailability();
+
+        // remove the stored copy unless another app links to the same bytes
+        if (checksum != null)
+            ArtifactStore.getInstance().release(checksum);
         return true;
     }
 
@@ -1128,6 +1437,17 @@ public class App {
         }
     }
 
+    /**
+     * Consistent with {@link #equals(Object)}: Only uses the properties that are compared by {@link #equals(Object)} and that
+     * must be equal for equal apps.
+     *
+     * @return The hash code of this app
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(getMvnCoordinates(), getName(), getImportFile());
+    }
+
     /**
      * Returns {@link MVNCoordinates#toString()} if maven coordinates have been specified or the name of the app otherwise
      *
@@ -1192,7 +1512,7 @@ public class App {
         launchSpecificVersionItem.setOnHiding(event2 -> launchSpecificVersionItem.setCancelled(true));
         launchSpecificVersionItem.setOnShown(event -> {
             launchSpecificVersionItem.setCancelled(false);
-            Thread buildContextMenuThread = new Thread(() -> {
+            Thread buildContextMenuThread = BlockingTasks.newDaemonThread("buildContextMenuThread", () -> {
                 FOKLogger.info(App.class.getName(), "Getting available online versions...");
 
                 // Get available versions
@@ -1241,7 +1561,6 @@ public class App {
             });
 
             if (!this.isSpecificVersionListLoaded()) {
-                buildContextMenuThread.setName("buildContextMenuThread");
                 buildContextMenuThread.start();
                 this.setSpecificVersionListLoaded(true);
             }
@@ -1278,6 +1597,7 @@ public class App {
                         } catch (IOException e) {
                             FOKLogger.log(getClass().getName(), Level.SEVERE, "Unable to delete the app " + getName(), e);
                         } finally {
+                            EntryClass.getControllerInstance().refreshAppList();
                             EntryClass.getControllerInstance().updateLaunchButton();
                         }
                         // Update the list the next time the
@@ -1413,7 +1733,7 @@ public class App {
     }
 
     public boolean isDownloadPaused() {
-        return downloadPaused;
+        return downloadPaused.get();
     }
 
     public void setDownloadPaused(boolean downloadPaused) {
@@ -1422,6 +1742,17 @@ public class App {
         } else {
             FOKLogger.info(App.class.getName(), "Resuming the download...");
         }
-        this.downloadPaused = downloadPaused;
+        this.downloadPaused.set(downloadPaused);
+        notifyPauseStateChanged();
+    }
+
+    /**
+     * Returns a property that is {@code true} while the download of this app is paused.
+     * Listeners are notified on the thread that paused or resumed the download.
+     *
+     * @return A property that is {@code true} while the download of this app is paused.
+     */
+    public ReadOnlyBooleanProperty downloadPausedProperty() {
+        return downloadPaused.getReadOnlyProperty();
     }
 }
@@ -21,16 +21,23 @@ package applist;
  */
 
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.io.File;
+import java.util.*;
 
 /**
  * A list of apps. Based on a {@link ArrayList} but contains additional methods
- * specific for apps.
+ * specific for apps.<br>
+ * The list maintains hash indexes of the apps by their maven coordinates and by their import file, so
+ * {@link #getAppByMavenCoordinates(MVNCoordinates)} and {@link #addAndCheckForDuplicateImports(App)} do not need to
+ * scan the list. The indexes are updated by all methods that modify the list. Like the keys of a {@link HashMap}, the
+ * maven coordinates and the import file of an app must not be changed while the app is part of the list.
  *
  * @author Frederik Kammel
  */
 public class AppList extends ArrayList<App> {
+    private transient Map<MVNCoordinates, List<App>> appsByMavenCoordinates;
+    private transient Map<File, List<App>> appsByImportFile;
+    private transient int indexedModCount;
 
     /**
      * Creates a new app list
@@ -76,6 +83,91 @@ public class AppList extends ArrayList<App> {
         clearVersionCache();
     }
 
+    /**
+     * Replaces the apps of this list by the equal apps of the specified list whose catalog entry (name, maven coordinates,
+     * urls and import file) did not change. This keeps the state of previously loaded apps like their caches, running
+     * downloads or their selection in a list view when the app list is reloaded.
+     *
+     * @param previousApps The previously loaded apps
+     */
+    public void keepUnchangedApps(Collection<App> previousApps) {
+        Map<App, Deque<App>> candidates = new HashMap<>();
+        for (App previousApp : previousApps)
+            candidates.computeIfAbsent(previousApp, key -> new ArrayDeque<>()).add(previousApp);
+
+        for (int i = 0; i < size(); i++) {
+            Deque<App> equalApps = candidates.get(get(i));
+            if (equalApps == null)
+                continue;
+
+            for (Iterator<App> iterator = equalApps.iterator(); iterator.hasNext(); ) {
+                App previousApp = iterator.next();
+                if (hasSameCatalogEntry(get(i), previousApp)) {
+                    iterator.remove();
+                    set(i, previousApp);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static boolean hasSameCatalogEntry(App app1, App app2) {
+        // urls are compared as strings as URL.equals resolves the host names
+        return Objects.equals(app1.getName(), app2.getName())
+                && Objects.equals(app1.getMvnCoordinates(), app2.getMvnCoordinates())
+                && Objects.equals(Objects.toString(app1.getAdditionalInfoURL(), null), Objects.toString(app2.getAdditionalInfoURL(), null))
+                && Objects.equals(Objects.toString(app1.getChangelogURL(), null), Objects.toString(app2.getChangelogURL(), null))
+                && Objects.equals(app1.getImportFile(), app2.getImportFile());
+    }
+
+    /**
+     * Updates the specified list in place so that it contains the apps of this list in the same order. Apps are compared
+     * by identity and apps that are contained in both lists are only moved if their position changed, so observers of
+     * the specified list, e. g. a list view, only see the actual differences. Use {@link #keepUnchangedApps(Collection)}
+     * first to reuse the apps of the specified list.
+     *
+     * @param target The list to update
+     */
+    public void applyTo(List<App> target) {
+        Set<App> appsToKeep = Collections.newSetFromMap(new IdentityHashMap<>());
+        appsToKeep.addAll(this);
+        for (int i = target.size() - 1; i >= 0; i--) {
+            if (!appsToKeep.contains(target.get(i)))
+                target.remove(i);
+        }
+
+        for (int i = 0; i < size(); i++) {
+            App app = get(i);
+            if (i < target.size() && target.get(i) == app)
+                continue;
+
+            for (int j = i + 1; j < target.size(); j++) {
+                if (target.get(j) == app) {
+                    target.remove(j);
+                    break;
+                }
+            }
+            target.add(i, app);
+        }
+
+        while (target.size() > size())
+            target.remove(target.size() - 1);
+    }
+
+    /**
+     * Checks all apps in this list for updates concurrently. Returns immediately, the results are passed to the
+     * specified listener as they arrive.
+     *
+     * @param snapshotsEnabled {@code true} if installed apps shall be compared to the latest snapshot instead of the latest release
+     * @param listener         The listener to notify about the result of each app and the completion of the check
+     * @return The running check that can be used to query the results or cancel the check
+     */
+    public UpdateCheck checkForUpdates(boolean snapshotsEnabled, UpdateCheck.Listener listener) {
+        UpdateCheck res = new UpdateCheck(this, snapshotsEnabled, listener);
+        res.start();
+        return res;
+    }
+
     /**
      * Searches this {@link AppList} for the specified app.
      *
@@ -83,14 +175,11 @@ public class AppList extends ArrayList<App> {
      * @return The first matching {@link App} or {@code null} if no app matches.
      */
     public App getAppByMavenCoordinates(MVNCoordinates mvnCoordinates) {
-        for (App app : this) {
-            if (app.getMvnCoordinates().equals(mvnCoordinates)) {
-                return app;
-            }
-        }
+        if (mvnCoordinates == null)
+            return null;
 
-        // We only arrived here if no match was found
-        return null;
+        updateIndexesIfRequired();
+        return getFirst(appsByMavenCoordinates.get(mvnCoordinates));
     }
 
     /**
@@ -101,14 +190,236 @@ public class AppList extends ArrayList<App> {
      */
     @SuppressWarnings("UnusedReturnValue")
     public boolean addAndCheckForDuplicateImports(App appToAdd) {
-        for (App app : this) {
-            if (app.getImportFile().equals(appToAdd.getImportFile())) {
+        if (appToAdd.getImportFile() != null) {
+            updateIndexesIfRequired();
+            if (appsByImportFile.containsKey(appToAdd.getImportFile()))
                 return false;
-            }
         }
 
         // no duplicate found
         this.add(appToAdd);
         return true;
     }
+
+    /**
+     * Returns the app that comes first in this list out of the specified apps.
+     *
+     * @param candidates The apps to choose from, may be {@code null}
+     * @return The app that comes first in this list or {@code null} if no candidates were specified
+     */
+    private App getFirst(List<App> candidates) {
+        if (candidates == null)
+            return null;
+        if (candidates.size() == 1)
+            return candidates.get(0);
+
+        // only happens if the list contains duplicates
+        for (App app : this) {
+            for (App candidate : candidates) {
+                if (app == candidate)
+                    return app;
+            }
+        }
+        throw new IllegalStateException("The index of the app list is corrupt");
+    }
+
+    private boolean isIndexUpToDate() {
+        return appsByMavenCoordinates != null && indexedModCount == modCount;
+    }
+
+    /**
+     * Rebuilds the indexes if the list was modified by a method that does not update them itself,
+     * e. g. {@link #removeIf(java.util.function.Predicate)} or {@link #sort(Comparator)}.
+     */
+    private void updateIndexesIfRequired() {
+        if (isIndexUpToDate())
+            return;
+
+        appsByMavenCoordinates = new HashMap<>();
+        appsByImportFile = new HashMap<>();
+        for (App app : this)
+            index(app);
+        indexedModCount = modCount;
+    }
+
+    private void index(App app) {
+        if (app == null)
+            return;
+        appsByMavenCoordinates.computeIfAbsent(app.getMvnCoordinates(), key -> new ArrayList<>(1)).add(app);
+        if (app.getImportFile() != null)
+            appsByImportFile.computeIfAbsent(app.getImportFile(), key -> new ArrayList<>(1)).add(app);
+    }
+
+    private void unindex(App app) {
+        if (app == null)
+            return;
+        unindex(appsByMavenCoordinates, app.getMvnCoordinates(), app);
+        if (app.getImportFile() != null)
+            unindex(appsByImportFile, app.getImportFile(), app);
+    }
+
+    private static <K> void unindex(Map<K, List<App>> index, K key, App app) {
+        List<App> apps = index.get(key);
+        if (apps == null)
+            return;
+        // remove this very instance, not an equal app
+        apps.removeIf(candidate -> candidate == app);
+        if (apps.isEmpty())
+            index.remove(key);
+    }
+
+    /*
+     * The following methods keep the indexes up to date as long as they were up to date before the modification.
+     * Modifications by any other method change the modCount which causes the indexes to be rebuilt when they are used the next time.
+     */
+
+    @Override
+    public boolean add(App app) {
+        boolean indexUpToDate = isIndexUpToDate();
+        super.add(app);
+        if (indexUpToDate) {
+            index(app);
+            indexedModCount = modCount;
+        }
+        return true;
+    }
+
+    @Override
+    public void add(int index, App app) {
+        boolean indexUpToDate = isIndexUpToDate();
+        super.add(index, app);
+        if (indexUpToDate) {
+            index(app);
+            indexedModCount = modCount;
+        }
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends App> apps) {
+        return addAll(size(), apps);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends App> apps) {
+        boolean indexUpToDate = isIndexUpToDate();
+        // copy the collection in case it is this list
+        List<App> appsToAdd = new ArrayList<>(apps);
+        boolean res = super.addAll(index, appsToAdd);
+        if (indexUpToDate) {
+            for (App app : appsToAdd)
+                index(app);
+            indexedModCount = modCount;
+        }
+        return res;
+    }
+
+    @Override
+    public App remove(int index) {
+        boolean indexUpToDate = isIndexUpToDate();
+        App res = super.remove(index);
+        if (indexUpToDate) {
+            unindex(res);
+            indexedModCount = modCount;
+        }
+        return res;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0)
+            return false;
+        remove(index);
+        return true;
+    }
+
+    /**
+     * Replaces the app at the specified position. Does not change the modCount, so the indexes need to be updated here
+     * regardless of how this method is called (e. g. by {@link ListIterator#set(Object)}).
+     */
+    @Override
+    public App set(int index, App app) {
+        App res = super.set(index, app);
+        if (isIndexUpToDate()) {
+            unindex(res);
+            index(app);
+        }
+        return res;
+    }
+
+    /**
+     * Returns a view of the specified range of this list. Unlike the view returned by {@link ArrayList#subList(int, int)},
+     * all modifications of the view go through the methods of this list so that the indexes are kept up to date.
+     */
+    @Override
+    public List<App> subList(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex + ", size: " + size());
+        return new SubList(fromIndex, toIndex - fromIndex);
+    }
+
+    @Override
+    public Object clone() {
+        AppList res = (AppList) super.clone();
+        // the clone must not share the indexes with this list
+        res.appsByMavenCoordinates = null;
+        res.appsByImportFile = null;
+        return res;
+    }
+
+    private class SubList extends AbstractList<App> implements RandomAccess {
+        private final int offset;
+        private int size;
+
+        SubList(int offset, int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+
+        private void checkIndex(int index, int size) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+
+        @Override
+        public App get(int index) {
+            checkIndex(index, size);
+            return AppList.this.get(offset + index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public App set(int index, App app) {
+            checkIndex(index, size);
+            return AppList.this.set(offset + index, app);
+        }
+
+        @Override
+        public void add(int index, App app) {
+            checkIndex(index, size + 1);
+            AppList.this.add(offset + index, app);
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public App remove(int index) {
+            checkIndex(index, size);
+            App res = AppList.this.remove(offset + index);
+            size--;
+            modCount++;
+            return res;
+        }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            AppList.this.removeRange(offset + fromIndex, offset + toIndex);
+            size -= toIndex - fromIndex;
+            modCount++;
+        }
+    }
 }
@@ -70,7 +70,7 @@ public class AppListFile {
     }
 
     private Document getOnlineDocument(URL onlineListURL, String offlineCacheFileName) throws JDOMException, IOException {
-        Document res = new SAXBuilder().build(onlineListURL);
+        Document res = HttpMetadataCache.getInstance().getDocument(onlineListURL);
         (new XMLOutputter(Format.getPrettyFormat())).output(res, new FileOutputStream(offlineCacheFileName));
         return res;
     }
@@ -0,0 +1,366 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import com.github.vatbub.common.core.Common;
+import com.github.vatbub.common.updater.Version;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A compact binary snapshot of the merged app list (online and imported apps including the last known online versions) that
+ * is written after every successful load and read when the launcher starts so that the app list can be shown without
+ * downloading or parsing any xml file.
+ * <p>
+ * The file consists of a fixed size header, one fixed size record per app and a table of the distinct strings that the
+ * records refer to by index. The file is read into the heap in one go, but apps and strings are only decoded when they
+ * are requested for the first time using {@link #getApp(int)}. {@link #getAppList()} decodes all of them.
+ * <p>
+ * The file is not memory-mapped by default as some platforms (e. g. Windows) do not allow replacing a file while a
+ * mapping of it is alive, and the mapping is only released once the buffer is garbage collected.
+ */
+public class AppListSnapshotFile {
+    /**
+     * The name of the snapshot file in the app data folder of the launcher.
+     */
+    public static final String FILE_NAME = "appListSnapshot.bin";
+    private static final String TEMP_FILE_NAME_EXTENSION = ".tmp";
+    private final File file;
+    private ByteBuffer buffer;
+    private long creationTime;
+    private int appCount;
+    private int stringCount;
+    private int stringDataOffset;
+    private App[] apps;
+    private String[] strings;
+
+    /**
+     * Opens the snapshot at the specified location. If the file exists, it is read into the heap and its header is validated.
+     * The file is not kept open and can therefore be replaced by {@link #save(File, AppList)} at any time.
+     *
+     * @param file The snapshot file to read
+     * @throws IOException If the file exists but cannot be read, is corrupt or was written in an unsupported format version
+     */
+    public AppListSnapshotFile(File file) throws IOException {
+        this(file, false);
+    }
+
+    /**
+     * Opens the snapshot at the specified location.
+     *
+     * @param file    The snapshot file to read
+     * @param mapFile If {@code true}, the file is memory-mapped, if {@code false}, it is read into the heap. Files that
+     *                will be replaced while this object is reachable must not be mapped as some platforms do not allow
+     *                replacing mapped files.
+     * @throws IOException If the file exists but cannot be read, is corrupt or was written in an unsupported format version
+     */
+    AppListSnapshotFile(File file, boolean mapFile) throws IOException {
+        this.file = file;
+        readFile(mapFile);
+    }
+
+    /**
+     * Returns the location of the snapshot in the app data folder of the launcher.
+     *
+     * @return The location of the snapshot in the app data folder of the launcher.
+     */
+    public static File getDefaultFile() {
+        return new File(Common.getInstance().getAndCreateAppDataPathAsFile(), FILE_NAME);
+    }
+
+    private void readFile(boolean mapFile) throws IOException {
+        if (!file.exists())
+            return;
+
+        ByteBuffer res;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("The app list snapshot " + file.getAbsolutePath() + " is too large");
+            if (mapFile) {
+                res = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } else {
+                res = ByteBuffer.allocate((int) channel.size());
+                while (res.hasRemaining() && channel.read(res) >= 0) {
+                    // keep reading until the buffer is full
+                }
+                res.flip();
+            }
+        }
+
+        if (res.limit() < FileFormat.HEADER_LENGTH || res.getInt(FileFormat.MAGIC_NUMBER_OFFSET) != FileFormat.MAGIC_NUMBER)
+            throw new IOException(file.getAbsolutePath() + " is not an app list snapshot");
+        int formatVersion = res.getInt(FileFormat.FORMAT_VERSION_OFFSET);
+        if (formatVersion != FileFormat.FORMAT_VERSION)
+            throw new IOException("The app list snapshot " + file.getAbsolutePath() + " was written in the unsupported format version " + formatVersion);
+
+        creationTime = res.getLong(FileFormat.CREATION_TIME_OFFSET);
+        appCount = res.getInt(FileFormat.APP_COUNT_OFFSET);
+        stringCount = res.getInt(FileFormat.STRING_COUNT_OFFSET);
+        long stringTableOffset = FileFormat.HEADER_LENGTH + (long) appCount * FileFormat.RECORD_LENGTH;
+        long stringDataStart = stringTableOffset + ((long) stringCount + 1) * Integer.BYTES;
+        if (appCount < 0 || stringCount < 0 || stringDataStart > res.limit()
+                || stringDataStart + res.getInt((int) stringTableOffset + stringCount * Integer.BYTES) != res.limit())
+            throw new IOException("The app list snapshot " + file.getAbsolutePath() + " is corrupt");
+
+        stringDataOffset = (int) stringDataStart;
+        apps = new App[appCount];
+        strings = new String[stringCount];
+        buffer = res;
+    }
+
+    /**
+     * Writes a snapshot of the specified apps to the specified file. The snapshot is written to a temporary file first
+     * which then replaces the specified file so that readers never see a partially written snapshot.
+     *
+     * @param file The file to write the snapshot to
+     * @param apps The apps to save
+     * @throws IOException If the snapshot cannot be written or if the specified file cannot be replaced
+     */
+    public static synchronized void save(File file, AppList apps) throws IOException {
+        Map<String, Integer> stringIndexes = new LinkedHashMap<>();
+        int[][] records = new int[apps.size()][];
+        for (int i = 0; i < apps.size(); i++)
+            records[i] = toRecord(apps.get(i), stringIndexes);
+
+        byte[][] encodedStrings = new byte[stringIndexes.size()][];
+        int stringIndex = 0;
+        for (String string : stringIndexes.keySet())
+            encodedStrings[stringIndex++] = string.getBytes(StandardCharsets.UTF_8);
+
+        //noinspection ResultOfMethodCallIgnored
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        File tempFile = new File(file.getAbsolutePath() + TEMP_FILE_NAME_EXTENSION);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(FileFormat.MAGIC_NUMBER);
+            out.writeInt(FileFormat.FORMAT_VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(records.length);
+            out.writeInt(encodedStrings.length);
+
+            for (int[] record : records)
+                for (int field : record)
+                    out.writeInt(field);
+
+            int stringEnd = 0;
+            out.writeInt(stringEnd);
+            for (byte[] encodedString : encodedStrings) {
+                stringEnd += encodedString.length;
+                out.writeInt(stringEnd);
+            }
+            for (byte[] encodedString : encodedStrings)
+                out.write(encodedString);
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    private static int[] toRecord(App app, Map<String, Integer> stringIndexes) {
+        MVNCoordinates mvnCoordinates = app.getMvnCoordinates();
+        Version lastKnownOnlineVersion = app.getLastKnownOnlineVersion(false);
+        Version lastKnownOnlineSnapshotVersion = app.getLastKnownOnlineVersion(true);
+
+        int[] res = new int[FileFormat.FIELD_COUNT];
+        res[FileFormat.NAME] = indexOf(app.getName(), stringIndexes);
+        res[FileFormat.REPO_BASE_URL] = indexOf(mvnCoordinates.getRepoBaseURL(), stringIndexes);
+        res[FileFormat.SNAPSHOT_REPO_BASE_URL] = indexOf(mvnCoordinates.getSnapshotRepoBaseURL(), stringIndexes);
+        res[FileFormat.GROUP_ID] = indexOf(mvnCoordinates.getGroupId(), stringIndexes);
+        res[FileFormat.ARTIFACT_ID] = indexOf(mvnCoordinates.getArtifactId(), stringIndexes);
+        res[FileFormat.CLASSIFIER] = indexOf(mvnCoordinates.getClassifier(), stringIndexes);
+        res[FileFormat.ADDITIONAL_INFO_URL] = indexOf(app.getAdditionalInfoURL(), stringIndexes);
+        res[FileFormat.CHANGELOG_URL] = indexOf(app.getChangelogURL(), stringIndexes);
+        res[FileFormat.IMPORT_FILE] = indexOf(app.isImported() ? app.getImportFile().getAbsolutePath() : null, stringIndexes);
+        res[FileFormat.LATEST_VERSION] = indexOf(lastKnownOnlineVersion == null ? null : lastKnownOnlineVersion.getVersion(), stringIndexes);
+        res[FileFormat.LATEST_BUILD_NUMBER] = indexOf(lastKnownOnlineVersion == null ? null : lastKnownOnlineVersion.getBuildNumber(), stringIndexes);
+        res[FileFormat.LATEST_TIMESTAMP] = indexOf(lastKnownOnlineVersion == null ? null : lastKnownOnlineVersion.getTimestamp(), stringIndexes);
+        res[FileFormat.LATEST_SNAPSHOT_VERSION] = indexOf(lastKnownOnlineSnapshotVersion == null ? null : lastKnownOnlineSnapshotVersion.getVersion(), stringIndexes);
+        res[FileFormat.LATEST_SNAPSHOT_BUILD_NUMBER] = indexOf(lastKnownOnlineSnapshotVersion == null ? null : lastKnownOnlineSnapshotVersion.getBuildNumber(), stringIndexes);
+        res[FileFormat.LATEST_SNAPSHOT_TIMESTAMP] = indexOf(lastKnownOnlineSnapshotVersion == null ? null : lastKnownOnlineSnapshotVersion.getTimestamp(), stringIndexes);
+        return res;
+    }
+
+    private static int indexOf(Object value, Map<String, Integer> stringIndexes) {
+        if (value == null)
+            return FileFormat.NULL_STRING;
+        return stringIndexes.computeIfAbsent(value.toString(), key -> stringIndexes.size());
+    }
+
+    /**
+     * Returns {@code true} if the snapshot file existed when this object was created.
+     *
+     * @return {@code true} if the snapshot file existed when this object was created.
+     */
+    public boolean exists() {
+        return buffer != null;
+    }
+
+    /**
+     * Returns the time when the snapshot was written.
+     *
+     * @return The time when the snapshot was written in milliseconds since the epoch or {@code 0} if the snapshot does not exist.
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * Returns the number of apps in the snapshot.
+     *
+     * @return The number of apps in the snapshot or {@code 0} if the snapshot does not exist.
+     */
+    public int size() {
+        return appCount;
+    }
+
+    /**
+     * Returns the app at the specified index of the snapshot. The app is decoded on the first call and cached afterwards.
+     * Imported apps are restored without reading their {@code *.foklauncher} file.
+     *
+     * @param index The index of the app to return
+     * @return The app at the specified index
+     * @throws IOException If the record of the app is corrupt
+     */
+    public synchronized App getApp(int index) throws IOException {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+
+        if (apps[index] == null)
+            apps[index] = readApp(index);
+        return apps[index];
+    }
+
+    /**
+     * Decodes all apps of the snapshot.
+     *
+     * @return A new list that contains all apps of the snapshot. The list is empty if the snapshot does not exist.
+     * @throws IOException If the snapshot is corrupt
+     */
+    public AppList getAppList() throws IOException {
+        AppList res = new AppList(size());
+        for (int i = 0; i < size(); i++)
+            res.add(getApp(i));
+        return res;
+    }
+
+    private App readApp(int index) throws IOException {
+        int recordOffset = FileFormat.HEADER_LENGTH + index * FileFormat.RECORD_LENGTH;
+        String[] fields = new String[FileFormat.FIELD_COUNT];
+        for (int i = 0; i < FileFormat.FIELD_COUNT; i++)
+            fields[i] = getString(buffer.getInt(recordOffset + i * Integer.BYTES));
+
+        if (fields[FileFormat.NAME] == null || fields[FileFormat.REPO_BASE_URL] == null || fields[FileFormat.SNAPSHOT_REPO_BASE_URL] == null
+                || fields[FileFormat.GROUP_ID] == null || fields[FileFormat.ARTIFACT_ID] == null)
+            throw new IOException("The record of app " + index + " in the app list snapshot " + file.getAbsolutePath() + " is incomplete");
+
+        MVNCoordinates mvnCoordinates = new MVNCoordinates(new URL(fields[FileFormat.REPO_BASE_URL]), new URL(fields[FileFormat.SNAPSHOT_REPO_BASE_URL]),
+                fields[FileFormat.GROUP_ID], fields[FileFormat.ARTIFACT_ID], fields[FileFormat.CLASSIFIER]);
+        App res = new App(fields[FileFormat.NAME], mvnCoordinates,
+                fields[FileFormat.ADDITIONAL_INFO_URL] == null ? null : new URL(fields[FileFormat.ADDITIONAL_INFO_URL]),
+                fields[FileFormat.CHANGELOG_URL] == null ? null : new URL(fields[FileFormat.CHANGELOG_URL]));
+
+        if (fields[FileFormat.IMPORT_FILE] != null)
+            res.setImportFile(new File(fields[FileFormat.IMPORT_FILE]));
+        if (fields[FileFormat.LATEST_VERSION] != null)
+            res.setLastKnownOnlineVersion(false, new Version(fields[FileFormat.LATEST_VERSION], fields[FileFormat.LATEST_BUILD_NUMBER], fields[FileFormat.LATEST_TIMESTAMP]));
+        if (fields[FileFormat.LATEST_SNAPSHOT_VERSION] != null)
+            res.setLastKnownOnlineVersion(true, new Version(fields[FileFormat.LATEST_SNAPSHOT_VERSION], fields[FileFormat.LATEST_SNAPSHOT_BUILD_NUMBER], fields[FileFormat.LATEST_SNAPSHOT_TIMESTAMP]));
+        return res;
+    }
+
+    private String getString(int index) throws IOException {
+        if (index == FileFormat.NULL_STRING)
+            return null;
+        if (index < 0 || index >= stringCount)
+            throw new IOException("The app list snapshot " + file.getAbsolutePath() + " refers to the non-existent string " + index);
+
+        if (strings[index] == null) {
+            int tableOffset = stringDataOffset - (stringCount + 1) * Integer.BYTES;
+            int start = buffer.getInt(tableOffset + index * Integer.BYTES);
+            int end = buffer.getInt(tableOffset + (index + 1) * Integer.BYTES);
+            if (start < 0 || end < start || stringDataOffset + end > buffer.limit())
+                throw new IOException("The app list snapshot " + file.getAbsolutePath() + " is corrupt");
+
+            byte[] encodedString = new byte[end - start];
+            ByteBuffer stringBuffer = buffer.duplicate();
+            stringBuffer.position(stringDataOffset + start);
+            stringBuffer.get(encodedString);
+            strings[index] = new String(encodedString, StandardCharsets.UTF_8);
+        }
+        return strings[index];
+    }
+
+    /**
+     * Describes the binary layout of the snapshot. All numbers are big-endian.
+     */
+    public static class FileFormat {
+        /**
+         * The first four bytes of every snapshot ({@code FOKS} in ASCII)
+         */
+        public static final int MAGIC_NUMBER = 0x464F4B53;
+        /**
+         * Increase this whenever the layout changes. Snapshots written in a different version are ignored and rewritten.
+         */
+        public static final int FORMAT_VERSION = 1;
+        public static final int MAGIC_NUMBER_OFFSET = 0;
+        public static final int FORMAT_VERSION_OFFSET = 4;
+        public static final int CREATION_TIME_OFFSET = 8;
+        public static final int APP_COUNT_OFFSET = 16;
+        public static final int STRING_COUNT_OFFSET = 20;
+        public static final int HEADER_LENGTH = 24;
+
+        // The fields of an app record, each one is the index of a string in the string table or NULL_STRING
+        public static final int NAME = 0;
+        public static final int REPO_BASE_URL = 1;
+        public static final int SNAPSHOT_REPO_BASE_URL = 2;
+        public static final int GROUP_ID = 3;
+        public static final int ARTIFACT_ID = 4;
+        public static final int CLASSIFIER = 5;
+        public static final int ADDITIONAL_INFO_URL = 6;
+        public static final int CHANGELOG_URL = 7;
+        public static final int IMPORT_FILE = 8;
+        public static final int LATEST_VERSION = 9;
+        public static final int LATEST_BUILD_NUMBER = 10;
+        public static final int LATEST_TIMESTAMP = 11;
+        public static final int LATEST_SNAPSHOT_VERSION = 12;
+        public static final int LATEST_SNAPSHOT_BUILD_NUMBER = 13;
+        public static final int LATEST_SNAPSHOT_TIMESTAMP = 14;
+        public static final int FIELD_COUNT = 15;
+        public static final int RECORD_LENGTH = FIELD_COUNT * Integer.BYTES;
+        public static final int NULL_STRING = -1;
+
+        private FileFormat() {
+            throw new IllegalStateException("Class may not be instantiated");
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable search index over the names and maven coordinates of a list of apps. The searchable text of every app is
+ * normalized once when the index is created and indexed by its trigrams, so a query only needs to look at the apps
+ * that contain all trigrams of the query instead of the whole list.<br>
+ * The index remembers the apps that contained the previous query. If the new query contains the previous one (which is
+ * the case while the user is typing), only those apps are searched. This applies to {@link #search(String)} as well as
+ * to the exact, prefix and substring matches of {@link #searchRanked(String, int)}.<br>
+ * {@link #searchRanked(String, int)} additionally tolerates typos and orders the results by how well they match.<br>
+ * Instances are not thread safe.
+ */
+public class AppSearchIndex {
+    private static final int GRAM_LENGTH = 3;
+    /**
+     * Queries up to this length may be abbreviations and are matched as a subsequence against all apps
+     */
+    private static final int MAX_ABBREVIATION_LENGTH = 4;
+    /**
+     * Separates the fields of an app in the searchable text. Cannot be part of a normalized query.
+     */
+    private static final char FIELD_SEPARATOR = '\n';
+    private static final Pattern DIACRITICS_PATTERN = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+    private static final Pattern TOKEN_SEPARATOR_PATTERN = Pattern.compile("[^\\p{L}\\p{N}]+");
+    /**
+     * The weights of the name, group id, artifact id and classifier of an app when ranking
+     */
+    private static final double[] FIELD_WEIGHTS = {1.0, 0.5, 0.9, 0.3};
+    private static final int EXACT_MATCH_SCORE = 1000;
+    private static final int PREFIX_MATCH_SCORE = 800;
+    private static final int TOKEN_PREFIX_MATCH_SCORE = 600;
+    private static final int SUBSTRING_MATCH_SCORE = 400;
+    private static final int TYPO_MATCH_SCORE = 300;
+    private static final int SUBSEQUENCE_MATCH_SCORE = 200;
+    private final List<App> apps;
+    private final String[] searchableTexts;
+    /**
+     * The normalized fields of every app, in the order of {@link #FIELD_WEIGHTS}
+     */
+    private final String[][] fields;
+    /**
+     * The words of every field of every app
+     */
+    private final String[][][] fieldTokens;
+    /**
+     * Reusable rows for {@link #getTypoDistance(String, int, String, int, int[][])}
+     */
+    private final int[][] typoDistanceRows = new int[3][0];
+    private final Map<String, int[]> postings;
+    private String previousQuery;
+    private int[] previousResult;
+
+    /**
+     * Creates an index over the specified apps.
+     *
+     * @param apps The apps to index. The list is copied, so later changes are not reflected by the index.
+     */
+    public AppSearchIndex(List<App> apps) {
+        this.apps = new ArrayList<>(apps);
+        searchableTexts = new String[this.apps.size()];
+        fields = new String[this.apps.size()][];
+        fieldTokens = new String[this.apps.size()][][];
+
+        Map<String, IntList> postingLists = new HashMap<>();
+        for (int i = 0; i < searchableTexts.length; i++) {
+            fields[i] = getFields(this.apps.get(i));
+            fieldTokens[i] = new String[fields[i].length][];
+            for (int field = 0; field < fields[i].length; field++)
+                fieldTokens[i][field] = tokenize(fields[i][field]);
+            searchableTexts[i] = String.join(String.valueOf(FIELD_SEPARATOR), fields[i]);
+            for (String gram : getGrams(searchableTexts[i])) {
+                IntList postingList = postingLists.computeIfAbsent(gram, key -> new IntList());
+                // the grams of an app are unique, so the lists are sorted and free of duplicates
+                postingList.add(i);
+            }
+        }
+
+        postings = new HashMap<>(postingLists.size() * 4 / 3 + 1);
+        for (Map.Entry<String, IntList> entry : postingLists.entrySet())
+            postings.put(entry.getKey(), entry.getValue().toArray());
+    }
+
+    /**
+     * Normalizes the specified text for searching: Converts it to lower case, removes diacritics and collapses whitespace.
+     *
+     * @param text The text to normalize
+     * @return The normalized text or an empty string if {@code text} is {@code null}
+     */
+    public static String normalize(String text) {
+        if (text == null)
+            return "";
+        if (isNormalizedExceptCase(text))
+            return text.toLowerCase(Locale.ROOT);
+        String res = Normalizer.normalize(text, Normalizer.Form.NFD);
+        res = DIACRITICS_PATTERN.matcher(res).replaceAll("");
+        res = WHITESPACE_PATTERN.matcher(res).replaceAll(" ");
+        return res.toLowerCase(Locale.ROOT).trim();
+    }
+
+    /**
+     * Returns {@code true} if the text only consists of ASCII characters, does not start or end with whitespace and
+     * only contains single spaces, so that it only needs to be converted to lower case to be normalized.
+     */
+    private static boolean isNormalizedExceptCase(String text) {
+        char previous = ' ';
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c > 127 || (c <= ' ' && (c != ' ' || previous == ' ')))
+                return false;
+            previous = c;
+        }
+        return previous != ' ' || text.isEmpty();
+    }
+
+    private static String[] getFields(App app) {
+        MVNCoordinates mvnCoordinates = app.getMvnCoordinates();
+        if (mvnCoordinates == null)
+            return new String[]{normalize(app.getName()), "", "", ""};
+        return new String[]{normalize(app.getName()), normalize(mvnCoordinates.getGroupId()),
+                normalize(mvnCoordinates.getArtifactId()), normalize(mvnCoordinates.getClassifier())};
+    }
+
+    private static String[] tokenize(String field) {
+        if (field.isEmpty())
+            return new String[0];
+        List<String> res = new ArrayList<>();
+        for (String token : TOKEN_SEPARATOR_PATTERN.split(field)) {
+            if (!token.isEmpty())
+                res.add(token);
+        }
+        return res.toArray(new String[0]);
+    }
+
+    private static Set<String> getGrams(String text) {
+        Set<String> res = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            String gram = text.substring(i, i + GRAM_LENGTH);
+            if (gram.indexOf(FIELD_SEPARATOR) < 0)
+                res.add(gram);
+        }
+        return res;
+    }
+
+    /**
+     * Returns the number of indexed apps.
+     *
+     * @return The number of indexed apps
+     */
+    public int size() {
+        return apps.size();
+    }
+
+    /**
+     * Returns all apps whose name, group id, artifact id or classifier contains the specified query. The comparison
+     * ignores case, diacritics and repeated whitespace.
+     *
+     * @param query The query to search for
+     * @return The matching apps in the order of the indexed list. All apps if the query is empty.
+     */
+    public List<App> search(String query) {
+        int[] matches = searchIndices(normalize(query));
+        List<App> res = new ArrayList<>(matches.length);
+        for (int index : matches)
+            res.add(apps.get(index));
+        return res;
+    }
+
+    private int[] searchIndices(String normalizedQuery) {
+        int[] res;
+        if (previousQuery != null && normalizedQuery.contains(previousQuery)) {
+            // the query was refined, so all matches must be part of the previous result
+            res = filter(previousResult, normalizedQuery);
+        } else if (normalizedQuery.length() >= GRAM_LENGTH) {
+            res = filter(getCandidates(normalizedQuery), normalizedQuery);
+        } else {
+            res = filter(null, normalizedQuery);
+        }
+
+        previousQuery = normalizedQuery;
+        previousResult = res;
+        return res;
+    }
+
+    /**
+     * Intersects the posting lists of all grams of the query, starting with the shortest one.
+     *
+     * @param normalizedQuery The normalized query, at least {@link #GRAM_LENGTH} characters long
+     * @return The indices of all apps that contain all grams of the query
+     */
+    private int[] getCandidates(String normalizedQuery) {
+        List<int[]> postingLists = new ArrayList<>();
+        for (String gram : getGrams(normalizedQuery)) {
+            int[] postingList = postings.get(gram);
+            if (postingList == null)
+                return new int[0];
+            postingLists.add(postingList);
+        }
+        postingLists.sort(Comparator.comparingInt(postingList -> postingList.length));
+
+        int[] res = postingLists.get(0);
+        for (int i = 1; i < postingLists.size() && res.length > 0; i++)
+            res = intersect(res, postingLists.get(i));
+        return res;
+    }
+
+    private static int[] intersect(int[] sortedList1, int[] sortedList2) {
+        IntList res = new IntList();
+        int i = 0;
+        int j = 0;
+        while (i < sortedList1.length && j < sortedList2.length) {
+            if (sortedList1[i] < sortedList2[j]) {
+                i++;
+            } else if (sortedList1[i] > sortedList2[j]) {
+                j++;
+            } else {
+                res.add(sortedList1[i]);
+                i++;
+                j++;
+            }
+        }
+        return res.toArray();
+    }
+
+    /**
+     * Returns the candidates whose searchable text contains the query.
+     *
+     * @param candidates      The indices of the apps to check or {@code null} to check all apps
+     * @param normalizedQuery The normalized query
+     * @return The matching candidates
+     */
+    private int[] filter(int[] candidates, String normalizedQuery) {
+        int candidateCount = candidates == null ? searchableTexts.length : candidates.length;
+        IntList res = new IntList();
+        for (int i = 0; i < candidateCount; i++) {
+            int index = candidates == null ? i : candidates[i];
+            if (searchableTexts[index].contains(normalizedQuery))
+                res.add(index);
+        }
+        return res.toArray();
+    }
+
+    /**
+     * Returns the apps that match the specified query best, ordered by how well they match. Unlike {@link #search(String)},
+     * apps also match if they contain the characters of the query in the right order (e. g. {@code fokl} matches
+     * {@code fok launcher}) or if the query contains a typo (one wrong, missing, additional or swapped character,
+     * two for queries of ten characters or more). Queries of more than four characters only match as a subsequence
+     * if they also share most of their trigrams with the app. Exact matches rank above prefix matches, which rank above substring,
+     * typo and subsequence matches. Matches in the name rank above matches in the artifact id, group id and classifier.
+     *
+     * @param query      The query to search for
+     * @param maxResults The maximum number of apps to return
+     * @return The best matching apps, the best match first. The first {@code maxResults} apps in the order of the
+     * indexed list if the query is empty.
+     */
+    public List<App> searchRanked(String query, int maxResults) {
+        if (maxResults < 1)
+            throw new IllegalArgumentException("maxResults must be at least 1");
+
+        String normalizedQuery = normalize(query);
+        if (normalizedQuery.isEmpty())
+            return new ArrayList<>(apps.subList(0, Math.min(maxResults, apps.size())));
+
+        int maxTypos = getMaxTypos(normalizedQuery);
+        // the heap contains the best results found so far, the worst of them on top
+        PriorityQueue<ScoredIndex> bestResults = new PriorityQueue<>(maxResults + 1, ScoredIndex.WORST_FIRST);
+        // The apps that contain the query are scored first, they are refined while the user types and raise the
+        // minimum score early, so that most fuzzy candidates can be skipped
+        int[] substringMatches = searchIndices(normalizedQuery);
+        for (int index : substringMatches)
+            addIfBetter(bestResults, maxResults, index, normalizedQuery, maxTypos);
+
+        int[] candidates = getFuzzyCandidates(normalizedQuery, maxTypos);
+        int candidateCount = candidates == null ? apps.size() : candidates.length;
+        for (int i = 0; i < candidateCount; i++) {
+            int index = candidates == null ? i : candidates[i];
+            if (Arrays.binarySearch(substringMatches, index) < 0)
+                addIfBetter(bestResults, maxResults, index, normalizedQuery, maxTypos);
+        }
+
+        ScoredIndex[] sortedResults = bestResults.toArray(new ScoredIndex[0]);
+        Arrays.sort(sortedResults, ScoredIndex.WORST_FIRST.reversed());
+        List<App> res = new ArrayList<>(sortedResults.length);
+        for (ScoredIndex scoredIndex : sortedResults)
+            res.add(apps.get(scoredIndex.index));
+        return res;
+    }
+
+    private void addIfBetter(PriorityQueue<ScoredIndex> bestResults, int maxResults, int index, String normalizedQuery, int maxTypos) {
+        double minScore = bestResults.size() < maxResults ? 0 : bestResults.peek().score;
+        double score = score(index, normalizedQuery, maxTypos, minScore);
+        if (score <= 0)
+            return;
+        if (bestResults.size() < maxResults) {
+            bestResults.add(new ScoredIndex(index, score));
+        } else if (ScoredIndex.WORST_FIRST.compare(bestResults.peek(), new ScoredIndex(index, score)) < 0) {
+            bestResults.poll();
+            bestResults.add(new ScoredIndex(index, score));
+        }
+    }
+
+    private static int getMaxTypos(String normalizedQuery) {
+        if (normalizedQuery.length() < 4)
+            return 0;
+        if (normalizedQuery.length() < 10)
+            return 1;
+        return 2;
+    }
+
+    /**
+     * Returns the apps that can match the query with the specified number of typos. Every typo changes at most
+     * {@link #GRAM_LENGTH} grams of the query ({@link #GRAM_LENGTH} + 1 for swapped characters), so a match with
+     * {@code maxTypos} typos shares all but {@code maxTypos * (GRAM_LENGTH + 1)} grams with the query. Subsequence matches are not covered by this bound, so
+     * short queries that may be abbreviations are checked against all apps.
+     *
+     * @param normalizedQuery The normalized query
+     * @param maxTypos        The maximum number of typos
+     * @return The indices of the candidates in ascending order or {@code null} if all apps are candidates
+     */
+    private int[] getFuzzyCandidates(String normalizedQuery, int maxTypos) {
+        if (normalizedQuery.length() <= MAX_ABBREVIATION_LENGTH)
+            return null;
+
+        Set<String> queryGrams = getGrams(normalizedQuery);
+        int minSharedGrams = queryGrams.size() - maxTypos * (GRAM_LENGTH + 1);
+        if (minSharedGrams <= 0)
+            return null;
+
+        int[] sharedGrams = new int[apps.size()];
+        for (String gram : queryGrams) {
+            int[] postingList = postings.get(gram);
+            if (postingList == null)
+                continue;
+            for (int index : postingList)
+                sharedGrams[index]++;
+        }
+
+        IntList res = new IntList();
+        for (int index = 0; index < sharedGrams.length; index++) {
+            if (sharedGrams[index] >= minSharedGrams)
+                res.add(index);
+        }
+        return res.toArray();
+    }
+
+    /**
+     * Scores an app, returns {@code 0} if the app cannot score higher than {@code minScore}.
+     */
+    private double score(int index, String normalizedQuery, int maxTypos, double minScore) {
+        // the fields are separated in the searchable text, so it contains the query if and only if a field contains it
+        boolean containsQuery = searchableTexts[index].contains(normalizedQuery);
+        int maxFuzzyScore = maxTypos > 0 ? TYPO_MATCH_SCORE : SUBSEQUENCE_MATCH_SCORE;
+
+        double res = 0;
+        for (int field = 0; field < FIELD_WEIGHTS.length; field++) {
+            int position = containsQuery ? fields[index][field].indexOf(normalizedQuery) : -1;
+            double maxScore = (position >= 0 ? EXACT_MATCH_SCORE : maxFuzzyScore) * FIELD_WEIGHTS[field];
+            if (maxScore <= res || maxScore <= minScore)
+                continue;
+            int fieldScore = score(fields[index][field], fieldTokens[index][field], normalizedQuery, position, maxTypos);
+            res = Math.max(res, fieldScore * FIELD_WEIGHTS[field]);
+        }
+        return res;
+    }
+
+    /**
+     * Scores a single field. Shorter fields and earlier matches score higher within each kind of match.
+     *
+     * @param position The position of the query in the field or {@code -1} if the field does not contain the query
+     */
+    private int score(String field, String[] tokens, String normalizedQuery, int position, int maxTypos) {
+        if (field.isEmpty())
+            return 0;
+
+        if (position == 0) {
+            if (field.length() == normalizedQuery.length())
+                return EXACT_MATCH_SCORE;
+            return PREFIX_MATCH_SCORE - Math.min(100, field.length() - normalizedQuery.length());
+        }
+        if (position > 0) {
+            for (String token : tokens) {
+                if (token.startsWith(normalizedQuery))
+                    return TOKEN_PREFIX_MATCH_SCORE - Math.min(100, position);
+            }
+            return SUBSTRING_MATCH_SCORE - Math.min(100, position);
+        }
+
+        if (maxTypos > 0) {
+            int bestDistance = maxTypos + 1;
+            for (int i = 0; i < tokens.length && bestDistance > 0; i++)
+                bestDistance = Math.min(bestDistance, getTypoDistance(tokens[i], tokens[i].length(), normalizedQuery, maxTypos, typoDistanceRows));
+            // typos in the beginning of the field
+            bestDistance = Math.min(bestDistance, getTypoDistance(field, Math.min(field.length(), normalizedQuery.length()), normalizedQuery, maxTypos, typoDistanceRows));
+            if (bestDistance <= maxTypos)
+                return TYPO_MATCH_SCORE - 50 * bestDistance;
+        }
+
+        int gaps = getSubsequenceGaps(field, normalizedQuery);
+        if (gaps >= 0)
+            return SUBSEQUENCE_MATCH_SCORE - Math.min(150, gaps * 10);
+        return 0;
+    }
+
+    /**
+     * Returns the optimal string alignment distance (Levenshtein distance plus transpositions of adjacent characters)
+     * between the two strings, or {@code maxDistance + 1} if it is larger than {@code maxDistance}.
+     */
+    static int getTypoDistance(String a, String b, int maxDistance) {
+        return getTypoDistance(a, a.length(), b, maxDistance, new int[3][0]);
+    }
+
+    /**
+     * Returns the optimal string alignment distance between the first {@code aLength} characters of {@code a} and
+     * {@code b}, or {@code maxDistance + 1} if it is larger than {@code maxDistance}.
+     *
+     * @param rows Three reusable rows, replaced by larger ones if they are too short
+     */
+    private static int getTypoDistance(String a, int aLength, String b, int maxDistance, int[][] rows) {
+        if (Math.abs(aLength - b.length()) > maxDistance)
+            return maxDistance + 1;
+
+        // common prefixes and suffixes do not change the distance
+        int start = 0;
+        while (start < aLength && start < b.length() && a.charAt(start) == b.charAt(start))
+            start++;
+        int aEnd = aLength;
+        int bEnd = b.length();
+        while (aEnd > start && bEnd > start && a.charAt(aEnd - 1) == b.charAt(bEnd - 1)) {
+            aEnd--;
+            bEnd--;
+        }
+        int m = aEnd - start;
+        int n = bEnd - start;
+        if (m == 0 || n == 0)
+            return Math.min(Math.max(m, n), maxDistance + 1);
+
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i].length <= n)
+                rows[i] = new int[n + 1];
+        }
+        int[] previousPreviousRow = rows[0];
+        int[] previousRow = rows[1];
+        int[] row = rows[2];
+        for (int j = 0; j <= n; j++)
+            previousRow[j] = j;
+
+        for (int i = 1; i <= m; i++) {
+            char aChar = a.charAt(start + i - 1);
+            row[0] = i;
+            int rowMinimum = row[0];
+            for (int j = 1; j <= n; j++) {
+                char bChar = b.charAt(start + j - 1);
+                int cost = aChar == bChar ? 0 : 1;
+                row[j] = Math.min(Math.min(row[j - 1] + 1, previousRow[j] + 1), previousRow[j - 1] + cost);
+                if (i > 1 && j > 1 && aChar == b.charAt(start + j - 2) && a.charAt(start + i - 2) == bChar)
+                    row[j] = Math.min(row[j], previousPreviousRow[j - 2] + 1);
+                rowMinimum = Math.min(rowMinimum, row[j]);
+            }
+            if (rowMinimum > maxDistance)
+                return maxDistance + 1;
+
+            int[] recycledRow = previousPreviousRow;
+            previousPreviousRow = previousRow;
+            previousRow = row;
+            row = recycledRow;
+        }
+        return Math.min(previousRow[n], maxDistance + 1);
+    }
+
+    /**
+     * Returns the number of characters that need to be skipped in the text to find the characters of the query in order.
+     *
+     * @return The number of skipped characters between the first and the last matched character or {@code -1} if
+     * the text does not contain the characters of the query in order
+     */
+    private static int getSubsequenceGaps(String text, String query) {
+        int textPosition = text.indexOf(query.charAt(0));
+        if (textPosition < 0)
+            return -1;
+
+        int gaps = 0;
+        for (int i = 1; i < query.length(); i++) {
+            int nextPosition = text.indexOf(query.charAt(i), textPosition + 1);
+            if (nextPosition < 0)
+                return -1;
+            gaps += nextPosition - textPosition - 1;
+            textPosition = nextPosition;
+        }
+        return gaps;
+    }
+
+    /**
+     * The index of an app in the indexed list and its score
+     */
+    private static class ScoredIndex {
+        /**
+         * Orders lower scores first, apps later in the list first if the scores are equal
+         */
+        static final Comparator<ScoredIndex> WORST_FIRST = Comparator.<ScoredIndex>comparingDouble(scoredIndex -> scoredIndex.score)
+                .thenComparing(Comparator.<ScoredIndex>comparingInt(scoredIndex -> scoredIndex.index).reversed());
+        private final int index;
+        private final double score;
+
+        ScoredIndex(int index, double score) {
+            this.index = index;
+            this.score = score;
+        }
+    }
+
+    /**
+     * A growable list of primitive ints
+     */
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import com.github.vatbub.common.core.logging.FOKLogger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.logging.Level;
+
+/**
+ * The checksum that a maven repository publishes next to an artifact ({@code <artifact>.sha256}, {@code <artifact>.sha1}
+ * or {@code <artifact>.md5}). Used by the {@link ArtifactDownloader} to verify the downloaded bytes before the artifact
+ * is moved to its final location.
+ */
+public class ArtifactChecksum {
+    /**
+     * The supported checksum types, strongest first. The first one that the repository publishes is used.
+     */
+    private static final Algorithm[] algorithms = {
+            new Algorithm("SHA-256", ".sha256", 64),
+            new Algorithm("SHA-1", ".sha1", 40),
+            new Algorithm("MD5", ".md5", 32)
+    };
+    private static final int maxChecksumFileLength = 4096;
+    private final String algorithm;
+    private final String expectedDigest;
+
+    /**
+     * Creates a new checksum.
+     *
+     * @param algorithm      The name of the {@link MessageDigest} algorithm, e. g. {@code SHA-1}
+     * @param expectedDigest The expected digest in hex notation
+     */
+    public ArtifactChecksum(String algorithm, String expectedDigest) {
+        this.algorithm = algorithm;
+        this.expectedDigest = expectedDigest.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Downloads the strongest checksum that the repository publishes for the specified artifact.
+     *
+     * @param artifactURL The url of the artifact
+     * @return The checksum of the artifact or {@code null} if the repository does not publish a checksum for it
+     */
+    @Nullable
+    public static ArtifactChecksum fetch(URL artifactURL) {
+        for (Algorithm algorithm : algorithms) {
+            try {
+                URL checksumURL = new URL(artifactURL.toExternalForm() + algorithm.fileNameExtension);
+                String content = readChecksumFile(checksumURL);
+                if (content == null)
+                    continue;
+
+                ArtifactChecksum res = parse(algorithm.name, content);
+                if (res != null)
+                    return res;
+                FOKLogger.log(ArtifactChecksum.class.getName(), Level.WARNING, "Ignoring the malformed checksum file " + checksumURL);
+            } catch (IOException e) {
+                FOKLogger.log(ArtifactChecksum.class.getName(), Level.WARNING, "Unable to download the " + algorithm.name + " checksum of " + artifactURL, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses the content of a checksum file. Repositories either publish the bare digest or the digest followed by the
+     * file name ({@code sha1sum} format), both are supported.
+     *
+     * @param algorithm The name of the {@link MessageDigest} algorithm the checksum was computed with
+     * @param content   The content of the checksum file
+     * @return The parsed checksum or {@code null} if the content does not start with a digest of the correct length
+     */
+    @Nullable
+    public static ArtifactChecksum parse(String algorithm, String content) {
+        String[] tokens = content.trim().split("\\s+", 2);
+        if (tokens[0].isEmpty())
+            return null;
+
+        String digest = tokens[0];
+        int expectedLength = -1;
+        for (Algorithm candidate : algorithms) {
+            if (candidate.name.equalsIgnoreCase(algorithm))
+                expectedLength = candidate.hexLength;
+        }
+
+        if (expectedLength >= 0 && digest.length() != expectedLength)
+            return null;
+        for (char c : digest.toCharArray()) {
+            if (Character.digit(c, 16) < 0)
+                return null;
+        }
+        return new ArtifactChecksum(algorithm, digest);
+    }
+
+    /**
+     * Reads the specified checksum file.
+     *
+     * @param checksumURL The url of the checksum file
+     * @return The content of the file or {@code null} if the file does not exist
+     * @throws IOException If the file exists but cannot be read
+     */
+    @Nullable
+    private static String readChecksumFile(URL checksumURL) throws IOException {
+        URLConnection connection = checksumURL.openConnection();
+        try {
+            if (connection instanceof HttpURLConnection) {
+                int responseCode = ((HttpURLConnection) connection).getResponseCode();
+                if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_GONE)
+                    return null;
+            }
+
+            try (InputStream in = connection.getInputStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[512];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                    if (out.size() > maxChecksumFileLength)
+                        throw new IOException("The checksum file " + checksumURL + " is too large");
+                }
+                return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+            }
+        } catch (FileNotFoundException e) {
+            // file urls and some servers report a missing checksum this way
+            return null;
+        } finally {
+            if (connection instanceof HttpURLConnection)
+                ((HttpURLConnection) connection).disconnect();
+        }
+    }
+
+    /**
+     * Converts the specified digest to lower case hex notation.
+     *
+     * @param digest The digest to convert
+     * @return The digest in hex notation
+     */
+    public static String toHex(byte[] digest) {
+        StringBuilder res = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            res.append(Character.forDigit((b >> 4) & 0xF, 16));
+            res.append(Character.forDigit(b & 0xF, 16));
+        }
+        return res.toString();
+    }
+
+    /**
+     * Creates a new {@link MessageDigest} that computes digests comparable to this checksum.
+     *
+     * @return A new {@link MessageDigest} for the algorithm of this checksum
+     * @throws IOException If the algorithm is not supported by this jvm
+     */
+    public MessageDigest newMessageDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(getAlgorithm());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("The checksum algorithm " + getAlgorithm() + " is not supported", e);
+        }
+    }
+
+    /**
+     * Checks whether the specified digest equals the expected digest.
+     *
+     * @param digest The digest computed over the downloaded bytes in hex notation
+     * @return {@code true} if the digest matches the expected digest
+     */
+    public boolean matches(String digest) {
+        return getExpectedDigest().equalsIgnoreCase(digest);
+    }
+
+    /**
+     * Returns the name of the {@link MessageDigest} algorithm, e. g. {@code SHA-1}
+     *
+     * @return The name of the {@link MessageDigest} algorithm
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the expected digest in lower case hex notation.
+     *
+     * @return The expected digest in lower case hex notation.
+     */
+    public String getExpectedDigest() {
+        return expectedDigest;
+    }
+
+    @Override
+    public String toString() {
+        return getAlgorithm() + ":" + getExpectedDigest();
+    }
+
+    private static class Algorithm {
+        private final String name;
+        private final String fileNameExtension;
+        private final int hexLength;
+
+        Algorithm(String name, String fileNameExtension, int hexLength) {
+            this.name = name;
+            this.fileNameExtension = fileNameExtension;
+            this.hexLength = hexLength;
+        }
+    }
+}
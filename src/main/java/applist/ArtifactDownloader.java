@@ -0,0 +1,1159 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import com.github.vatbub.common.core.logging.FOKLogger;
+import com.github.vatbub.common.updater.HidableUpdateProgressDialog;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Transfers a single artifact from a maven repository to the disk.
+ * If the server advertises support for byte ranges ({@code Accept-Ranges: bytes}) and the artifact is large enough,
+ * the file is split into segments which are fetched concurrently and written at their offsets into the output file.
+ * Otherwise, the artifact is downloaded using a single stream. If the server answers a range request with the whole file
+ * instead, the download is restarted using a single stream.
+ * <p>
+ * The artifact is written to a {@code .part} file next to the output file which is only moved to its final location once
+ * the download completed. If the server supports byte ranges and sends a validator ({@code ETag} or {@code Last-Modified}),
+ * the progress of each segment is recorded in a {@link PartialDownloadFile} so that a cancelled, failed or killed download
+ * can be resumed using range requests the next time it is started. Partial downloads that cannot be resumed (no range
+ * support, no validator, a different url or a changed online file) are deleted instead of being left on the disk.
+ * <p>
+ * While the download is paused (see {@link App#pauseDownload()}), the segment threads are parked. Resumable downloads
+ * additionally release their connections while paused and continue using range requests once resumed.
+ * <p>
+ * Data is copied from the socket to the file in chunks of {@link #getChunkSize()} bytes using pooled direct buffers.
+ * Progress, pause and cancel requests are checked once per chunk. Progress updates are passed through a
+ * {@link CoalescingProgressDialog} so that the gui is not flooded with updates.
+ * <p>
+ * If the repository publishes a checksum for the artifact (see {@link ArtifactChecksum}), the chunks are fed into a digest
+ * while they are written and the {@code .part} file is only moved to its final location if the digest matches.
+ * The digest has to consume the file in order: Chunks at the current digest position are hashed straight from the
+ * buffer, bytes that segments downloaded ahead of it (or that a previous session downloaded) are read back from the
+ * {@code .part} file once the digest reaches them.
+ * <p>
+ * If an {@link ArtifactStore} is set, verified artifacts are added to it and an artifact whose checksum is already in
+ * the store is linked from the store instead of being downloaded again.
+ * <p>
+ * If a previous version of the artifact is installed (see {@link #setDeltaBase(URL, File)}) and the repository publishes
+ * a {@link DeltaPatch} from that version, only the patch is downloaded and the artifact is rebuilt from the previous
+ * version. The rebuilt artifact is verified against the checksum of the repository as well. If no patch is published,
+ * the patch cannot be applied or the result does not match the checksum, the whole artifact is downloaded.
+ */
+public class ArtifactDownloader {
+    private static volatile int defaultSegmentCount = 4;
+    private static volatile long defaultMinimumSegmentSize = 1024 * 1024;
+    private static final long persistStateIntervalInMillis = 1000;
+    private static final int maxPooledBuffers = 16;
+    private static final String DELTA_FILE_NAME_EXTENSION = ".delta";
+    private static final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+    private static volatile int defaultChunkSize = 64 * 1024;
+    private final App app;
+    private final URL artifactURL;
+    private final File outputFile;
+    private final CoalescingProgressDialog gui;
+    private final AtomicLong downloadedBytes = new AtomicLong();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final AtomicBoolean failed = new AtomicBoolean();
+    private final Object progressLock = new Object();
+    private final AtomicLong lastStatePersistTime = new AtomicLong();
+    private final Object digestLock = new Object();
+    private volatile TransferListener transferListener = TransferListener.NONE;
+    private int segmentCount = getDefaultSegmentCount();
+    private long minimumSegmentSize = getDefaultMinimumSegmentSize();
+    private int chunkSize = getDefaultChunkSize();
+    private long completeFileSize = -1;
+    private PartialDownloadFile partialDownloadFile;
+    private List<Segment> segments;
+    private boolean resumable;
+    private boolean verifyChecksum = true;
+    private ArtifactChecksum checksum;
+    private ArtifactStore artifactStore;
+    private URL deltaURL;
+    private File deltaBaseFile;
+    private MessageDigest digest;
+    private long digestedBytes;
+
+    /**
+     * Creates a new downloader.
+     *
+     * @param app         The app the artifact belongs to. Used to check whether the user requested to pause or cancel the download.
+     * @param artifactURL The url to download the artifact from
+     * @param outputFile  The file to write the artifact to. Existing files will be overwritten once the download completed.
+     * @param gui         The gui to report the progress to or {@code null}
+     */
+    public ArtifactDownloader(App app, URL artifactURL, File outputFile, @Nullable HidableUpdateProgressDialog gui) {
+        this.app = app;
+        this.artifactURL = artifactURL;
+        this.outputFile = outputFile;
+        this.gui = gui == null ? null : new CoalescingProgressDialog(gui);
+    }
+
+    /**
+     * Returns the number of segments that new downloaders split an artifact into.
+     *
+     * @return The number of segments that new downloaders split an artifact into.
+     */
+    public static int getDefaultSegmentCount() {
+        return defaultSegmentCount;
+    }
+
+    /**
+     * Sets the number of segments that new downloaders split an artifact into. A value of {@code 1} disables segmented downloads.
+     *
+     * @param defaultSegmentCount The number of segments to set
+     */
+    public static void setDefaultSegmentCount(int defaultSegmentCount) {
+        if (defaultSegmentCount < 1)
+            throw new IllegalArgumentException("defaultSegmentCount must be at least 1");
+        ArtifactDownloader.defaultSegmentCount = defaultSegmentCount;
+    }
+
+    /**
+     * Returns the minimum size of a segment in bytes. Artifacts smaller than twice this size are downloaded using a single stream.
+     *
+     * @return The minimum size of a segment in bytes.
+     */
+    public static long getDefaultMinimumSegmentSize() {
+        return defaultMinimumSegmentSize;
+    }
+
+    /**
+     * Sets the minimum size of a segment in bytes.
+     *
+     * @param defaultMinimumSegmentSize The minimum size of a segment in bytes.
+     */
+    public static void setDefaultMinimumSegmentSize(long defaultMinimumSegmentSize) {
+        if (defaultMinimumSegmentSize < 1)
+            throw new IllegalArgumentException("defaultMinimumSegmentSize must be positive");
+        ArtifactDownloader.defaultMinimumSegmentSize = defaultMinimumSegmentSize;
+    }
+
+    /**
+     * Returns the number of bytes that new downloaders copy from the network to the disk at once.
+     *
+     * @return The number of bytes that new downloaders copy from the network to the disk at once.
+     */
+    public static int getDefaultChunkSize() {
+        return defaultChunkSize;
+    }
+
+    /**
+     * Sets the number of bytes that new downloaders copy from the network to the disk at once.
+     * Larger chunks mean less overhead per byte, but progress, pause and cancel requests are only checked once per chunk.
+     *
+     * @param defaultChunkSize The chunk size in bytes
+     */
+    public static void setDefaultChunkSize(int defaultChunkSize) {
+        if (defaultChunkSize < 1)
+            throw new IllegalArgumentException("defaultChunkSize must be positive");
+        ArtifactDownloader.defaultChunkSize = defaultChunkSize;
+    }
+
+    /**
+     * Takes a direct buffer of the specified capacity from the pool or allocates a new one if the pool does not contain a suitable buffer.
+     *
+     * @param capacity The capacity of the buffer
+     * @return A cleared direct buffer of the specified capacity
+     */
+    private static ByteBuffer acquireBuffer(int capacity) {
+        ByteBuffer buffer;
+        while ((buffer = bufferPool.poll()) != null) {
+            // buffers of a different size are left over from a previous chunk size and are dropped
+            if (buffer.capacity() == capacity) {
+                buffer.clear();
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    private static void releaseBuffer(ByteBuffer buffer) {
+        if (bufferPool.size() < maxPooledBuffers)
+            bufferPool.offer(buffer);
+    }
+
+    /**
+     * Downloads the artifact. If a resumable partial download of the same url exists on the disk, only the missing bytes are downloaded.
+     *
+     * @return {@code true} if the download finished successfully, {@code false} if the user cancelled the download.
+     * The partially downloaded file is kept in the latter case if the download can be resumed later on.
+     * @throws IOException If the artifact cannot be downloaded for any reason
+     */
+    public boolean download() throws IOException {
+        try {
+            return downloadToPartFile();
+        } finally {
+            // deliver the final progress before the caller continues to talk to the gui
+            if (gui != null)
+                gui.flush();
+        }
+    }
+
+    private boolean downloadToPartFile() throws IOException {
+        File partFile = PartialDownloadFile.getPartFile(outputFile);
+        checksum = isVerifyChecksum() ? ArtifactChecksum.fetch(artifactURL) : null;
+        if (isVerifyChecksum() && checksum == null)
+            FOKLogger.log(ArtifactDownloader.class.getName(), Level.WARNING, "The repository does not publish a checksum for " + artifactURL + ", the download cannot be verified");
+        if (linkFromArtifactStore(partFile))
+            return true;
+        if (applyDelta())
+            return !cancelled.get();
+
+        try {
+            return transferToPartFile(partFile, true);
+        } catch (RangeRequestIgnoredException e) {
+            FOKLogger.log(ArtifactDownloader.class.getName(), Level.INFO, "Downloading " + artifactURL + " using a single stream instead", e);
+            failed.set(false);
+            downloadedBytes.set(0);
+            return transferToPartFile(partFile, false);
+        }
+    }
+
+    /**
+     * Downloads the artifact to the specified part file, resuming a previous partial download if possible, verifies it and
+     * moves it to the output file.
+     *
+     * @param partFile         The file to download the artifact to
+     * @param useRangeRequests {@code false} if the server ignored range requests before, the artifact is then downloaded
+     *                         from scratch using a single stream
+     * @return {@code true} if the download finished successfully, {@code false} if the user cancelled the download
+     * @throws IOException If the artifact cannot be downloaded for any reason
+     */
+    private boolean transferToPartFile(File partFile, boolean useRangeRequests) throws IOException {
+        partialDownloadFile = readPartialDownloadFile(partFile);
+        segments = useRangeRequests ? getResumableSegments(partFile) : null;
+        if (segments == null && (partFile.exists() || partialDownloadFile.exists())) {
+            // e. g. a partial download of a previous snapshot build or of a server without range support
+            FOKLogger.info(ArtifactDownloader.class.getName(), "The partial download of " + outputFile.getName() + " cannot be resumed, deleting it...");
+            PartialDownloadFile.deletePartialDownload(partFile);
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) artifactURL.openConnection();
+        if (segments != null) {
+            Segment firstPendingSegment = getFirstPendingSegment(segments);
+            // If all segments are complete, we only need to know whether the online file is still the same
+            connection.setRequestProperty("Range", firstPendingSegment == null ? "bytes=0-0" : firstPendingSegment.getRangeHeader());
+            connection.setRequestProperty("If-Range", partialDownloadFile.getValidator());
+        }
+
+        // If-Range: The server only responds with 206 if the validator still matches, otherwise it sends the whole file
+        boolean resume = segments != null && connection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL
+                && getTotalLength(connection) == partialDownloadFile.getExpectedLength();
+        if (segments != null && !resume) {
+            FOKLogger.info(ArtifactDownloader.class.getName(), "The artifact changed on the server since the partial download was started, restarting the download...");
+            PartialDownloadFile.deletePartialDownload(partFile);
+            if (connection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL) {
+                connection.disconnect();
+                connection = (HttpURLConnection) artifactURL.openConnection();
+            }
+        }
+
+        if (resume) {
+            completeFileSize = partialDownloadFile.getExpectedLength();
+            resumable = true;
+        } else {
+            completeFileSize = connection.getContentLengthLong();
+            boolean rangesSupported = useRangeRequests && "bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges"));
+            segments = computeSegments(rangesSupported);
+
+            partialDownloadFile.setUrl(artifactURL.toString());
+            partialDownloadFile.setExpectedLength(completeFileSize);
+            partialDownloadFile.setETag(connection.getHeaderField("ETag"));
+            partialDownloadFile.setLastModified(connection.getHeaderField("Last-Modified"));
+            resumable = rangesSupported && completeFileSize > 0 && partialDownloadFile.getValidator() != null;
+            if (!resumable)
+                partialDownloadFile.delete();
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        partFile.getParentFile().mkdirs();
+
+        // the channel is also read from by the digest, see catchUpDigest
+        StandardOpenOption[] openOptions = resume
+                ? new StandardOpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new StandardOpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING};
+        boolean checksumMatches = true;
+        try (FileChannel channel = FileChannel.open(partFile.toPath(), openOptions)) {
+            try {
+                if (checksum != null) {
+                    digest = checksum.newMessageDigest();
+                    digestedBytes = 0;
+                }
+
+                if (resume) {
+                    long alreadyDownloaded = 0;
+                    for (Segment segment : segments) {
+                        alreadyDownloaded += segment.getDownloaded();
+                    }
+                    FOKLogger.info(ArtifactDownloader.class.getName(), "Resuming the download at " + alreadyDownloaded + " of " + completeFileSize + " bytes...");
+                    reportProgress(alreadyDownloaded);
+                } else if (segments.size() <= 1) {
+                    FOKLogger.info(ArtifactDownloader.class.getName(), "Downloading using a single stream...");
+                } else {
+                    FOKLogger.info(ArtifactDownloader.class.getName(), "Server supports byte ranges, downloading in " + segments.size() + " segments...");
+                }
+
+                downloadSegments(connection, channel);
+                if (checksum != null && !cancelled.get())
+                    checksumMatches = verifyDigest(channel);
+            } finally {
+                if (resumable)
+                    persistStateSafely(channel);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!resumable)
+                PartialDownloadFile.deletePartialDownload(partFile);
+            throw e;
+        }
+
+        if (cancelled.get()) {
+            // downloads that cannot be resumed would start from scratch anyway
+            if (!resumable)
+                PartialDownloadFile.deletePartialDownload(partFile);
+            return false;
+        }
+
+        if (!checksumMatches) {
+            // the bytes on the disk are corrupt, resuming would only reproduce the same file
+            PartialDownloadFile.deletePartialDownload(partFile);
+            throw new IOException("The " + checksum.getAlgorithm() + " checksum of the artifact downloaded from " + artifactURL + " does not match, the download was discarded");
+        }
+
+        moveToOutputFile(partFile);
+        partialDownloadFile.delete();
+        addToArtifactStore();
+        return true;
+    }
+
+    /**
+     * Makes the artifact available at the output file if the artifact store already contains it.
+     *
+     * @param partFile The partial download that is discarded if the artifact was found in the store
+     * @return {@code true} if the artifact was found in the store and no download is required
+     * @throws IOException If the artifact is in the store but cannot be linked to the output file
+     */
+    private boolean linkFromArtifactStore(File partFile) throws IOException {
+        if (checksum == null || getArtifactStore() == null || !getArtifactStore().linkTo(checksum, outputFile.toPath()))
+            return false;
+
+        FOKLogger.info(ArtifactDownloader.class.getName(), "The artifact " + checksum + " is already stored locally, skipping the download of " + artifactURL);
+        PartialDownloadFile.deletePartialDownload(partFile);
+        completeFileSize = outputFile.length();
+        reportProgress(completeFileSize);
+        return true;
+    }
+
+    /**
+     * Downloads the delta patch from the delta base to the artifact and rebuilds the artifact from the delta base.
+     * The delta patch is applied while it is downloaded and the rebuilt artifact is hashed while it is written.
+     *
+     * If the delta patch is not published, cannot be downloaded or applied or the rebuilt artifact does not match the
+     * checksum, the partial result is deleted and {@code false} is returned so that the whole artifact is downloaded instead.
+     *
+     * @return {@code true} if the artifact was rebuilt successfully or the user cancelled the download,
+     * {@code false} if the whole artifact needs to be downloaded
+     * @throws IOException If no connection to the delta patch can be opened or the partially rebuilt artifact cannot be deleted
+     */
+    private boolean applyDelta() throws IOException {
+        if (checksum == null || getDeltaURL() == null || getDeltaBaseFile() == null || !getDeltaBaseFile().isFile())
+            return false;
+
+        File deltaFile = new File(outputFile.getAbsolutePath() + DELTA_FILE_NAME_EXTENSION);
+        HttpURLConnection connection = (HttpURLConnection) getDeltaURL().openConnection();
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                FOKLogger.info(ArtifactDownloader.class.getName(), "No delta update from " + getDeltaBaseFile().getName() + " is published (HTTP " + connection.getResponseCode() + "), downloading the whole artifact...");
+                return false;
+            }
+
+            FOKLogger.info(ArtifactDownloader.class.getName(), "Rebuilding the artifact from " + getDeltaBaseFile().getName() + " using the delta update " + getDeltaURL() + "...");
+            completeFileSize = connection.getContentLengthLong();
+            MessageDigest deltaDigest = checksum.newMessageDigest();
+            //noinspection ResultOfMethodCallIgnored
+            deltaFile.getParentFile().mkdirs();
+
+            TransferListener transferListenerCopy = getTransferListener();
+            transferListenerCopy.connectionOpened();
+            try (InputStream in = new DeltaTransferInputStream(connection.getInputStream());
+                 OutputStream out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(deltaFile), getChunkSize()), deltaDigest)) {
+                DeltaPatch.apply(getDeltaBaseFile(), in, out);
+            } finally {
+                transferListenerCopy.connectionClosed();
+            }
+
+            String actualDigest = ArtifactChecksum.toHex(deltaDigest.digest());
+            if (!checksum.matches(actualDigest))
+                throw new IOException("Checksum mismatch: expected " + checksum + " but got " + actualDigest);
+
+            moveToOutputFile(deltaFile);
+            FOKLogger.info(ArtifactDownloader.class.getName(), "Delta update applied, downloaded " + downloadedBytes.get() + " bytes instead of " + outputFile.length() + " bytes");
+            addToArtifactStore();
+            return true;
+        } catch (IOException e) {
+            Files.deleteIfExists(deltaFile.toPath());
+            if (cancelled.get())
+                return true;
+
+            FOKLogger.log(ArtifactDownloader.class.getName(), Level.WARNING, "Unable to apply the delta update " + getDeltaURL() + ", downloading the whole artifact...", e);
+            downloadedBytes.set(0);
+            completeFileSize = -1;
+            return false;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void addToArtifactStore() {
+        if (checksum == null || getArtifactStore() == null)
+            return;
+
+        try {
+            getArtifactStore().add(checksum, outputFile.toPath());
+        } catch (IOException e) {
+            // the artifact is downloaded nevertheless, it is just not deduplicated
+            FOKLogger.log(ArtifactDownloader.class.getName(), Level.WARNING, "Unable to add " + outputFile + " to the artifact store", e);
+        }
+    }
+
+    private PartialDownloadFile readPartialDownloadFile(File partFile) throws IOException {
+        try {
+            return new PartialDownloadFile(partFile);
+        } catch (IOException e) {
+            FOKLogger.log(ArtifactDownloader.class.getName(), Level.WARNING, "Unable to read the partial download info, starting the download from scratch", e);
+            Files.deleteIfExists(PartialDownloadFile.getSidecarFile(partFile).toPath());
+            return new PartialDownloadFile(partFile);
+        }
+    }
+
+    /**
+     * Checks whether the partial download on the disk can be resumed.
+     *
+     * @param partFile The partially downloaded file
+     * @return The segments of the partial download or {@code null} if the partial download cannot be resumed
+     */
+    @Nullable
+    private List<Segment> getResumableSegments(File partFile) {
+        if (!partFile.exists() || !partialDownloadFile.exists() || !artifactURL.toString().equals(partialDownloadFile.getUrl())
+                || partialDownloadFile.getExpectedLength() <= 0 || partialDownloadFile.getValidator() == null
+                || partialDownloadFile.getSegments().isEmpty())
+            return null;
+
+        List<Segment> res = new ArrayList<>(partialDownloadFile.getSegments().size());
+        long expectedStart = 0;
+        for (PartialDownloadFile.SegmentInfo segmentInfo : partialDownloadFile.getSegments()) {
+            Segment segment = new Segment(segmentInfo.getStart(), segmentInfo.getEnd(), segmentInfo.getDownloaded());
+            // The segments must cover the file without gaps and the recorded progress may not be ahead of the data on the disk.
+            // Segments that did not start yet may begin behind the end of the file.
+            if (segment.getStart() != expectedStart || segment.getEnd() < segment.getStart() || segment.getDownloaded() < 0
+                    || segment.getDownloaded() > segment.getLength() || (segment.getDownloaded() > 0 && segment.getPosition() > partFile.length()))
+                return null;
+            expectedStart = segment.getEnd() + 1;
+            res.add(segment);
+        }
+
+        if (expectedStart != partialDownloadFile.getExpectedLength())
+            return null;
+        return res;
+    }
+
+    @Nullable
+    private static Segment getFirstPendingSegment(List<Segment> segments) {
+        for (Segment segment : segments) {
+            if (!segment.isComplete())
+                return segment;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the total length of the file from the {@code Content-Range} header of a partial response.
+     *
+     * @param connection The connection to read the header from
+     * @return The total length of the online file or {@code -1} if it is unknown
+     */
+    private static long getTotalLength(HttpURLConnection connection) {
+        String contentRange = connection.getHeaderField("Content-Range");
+        if (contentRange == null || contentRange.lastIndexOf('/') < 0)
+            return -1;
+
+        try {
+            return Long.parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void moveToOutputFile(File partFile) throws IOException {
+        try {
+            Files.move(partFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private List<Segment> computeSegments(boolean rangesSupported) {
+        List<Segment> res = new ArrayList<>();
+        if (!rangesSupported || completeFileSize <= 0 || getSegmentCount() <= 1 || completeFileSize < 2 * getMinimumSegmentSize()) {
+            res.add(new Segment(0, completeFileSize - 1, 0));
+            return res;
+        }
+
+        long numberOfSegments = Math.min(getSegmentCount(), completeFileSize / getMinimumSegmentSize());
+        long segmentSize = completeFileSize / numberOfSegments;
+        for (long i = 0; i < numberOfSegments; i++) {
+            long start = i * segmentSize;
+            long end = i == numberOfSegments - 1 ? completeFileSize - 1 : start + segmentSize - 1;
+            res.add(new Segment(start, end, 0));
+        }
+        return res;
+    }
+
+    /**
+     * Downloads all segments that are not complete yet.
+     *
+     * @param firstConnection The initial connection. Its response starts at the current position of the first pending segment.
+     * @param channel         The channel to write to
+     * @throws IOException If a segment cannot be downloaded
+     */
+    private void downloadSegments(HttpURLConnection firstConnection, FileChannel channel) throws IOException {
+        List<Segment> pendingSegments = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            if (!segment.isComplete())
+                pendingSegments.add(segment);
+        }
+
+        if (pendingSegments.isEmpty()) {
+            firstConnection.disconnect();
+            return;
+        }
+
+        ExecutorService executorService = null;
+        try {
+            List<Future<?>> futures = new ArrayList<>(pendingSegments.size() - 1);
+            if (pendingSegments.size() > 1) {
+                executorService = BlockingTasks.newThreadPerTaskExecutor("artifactSegmentDownloadThread-");
+                for (Segment segment : pendingSegments.subList(1, pendingSegments.size())) {
+                    futures.add(executorService.submit(() -> {
+                        downloadSegment(channel, segment, null);
+                        return null;
+                    }));
+                }
+            }
+
+            // The response to the initial request may contain more than the first segment, we only consume the first segment of it
+            downloadSegment(channel, pendingSegments.get(0), firstConnection);
+
+            for (Future<?> future : futures) {
+                waitForSegment(future);
+            }
+        } finally {
+            if (executorService != null)
+                shutDownSegmentThreads(executorService);
+        }
+    }
+
+    /**
+     * Stops the segment threads and waits for them to finish so that none of them touches the file or the state of this
+     * downloader afterwards. The threads notice a failure or a cancel request after the current chunk at the latest.
+     *
+     * @param executorService The executor that runs the segment threads
+     */
+    private void shutDownSegmentThreads(ExecutorService executorService) {
+        executorService.shutdownNow();
+        try {
+            if (!executorService.awaitTermination(1, TimeUnit.MINUTES))
+                FOKLogger.log(ArtifactDownloader.class.getName(), Level.WARNING, "Segment threads of " + artifactURL + " did not finish in time");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void waitForSegment(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            failed.set(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a download segment", e);
+        } catch (ExecutionException e) {
+            failed.set(true);
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException("Unable to download a segment of " + artifactURL, e.getCause());
+        }
+    }
+
+    /**
+     * Downloads the remaining bytes of the specified segment. If the download is paused in between, the connection is
+     * released and a new range request is sent once the download is resumed.
+     *
+     * @param channel    The channel to write to
+     * @param segment    The segment to download
+     * @param connection The connection to read the segment from or {@code null} to open a new range request
+     * @throws IOException If the segment cannot be downloaded
+     */
+    private void downloadSegment(FileChannel channel, Segment segment, @Nullable HttpURLConnection connection) throws IOException {
+        try {
+            while (!cancelled.get() && !failed.get()) {
+                if (connection == null)
+                    connection = openRangeConnection(segment);
+
+                boolean connectionReleased;
+                TransferListener transferListenerCopy = getTransferListener();
+                transferListenerCopy.connectionOpened();
+                try (ReadableByteChannel in = Channels.newChannel(connection.getInputStream())) {
+                    connectionReleased = transfer(in, channel, segment);
+                } finally {
+                    transferListenerCopy.connectionClosed();
+                    connection.disconnect();
+                    connection = null;
+                }
+
+                if (!connectionReleased)
+                    break;
+
+                FOKLogger.info(ArtifactDownloader.class.getName(), "Released the connection of a paused download at byte " + segment.getPosition());
+                persistStateSafely(channel);
+                awaitResume();
+            }
+        } catch (IOException | RuntimeException e) {
+            failed.set(true);
+            throw e;
+        } finally {
+            if (connection != null)
+                connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection openRangeConnection(Segment segment) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) artifactURL.openConnection();
+        connection.setRequestProperty("Range", segment.getRangeHeader());
+        if (partialDownloadFile.getValidator() != null)
+            connection.setRequestProperty("If-Range", partialDownloadFile.getValidator());
+
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+            int responseCode = connection.getResponseCode();
+            connection.disconnect();
+            if (responseCode == HttpURLConnection.HTTP_OK)
+                throw new RangeRequestIgnoredException("The server sent the whole file instead of the range " + segment.getRangeHeader() + " of " + artifactURL);
+            throw new IOException("The server did not honor the range request for " + artifactURL + " (HTTP " + responseCode + ")");
+        }
+        return connection;
+    }
+
+    /**
+     * Copies the remaining bytes of the specified segment from the network to the file, starting at the current position of the segment.
+     * The data is copied in chunks of {@link #getChunkSize()} bytes using a pooled direct buffer.
+     *
+     * @param in      The channel to read from
+     * @param channel The channel to write to
+     * @param segment The segment to complete. If the end of the segment is unknown, the stream is copied until its end.
+     * @return {@code true} if the transfer was stopped early because the download was paused and the connection can be
+     * released, {@code false} if the transfer finished or the download was cancelled.
+     * @throws IOException If the stream cannot be read or the channel cannot be written
+     */
+    private boolean transfer(ReadableByteChannel in, FileChannel channel, Segment segment) throws IOException {
+        ByteBuffer buffer = acquireBuffer(getChunkSize());
+        try {
+            long remaining = segment.getLength() < 0 ? Long.MAX_VALUE : segment.getRemaining();
+            boolean endOfStream = false;
+            while (remaining > 0 && !endOfStream && !cancelled.get() && !failed.get()) {
+                // fill the buffer up to one chunk (or the rest of the segment) before writing it to the disk
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                while (buffer.hasRemaining()) {
+                    if (in.read(buffer) < 0) {
+                        endOfStream = true;
+                        break;
+                    }
+                }
+
+                buffer.flip();
+                int x = buffer.remaining();
+                long currentPosition = segment.getPosition();
+                while (buffer.hasRemaining()) {
+                    currentPosition += channel.write(buffer, currentPosition);
+                }
+                segment.addDownloaded(x);
+                remaining -= x;
+                buffer.rewind();
+                updateDigest(channel, currentPosition - x, buffer);
+
+                // update progress bar
+                reportProgress(x);
+                getTransferListener().bytesTransferred(x);
+                persistStateIfDue(channel);
+
+                if (app.isDownloadPaused() && remaining > 0 && !endOfStream && !app.isCancelDownloadAndLaunch()) {
+                    // Resumable downloads continue with a range request, all others need to keep the connection open
+                    if (resumable)
+                        return true;
+                    awaitResume();
+                }
+
+                // Perform Cancel if requested
+                if (app.isCancelDownloadAndLaunch())
+                    cancelled.set(true);
+            }
+
+            if (segment.getLength() >= 0 && remaining > 0 && !cancelled.get() && !failed.get())
+                throw new IOException("Connection to " + artifactURL + " closed before all bytes were received");
+            return false;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Feeds a chunk that was just written into the digest. If the chunk is not at the current digest position, it is
+     * skipped for now and read back from the file once the digest reaches it.
+     *
+     * @param channel  The channel the artifact is written to
+     * @param position The position in the file that the chunk was written to
+     * @param chunk    The chunk. Must be written to the disk and accounted in its segment already.
+     * @throws IOException If the digest needs to catch up and the file cannot be read
+     */
+    private void updateDigest(FileChannel channel, long position, ByteBuffer chunk) throws IOException {
+        if (digest == null)
+            return;
+
+        synchronized (digestLock) {
+            if (position == digestedBytes) {
+                digestedBytes += chunk.remaining();
+                digest.update(chunk);
+            }
+            catchUpDigest(channel);
+        }
+    }
+
+    /**
+     * Reads all bytes that were written to the disk ahead of the digest position and feeds them into the digest until the
+     * digest position reaches a segment that is still downloading. Must be called while holding {@link #digestLock}.
+     *
+     * @param channel The channel the artifact is written to
+     * @throws IOException If the file cannot be read
+     */
+    private void catchUpDigest(FileChannel channel) throws IOException {
+        // the segments are sorted and cover the file without gaps
+        for (Segment segment : segments) {
+            if (segment.getEnd() >= 0 && segment.getEnd() < digestedBytes)
+                continue;
+
+            long available = segment.getPosition() - digestedBytes;
+            if (available > 0)
+                readIntoDigest(channel, available);
+            if (!segment.isComplete())
+                return;
+        }
+    }
+
+    private void readIntoDigest(FileChannel channel, long length) throws IOException {
+        ByteBuffer buffer = acquireBuffer(getChunkSize());
+        try {
+            long end = digestedBytes + length;
+            while (digestedBytes < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - digestedBytes));
+                int read = channel.read(buffer, digestedBytes);
+                if (read < 0)
+                    throw new IOException("Unexpected end of the partially downloaded file at byte " + digestedBytes);
+                buffer.flip();
+                digest.update(buffer);
+                digestedBytes += read;
+            }
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Feeds the remaining bytes into the digest and compares it to the checksum published by the repository.
+     *
+     * @param channel The channel the artifact was written to
+     * @return {@code true} if the digest matches the checksum
+     * @throws IOException If the file cannot be read
+     */
+    private boolean verifyDigest(FileChannel channel) throws IOException {
+        synchronized (digestLock) {
+            catchUpDigest(channel);
+            if (completeFileSize >= 0 && digestedBytes != completeFileSize) {
+                FOKLogger.severe(ArtifactDownloader.class.getName(), "Only " + digestedBytes + " of " + completeFileSize + " bytes of " + artifactURL + " were hashed");
+                return false;
+            }
+
+            String actualDigest = ArtifactChecksum.toHex(digest.digest());
+            if (!checksum.matches(actualDigest)) {
+                FOKLogger.severe(ArtifactDownloader.class.getName(), "Checksum mismatch for " + artifactURL + ": expected " + checksum + " but got " + actualDigest);
+                return false;
+            }
+
+            FOKLogger.info(ArtifactDownloader.class.getName(), "Verified the " + checksum.getAlgorithm() + " checksum of " + artifactURL);
+            return true;
+        }
+    }
+
+    private void persistStateIfDue(FileChannel channel) throws IOException {
+        if (!resumable)
+            return;
+
+        long lastPersistTime = lastStatePersistTime.get();
+        long now = System.currentTimeMillis();
+        // Only one segment thread persists at a time, the others just continue downloading
+        if (now - lastPersistTime >= persistStateIntervalInMillis && lastStatePersistTime.compareAndSet(lastPersistTime, now))
+            persistState(channel);
+    }
+
+    private void persistStateSafely(FileChannel channel) {
+        try {
+            persistState(channel);
+        } catch (IOException e) {
+            FOKLogger.log(ArtifactDownloader.class.getName(), Level.WARNING, "Unable to save the partial download info, the download will not be resumable", e);
+        }
+    }
+
+    /**
+     * Flushes the downloaded data to the disk and records the progress of each segment in the sidecar file.
+     * The data is flushed first so that the recorded progress is never ahead of the data on the disk.
+     *
+     * @param channel The channel the artifact is written to
+     * @throws IOException If the channel cannot be flushed or the sidecar file cannot be written
+     */
+    private void persistState(FileChannel channel) throws IOException {
+        synchronized (partialDownloadFile) {
+            List<PartialDownloadFile.SegmentInfo> segmentInfos = new ArrayList<>(segments.size());
+            for (Segment segment : segments) {
+                segmentInfos.add(segment.toSegmentInfo());
+            }
+            channel.force(false);
+            partialDownloadFile.setSegments(segmentInfos);
+            partialDownloadFile.save();
+        }
+    }
+
+    private void awaitResume() throws IOException {
+        try {
+            app.awaitDownloadResumed();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while the download was paused");
+        }
+
+        if (app.isCancelDownloadAndLaunch())
+            cancelled.set(true);
+    }
+
+    private void reportProgress(long bytesTransferred) {
+        downloadedBytes.addAndGet(bytesTransferred);
+        if (gui == null)
+            return;
+
+        // segments report concurrently, reading the counter inside the lock ensures that the reported progress never goes backwards
+        synchronized (progressLock) {
+            gui.downloadProgressChanged(downloadedBytes.get() / 1024.0, completeFileSize / 1024.0);
+        }
+    }
+
+    /**
+     * Returns the number of segments this downloader splits the artifact into if the server supports byte ranges.
+     *
+     * @return The number of segments this downloader splits the artifact into.
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Sets the number of segments this downloader splits the artifact into if the server supports byte ranges.
+     *
+     * @param segmentCount The number of segments to set. A value of {@code 1} disables segmented downloads.
+     */
+    public void setSegmentCount(int segmentCount) {
+        if (segmentCount < 1)
+            throw new IllegalArgumentException("segmentCount must be at least 1");
+        this.segmentCount = segmentCount;
+    }
+
+    /**
+     * Returns the minimum size of a segment in bytes.
+     *
+     * @return The minimum size of a segment in bytes.
+     */
+    public long getMinimumSegmentSize() {
+        return minimumSegmentSize;
+    }
+
+    /**
+     * Sets the minimum size of a segment in bytes.
+     *
+     * @param minimumSegmentSize The minimum size of a segment in bytes.
+     */
+    public void setMinimumSegmentSize(long minimumSegmentSize) {
+        if (minimumSegmentSize < 1)
+            throw new IllegalArgumentException("minimumSegmentSize must be positive");
+        this.minimumSegmentSize = minimumSegmentSize;
+    }
+
+    /**
+     * Returns the number of bytes this downloader copies from the network to the disk at once.
+     *
+     * @return The number of bytes this downloader copies from the network to the disk at once.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the number of bytes this downloader copies from the network to the disk at once.
+     *
+     * @param chunkSize The chunk size in bytes
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("chunkSize must be positive");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns the size of the artifact in bytes as reported by the server or {@code -1} if the size is unknown or the download did not start yet.
+     *
+     * @return The size of the artifact in bytes.
+     */
+    public long getCompleteFileSize() {
+        return completeFileSize;
+    }
+
+    /**
+     * Returns the number of bytes that were downloaded so far across all segments.
+     *
+     * @return The number of bytes that were downloaded so far across all segments.
+     */
+    public long getDownloadedBytes() {
+        return downloadedBytes.get();
+    }
+
+    /**
+     * Returns {@code true} if the downloaded bytes are verified against the checksum that the repository publishes next to the artifact.
+     *
+     * @return {@code true} if the downloaded bytes are verified against the checksum of the repository
+     */
+    public boolean isVerifyChecksum() {
+        return verifyChecksum;
+    }
+
+    /**
+     * Specifies whether the downloaded bytes shall be verified against the checksum that the repository publishes next to the artifact.
+     * Artifacts without a published checksum are never verified.
+     *
+     * @param verifyChecksum {@code true} to verify the downloaded bytes
+     */
+    public void setVerifyChecksum(boolean verifyChecksum) {
+        this.verifyChecksum = verifyChecksum;
+    }
+
+    /**
+     * Returns the checksum that the downloaded artifact was verified against.
+     *
+     * @return The checksum that the downloaded artifact was verified against or {@code null} if the download did not
+     * start yet or the artifact was not verified
+     */
+    @Nullable
+    public ArtifactChecksum getChecksum() {
+        return checksum;
+    }
+
+    @Nullable
+    public ArtifactStore getArtifactStore() {
+        return artifactStore;
+    }
+
+    /**
+     * Sets the store to look the artifact up in before downloading it and to add verified artifacts to.
+     * Only artifacts that the repository publishes a checksum for can be stored.
+     *
+     * @param artifactStore The store to use or {@code null} to not use a store
+     */
+    public void setArtifactStore(@Nullable ArtifactStore artifactStore) {
+        this.artifactStore = artifactStore;
+    }
+
+    @Nullable
+    public URL getDeltaURL() {
+        return deltaURL;
+    }
+
+    @Nullable
+    public File getDeltaBaseFile() {
+        return deltaBaseFile;
+    }
+
+    /**
+     * Specifies a previously installed version of the artifact that the artifact may be rebuilt from using a {@link DeltaPatch}.
+     * Delta updates require the repository to publish a checksum of the artifact.
+     *
+     * @param deltaURL      The url of the delta patch from the previous version to the artifact or {@code null} to disable delta updates
+     * @param deltaBaseFile The jar file of the previous version or {@code null} to disable delta updates
+     */
+    public void setDeltaBase(@Nullable URL deltaURL, @Nullable File deltaBaseFile) {
+        this.deltaURL = deltaURL;
+        this.deltaBaseFile = deltaBaseFile;
+    }
+
+    public TransferListener getTransferListener() {
+        return transferListener;
+    }
+
+    /**
+     * Sets the listener that is notified about the network transfers of this downloader, e. g. to measure the throughput.
+     *
+     * @param transferListener The listener to notify or {@code null} to remove the current listener
+     */
+    public void setTransferListener(@Nullable TransferListener transferListener) {
+        this.transferListener = transferListener == null ? TransferListener.NONE : transferListener;
+    }
+
+    /**
+     * Reports the bytes of a delta patch to the gui and the transfer listener and performs pause and cancel requests
+     */
+    private class DeltaTransferInputStream extends FilterInputStream {
+        private final byte[] singleByteBuffer = new byte[1];
+
+        DeltaTransferInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(singleByteBuffer, 0, 1) < 0 ? -1 : singleByteBuffer[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (app.isDownloadPaused() && !app.isCancelDownloadAndLaunch())
+                awaitResume();
+            if (app.isCancelDownloadAndLaunch())
+                cancelled.set(true);
+            if (cancelled.get())
+                throw new InterruptedIOException("The download was cancelled");
+
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                reportProgress(read);
+                getTransferListener().bytesTransferred(read);
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Thrown if the server answers a range request with the whole file although it advertised support for byte ranges
+     */
+    private static class RangeRequestIgnoredException extends IOException {
+        RangeRequestIgnoredException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A byte range of the artifact (both ends inclusive) and the number of bytes of it that were downloaded already
+     */
+    private static class Segment {
+        private final long start;
+        private final long end;
+        private final AtomicLong downloaded;
+
+        Segment(long start, long end, long downloaded) {
+            this.start = start;
+            this.end = end;
+            this.downloaded = new AtomicLong(downloaded);
+        }
+
+        long getStart() {
+            return start;
+        }
+
+        long getEnd() {
+            return end;
+        }
+
+        /**
+         * @return The number of bytes in this segment or a negative number if the end of the segment is unknown
+         */
+        long getLength() {
+            if (end < 0)
+                return -1;
+            return end - start + 1;
+        }
+
+        long getDownloaded() {
+            return downloaded.get();
+        }
+
+        void addDownloaded(long bytes) {
+            downloaded.addAndGet(bytes);
+        }
+
+        /**
+         * @return The position in the file that the next byte of this segment is written to
+         */
+        long getPosition() {
+            return start + getDownloaded();
+        }
+
+        long getRemaining() {
+            return getLength() - getDownloaded();
+        }
+
+        boolean isComplete() {
+            return getLength() >= 0 && getRemaining() <= 0;
+        }
+
+        String getRangeHeader() {
+            return "bytes=" + getPosition() + "-" + getEnd();
+        }
+
+        PartialDownloadFile.SegmentInfo toSegmentInfo() {
+            return new PartialDownloadFile.SegmentInfo(getStart(), getEnd(), getDownloaded());
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import com.github.vatbub.common.core.Common;
+import com.github.vatbub.common.core.logging.FOKLogger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * A content-addressed store for downloaded artifacts. Each artifact is stored once as a blob named after its checksum
+ * ({@code blobs/<algorithm>/<first two digits>/<digest>}) and the jar files in the per-app folders are hard links to the blob.
+ * Identical artifacts that are published under several coordinates or classifiers therefore occupy the disk only once and
+ * an artifact that is already in the store does not need to be downloaded again, e. g. after it was deleted and is
+ * installed again.
+ * <p>
+ * The store keeps a blob as long as at least one app folder links to it (see {@link #release(ArtifactChecksum)}). The
+ * links of each blob are recorded in a sidecar file next to it ({@code <digest>.refs}) as not all file systems report the
+ * number of links to a file (e. g. NTFS).
+ * If the file system does not support hard links, artifacts are not deduplicated and blobs are copied instead of linked.
+ */
+public class ArtifactStore {
+    private static final String BLOB_FOLDER_NAME = "blobs";
+    private static final String REFERENCES_FILE_EXTENSION = ".refs";
+    private static ArtifactStore instance;
+    private final Path root;
+
+    /**
+     * Creates a new store.
+     *
+     * @param root The folder to save the blobs in
+     */
+    public ArtifactStore(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the store in the app data folder of the launcher.
+     *
+     * @return The store in the app data folder of the launcher.
+     */
+    public static synchronized ArtifactStore getInstance() {
+        if (instance == null)
+            instance = new ArtifactStore(Common.getInstance().getAndCreateAppDataPathAsFile().toPath().resolve(BLOB_FOLDER_NAME));
+        return instance;
+    }
+
+    public static synchronized void resetInstance() {
+        instance = null;
+    }
+
+    /**
+     * Returns the location of the blob with the specified checksum. The blob does not necessarily exist.
+     *
+     * @param checksum The checksum of the blob
+     * @return The location of the blob with the specified checksum.
+     */
+    public Path getBlobPath(ArtifactChecksum checksum) {
+        String digest = checksum.getExpectedDigest();
+        String algorithm = checksum.getAlgorithm().replace("-", "").toLowerCase(Locale.ROOT);
+        return root.resolve(algorithm).resolve(digest.substring(0, 2)).resolve(digest);
+    }
+
+    /**
+     * Checks whether a blob with the specified checksum is in the store.
+     *
+     * @param checksum The checksum to look for
+     * @return {@code true} if the store contains a blob with the specified checksum
+     */
+    public boolean contains(ArtifactChecksum checksum) {
+        return Files.isRegularFile(getBlobPath(checksum));
+    }
+
+    /**
+     * Makes the blob with the specified checksum available at the specified location. The blob is hard linked if possible
+     * and copied otherwise. An existing file at the target location is replaced atomically.
+     *
+     * @param checksum The checksum of the blob
+     * @param target   The location to make the blob available at
+     * @return {@code true} if the blob was found in the store and is now available at the target location,
+     * {@code false} if the store does not contain the blob
+     * @throws IOException If the blob exists but cannot be linked or copied
+     */
+    public synchronized boolean linkTo(ArtifactChecksum checksum, Path target) throws IOException {
+        Path blob = getBlobPath(checksum);
+        if (!Files.isRegularFile(blob))
+            return false;
+
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Path tempFile = getTempFile(target);
+        Files.deleteIfExists(tempFile);
+        boolean linked;
+        try {
+            linked = tryCreateLink(tempFile, blob);
+            if (!linked)
+                Files.copy(blob, tempFile);
+        } catch (NoSuchFileException e) {
+            // the blob was released concurrently
+            return false;
+        }
+        moveAtomically(tempFile, target);
+        if (linked)
+            addReference(blob, target);
+        return true;
+    }
+
+    /**
+     * Adds the specified file to the store. If the store already contains a blob with the same checksum, the file is
+     * replaced by a link to that blob, otherwise the file becomes the blob. The caller must make sure that the file
+     * matches the checksum.
+     *
+     * @param checksum The checksum of the file
+     * @param file     The verified file to add
+     * @throws IOException If the store cannot be written
+     */
+    public synchronized void add(ArtifactChecksum checksum, Path file) throws IOException {
+        Path blob = getBlobPath(checksum);
+        Files.createDirectories(blob.getParent());
+        if (Files.isRegularFile(blob)) {
+            if (Files.isSameFile(blob, file))
+                return;
+            if (linkTo(checksum, file)) {
+                FOKLogger.info(ArtifactStore.class.getName(), "Deduplicated " + file + " with the stored artifact " + checksum);
+                return;
+            }
+        }
+
+        try {
+            if (tryCreateLink(blob, file))
+                addReference(blob, file);
+            else
+                FOKLogger.fine(ArtifactStore.class.getName(), "The file system does not support hard links, " + file + " is not deduplicated");
+        } catch (FileAlreadyExistsException e) {
+            // another download of the same artifact added it in the meantime
+            linkTo(checksum, file);
+        }
+    }
+
+    /**
+     * Removes the blob with the specified checksum from the store if no app folder links to it anymore.
+     * Must be called after the linked file of an app was deleted. The recorded links are checked one by one, links that
+     * were deleted or replaced by another file are forgotten.
+     *
+     * @param checksum The checksum of the blob to release
+     * @return {@code true} if the blob was removed from the store
+     */
+    public synchronized boolean release(ArtifactChecksum checksum) {
+        Path blob = getBlobPath(checksum);
+        try {
+            if (!Files.isRegularFile(blob))
+                return false;
+
+            Set<String> references = readReferences(blob);
+            boolean changed = references.removeIf(reference -> !isLinkedTo(Paths.get(reference), blob));
+            if (!references.isEmpty()) {
+                if (changed)
+                    writeReferences(blob, references);
+                return false;
+            }
+
+            Files.delete(blob);
+            Files.deleteIfExists(getReferencesFile(blob));
+            return true;
+        } catch (IOException e) {
+            FOKLogger.log(ArtifactStore.class.getName(), Level.WARNING, "Unable to release the stored artifact " + checksum, e);
+            return false;
+        }
+    }
+
+    private static Path getReferencesFile(Path blob) {
+        return blob.resolveSibling(blob.getFileName() + REFERENCES_FILE_EXTENSION);
+    }
+
+    /**
+     * Reads the absolute paths of all files that were linked to the specified blob.
+     */
+    private static Set<String> readReferences(Path blob) throws IOException {
+        Path referencesFile = getReferencesFile(blob);
+        if (!Files.isRegularFile(referencesFile))
+            return new LinkedHashSet<>();
+        return new LinkedHashSet<>(Files.readAllLines(referencesFile, StandardCharsets.UTF_8));
+    }
+
+    private static void writeReferences(Path blob, Set<String> references) throws IOException {
+        Path referencesFile = getReferencesFile(blob);
+        Path tempFile = getTempFile(referencesFile);
+        Files.write(tempFile, references, StandardCharsets.UTF_8);
+        moveAtomically(tempFile, referencesFile);
+    }
+
+    private static void addReference(Path blob, Path file) throws IOException {
+        Set<String> references = readReferences(blob);
+        if (references.add(file.toAbsolutePath().normalize().toString()))
+            writeReferences(blob, references);
+    }
+
+    private static boolean isLinkedTo(Path file, Path blob) {
+        try {
+            return Files.isSameFile(file, blob);
+        } catch (IOException e) {
+            // the file was deleted
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of directory entries that link to the specified file. Only supported on unix file systems.
+     *
+     * @param file The file to get the link count of
+     * @return The link count of the file
+     * @throws IOException                   If the attributes of the file cannot be read
+     * @throws UnsupportedOperationException If the file system does not report link counts
+     */
+    static int getLinkCount(Path file) throws IOException {
+        return (Integer) Files.getAttribute(file, "unix:nlink");
+    }
+
+    /**
+     * Tries to create a hard link.
+     *
+     * @param link     The link to create
+     * @param existing The file to link to
+     * @return {@code true} if the link was created, {@code false} if the file system does not support hard links
+     * @throws IOException If the link cannot be created for another reason
+     */
+    private static boolean tryCreateLink(Path link, Path existing) throws IOException {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        } catch (FileSystemException e) {
+            // Links across volumes and on file systems like FAT fail with a FileSystemException, but other subclasses have a different meaning
+            if (e instanceof FileAlreadyExistsException || e instanceof NoSuchFileException || e instanceof AccessDeniedException)
+                throw e;
+            return false;
+        }
+    }
+
+    private static Path getTempFile(Path target) {
+        return target.resolveSibling(target.getFileName() + ".link");
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+}
@@ -0,0 +1,227 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the bandwidth used by all downloads of a {@link DownloadQueue} using token buckets.
+ * Every transferred byte is charged to a global bucket, to the bucket of its download class (interactive or background)
+ * and to the bucket of the download itself. The transfer is held back until all buckets it was charged to are paid off.
+ * All limits are in bytes per second, a limit of {@code 0} or less means unlimited.
+ * Limits can be changed at any time and take effect for running transfers immediately.
+ */
+public class BandwidthLimiter {
+    private final Object waitLock = new Object();
+    private final TokenBucket globalBucket;
+    private final TokenBucket interactiveBucket;
+    private final TokenBucket backgroundBucket;
+    private final ThroughputMeter interactiveThroughputMeter = new ThroughputMeter();
+    private final ThroughputMeter backgroundThroughputMeter = new ThroughputMeter();
+    private volatile long globalLimit;
+    private volatile long interactiveLimit;
+    private volatile long backgroundLimit;
+    private volatile long perDownloadLimit;
+
+    /**
+     * Creates a new limiter without any limits.
+     */
+    public BandwidthLimiter() {
+        globalBucket = new TokenBucket(this::getGlobalLimit);
+        interactiveBucket = new TokenBucket(this::getInteractiveLimit);
+        backgroundBucket = new TokenBucket(this::getBackgroundLimit);
+    }
+
+    /**
+     * Creates a listener that throttles a single download according to the limits of this limiter.
+     * The listener blocks in {@link TransferListener#bytesTransferred(long)} until the transferred bytes are paid off.
+     *
+     * @param interactive {@code true} if the user waits for the download to finish (e. g. to launch the app),
+     *                    {@code false} for background downloads
+     * @return A listener to attach to the {@link ArtifactDownloader} of the download
+     */
+    public TransferListener newDownload(boolean interactive) {
+        return new Download(interactive);
+    }
+
+    private void limitsChanged() {
+        // waiting transfers recompute their waiting time using the new limits
+        synchronized (waitLock) {
+            waitLock.notifyAll();
+        }
+    }
+
+    public long getGlobalLimit() {
+        return globalLimit;
+    }
+
+    /**
+     * Sets the maximum bandwidth of all downloads together.
+     *
+     * @param globalLimit The maximum bandwidth in bytes per second or {@code 0} for no limit
+     */
+    public void setGlobalLimit(long globalLimit) {
+        this.globalLimit = globalLimit;
+        limitsChanged();
+    }
+
+    public long getInteractiveLimit() {
+        return interactiveLimit;
+    }
+
+    /**
+     * Sets the maximum bandwidth of all interactive downloads together. Interactive downloads are still subject to the global limit.
+     *
+     * @param interactiveLimit The maximum bandwidth in bytes per second or {@code 0} for no limit
+     */
+    public void setInteractiveLimit(long interactiveLimit) {
+        this.interactiveLimit = interactiveLimit;
+        limitsChanged();
+    }
+
+    public long getBackgroundLimit() {
+        return backgroundLimit;
+    }
+
+    /**
+     * Sets the maximum bandwidth of all background downloads together. Background downloads are still subject to the global limit.
+     * Use this to leave some headroom for interactive downloads.
+     *
+     * @param backgroundLimit The maximum bandwidth in bytes per second or {@code 0} for no limit
+     */
+    public void setBackgroundLimit(long backgroundLimit) {
+        this.backgroundLimit = backgroundLimit;
+        limitsChanged();
+    }
+
+    public long getPerDownloadLimit() {
+        return perDownloadLimit;
+    }
+
+    /**
+     * Sets the maximum bandwidth of each single download.
+     *
+     * @param perDownloadLimit The maximum bandwidth in bytes per second or {@code 0} for no limit
+     */
+    public void setPerDownloadLimit(long perDownloadLimit) {
+        this.perDownloadLimit = perDownloadLimit;
+        limitsChanged();
+    }
+
+    /**
+     * Returns the bandwidth delivered to all downloads since the last call of this method or one of its overloads and
+     * starts a new measurement period, so two callers that sample concurrently see a part of the bandwidth each.
+     *
+     * @return The delivered bandwidth in bytes per second
+     */
+    public double sampleDeliveredBytesPerSecond() {
+        return sampleDeliveredBytesPerSecond(true) + sampleDeliveredBytesPerSecond(false);
+    }
+
+    /**
+     * Returns the bandwidth delivered to the interactive or background downloads since the last call of this method
+     * and starts a new measurement period.
+     *
+     * @param interactive {@code true} for interactive downloads, {@code false} for background downloads
+     * @return The delivered bandwidth in bytes per second
+     */
+    public double sampleDeliveredBytesPerSecond(boolean interactive) {
+        return (interactive ? interactiveThroughputMeter : backgroundThroughputMeter).sample();
+    }
+
+    /**
+     * A classic token bucket that may run into debt: Bytes are charged after they were received and the transfer
+     * waits until the debt is paid off. The bucket holds at most the tokens of one second to allow short bursts.
+     */
+    static class TokenBucket {
+        private final LongSupplier limit;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(LongSupplier limit) {
+            this.limit = limit;
+        }
+
+        private void refill(long bytesPerSecond) {
+            long now = System.nanoTime();
+            if (bytesPerSecond <= 0)
+                tokens = 0;
+            else
+                tokens = Math.min(bytesPerSecond, tokens + (now - lastRefill) * bytesPerSecond / (double) TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+        }
+
+        synchronized void charge(long bytes) {
+            long bytesPerSecond = limit.getAsLong();
+            refill(bytesPerSecond);
+            if (bytesPerSecond > 0)
+                tokens -= bytes;
+        }
+
+        /**
+         * Returns the time until the debt of this bucket is paid off using the current limit.
+         *
+         * @return The time until the debt of this bucket is paid off in nanoseconds or {@code 0} if the bucket is not in debt.
+         */
+        synchronized long getWaitingTime() {
+            long bytesPerSecond = limit.getAsLong();
+            refill(bytesPerSecond);
+            if (tokens >= 0)
+                return 0;
+            return (long) Math.ceil(-tokens * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond);
+        }
+    }
+
+    private class Download implements TransferListener {
+        private final boolean interactive;
+        private final TokenBucket downloadBucket = new TokenBucket(BandwidthLimiter.this::getPerDownloadLimit);
+
+        Download(boolean interactive) {
+            this.interactive = interactive;
+        }
+
+        private TokenBucket getClassBucket() {
+            return interactive ? interactiveBucket : backgroundBucket;
+        }
+
+        @Override
+        public void bytesTransferred(long bytes) {
+            downloadBucket.charge(bytes);
+            getClassBucket().charge(bytes);
+            globalBucket.charge(bytes);
+
+            try {
+                synchronized (waitLock) {
+                    long waitingTime;
+                    while ((waitingTime = Math.max(downloadBucket.getWaitingTime(), Math.max(getClassBucket().getWaitingTime(), globalBucket.getWaitingTime()))) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(waitLock, waitingTime);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            (interactive ? interactiveThroughputMeter : backgroundThroughputMeter).bytesTransferred(bytes);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import com.github.vatbub.common.core.logging.FOKLogger;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * The execution layer for tasks that spend most of their time blocked, e. g. downloads, metadata fetches or waiting for a
+ * launched app to exit. On Java 21 and newer, daemon tasks run on virtual threads which are cheap enough to create one
+ * per task. On older runtimes, or if virtual threads are disabled using the system property {@value #DISABLE_VIRTUAL_THREADS_PROPERTY},
+ * they run on daemon platform threads. Virtual threads are accessed via reflection as the launcher is compiled for Java 8.
+ * <p>
+ * Virtual threads are always daemon threads, so whether a task may run on one is decided per call site: Tasks that must
+ * keep the JVM alive until they are done (e. g. waiting for a launched app or exiting the launcher) are started using
+ * {@link #start(String, Runnable)} and run on regular platform threads, all other tasks opt in to daemon threads using
+ * {@link #startDaemon(String, Runnable)}. Executors and scopes always use daemon threads.
+ */
+public class BlockingTasks {
+    /**
+     * Set this system property to {@code true} to run all blocking tasks on platform threads.
+     */
+    public static final String DISABLE_VIRTUAL_THREADS_PROPERTY = "fokLauncher.disableVirtualThreads";
+    private static final AtomicInteger platformThreadCounter = new AtomicInteger();
+    private static final Method ofVirtualMethod;
+    private static final Method builderNameMethod;
+    private static final Method builderNamePrefixMethod;
+    private static final Method builderUnstartedMethod;
+    private static final Method builderFactoryMethod;
+    private static final Method newThreadPerTaskExecutorMethod;
+    private static volatile boolean virtualThreadsEnabled;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderNamePrefix = null;
+        Method builderUnstarted = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builderName = builderClass.getMethod("name", String.class);
+            builderNamePrefix = builderClass.getMethod("name", String.class, long.class);
+            builderUnstarted = builderClass.getMethod("unstarted", Runnable.class);
+            builderFactory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            FOKLogger.info(BlockingTasks.class.getName(), "Virtual threads are not supported by this java runtime, using platform threads for blocking tasks");
+            ofVirtual = null;
+        }
+
+        ofVirtualMethod = ofVirtual;
+        builderNameMethod = builderName;
+        builderNamePrefixMethod = builderNamePrefix;
+        builderUnstartedMethod = builderUnstarted;
+        builderFactoryMethod = builderFactory;
+        newThreadPerTaskExecutorMethod = newThreadPerTaskExecutor;
+        virtualThreadsEnabled = isVirtualThreadsSupported() && !Boolean.getBoolean(DISABLE_VIRTUAL_THREADS_PROPERTY);
+    }
+
+    private BlockingTasks() {
+        throw new IllegalStateException("Class may not be instantiated");
+    }
+
+    /**
+     * Returns {@code true} if the java runtime supports virtual threads.
+     *
+     * @return {@code true} if the java runtime supports virtual threads.
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return ofVirtualMethod != null;
+    }
+
+    public static boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    /**
+     * Enables or disables virtual threads for all tasks that are started afterwards. Has no effect if virtual threads are not supported.
+     *
+     * @param virtualThreadsEnabled {@code true} to run blocking tasks on virtual threads
+     */
+    public static void setVirtualThreadsEnabled(boolean virtualThreadsEnabled) {
+        BlockingTasks.virtualThreadsEnabled = virtualThreadsEnabled && isVirtualThreadsSupported();
+    }
+
+    /**
+     * Creates a non-daemon platform thread for the specified task without starting it. The JVM does not exit before
+     * the task is done.
+     *
+     * @param name The name of the thread
+     * @param task The task to run
+     * @return The unstarted thread
+     * @see #newDaemonThread(String, Runnable)
+     */
+    public static Thread newThread(String name, Runnable task) {
+        return new Thread(task, name);
+    }
+
+    /**
+     * Creates a daemon thread for the specified task without starting it. The thread is a virtual thread if virtual
+     * threads are enabled and a daemon platform thread otherwise, so the JVM may exit while the task is still running.
+     *
+     * @param name The name of the thread
+     * @param task The task to run
+     * @return The unstarted thread
+     */
+    public static Thread newDaemonThread(String name, Runnable task) {
+        if (isVirtualThreadsEnabled()) {
+            try {
+                Object builder = builderNameMethod.invoke(ofVirtualMethod.invoke(null), name);
+                return (Thread) builderUnstartedMethod.invoke(builder, task);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                FOKLogger.log(BlockingTasks.class.getName(), Level.WARNING, "Unable to create a virtual thread, falling back to platform threads", e);
+                setVirtualThreadsEnabled(false);
+            }
+        }
+
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Runs the specified task on a new non-daemon platform thread.
+     *
+     * @param name The name of the thread
+     * @param task The task to run
+     * @return The started thread
+     * @see #newThread(String, Runnable)
+     */
+    public static Thread start(String name, Runnable task) {
+        Thread thread = newThread(name, task);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Runs the specified task on a new daemon thread.
+     *
+     * @param name The name of the thread
+     * @param task The task to run
+     * @return The started thread
+     * @see #newDaemonThread(String, Runnable)
+     */
+    public static Thread startDaemon(String name, Runnable task) {
+        Thread thread = newDaemonThread(name, task);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Creates an executor that runs every task on a new thread. The threads are named using the specified prefix and a counter.
+     *
+     * @param namePrefix The prefix of the thread names
+     * @return A new executor that runs every task on a new thread. Must be shut down by the caller.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        if (isVirtualThreadsEnabled()) {
+            try {
+                Object builder = builderNamePrefixMethod.invoke(ofVirtualMethod.invoke(null), namePrefix, 0L);
+                ThreadFactory factory = (ThreadFactory) builderFactoryMethod.invoke(builder);
+                return (ExecutorService) newThreadPerTaskExecutorMethod.invoke(null, factory);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                FOKLogger.log(BlockingTasks.class.getName(), Level.WARNING, "Unable to create a virtual thread executor, falling back to platform threads", e);
+                setVirtualThreadsEnabled(false);
+            }
+        }
+
+        return Executors.newCachedThreadPool(newPlatformThreadFactory(namePrefix));
+    }
+
+    /**
+     * Creates an executor that runs the tasks on the specified number of platform threads. Meant for a large number of
+     * tasks that would create too many threads with {@link #newThreadPerTaskExecutor(String)} if virtual threads are
+     * not available.
+     *
+     * @param namePrefix The prefix of the thread names
+     * @param threadCount The number of threads
+     * @return A new executor with a fixed number of threads. Must be shut down by the caller.
+     */
+    public static ExecutorService newFixedThreadPool(String namePrefix, int threadCount) {
+        return Executors.newFixedThreadPool(threadCount, newPlatformThreadFactory(namePrefix));
+    }
+
+    private static ThreadFactory newPlatformThreadFactory(String namePrefix) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + platformThreadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Opens a new scope to run related tasks in.
+     *
+     * @param name The name of the scope, used as the prefix of the thread names
+     * @return The new scope
+     */
+    public static TaskScope openScope(String name) {
+        return new TaskScope(name);
+    }
+
+    /**
+     * A group of related tasks that are cancelled together. Cancelling the scope interrupts all of its running tasks and
+     * prevents new tasks from being started, so a task can check {@link Thread#isInterrupted()} to find out whether its
+     * result is still needed. Closing the scope cancels it and waits for all tasks to finish.
+     */
+    public static class TaskScope implements AutoCloseable {
+        private final String name;
+        private final List<Thread> threads = new CopyOnWriteArrayList<>();
+        private final AtomicInteger threadCounter = new AtomicInteger();
+        private volatile boolean cancelled;
+
+        private TaskScope(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Starts the specified task in this scope.
+         *
+         * @param task The task to run
+         * @return The thread that runs the task
+         * @throws RejectedExecutionException If the scope was cancelled
+         */
+        public synchronized Thread fork(Runnable task) {
+            if (isCancelled())
+                throw new RejectedExecutionException("Scope " + name + " was cancelled");
+
+            Thread thread = newDaemonThread(name + "-" + threadCounter.getAndIncrement(), () -> {
+                try {
+                    task.run();
+                } finally {
+                    threads.remove(Thread.currentThread());
+                }
+            });
+            threads.add(thread);
+            thread.start();
+            return thread;
+        }
+
+        /**
+         * Interrupts all running tasks of this scope and rejects new tasks.
+         */
+        public synchronized void cancel() {
+            cancelled = true;
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Waits for all tasks of this scope to finish.
+         *
+         * @throws InterruptedException If the calling thread is interrupted while waiting
+         */
+        public void join() throws InterruptedException {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        /**
+         * Cancels this scope and waits for all of its tasks to finish.
+         *
+         * @throws InterruptedException If the calling thread is interrupted while waiting
+         */
+        @Override
+        public void close() throws InterruptedException {
+            cancel();
+            join();
+        }
+    }
+}
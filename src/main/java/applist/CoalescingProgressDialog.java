@@ -0,0 +1,203 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import com.github.vatbub.common.updater.HidableUpdateProgressDialog;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps a {@link HidableUpdateProgressDialog} and limits the number of progress updates it receives.
+ * Calls to {@link #downloadProgressChanged(double, double)} are forwarded at most {@link #getMaxUpdatesPerSecond()} times
+ * per second. Updates that arrive in between are merged, and the latest one is delivered once the interval is over,
+ * so the final progress always reaches the wrapped gui. All other callbacks flush the pending progress first and are then
+ * forwarded immediately. Calls to the wrapped gui are serialized, so the wrapped gui does not need to be thread safe.
+ */
+public class CoalescingProgressDialog implements HidableUpdateProgressDialog {
+    private static final ScheduledExecutorService trailingUpdateExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "progressUpdateThread");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static volatile int defaultMaxUpdatesPerSecond = 10;
+    private final HidableUpdateProgressDialog delegate;
+    private final Object lock = new Object();
+    private final long minimumIntervalInNanos;
+    private long lastPublishTime;
+    private boolean hasPublished;
+    private boolean progressPending;
+    private double pendingKilobytesDownloaded;
+    private double pendingTotalFileSizeInKB;
+    private ScheduledFuture<?> trailingUpdate;
+
+    /**
+     * Wraps the specified gui using {@link #getDefaultMaxUpdatesPerSecond()}.
+     *
+     * @param delegate The gui to forward the calls to
+     */
+    public CoalescingProgressDialog(HidableUpdateProgressDialog delegate) {
+        this(delegate, getDefaultMaxUpdatesPerSecond());
+    }
+
+    /**
+     * Wraps the specified gui.
+     *
+     * @param delegate             The gui to forward the calls to
+     * @param maxUpdatesPerSecond The maximum number of progress updates per second that are forwarded to {@code delegate}
+     */
+    public CoalescingProgressDialog(HidableUpdateProgressDialog delegate, int maxUpdatesPerSecond) {
+        if (maxUpdatesPerSecond < 1)
+            throw new IllegalArgumentException("maxUpdatesPerSecond must be at least 1");
+        this.delegate = delegate;
+        this.minimumIntervalInNanos = TimeUnit.SECONDS.toNanos(1) / maxUpdatesPerSecond;
+    }
+
+    public static int getDefaultMaxUpdatesPerSecond() {
+        return defaultMaxUpdatesPerSecond;
+    }
+
+    public static void setDefaultMaxUpdatesPerSecond(int defaultMaxUpdatesPerSecond) {
+        if (defaultMaxUpdatesPerSecond < 1)
+            throw new IllegalArgumentException("defaultMaxUpdatesPerSecond must be at least 1");
+        CoalescingProgressDialog.defaultMaxUpdatesPerSecond = defaultMaxUpdatesPerSecond;
+    }
+
+    public HidableUpdateProgressDialog getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the maximum number of progress updates per second that are forwarded to the wrapped gui.
+     *
+     * @return The maximum number of progress updates per second that are forwarded to the wrapped gui.
+     */
+    public int getMaxUpdatesPerSecond() {
+        return (int) (TimeUnit.SECONDS.toNanos(1) / minimumIntervalInNanos);
+    }
+
+    @Override
+    public void downloadProgressChanged(double kilobytesDownloaded, double totalFileSizeInKB) {
+        synchronized (lock) {
+            pendingKilobytesDownloaded = kilobytesDownloaded;
+            pendingTotalFileSizeInKB = totalFileSizeInKB;
+            progressPending = true;
+
+            long nanosSinceLastPublish = System.nanoTime() - lastPublishTime;
+            if (!hasPublished || nanosSinceLastPublish >= minimumIntervalInNanos || kilobytesDownloaded == totalFileSizeInKB) {
+                publishPendingProgress();
+            } else if (trailingUpdate == null) {
+                trailingUpdate = trailingUpdateExecutor.schedule(this::flush, minimumIntervalInNanos - nanosSinceLastPublish, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Immediately forwards the latest progress update to the wrapped gui if it was held back.
+     */
+    public void flush() {
+        synchronized (lock) {
+            publishPendingProgress();
+        }
+    }
+
+    private void publishPendingProgress() {
+        if (trailingUpdate != null) {
+            trailingUpdate.cancel(false);
+            trailingUpdate = null;
+        }
+
+        if (!progressPending)
+            return;
+
+        progressPending = false;
+        hasPublished = true;
+        lastPublishTime = System.nanoTime();
+        delegate.downloadProgressChanged(pendingKilobytesDownloaded, pendingTotalFileSizeInKB);
+    }
+
+    @Override
+    public void hide() {
+        synchronized (lock) {
+            publishPendingProgress();
+            delegate.hide();
+        }
+    }
+
+    @Override
+    public void preparePhaseStarted() {
+        synchronized (lock) {
+            publishPendingProgress();
+            delegate.preparePhaseStarted();
+        }
+    }
+
+    @Override
+    public void downloadStarted() {
+        synchronized (lock) {
+            publishPendingProgress();
+            delegate.downloadStarted();
+        }
+    }
+
+    @Override
+    public void installStarted() {
+        synchronized (lock) {
+            publishPendingProgress();
+            delegate.installStarted();
+        }
+    }
+
+    @Override
+    public void launchStarted() {
+        synchronized (lock) {
+            publishPendingProgress();
+            delegate.launchStarted();
+        }
+    }
+
+    @Override
+    public void cancelRequested() {
+        synchronized (lock) {
+            publishPendingProgress();
+            delegate.cancelRequested();
+        }
+    }
+
+    @Override
+    public void operationCanceled() {
+        synchronized (lock) {
+            publishPendingProgress();
+            delegate.operationCanceled();
+        }
+    }
+
+    @Override
+    public void showErrorMessage(String s) {
+        synchronized (lock) {
+            publishPendingProgress();
+            delegate.showErrorMessage(s);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A binary patch that rebuilds a version of an artifact from a previous version of it. Consecutive builds of a jar
+ * mostly consist of the same compressed entries, only the changed classes and the entry headers (which contain the build
+ * time) differ. The patch therefore describes the new jar as a sequence of byte ranges that are copied from the old jar
+ * and bytes that are inserted literally.
+ * <p>
+ * Patches are published next to the new artifact (see {@link App#getDeltaURL}) and are gzip compressed.
+ * The format is:
+ * <pre>
+ * magic           "FOKDELTA" (8 bytes)
+ * format version  1 (1 byte)
+ * base length     length of the old jar (8 bytes)
+ * target length   length of the new jar (8 bytes)
+ * operations      COPY:   1 (1 byte), offset in the old jar (8 bytes), length (4 bytes)
+ *                 INSERT: 2 (1 byte), length (4 bytes), the bytes to insert
+ *                 END:    0 (1 byte)
+ * </pre>
+ * The patch itself is not signed, the rebuilt jar must be verified against the checksum of the new artifact.
+ */
+public class DeltaPatch {
+    private static final byte[] MAGIC = "FOKDELTA".getBytes(StandardCharsets.US_ASCII);
+    private static final int FORMAT_VERSION = 1;
+    private static final int OP_END = 0;
+    private static final int OP_COPY = 1;
+    private static final int OP_INSERT = 2;
+    private static final int BLOCK_SIZE = 64;
+    private static final int HASH_MULTIPLIER = 31;
+    private static final int MAX_CANDIDATES_PER_HASH = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private DeltaPatch() {
+        throw new IllegalStateException("Class may not be instantiated");
+    }
+
+    /**
+     * Rebuilds the new artifact by applying a patch to the old artifact.
+     *
+     * @param baseFile The old artifact the patch was created for
+     * @param patch    The gzip compressed patch
+     * @param out      The stream to write the new artifact to. The stream is not closed.
+     * @return The number of bytes written
+     * @throws IOException If the patch is malformed, was not created for the specified old artifact or a stream cannot be read or written
+     */
+    public static long apply(File baseFile, InputStream patch, OutputStream out) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(patch), BUFFER_SIZE));
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic))
+            throw new IOException("Not a delta patch");
+        int formatVersion = in.readUnsignedByte();
+        if (formatVersion != FORMAT_VERSION)
+            throw new IOException("Unsupported delta patch format version " + formatVersion);
+
+        try (FileChannel base = FileChannel.open(baseFile.toPath(), StandardOpenOption.READ)) {
+            long baseLength = in.readLong();
+            long targetLength = in.readLong();
+            if (base.size() != baseLength)
+                throw new IOException("The delta patch was created for a base of " + baseLength + " bytes but " + baseFile + " has " + base.size() + " bytes");
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            long written = 0;
+            int op;
+            while ((op = in.readUnsignedByte()) != OP_END) {
+                if (op == OP_COPY) {
+                    long offset = in.readLong();
+                    int length = in.readInt();
+                    if (offset < 0 || length < 0 || offset + length > baseLength)
+                        throw new IOException("The delta patch copies bytes " + offset + "+" + length + " outside of the base");
+                    while (length > 0) {
+                        byteBuffer.clear();
+                        byteBuffer.limit(Math.min(buffer.length, length));
+                        int read = base.read(byteBuffer, offset);
+                        if (read < 0)
+                            throw new EOFException("Unexpected end of " + baseFile);
+                        out.write(buffer, 0, read);
+                        offset += read;
+                        length -= read;
+                        written += read;
+                    }
+                } else if (op == OP_INSERT) {
+                    int length = in.readInt();
+                    if (length < 0)
+                        throw new IOException("Negative insert length in the delta patch");
+                    while (length > 0) {
+                        int read = in.read(buffer, 0, Math.min(buffer.length, length));
+                        if (read < 0)
+                            throw new EOFException("Unexpected end of the delta patch");
+                        out.write(buffer, 0, read);
+                        length -= read;
+                        written += read;
+                    }
+                } else {
+                    throw new IOException("Unknown delta patch operation " + op);
+                }
+            }
+
+            if (written != targetLength)
+                throw new IOException("The delta patch produced " + written + " bytes but " + targetLength + " bytes were expected");
+            return written;
+        }
+    }
+
+    /**
+     * Creates a patch that rebuilds {@code targetFile} from {@code baseFile}. Used to publish delta updates next to a new release.
+     * Both files are read into memory.
+     *
+     * @param baseFile   The old artifact
+     * @param targetFile The new artifact
+     * @param out        The stream to write the gzip compressed patch to. The stream is not closed.
+     * @throws IOException If a file cannot be read or the patch cannot be written
+     */
+    public static void create(File baseFile, File targetFile, OutputStream out) throws IOException {
+        byte[] base = Files.readAllBytes(baseFile.toPath());
+        byte[] target = Files.readAllBytes(targetFile.toPath());
+
+        GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+        DataOutputStream patch = new DataOutputStream(new BufferedOutputStream(gzip, BUFFER_SIZE));
+        patch.write(MAGIC);
+        patch.writeByte(FORMAT_VERSION);
+        patch.writeLong(base.length);
+        patch.writeLong(target.length);
+
+        Map<Integer, List<Integer>> blockIndex = indexBlocks(base);
+        int highestPower = 1;
+        for (int i = 1; i < BLOCK_SIZE; i++) {
+            highestPower *= HASH_MULTIPLIER;
+        }
+
+        int insertStart = 0;
+        int position = 0;
+        int hash = target.length >= BLOCK_SIZE ? hash(target, 0) : 0;
+        while (position + BLOCK_SIZE <= target.length) {
+            int bestOffset = -1;
+            int bestLength = 0;
+            List<Integer> candidates = blockIndex.get(hash);
+            if (candidates != null) {
+                for (int candidate : candidates) {
+                    int length = matchLength(base, candidate, target, position);
+                    if (length > bestLength) {
+                        bestOffset = candidate;
+                        bestLength = length;
+                    }
+                }
+            }
+
+            if (bestLength < BLOCK_SIZE) {
+                // no match, roll the hash by one byte
+                if (position + BLOCK_SIZE < target.length)
+                    hash = (hash - target[position] * highestPower) * HASH_MULTIPLIER + target[position + BLOCK_SIZE];
+                position++;
+                continue;
+            }
+
+            // the pending literal bytes may end with the beginning of the match
+            while (position > insertStart && bestOffset > 0 && base[bestOffset - 1] == target[position - 1]) {
+                position--;
+                bestOffset--;
+                bestLength++;
+            }
+
+            writeInsert(patch, target, insertStart, position - insertStart);
+            patch.writeByte(OP_COPY);
+            patch.writeLong(bestOffset);
+            patch.writeInt(bestLength);
+
+            position += bestLength;
+            insertStart = position;
+            if (position + BLOCK_SIZE <= target.length)
+                hash = hash(target, position);
+        }
+
+        writeInsert(patch, target, insertStart, target.length - insertStart);
+        patch.writeByte(OP_END);
+        patch.flush();
+        gzip.finish();
+    }
+
+    private static Map<Integer, List<Integer>> indexBlocks(byte[] base) {
+        Map<Integer, List<Integer>> res = new HashMap<>();
+        for (int offset = 0; offset + BLOCK_SIZE <= base.length; offset += BLOCK_SIZE) {
+            List<Integer> offsets = res.computeIfAbsent(hash(base, offset), key -> new ArrayList<>(1));
+            // blocks that occur very often (e. g. padding) would make the search quadratic
+            if (offsets.size() < MAX_CANDIDATES_PER_HASH)
+                offsets.add(offset);
+        }
+        return res;
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int res = 0;
+        for (int i = offset; i < offset + BLOCK_SIZE; i++) {
+            res = res * HASH_MULTIPLIER + data[i];
+        }
+        return res;
+    }
+
+    private static int matchLength(byte[] base, int baseOffset, byte[] target, int targetOffset) {
+        int res = 0;
+        while (baseOffset + res < base.length && targetOffset + res < target.length && base[baseOffset + res] == target[targetOffset + res]) {
+            res++;
+        }
+        return res;
+    }
+
+    private static void writeInsert(DataOutputStream patch, byte[] target, int offset, int length) throws IOException {
+        if (length == 0)
+            return;
+        patch.writeByte(OP_INSERT);
+        patch.writeInt(length);
+        patch.write(target, offset, length);
+    }
+}
@@ -21,21 +21,74 @@ package applist;
  */
 
 
+import com.github.vatbub.common.core.logging.FOKLogger;
+import com.github.vatbub.common.updater.Version;
 import javafx.beans.property.*;
-import org.jetbrains.annotations.NotNull;
-
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.concurrent.RejectedExecutionException;
-import java.util.function.Predicate;
-
-public class DownloadQueue extends LinkedList<DownloadQueueEntry> {
+import org.jdom2.JDOMException;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * A queue of apps to download. Entries are kept in a thread safe blocking priority queue and processed by a pool of
+ * {@link DownloadThread}s. The workers stay parked on the queue while there is nothing to do and the pool is resized
+ * whenever {@link #setParallelDownloadCount(int)} is called or a download is paused or resumed.
+ * <p>
+ * Entries are indexed by the maven coordinates of their app. If an entry is added while an equivalent entry (same app,
+ * version and settings) is waiting or running, the two are coalesced: The gui of the new entry is attached to the existing
+ * entry, so the artifact is only downloaded once.
+ * <p>
+ * The order in which the entries are processed is determined by the {@link DownloadSchedulingPolicy} of the queue.
+ * If preemption is enabled and all workers are busy, an entry that the user wants to launch pauses a running background
+ * download. The background download is resumed once the launch entry is done.
+ * <p>
+ * In adaptive mode (see {@link #setAdaptiveParallelDownloadCount(boolean)}), the number of parallel downloads is adjusted
+ * periodically by an {@link AdaptiveConcurrencyController} based on the throughput measured by {@link #getThroughputMeter()}.
+ */
+public class DownloadQueue {
+    private static final int preflightParallelism = 2;
+    private static final long concurrencyControllerSampleIntervalInSeconds = 3;
+    private final PriorityBlockingQueue<QueuedEntry> entries = new PriorityBlockingQueue<>(11, this::compareQueuedEntries);
+    /**
+     * Held while waiting entries are taken out of {@link #entries} to be re-inserted (to update their sort key) and while
+     * entries are removed by the user, so that a removed entry is never re-inserted afterwards.
+     */
+    private final Object entriesLock = new Object();
+    private final AtomicLong firstSequenceNumber = new AtomicLong();
+    private final AtomicLong lastSequenceNumber = new AtomicLong();
+    private final Queue<DownloadQueueEntry> preemptedEntries = new ConcurrentLinkedQueue<>();
+    /**
+     * All unfinished entries (waiting and running) by the maven coordinates of their app
+     */
+    private final Map<MVNCoordinates, List<DownloadQueueEntry>> entryIndex = new HashMap<>();
+    private volatile DownloadSchedulingPolicy schedulingPolicy = DownloadSchedulingPolicy.FIFO;
+    private volatile boolean preemptionEnabled = true;
+    private ExecutorService preflightExecutor;
+    /**
+     * Limits the number of download sizes that are determined at the same time, as each preflight request hits the repository.
+     */
+    private final Semaphore preflightPermits = new Semaphore(preflightParallelism);
     private final IntegerProperty currentQueueCount = new SimpleIntegerProperty();
     private final IntegerProperty currentTotalDownloadCount = new SimpleIntegerProperty();
-    private final List<DownloadThread> threadPool = new LinkedList<>();
-    private volatile int parallelDownloadCount;
-    private boolean shutdown;
+    private final IntegerProperty currentPausedDownloadCount = new SimpleIntegerProperty();
+    /**
+     * The number of entries that were enqueued but not finished yet (waiting and running).
+     * Counted separately so that an entry that is handed from the deque to a worker is never counted as gone.
+     */
+    private final AtomicInteger unfinishedEntryCount = new AtomicInteger();
+    private final List<DownloadThread> threadPool = new CopyOnWriteArrayList<>();
+    private final IntegerProperty parallelDownloadCount = new SimpleIntegerProperty();
+    private final BooleanProperty adaptiveParallelDownloadCount = new SimpleBooleanProperty();
+    private final ThroughputMeter throughputMeter = new ThroughputMeter();
+    private final BandwidthLimiter bandwidthLimiter = new BandwidthLimiter();
+    private volatile int maximumAdaptiveParallelDownloadCount = 8;
+    private AdaptiveConcurrencyController concurrencyController;
+    private Thread concurrencyControllerThread;
+    private volatile boolean shutdown;
     private final ObjectProperty<Runnable> onEmpty = new SimpleObjectProperty<>();
     private final ObjectProperty<Runnable> onShutdownCompleted = new SimpleObjectProperty<>();
 
@@ -44,12 +97,13 @@ public class DownloadQueue extends LinkedList<DownloadQueueEntry> {
     }
 
     public DownloadQueue(int parallelDownloadCount) {
-        setParallelDownloadCount(parallelDownloadCount);
+        applyParallelDownloadCount(parallelDownloadCount);
         currentTotalDownloadCountProperty().addListener((observable, oldValue, newValue) -> {
             if (newValue.intValue() == 0) {
                 if (getOnEmpty() != null)
                     getOnEmpty().run();
                 if (isShutdown()) {
+                    retireAllThreads();
                     if (getOnShutdownCompleted() != null)
                         getOnShutdownCompleted().run();
                 }
@@ -64,17 +118,15 @@ public class DownloadQueue extends LinkedList<DownloadQueueEntry> {
      * @return The {@link DownloadQueueEntry} for the specified app or {@code null} if the specified app is not found in the queue.
      */
     public DownloadQueueEntry getEntryForApp(App app) {
-        synchronized (threadPool) {
-            for (DownloadThread thread : threadPool) {
-                DownloadQueueEntry entry = thread.getCurrentEntry();
-                if (entry != null && entry.getApp().equals(app))
-                    return entry;
-            }
-        }
+        if (app == null)
+            return null;
 
-        synchronized (this) {
-            // Check the waiting queue
-            for (DownloadQueueEntry entry : this) {
+        synchronized (entryIndex) {
+            List<DownloadQueueEntry> candidates = entryIndex.get(app.getMvnCoordinates());
+            if (candidates == null)
+                return null;
+
+            for (DownloadQueueEntry entry : candidates) {
                 if (entry.getApp().equals(app))
                     return entry;
             }
@@ -84,266 +136,426 @@ public class DownloadQueue extends LinkedList<DownloadQueueEntry> {
         return null;
     }
 
-    private synchronized void monitorThreadCount() {
-        cleanThreadPoolUp();
-
-        // add new threads if we are below the desired number of parallel downloads
-        int parallelDownloadCountCopy = getParallelDownloadCount();
-        while (threadPool.size() < parallelDownloadCountCopy) {
-            DownloadThread thread = new DownloadThread(this);
-            threadPool.add(thread);
-            thread.start();
+    /**
+     * Returns an unfinished entry that downloads the same artifact as the specified entry. Must be called while holding the lock on the index.
+     */
+    private DownloadQueueEntry getEquivalentEntry(DownloadQueueEntry entry) {
+        List<DownloadQueueEntry> candidates = entryIndex.get(entry.getApp().getMvnCoordinates());
+        if (candidates == null)
+            return null;
+
+        for (DownloadQueueEntry candidate : candidates) {
+            if (candidate.getApp().equals(entry.getApp())
+                    && Objects.equals(candidate.getVersionToDownload(), entry.getVersionToDownload())
+                    && candidate.isEnableSnapshots() == entry.isEnableSnapshots()
+                    && candidate.isDisableDownload() == entry.isDisableDownload())
+                return candidate;
         }
+        return null;
+    }
 
-        // shut threads down if we have too many
-        int numberOfThreadsToShutDown = getNumberOfThreadsThatAreNotShuttingDown() - parallelDownloadCountCopy;
-        if (numberOfThreadsToShutDown > 0) {
-            int shutDownThreads = 0;
-            for (DownloadThread downloadThread : threadPool) {
-                if (!downloadThread.isShutdownAfterDownload()) {
-                    downloadThread.setShutdownAfterDownload(true);
-                    shutDownThreads++;
-                    if (shutDownThreads >= numberOfThreadsToShutDown)
-                        break;
-                }
-            }
+    private void removeFromIndex(DownloadQueueEntry entry) {
+        if (entry.getApp() == null)
+            return;
+
+        synchronized (entryIndex) {
+            List<DownloadQueueEntry> candidates = entryIndex.get(entry.getApp().getMvnCoordinates());
+            if (candidates == null)
+                return;
+
+            candidates.remove(entry);
+            if (candidates.isEmpty())
+                entryIndex.remove(entry.getApp().getMvnCoordinates());
         }
     }
 
-    @Override
-    public DownloadQueueEntry set(int index, DownloadQueueEntry element) {
-        checkShutdown();
-        DownloadQueueEntry res = super.set(index, element);
-        updateQueueCount();
-        monitorThreadCount();
-        return res;
+    /**
+     * Appends the specified entry to the end of the queue.
+     *
+     * @param entry The entry to download
+     * @return {@code true}
+     * @throws RejectedExecutionException If the queue is shutting down
+     */
+    public boolean add(DownloadQueueEntry entry) {
+        addLast(entry);
+        return true;
     }
 
-    @Override
-    public DownloadQueueEntry removeFirst() {
-        DownloadQueueEntry res = super.removeFirst();
-        updateQueueCount();
-        monitorThreadCount();
-        return res;
+    /**
+     * Inserts the specified entry in front of all entries that the {@link #getSchedulingPolicy()} considers equal to it.
+     * With the {@link DownloadSchedulingPolicy#FIFO} policy, the entry is downloaded as soon as a worker is available.
+     *
+     * @param entry The entry to download
+     * @throws RejectedExecutionException If the queue is shutting down
+     */
+    public void addFirst(DownloadQueueEntry entry) {
+        add(entry, true);
     }
 
-    @Override
-    public DownloadQueueEntry poll() {
-        DownloadQueueEntry res = super.poll();
-        updateQueueCount();
-        monitorThreadCount();
-        return res;
+    /**
+     * Appends the specified entry to the end of the queue.
+     *
+     * @param entry The entry to download
+     * @throws RejectedExecutionException If the queue is shutting down
+     */
+    public void addLast(DownloadQueueEntry entry) {
+        add(entry, false);
     }
 
-    @Override
-    public DownloadQueueEntry pollFirst() {
-        DownloadQueueEntry res = super.pollFirst();
-        updateQueueCount();
-        monitorThreadCount();
-        return res;
+    /**
+     * Appends all specified entries to the end of the queue.
+     *
+     * @param c The entries to download
+     * @return {@code true} if the queue changed
+     * @throws RejectedExecutionException If the queue is shutting down
+     */
+    public boolean addAll(Collection<? extends DownloadQueueEntry> c) {
+        for (DownloadQueueEntry entry : c) {
+            addLast(entry);
+        }
+        return !c.isEmpty();
     }
 
-    @Override
-    public DownloadQueueEntry pollLast() {
-        DownloadQueueEntry res = super.pollLast();
-        updateQueueCount();
-        monitorThreadCount();
-        return res;
+    private void add(DownloadQueueEntry entry, boolean first) {
+        checkShutdown();
+
+        if (entry.getApp() != null) {
+            DownloadQueueEntry equivalentEntry;
+            synchronized (entryIndex) {
+                equivalentEntry = getEquivalentEntry(entry);
+                if (equivalentEntry == null)
+                    entryIndex.computeIfAbsent(entry.getApp().getMvnCoordinates(), coordinates -> new ArrayList<>(1)).add(entry);
+            }
+
+            if (equivalentEntry != null) {
+                if (coalesce(equivalentEntry, entry, first))
+                    return;
+
+                // the equivalent entry is done already, so the new entry is processed on its own
+                synchronized (entryIndex) {
+                    entryIndex.computeIfAbsent(entry.getApp().getMvnCoordinates(), coordinates -> new ArrayList<>(1)).add(entry);
+                }
+            }
+        }
+
+        enqueue(new QueuedEntry(entry, first ? firstSequenceNumber.decrementAndGet() : lastSequenceNumber.incrementAndGet()));
     }
 
-    @Override
-    public DownloadQueueEntry pop() {
-        DownloadQueueEntry res = super.pop();
-        updateQueueCount();
-        monitorThreadCount();
-        return res;
+    /**
+     * Merges the specified new entry into an unfinished entry that downloads the same artifact.
+     *
+     * @param existingEntry The entry that is already waiting or running
+     * @param newEntry      The entry that was just added
+     * @param first         {@code true} if the new entry was added using {@link #addFirst(DownloadQueueEntry)}
+     * @return {@code false} if the new entry wants to launch the app but the worker of the existing entry already
+     * decided not to launch it, in that case the new entry needs to be processed on its own
+     */
+    private boolean coalesce(DownloadQueueEntry existingEntry, DownloadQueueEntry newEntry, boolean first) {
+        if (!newEntry.isLaunchAfterDownload() || existingEntry.isLaunchAfterDownload()) {
+            FOKLogger.info(DownloadQueue.class.getName(), "Coalescing the download of " + newEntry.getApp().getName() + " with an entry that is already in the queue");
+            existingEntry.attachGui(newEntry.getGui());
+            return true;
+        }
+
+        if (!requestLaunch(existingEntry, first, newEntry.getStartupArgs()))
+            return false;
+
+        FOKLogger.info(DownloadQueue.class.getName(), "Coalescing the download and launch of " + newEntry.getApp().getName() + " with an entry that is already in the queue");
+        existingEntry.attachGui(newEntry.getGui());
+        return true;
     }
 
-    @Override
-    public DownloadQueueEntry remove() {
-        DownloadQueueEntry res = super.remove();
-        updateQueueCount();
-        monitorThreadCount();
-        return res;
+    /**
+     * Asks the specified entry, which is already in this queue, to launch the app once its download is done. The entry
+     * is moved in front of all entries that the {@link #getSchedulingPolicy()} considers equal to it and a background
+     * download is paused if necessary, just like for an entry that was added using {@link #addFirst(DownloadQueueEntry)}.
+     *
+     * @param entry       The entry that shall launch the app
+     * @param startupArgs The arguments to launch the app with
+     * @return {@code false} if the worker of the entry already decided not to launch the app. In that case, the caller
+     * needs to add a new entry to launch the app.
+     */
+    public boolean requestLaunch(DownloadQueueEntry entry, String... startupArgs) {
+        return requestLaunch(entry, true, startupArgs);
+    }
+
+    private boolean requestLaunch(DownloadQueueEntry entry, boolean first, String... startupArgs) {
+        synchronized (entriesLock) {
+            // The launch flag is part of the sort key, so the entry must not be inside the priority queue while it changes
+            QueuedEntry queuedEntry = null;
+            for (QueuedEntry candidate : entries) {
+                if (candidate.getEntry() == entry) {
+                    queuedEntry = candidate;
+                    break;
+                }
+            }
+            boolean removed = queuedEntry != null && entries.remove(queuedEntry);
+
+            boolean launchRequested = entry.requestLaunch(startupArgs);
+            if (removed) {
+                // The user waits for the entry now, so move it forward if requested
+                entries.add(launchRequested && first ? new QueuedEntry(entry, firstSequenceNumber.decrementAndGet()) : queuedEntry);
+            }
+
+            if (!launchRequested)
+                return false;
+        }
+
+        preemptBackgroundDownloadIfNecessary(entry);
+        return true;
     }
 
-    @Override
-    public DownloadQueueEntry remove(int index) {
-        DownloadQueueEntry res = super.remove(index);
+    private void enqueue(QueuedEntry queuedEntry) {
+        unfinishedEntryCount.incrementAndGet();
+        queuedEntry.getEntry().getProgressDialog().enqueued();
+        entries.add(queuedEntry);
         updateQueueCount();
-        monitorThreadCount();
-        return res;
+
+        preemptBackgroundDownloadIfNecessary(queuedEntry.getEntry());
+        if (getSchedulingPolicy().requiresExpectedDownloadSize() && queuedEntry.getEntry().getExpectedDownloadSize() < 0)
+            determineExpectedDownloadSize(queuedEntry);
     }
 
-    @Override
-    public boolean remove(Object o) {
-        boolean res = super.remove(o);
-        updateQueueCount();
-        monitorThreadCount();
-        return res;
+    private int compareQueuedEntries(QueuedEntry entry1, QueuedEntry entry2) {
+        int res = getSchedulingPolicy().compare(entry1.getEntry(), entry2.getEntry());
+        if (res != 0)
+            return res;
+        return Long.compare(entry1.getSequenceNumber(), entry2.getSequenceNumber());
     }
 
-    @Override
-    public boolean add(DownloadQueueEntry entry) {
-        checkShutdown();
-        boolean res = super.add(entry);
-        if (entry.getGui() != null)
-            entry.getGui().enqueued();
-        updateQueueCount();
-        monitorThreadCount();
-        return res;
+    /**
+     * Pauses a running background download if all workers are busy and the specified entry is to be launched after the download.
+     * Due to the pause, the queue starts an additional worker which picks the new entry up.
+     *
+     * @param entry The entry that was just added
+     */
+    private void preemptBackgroundDownloadIfNecessary(DownloadQueueEntry entry) {
+        if (!isPreemptionEnabled() || !entry.isLaunchAfterDownload())
+            return;
+
+        for (DownloadThread thread : threadPool) {
+            if (!thread.isBusy() && !thread.isShutdownAfterDownload())
+                return; // an idle worker will take the entry
+        }
+
+        for (DownloadThread thread : threadPool) {
+            DownloadQueueEntry runningEntry = thread.getCurrentEntry();
+            if (runningEntry != null && !runningEntry.isLaunchAfterDownload() && !runningEntry.getApp().isDownloadPaused()) {
+                FOKLogger.info(DownloadQueue.class.getName(), "Pausing the background download of " + runningEntry.getApp().getName() + " in favour of " + entry.getApp().getName());
+                preemptedEntries.add(runningEntry);
+                runningEntry.getApp().pauseDownload();
+                return;
+            }
+        }
     }
 
-    @Override
-    public DownloadQueueEntry removeLast() {
-        DownloadQueueEntry res = super.removeLast();
-        updateQueueCount();
-        monitorThreadCount();
-        return res;
+    private void resumePreemptedDownload() {
+        DownloadQueueEntry preemptedEntry = preemptedEntries.poll();
+        if (preemptedEntry == null)
+            return;
+
+        FOKLogger.info(DownloadQueue.class.getName(), "Resuming the background download of " + preemptedEntry.getApp().getName());
+        preemptedEntry.getApp().resumeDownload();
     }
 
-    @Override
-    public boolean addAll(Collection<? extends DownloadQueueEntry> c) {
-        checkShutdown();
-        boolean res = super.addAll(c);
-        for (DownloadQueueEntry entry : c) {
-            if (entry.getGui() != null)
-                entry.getGui().enqueued();
+    /**
+     * Determines the download size of the specified entry in the background and re-sorts the queue once the size is known.
+     *
+     * @param queuedEntry The entry to determine the size of
+     */
+    private void determineExpectedDownloadSize(QueuedEntry queuedEntry) {
+        try {
+            getPreflightExecutor().execute(() -> {
+                long expectedDownloadSize;
+                try {
+                    preflightPermits.acquire();
+                } catch (InterruptedException e) {
+                    // the queue is shutting down
+                    return;
+                }
+                try {
+                    expectedDownloadSize = fetchExpectedDownloadSize(queuedEntry.getEntry());
+                } finally {
+                    preflightPermits.release();
+                }
+                // The priority queue does not notice changes of the sort key, so the entry needs to be re-inserted.
+                // If a worker took the entry in the meantime, the size is only informative.
+                synchronized (entriesLock) {
+                    boolean removed = entries.remove(queuedEntry);
+                    queuedEntry.getEntry().setExpectedDownloadSize(expectedDownloadSize);
+                    if (removed)
+                        entries.add(queuedEntry);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            FOKLogger.log(DownloadQueue.class.getName(), Level.FINE, "Preflight executor is shut down, not determining the download size", e);
         }
-        updateQueueCount();
-        monitorThreadCount();
-        return res;
     }
 
-    @Override
-    public boolean addAll(int index, Collection<? extends DownloadQueueEntry> c) {
-        checkShutdown();
-        boolean res = super.addAll(index, c);
-        for (DownloadQueueEntry entry : c) {
-            if (entry.getGui() != null)
-                entry.getGui().enqueued();
+    private long fetchExpectedDownloadSize(DownloadQueueEntry entry) {
+        if (entry.isDisableDownload())
+            return 0;
+
+        App app = entry.getApp();
+        try {
+            Version version = entry.getVersionToDownload();
+            if (version == null)
+                version = entry.isEnableSnapshots() ? app.getLatestOnlineSnapshotVersion() : app.getLatestOnlineVersion();
+
+            if (app.isPresentOnHardDrive(version))
+                return 0;
+            return app.getArtifactSize(version);
+        } catch (JDOMException | IOException | RuntimeException e) {
+            FOKLogger.log(DownloadQueue.class.getName(), Level.INFO, "Unable to determine the download size of " + app.getName(), e);
+            return -1;
         }
-        updateQueueCount();
-        monitorThreadCount();
-        return res;
     }
 
-    @Override
-    public boolean offer(DownloadQueueEntry app) {
-        boolean res = super.offer(app);
-        updateQueueCount();
-        monitorThreadCount();
-        return res;
+    private synchronized ExecutorService getPreflightExecutor() {
+        if (preflightExecutor == null) {
+            preflightExecutor = BlockingTasks.newThreadPerTaskExecutor("downloadSizePreflightThread-");
+        }
+        return preflightExecutor;
     }
 
-    @Override
-    public boolean offerFirst(DownloadQueueEntry app) {
-        boolean res = super.offerFirst(app);
-        updateQueueCount();
-        monitorThreadCount();
+    /**
+     * Removes the specified entry from the queue if it did not start yet.
+     *
+     * @param entry The entry to remove
+     * @return {@code true} if the entry was waiting in the queue and was removed
+     */
+    public boolean remove(DownloadQueueEntry entry) {
+        boolean res;
+        synchronized (entriesLock) {
+            res = entries.removeIf(queuedEntry -> queuedEntry.getEntry() == entry);
+        }
+        if (res) {
+            removeFromIndex(entry);
+            unfinishedEntryCount.decrementAndGet();
+            updateQueueCount();
+        }
         return res;
     }
 
-    @Override
-    public boolean offerLast(DownloadQueueEntry app) {
-        boolean res = super.offerLast(app);
+    /**
+     * Removes all entries that did not start yet. Running downloads are not affected.
+     */
+    public void clear() {
+        List<QueuedEntry> removedEntries = new ArrayList<>();
+        synchronized (entriesLock) {
+            entries.drainTo(removedEntries);
+        }
+        for (QueuedEntry removedEntry : removedEntries) {
+            removeFromIndex(removedEntry.getEntry());
+        }
+        unfinishedEntryCount.addAndGet(-removedEntries.size());
         updateQueueCount();
-        monitorThreadCount();
-        return res;
     }
 
-    @Override
-    public boolean removeAll(@NotNull Collection<?> c) {
-        boolean res = super.removeAll(c);
-        updateQueueCount();
-        monitorThreadCount();
-        return res;
+    /**
+     * Returns the number of entries that wait for a worker.
+     *
+     * @return The number of entries that wait for a worker.
+     */
+    public int size() {
+        return entries.size();
     }
 
-    @Override
-    public boolean removeFirstOccurrence(Object o) {
-        boolean res = super.removeFirstOccurrence(o);
-        updateQueueCount();
-        monitorThreadCount();
-        return res;
+    public boolean isEmpty() {
+        return entries.isEmpty();
     }
 
-    @Override
-    public boolean removeLastOccurrence(Object o) {
-        boolean res = super.removeLastOccurrence(o);
+    /**
+     * Blocks until an entry is available and removes it from the queue. Called by the {@link DownloadThread}s.
+     *
+     * @return The next entry to download
+     * @throws InterruptedException If the calling worker is interrupted while waiting, e. g. because it is retired.
+     */
+    DownloadQueueEntry takeNextEntry() throws InterruptedException {
+        DownloadQueueEntry res = entries.take().getEntry();
         updateQueueCount();
-        monitorThreadCount();
         return res;
     }
 
-    @Override
-    public boolean removeIf(Predicate<? super DownloadQueueEntry> filter) {
-        boolean res = super.removeIf(filter);
+    /**
+     * Called by the {@link DownloadThread}s after they finished working on an entry, regardless of whether it succeeded.
+     *
+     * @param entry The entry that was finished
+     */
+    void entryFinished(DownloadQueueEntry entry) {
+        removeFromIndex(entry);
+        unfinishedEntryCount.decrementAndGet();
+        preemptedEntries.remove(entry);
+        if (entry.isLaunchAfterDownload())
+            resumePreemptedDownload();
         updateQueueCount();
-        monitorThreadCount();
-        return res;
     }
 
-    @Override
-    public boolean retainAll(@NotNull Collection<?> c) {
-        boolean res = super.retainAll(c);
+    /**
+     * Called by the {@link DownloadThread}s when the download they are currently working on was paused or resumed.
+     * Paused downloads do not count against the {@link #getParallelDownloadCount()}, so additional threads are started
+     * while downloads are paused.
+     */
+    void downloadPausedStateChanged() {
         updateQueueCount();
         monitorThreadCount();
-        return res;
     }
 
-    @Override
-    public void add(int index, DownloadQueueEntry element) {
-        checkShutdown();
-        super.add(index, element);
-        if (element.getGui() != null)
-            element.getGui().enqueued();
-        updateQueueCount();
-        monitorThreadCount();
+    /**
+     * Called by a {@link DownloadThread} right before it terminates.
+     *
+     * @param thread The thread that terminates
+     */
+    void threadTerminated(DownloadThread thread) {
+        threadPool.remove(thread);
     }
 
-    @Override
-    public void addFirst(DownloadQueueEntry entry) {
-        checkShutdown();
-        super.addFirst(entry);
-        if (entry.getGui() != null)
-            entry.getGui().enqueued();
-        updateQueueCount();
-        monitorThreadCount();
-    }
+    private synchronized void monitorThreadCount() {
+        if (isShutdown() && getCurrentTotalDownloadCount() == 0)
+            return;
 
-    @Override
-    public void addLast(DownloadQueueEntry entry) {
-        checkShutdown();
-        if (entry.getGui() != null)
-            entry.getGui().enqueued();
-        super.addLast(entry);
-        updateQueueCount();
-        monitorThreadCount();
-    }
+        // add new threads if we are below the desired number of parallel downloads, paused downloads don't count
+        int parallelDownloadCountCopy = getParallelDownloadCount();
+        int numberOfActiveThreads = getNumberOfActiveThreads();
+        while (numberOfActiveThreads < parallelDownloadCountCopy) {
+            DownloadThread thread = new DownloadThread(this);
+            threadPool.add(thread);
+            thread.start();
+            numberOfActiveThreads++;
+        }
 
-    private void checkShutdown() {
-        if (isShutdown())
-            throw new RejectedExecutionException("Download queue is shutting down");
-    }
+        // shut threads down if we have too many, idle threads first
+        int numberOfThreadsToShutDown = numberOfActiveThreads - parallelDownloadCountCopy;
+        for (int pass = 0; pass < 2 && numberOfThreadsToShutDown > 0; pass++) {
+            boolean idleThreadsOnly = pass == 0;
+            for (DownloadThread downloadThread : threadPool) {
+                if (numberOfThreadsToShutDown <= 0)
+                    break;
+                if (downloadThread.isShutdownAfterDownload() || downloadThread.isPaused() || (idleThreadsOnly && downloadThread.isBusy()))
+                    continue;
 
-    @Override
-    public void clear() {
-        super.clear();
-        updateQueueCount();
-        monitorThreadCount();
+                downloadThread.retire();
+                numberOfThreadsToShutDown--;
+            }
+        }
     }
 
-    @Override
-    public void push(DownloadQueueEntry app) {
-        super.push(app);
-        updateQueueCount();
-        monitorThreadCount();
+    private synchronized void retireAllThreads() {
+        for (DownloadThread downloadThread : threadPool) {
+            downloadThread.retire();
+        }
+        if (preflightExecutor != null)
+            preflightExecutor.shutdownNow();
+        setAdaptiveParallelDownloadCount(false);
     }
 
-    synchronized void updateQueueCount() {
-        currentQueueCount.set(size());
-        currentTotalDownloadCount.set(size() + getNumberOfCurrentlyRunningDownloads());
+    void updateQueueCount() {
+        // the properties are read by the gui thread while the workers update them
+        synchronized (currentQueueCount) {
+            currentQueueCount.set(entries.size());
+            currentTotalDownloadCount.set(unfinishedEntryCount.get());
+            currentPausedDownloadCount.set(getNumberOfPausedThreads());
+        }
     }
 
     public int getNumberOfCurrentlyRunningDownloads() {
@@ -355,6 +567,28 @@ public class DownloadQueue extends LinkedList<DownloadQueueEntry> {
         return res;
     }
 
+    private int getNumberOfPausedThreads() {
+        int res = 0;
+        for (DownloadThread downloadThread : threadPool) {
+            if (downloadThread.isPaused())
+                res++;
+        }
+        return res;
+    }
+
+    /**
+     * Returns the number of downloads that were started but are currently paused.
+     *
+     * @return The number of downloads that were started but are currently paused.
+     */
+    public int getCurrentPausedDownloadCount() {
+        return currentPausedDownloadCount.get();
+    }
+
+    public ReadOnlyIntegerProperty currentPausedDownloadCountProperty() {
+        return currentPausedDownloadCount;
+    }
+
     public int getCurrentQueueCount() {
         synchronized (currentQueueCount) {
             return currentQueueCount.get();
@@ -365,29 +599,195 @@ public class DownloadQueue extends LinkedList<DownloadQueueEntry> {
         return currentQueueCount;
     }
 
+    public DownloadSchedulingPolicy getSchedulingPolicy() {
+        return schedulingPolicy;
+    }
+
+    /**
+     * Sets the policy that decides in which order the waiting entries are processed. Entries that are already waiting are re-sorted.
+     *
+     * @param schedulingPolicy The policy to use
+     */
+    public synchronized void setSchedulingPolicy(DownloadSchedulingPolicy schedulingPolicy) {
+        if (schedulingPolicy == null)
+            throw new NullPointerException("schedulingPolicy must not be null");
+
+        // the priority queue cannot re-sort itself, so all waiting entries are re-inserted
+        List<QueuedEntry> waitingEntries = new ArrayList<>();
+        synchronized (entriesLock) {
+            entries.drainTo(waitingEntries);
+            this.schedulingPolicy = schedulingPolicy;
+            entries.addAll(waitingEntries);
+        }
+
+        if (schedulingPolicy.requiresExpectedDownloadSize()) {
+            for (QueuedEntry queuedEntry : waitingEntries) {
+                if (queuedEntry.getEntry().getExpectedDownloadSize() < 0)
+                    determineExpectedDownloadSize(queuedEntry);
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if entries that are launched after the download may pause running background downloads if all workers are busy.
+     *
+     * @return {@code true} if preemption is enabled.
+     */
+    public boolean isPreemptionEnabled() {
+        return preemptionEnabled;
+    }
+
+    public void setPreemptionEnabled(boolean preemptionEnabled) {
+        this.preemptionEnabled = preemptionEnabled;
+    }
+
     public int getParallelDownloadCount() {
-        return parallelDownloadCount;
+        return parallelDownloadCount.get();
     }
 
+    /**
+     * Sets the number of parallel downloads manually. This turns the adaptive mode off.
+     *
+     * @param parallelDownloadCount The number of downloads to run in parallel
+     */
     public void setParallelDownloadCount(int parallelDownloadCount) {
-        this.parallelDownloadCount = parallelDownloadCount;
+        setAdaptiveParallelDownloadCount(false);
+        applyParallelDownloadCount(parallelDownloadCount);
+    }
+
+    private synchronized void applyParallelDownloadCount(int parallelDownloadCount) {
+        this.parallelDownloadCount.set(parallelDownloadCount);
         monitorThreadCount();
     }
 
-    private synchronized void cleanThreadPoolUp() {
-        List<DownloadThread> threadsToRemove = new LinkedList<>();
-        for (DownloadThread downloadThread : threadPool) {
-            if (!downloadThread.isAlive())
-                threadsToRemove.add(downloadThread);
+    /**
+     * Returns the number of parallel downloads. The value changes on a background thread in adaptive mode.
+     *
+     * @return The number of parallel downloads.
+     */
+    public ReadOnlyIntegerProperty parallelDownloadCountProperty() {
+        return parallelDownloadCount;
+    }
+
+    public boolean isAdaptiveParallelDownloadCount() {
+        return adaptiveParallelDownloadCount.get();
+    }
+
+    /**
+     * Turns the adaptive mode on or off. In adaptive mode, the number of parallel downloads is increased as long as this
+     * increases the aggregate throughput and decreased when the throughput drops. The current
+     * {@link #getParallelDownloadCount()} is used as the starting point. Turning the adaptive mode off keeps the current value.
+     *
+     * @param adaptiveParallelDownloadCount {@code true} to turn the adaptive mode on
+     */
+    public synchronized void setAdaptiveParallelDownloadCount(boolean adaptiveParallelDownloadCount) {
+        if (adaptiveParallelDownloadCount == isAdaptiveParallelDownloadCount())
+            return;
+
+        this.adaptiveParallelDownloadCount.set(adaptiveParallelDownloadCount);
+        if (adaptiveParallelDownloadCount) {
+            concurrencyController = new AdaptiveConcurrencyController(getParallelDownloadCount(), 1, Math.max(getParallelDownloadCount(), getMaximumAdaptiveParallelDownloadCount()));
+            // discard the throughput measured in manual mode
+            throughputMeter.sample();
+            concurrencyControllerThread = BlockingTasks.startDaemon("downloadQueueConcurrencyControllerThread", this::runConcurrencyController);
+        } else {
+            concurrencyControllerThread.interrupt();
+            concurrencyControllerThread = null;
+            concurrencyController = null;
+        }
+    }
+
+    public ReadOnlyBooleanProperty adaptiveParallelDownloadCountProperty() {
+        return adaptiveParallelDownloadCount;
+    }
+
+    /**
+     * Samples the throughput periodically until the adaptive mode is turned off, which interrupts the calling thread.
+     */
+    private void runConcurrencyController() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(concurrencyControllerSampleIntervalInSeconds));
+                adaptParallelDownloadCount();
+            }
+        } catch (InterruptedException e) {
+            FOKLogger.fine(DownloadQueue.class.getName(), "Concurrency controller stopped");
+        }
+    }
+
+    private void adaptParallelDownloadCount() {
+        AdaptiveConcurrencyController controller;
+        synchronized (this) {
+            controller = concurrencyController;
+        }
+        if (controller == null)
+            return;
+
+        try {
+            double bytesPerSecond = throughputMeter.sample();
+            int newParallelDownloadCount = controller.onSample(bytesPerSecond, size());
+            if (newParallelDownloadCount == getParallelDownloadCount())
+                return;
+
+            FOKLogger.fine(DownloadQueue.class.getName(), "Adapting the number of parallel downloads to " + newParallelDownloadCount
+                    + " (aggregate throughput: " + Math.round(bytesPerSecond / 1024) + " KiB/s, per connection: "
+                    + Math.round(throughputMeter.getBytesPerSecondPerConnection() / 1024) + " KiB/s)");
+            synchronized (this) {
+                // the adaptive mode might have been turned off in the meantime
+                if (concurrencyController == controller)
+                    applyParallelDownloadCount(newParallelDownloadCount);
+            }
+        } catch (RuntimeException e) {
+            // an exception would stop the controller thread
+            FOKLogger.log(DownloadQueue.class.getName(), Level.SEVERE, "Unable to adapt the number of parallel downloads", e);
         }
+    }
+
+    /**
+     * Returns the upper bound for the number of parallel downloads in adaptive mode.
+     *
+     * @return The upper bound for the number of parallel downloads in adaptive mode.
+     */
+    public int getMaximumAdaptiveParallelDownloadCount() {
+        return maximumAdaptiveParallelDownloadCount;
+    }
+
+    /**
+     * Sets the upper bound for the number of parallel downloads in adaptive mode. Takes effect the next time the adaptive mode is turned on.
+     *
+     * @param maximumAdaptiveParallelDownloadCount The upper bound for the number of parallel downloads
+     */
+    public void setMaximumAdaptiveParallelDownloadCount(int maximumAdaptiveParallelDownloadCount) {
+        this.maximumAdaptiveParallelDownloadCount = maximumAdaptiveParallelDownloadCount;
+    }
+
+    /**
+     * Returns the meter that measures the throughput of all downloads of this queue.
+     *
+     * @return The meter that measures the throughput of all downloads of this queue.
+     */
+    public ThroughputMeter getThroughputMeter() {
+        return throughputMeter;
+    }
 
-        threadPool.removeAll(threadsToRemove);
+    /**
+     * Returns the limiter that all downloads of this queue share. Entries that are launched after the download count as
+     * interactive downloads, all others as background downloads.
+     *
+     * @return The bandwidth limiter of this queue
+     */
+    public BandwidthLimiter getBandwidthLimiter() {
+        return bandwidthLimiter;
     }
 
-    private int getNumberOfThreadsThatAreNotShuttingDown() {
+    /**
+     * Returns the number of threads that count against the {@link #getParallelDownloadCount()}: Threads that are neither
+     * retiring nor working on a paused download.
+     */
+    private int getNumberOfActiveThreads() {
         int res = 0;
         for (DownloadThread downloadThread : threadPool) {
-            if (!downloadThread.isShutdownAfterDownload())
+            if (!downloadThread.isShutdownAfterDownload() && !downloadThread.isPaused())
                 res++;
         }
         return res;
@@ -405,20 +805,37 @@ public class DownloadQueue extends LinkedList<DownloadQueueEntry> {
         return shutdown;
     }
 
+    /**
+     * Rejects new entries and lets the queued downloads finish. {@link #getOnShutdownCompleted()} is called and the
+     * workers are terminated once all downloads are done.
+     */
     public void shutdown() {
         this.shutdown = true;
+        // the queue might already be empty, in which case the listener would never fire
+        if (getCurrentTotalDownloadCount() == 0) {
+            retireAllThreads();
+            if (getOnShutdownCompleted() != null)
+                getOnShutdownCompleted().run();
+        }
     }
 
     public void shutdownAndCancelDownloads() {
         shutdown();
+        clear();
 
         for (DownloadThread thread : threadPool) {
-            if (thread.getCurrentEntry() != null) {
-                thread.getCurrentEntry().getApp().cancelDownloadAndLaunch(thread.getCurrentEntry().getGui());
+            DownloadQueueEntry currentEntry = thread.getCurrentEntry();
+            if (currentEntry != null) {
+                currentEntry.getApp().cancelDownloadAndLaunch(currentEntry.getProgressDialog());
             }
         }
     }
 
+    private void checkShutdown() {
+        if (isShutdown())
+            throw new RejectedExecutionException("Download queue is shutting down");
+    }
+
     public Runnable getOnShutdownCompleted() {
         return onShutdownCompleted.get();
     }
@@ -442,4 +859,25 @@ public class DownloadQueue extends LinkedList<DownloadQueueEntry> {
     public ObjectProperty<Runnable> onEmptyProperty() {
         return onEmpty;
     }
+
+    /**
+     * An entry waiting in the queue together with its position relative to the other entries that the policy considers equal.
+     */
+    private static class QueuedEntry {
+        private final DownloadQueueEntry entry;
+        private final long sequenceNumber;
+
+        QueuedEntry(DownloadQueueEntry entry, long sequenceNumber) {
+            this.entry = entry;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        DownloadQueueEntry getEntry() {
+            return entry;
+        }
+
+        long getSequenceNumber() {
+            return sequenceNumber;
+        }
+    }
 }
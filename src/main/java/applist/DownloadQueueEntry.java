@@ -24,14 +24,24 @@ package applist;
 import com.github.vatbub.common.updater.Version;
 import view.HidableProgressDialogWithEnqueuedNotification;
 
+import java.util.Collections;
+import java.util.List;
+
 public class DownloadQueueEntry {
+    private final ProgressDialogGroup progressDialog = new ProgressDialogGroup();
     private App app;
     private HidableProgressDialogWithEnqueuedNotification gui;
     private Version versionToDownload;
     private boolean enableSnapshots;
+    /**
+     * Written by the {@link DownloadQueue} when a launch request is coalesced into this entry while a worker might
+     * process it, so the launch fields are guarded by the lock of this entry
+     */
     private boolean launchAfterDownload;
     private String[] startupArgs;
+    private boolean launchDecided;
     private boolean disableDownload;
+    private volatile long expectedDownloadSize = -1;
 
     public DownloadQueueEntry(String... startupArgs) {
         this(null, startupArgs);
@@ -91,7 +101,40 @@ public class DownloadQueueEntry {
     }
 
     public void setGui(HidableProgressDialogWithEnqueuedNotification gui) {
+        if (this.gui != null)
+            progressDialog.remove(this.gui);
         this.gui = gui;
+        if (gui != null)
+            progressDialog.add(gui);
+    }
+
+    /**
+     * Returns the dialog that forwards the progress of this entry to its {@link #getGui()} and all guis attached using {@link #attachGui(HidableProgressDialogWithEnqueuedNotification)}.
+     *
+     * @return The dialog to report the progress of this entry to. Never {@code null}.
+     */
+    public HidableProgressDialogWithEnqueuedNotification getProgressDialog() {
+        return progressDialog;
+    }
+
+    /**
+     * Attaches an additional gui to this entry. The gui immediately receives all notifications that were sent so far.
+     * Used by the {@link DownloadQueue} when a request for the same download is coalesced into this entry.
+     *
+     * @param gui The gui to attach
+     */
+    public void attachGui(HidableProgressDialogWithEnqueuedNotification gui) {
+        if (gui != null && !progressDialog.contains(gui))
+            progressDialog.add(gui);
+    }
+
+    /**
+     * Returns all guis that receive the progress of this entry, including {@link #getGui()}.
+     *
+     * @return All guis that receive the progress of this entry.
+     */
+    public List<HidableProgressDialogWithEnqueuedNotification> getAttachedGuis() {
+        return Collections.unmodifiableList(progressDialog.getDialogs());
     }
 
     public Version getVersionToDownload() {
@@ -110,22 +153,48 @@ public class DownloadQueueEntry {
         this.enableSnapshots = enableSnapshots;
     }
 
-    public boolean isLaunchAfterDownload() {
+    public synchronized boolean isLaunchAfterDownload() {
         return launchAfterDownload;
     }
 
-    public void setLaunchAfterDownload(boolean launchAfterDownload) {
+    public synchronized void setLaunchAfterDownload(boolean launchAfterDownload) {
         this.launchAfterDownload = launchAfterDownload;
     }
 
-    public String[] getStartupArgs() {
+    public synchronized String[] getStartupArgs() {
         return startupArgs;
     }
 
-    public void setStartupArgs(String... startupArgs) {
+    public synchronized void setStartupArgs(String... startupArgs) {
         this.startupArgs = startupArgs;
     }
 
+    /**
+     * Asks this entry to launch the app with the specified arguments once the download is done. Fails if the worker
+     * already decided whether to launch the app (see {@link #decideLaunch()}).
+     *
+     * @param startupArgs The arguments to launch the app with
+     * @return {@code true} if the app will be launched, {@code false} if the request came too late
+     */
+    synchronized boolean requestLaunch(String... startupArgs) {
+        if (launchDecided)
+            return false;
+
+        setStartupArgs(startupArgs);
+        setLaunchAfterDownload(true);
+        return true;
+    }
+
+    /**
+     * Called by the worker once the download is done. Subsequent calls to {@link #requestLaunch(String...)} fail.
+     *
+     * @return {@code true} if the app shall be launched
+     */
+    synchronized boolean decideLaunch() {
+        launchDecided = true;
+        return isLaunchAfterDownload();
+    }
+
     public boolean isDisableDownload() {
         return disableDownload;
     }
@@ -133,4 +202,18 @@ public class DownloadQueueEntry {
     public void setDisableDownload(boolean disableDownload) {
         this.disableDownload = disableDownload;
     }
+
+    /**
+     * Returns the number of bytes that need to be downloaded for this entry or {@code -1} if the size is unknown.
+     * The size is determined by the {@link DownloadQueue} if its {@link DownloadSchedulingPolicy} requires it.
+     *
+     * @return The number of bytes that need to be downloaded for this entry or {@code -1} if the size is unknown.
+     */
+    public long getExpectedDownloadSize() {
+        return expectedDownloadSize;
+    }
+
+    void setExpectedDownloadSize(long expectedDownloadSize) {
+        this.expectedDownloadSize = expectedDownloadSize;
+    }
 }
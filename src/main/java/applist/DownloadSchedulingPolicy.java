@@ -0,0 +1,73 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.Comparator;
+
+/**
+ * Decides in which order the {@link DownloadQueue} processes the waiting entries. Entries that compare equal are processed
+ * in the order they were added ({@link DownloadQueue#addFirst(DownloadQueueEntry)} puts an entry in front of all entries
+ * that compare equal to it).
+ */
+public interface DownloadSchedulingPolicy extends Comparator<DownloadQueueEntry> {
+    /**
+     * Processes the entries in the order they were added.
+     */
+    DownloadSchedulingPolicy FIFO = (entry1, entry2) -> 0;
+
+    /**
+     * Processes the entries that the user wants to launch ({@link DownloadQueueEntry#isLaunchAfterDownload()}) before background downloads.
+     */
+    DownloadSchedulingPolicy LAUNCH_FIRST = (entry1, entry2) -> Boolean.compare(entry2.isLaunchAfterDownload(), entry1.isLaunchAfterDownload());
+
+    /**
+     * Processes the entries that the user wants to launch first and the smallest downloads first within each group.
+     * The size is determined using a HEAD request before the entry is processed, entries of unknown size come last.
+     */
+    DownloadSchedulingPolicy SHORTEST_JOB_FIRST = new DownloadSchedulingPolicy() {
+        @Override
+        public int compare(DownloadQueueEntry entry1, DownloadQueueEntry entry2) {
+            int res = LAUNCH_FIRST.compare(entry1, entry2);
+            if (res != 0)
+                return res;
+            return Long.compare(getSortableSize(entry1), getSortableSize(entry2));
+        }
+
+        private long getSortableSize(DownloadQueueEntry entry) {
+            return entry.getExpectedDownloadSize() < 0 ? Long.MAX_VALUE : entry.getExpectedDownloadSize();
+        }
+
+        @Override
+        public boolean requiresExpectedDownloadSize() {
+            return true;
+        }
+    };
+
+    /**
+     * Returns {@code true} if the queue needs to determine {@link DownloadQueueEntry#getExpectedDownloadSize()} for this policy.
+     *
+     * @return {@code true} if the queue needs to determine the download size of the entries.
+     */
+    default boolean requiresExpectedDownloadSize() {
+        return false;
+    }
+}
@@ -23,40 +23,34 @@ package applist;
 
 import com.github.vatbub.common.core.logging.FOKLogger;
 import com.github.vatbub.common.updater.Version;
+import javafx.beans.value.ChangeListener;
 import org.apache.commons.lang.exception.ExceptionUtils;
 
 import java.io.IOException;
 import java.net.UnknownHostException;
-import java.util.NoSuchElementException;
 import java.util.logging.Level;
 
-import static org.awaitility.Awaitility.await;
-
+/**
+ * A worker of a {@link DownloadQueue}. Runs on a virtual thread if supported (see {@link BlockingTasks}).
+ */
 @SuppressWarnings("BooleanMethodIsAlwaysInverted")
-public class DownloadThread extends Thread {
+public class DownloadThread implements Runnable {
     private static int downloadThreadCounter = 0;
-    private boolean shutdownAfterDownload;
+    private final String name;
+    private Thread thread;
+    private volatile boolean shutdownAfterDownload;
+    private final Object idleLock = new Object();
+    private boolean idle;
     private DownloadQueue queue;
     private volatile DownloadQueueEntry currentEntry;
+    private final ChangeListener<Boolean> downloadPausedListener = (observable, oldValue, newValue) -> getQueue().downloadPausedStateChanged();
 
     public DownloadThread(DownloadQueue queue) {
-        this(null, queue);
-    }
-
-    public DownloadThread(ThreadGroup group, DownloadQueue queue) {
-        this(group, queue, "DownloadThread-" + getNextDownloadTreadCounter());
+        this(queue, "DownloadThread-" + getNextDownloadTreadCounter());
     }
 
     public DownloadThread(DownloadQueue queue, String name) {
-        this(null, queue, name);
-    }
-
-    public DownloadThread(ThreadGroup group, DownloadQueue queue, String name) {
-        this(group, queue, name, 0);
-    }
-
-    public DownloadThread(ThreadGroup group, DownloadQueue queue, String name, long stackSize) {
-        super(group, null, name, stackSize);
+        this.name = name;
         setQueue(queue);
     }
 
@@ -72,69 +66,131 @@ public class DownloadThread extends Thread {
         this.shutdownAfterDownload = shutdownAfterDownload;
     }
 
+    /**
+     * Starts this worker on a new thread.
+     *
+     * @throws IllegalStateException If the worker was already started
+     */
+    public synchronized void start() {
+        if (thread != null)
+            throw new IllegalStateException("DownloadThread " + getName() + " was already started");
+        thread = BlockingTasks.startDaemon(getName(), this);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the thread this worker runs on.
+     *
+     * @return The thread this worker runs on or {@code null} if the worker was not started yet.
+     */
+    public synchronized Thread getThread() {
+        return thread;
+    }
+
+    /**
+     * Marks this thread to terminate after its current download. If the thread is idle, it is woken up and terminates immediately.
+     */
+    void retire() {
+        synchronized (idleLock) {
+            setShutdownAfterDownload(true);
+            Thread threadCopy = getThread();
+            if (idle && threadCopy != null)
+                threadCopy.interrupt();
+        }
+    }
+
     @Override
     public void run() {
-        while (getQueue().getCurrentQueueCount() > 0 && !isShutdownAfterDownload()) {
-            try {
-                setCurrentEntry(getQueue().removeFirst());
-                boolean cont = true;
+        try {
+            while (!isShutdownAfterDownload()) {
+                DownloadQueueEntry entry;
+                synchronized (idleLock) {
+                    idle = true;
+                }
+                try {
+                    entry = getQueue().takeNextEntry();
+                } catch (InterruptedException e) {
+                    // woken up by retire(), check the shutdown flag again
+                    continue;
+                } finally {
+                    synchronized (idleLock) {
+                        idle = false;
+                        // an interrupt meant for the idle thread must not abort the download
+                        //noinspection ResultOfMethodCallIgnored
+                        Thread.interrupted();
+                    }
+                }
 
-                Version versionToDownload = getCurrentEntry().getApp().getCurrentlyInstalledVersion(getCurrentEntry().isEnableSnapshots());
                 try {
-                    if (!getCurrentEntry().isDisableDownload()) {
-                        if (getCurrentEntry().getVersionToDownload() == null) {
-                            // download latest
-                            if (getCurrentEntry().isEnableSnapshots()) {
-                                versionToDownload = getCurrentEntry().getApp().getLatestOnlineSnapshotVersion();
-                            } else {
-                                versionToDownload = getCurrentEntry().getApp().getLatestOnlineVersion();
-                            }
-                        } else {
-                            versionToDownload = getCurrentEntry().getVersionToDownload();
-                        }
+                    setCurrentEntry(entry);
+                    processCurrentEntry();
+                } finally {
+                    // launch requests that arrive from now on are not coalesced into this entry anymore
+                    entry.decideLaunch();
+                    setCurrentEntry(null);
+                    getQueue().entryFinished(entry);
+                }
+            }
+        } finally {
+            getQueue().threadTerminated(this);
+        }
+    }
 
-                        Version finalVersionToDownload = versionToDownload;
-                        await().until(() -> !getCurrentEntry().getApp().getLockFile(finalVersionToDownload).isLocked());
+    private void processCurrentEntry() {
+        try {
+            boolean cont = true;
 
-                        if (!getCurrentEntry().getApp().isPresentOnHardDrive(versionToDownload)) {
-                            cont = getCurrentEntry().getApp().download(versionToDownload, getCurrentEntry().getGui());
+            Version versionToDownload = getCurrentEntry().getApp().getCurrentlyInstalledVersion(getCurrentEntry().isEnableSnapshots());
+            try {
+                if (!getCurrentEntry().isDisableDownload()) {
+                    if (getCurrentEntry().getVersionToDownload() == null) {
+                        // download latest
+                        if (getCurrentEntry().isEnableSnapshots()) {
+                            versionToDownload = getCurrentEntry().getApp().getLatestOnlineSnapshotVersion();
+                        } else {
+                            versionToDownload = getCurrentEntry().getApp().getLatestOnlineVersion();
                         }
+                    } else {
+                        versionToDownload = getCurrentEntry().getVersionToDownload();
                     }
-                } catch (UnknownHostException e) {
-                    FOKLogger.log(DownloadThread.class.getName(), Level.SEVERE, FOKLogger.DEFAULT_ERROR_TEXT, e);
-                }
 
-                // Execute only if not cancelled by user
-                if (cont) {
-                    if (getCurrentEntry().isLaunchAfterDownload()) {
-                        final DownloadQueueEntry currentEntryCopy = getCurrentEntry();
-                        final Version finalVersionToDownload = versionToDownload;
-                        new Thread(() -> {
-                            try {
-                                currentEntryCopy.getApp().launch(currentEntryCopy.getGui(), finalVersionToDownload, currentEntryCopy.getStartupArgs());
-                            } catch (IOException e) {
-                                FOKLogger.log(DownloadThread.class.getName(), Level.SEVERE, "Unable to launch the app", e);
-                                if (currentEntryCopy.getGui() != null) {
-                                    currentEntryCopy.getGui().showErrorMessage("Unable to launch the app " + currentEntryCopy.getApp().getName() + "\n" + ExceptionUtils.getStackTrace(e));
-                                }
-                            }
-                        }).start();
-                    }
+                    // another thread or launcher instance might be downloading the same version
+                    getCurrentEntry().getApp().getLockFile(versionToDownload).awaitUnlocked();
 
-                    if (getCurrentEntry().getGui() != null) {
-                        getCurrentEntry().getGui().hide();
+                    if (!getCurrentEntry().getApp().isPresentOnHardDrive(versionToDownload)) {
+                        cont = getCurrentEntry().getApp().download(versionToDownload, getCurrentEntry().getProgressDialog(),
+                                TransferListener.combine(getQueue().getBandwidthLimiter().newDownload(getCurrentEntry().isLaunchAfterDownload()), getQueue().getThroughputMeter()));
                     }
                 }
-            } catch (NoSuchElementException e) {
-                FOKLogger.log(DownloadThread.class.getName(), Level.SEVERE, FOKLogger.DEFAULT_ERROR_TEXT, e);
-            } catch (Exception e) {
+            } catch (UnknownHostException e) {
                 FOKLogger.log(DownloadThread.class.getName(), Level.SEVERE, FOKLogger.DEFAULT_ERROR_TEXT, e);
-                getCurrentEntry().getGui().hide();
-                getCurrentEntry().getApp().fireLaunchedAppExits();
-                getCurrentEntry().getGui().showErrorMessage(e.toString());
-            } finally {
-                setCurrentEntry(null);
             }
+
+            // Execute only if not cancelled by user
+            if (cont) {
+                if (getCurrentEntry().decideLaunch()) {
+                    final DownloadQueueEntry currentEntryCopy = getCurrentEntry();
+                    final Version finalVersionToDownload = versionToDownload;
+                    BlockingTasks.start("launchThread-" + currentEntryCopy.getApp().getName(), () -> {
+                        try {
+                            currentEntryCopy.getApp().launch(currentEntryCopy.getProgressDialog(), finalVersionToDownload, currentEntryCopy.getStartupArgs());
+                        } catch (IOException e) {
+                            FOKLogger.log(DownloadThread.class.getName(), Level.SEVERE, "Unable to launch the app", e);
+                            currentEntryCopy.getProgressDialog().showErrorMessage("Unable to launch the app " + currentEntryCopy.getApp().getName() + "\n" + ExceptionUtils.getStackTrace(e));
+                        }
+                    });
+                }
+
+                getCurrentEntry().getProgressDialog().hide();
+            }
+        } catch (Exception e) {
+            FOKLogger.log(DownloadThread.class.getName(), Level.SEVERE, FOKLogger.DEFAULT_ERROR_TEXT, e);
+            getCurrentEntry().getProgressDialog().hide();
+            getCurrentEntry().getApp().fireLaunchedAppExits();
+            getCurrentEntry().getProgressDialog().showErrorMessage(e.toString());
         }
     }
 
@@ -150,11 +206,26 @@ public class DownloadThread extends Thread {
         return getCurrentEntry() != null;
     }
 
+    /**
+     * Returns {@code true} if this thread is working on a download that is currently paused.
+     *
+     * @return {@code true} if this thread is working on a download that is currently paused.
+     */
+    public boolean isPaused() {
+        DownloadQueueEntry currentEntryCopy = getCurrentEntry();
+        return currentEntryCopy != null && currentEntryCopy.getApp().isDownloadPaused();
+    }
+
     public DownloadQueueEntry getCurrentEntry() {
         return currentEntry;
     }
 
     private void setCurrentEntry(DownloadQueueEntry currentEntry) {
+        if (this.currentEntry != null)
+            this.currentEntry.getApp().downloadPausedProperty().removeListener(downloadPausedListener);
+        if (currentEntry != null)
+            currentEntry.getApp().downloadPausedProperty().addListener(downloadPausedListener);
+
         this.currentEntry = currentEntry;
         getQueue().updateQueueCount();
     }
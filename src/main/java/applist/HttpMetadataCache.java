@@ -0,0 +1,315 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import com.github.vatbub.common.core.Common;
+import com.github.vatbub.common.core.logging.FOKLogger;
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+
+/**
+ * Downloads xml files like the {@code maven-metadata.xml} of an app or the app list using conditional requests.
+ * The body of each response is saved on the disk together with its validators ({@code ETag} and {@code Last-Modified}).
+ * Subsequent requests for the same url send {@code If-None-Match} and {@code If-Modified-Since} and if the server
+ * responds with {@code 304 Not Modified}, the previously parsed document is returned without downloading or parsing
+ * the file again. Responses without validators are not cached.
+ * <p>
+ * The returned documents are shared between all callers and must not be modified.
+ */
+public class HttpMetadataCache {
+    private static final String CACHE_FOLDER_NAME = "httpCache";
+    private static final String BODY_FILE_NAME_EXTENSION = ".xml";
+    private static final String VALIDATOR_FILE_NAME_EXTENSION = ".properties";
+    private static final int maxDocumentsInMemory = 256;
+    private static HttpMetadataCache instance;
+    private final Path folder;
+    private final Map<String, CachedDocument> documents = new LinkedHashMap<String, CachedDocument>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedDocument> eldest) {
+            return size() > maxDocumentsInMemory;
+        }
+    };
+
+    /**
+     * Creates a new cache.
+     *
+     * @param folder The folder to save the response bodies and validators in
+     */
+    public HttpMetadataCache(Path folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Returns the cache in the app data folder of the launcher.
+     *
+     * @return The cache in the app data folder of the launcher.
+     */
+    public static synchronized HttpMetadataCache getInstance() {
+        if (instance == null)
+            instance = new HttpMetadataCache(Common.getInstance().getAndCreateAppDataPathAsFile().toPath().resolve(CACHE_FOLDER_NAME));
+        return instance;
+    }
+
+    public static synchronized void resetInstance() {
+        instance = null;
+    }
+
+    /**
+     * Downloads and parses the specified xml file unless the server reports that the cached copy is still up to date.
+     * Urls that do not use http(s) are always read and parsed.
+     *
+     * @param url The url of the xml file
+     * @return The parsed document. Must not be modified.
+     * @throws JDOMException If the xml file cannot be parsed
+     * @throws IOException   If the file cannot be downloaded
+     */
+    public Document getDocument(URL url) throws JDOMException, IOException {
+        return getDocument(url, 0);
+    }
+
+    /**
+     * Downloads and parses the specified xml file unless the server reports that the cached copy is still up to date.
+     * Urls that do not use http(s) are always read and parsed.
+     *
+     * @param url             The url of the xml file
+     * @param timeoutInMillis The connect and read timeout of the request in milliseconds or {@code 0} to wait forever
+     * @return The parsed document. Must not be modified.
+     * @throws JDOMException If the xml file cannot be parsed
+     * @throws IOException   If the file cannot be downloaded or the request timed out
+     */
+    public Document getDocument(URL url, int timeoutInMillis) throws JDOMException, IOException {
+        URLConnection urlConnection = url.openConnection();
+        if (!(urlConnection instanceof HttpURLConnection))
+            return new SAXBuilder().build(url);
+
+        HttpURLConnection connection = (HttpURLConnection) urlConnection;
+        connection.setConnectTimeout(timeoutInMillis);
+        connection.setReadTimeout(timeoutInMillis);
+        try {
+            CachedDocument cachedDocument = getCachedDocument(url);
+            if (cachedDocument != null) {
+                if (cachedDocument.eTag != null)
+                    connection.setRequestProperty("If-None-Match", cachedDocument.eTag);
+                if (cachedDocument.lastModified != null)
+                    connection.setRequestProperty("If-Modified-Since", cachedDocument.lastModified);
+            }
+
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cachedDocument != null) {
+                try {
+                    return cachedDocument.getDocument();
+                } catch (JDOMException | IOException e) {
+                    FOKLogger.log(HttpMetadataCache.class.getName(), Level.WARNING, "The cached copy of " + url + " is corrupt, downloading it again...", e);
+                    remove(url);
+                    return getDocument(url, timeoutInMillis);
+                }
+            }
+            if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_GONE)
+                throw new FileNotFoundException(url.toString());
+            if (responseCode != HttpURLConnection.HTTP_OK)
+                throw new IOException("Server returned HTTP response code: " + responseCode + " for URL: " + url);
+
+            byte[] body = readFully(connection.getInputStream());
+            Document res = new SAXBuilder().build(new ByteArrayInputStream(body), url.toExternalForm());
+            CachedDocument newDocument = new CachedDocument(getCacheKey(url), connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"), res);
+            if (newDocument.eTag != null || newDocument.lastModified != null)
+                store(url, newDocument, body);
+            else
+                remove(url);
+            return res;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Removes the cached copy of the specified url so that the next request downloads the file unconditionally.
+     *
+     * @param url The url to remove from the cache
+     */
+    public void remove(URL url) {
+        String key = getCacheKey(url);
+        synchronized (documents) {
+            documents.remove(key);
+        }
+        try {
+            Files.deleteIfExists(getValidatorFile(key));
+            Files.deleteIfExists(getBodyFile(key));
+        } catch (IOException e) {
+            FOKLogger.log(HttpMetadataCache.class.getName(), Level.WARNING, "Unable to remove the cached copy of " + url, e);
+        }
+    }
+
+    @Nullable
+    private CachedDocument getCachedDocument(URL url) {
+        String key = getCacheKey(url);
+        synchronized (documents) {
+            CachedDocument res = documents.get(key);
+            if (res != null)
+                return res;
+        }
+
+        Path validatorFile = getValidatorFile(key);
+        if (!Files.isRegularFile(validatorFile) || !Files.isRegularFile(getBodyFile(key)))
+            return null;
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(validatorFile)) {
+            properties.load(in);
+        } catch (IOException e) {
+            FOKLogger.log(HttpMetadataCache.class.getName(), Level.WARNING, "Unable to read the cached validators of " + url, e);
+            return null;
+        }
+
+        // the document is parsed lazily, only if the server confirms that it is still up to date
+        CachedDocument res = new CachedDocument(key, properties.getProperty(FileFormat.E_TAG), properties.getProperty(FileFormat.LAST_MODIFIED), null);
+        if (!url.toExternalForm().equals(properties.getProperty(FileFormat.URL)) || (res.eTag == null && res.lastModified == null))
+            return null;
+
+        synchronized (documents) {
+            documents.put(key, res);
+        }
+        return res;
+    }
+
+    private void store(URL url, CachedDocument cachedDocument, byte[] body) {
+        synchronized (documents) {
+            documents.put(cachedDocument.key, cachedDocument);
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty(FileFormat.URL, url.toExternalForm());
+        if (cachedDocument.eTag != null)
+            properties.setProperty(FileFormat.E_TAG, cachedDocument.eTag);
+        if (cachedDocument.lastModified != null)
+            properties.setProperty(FileFormat.LAST_MODIFIED, cachedDocument.lastModified);
+
+        try {
+            Files.createDirectories(folder);
+            // the body is written first so that the validators never refer to an outdated body
+            writeAtomically(getBodyFile(cachedDocument.key), body);
+            ByteArrayOutputStream validators = new ByteArrayOutputStream();
+            properties.store(validators, "Cached validators of the FOK Launcher, do not edit");
+            writeAtomically(getValidatorFile(cachedDocument.key), validators.toByteArray());
+        } catch (IOException e) {
+            FOKLogger.log(HttpMetadataCache.class.getName(), Level.WARNING, "Unable to cache " + url + " on the disk", e);
+        }
+    }
+
+    private static void writeAtomically(Path file, byte[] content) throws IOException {
+        Path tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tempFile, content);
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        try (InputStream in = inputStream) {
+            ByteArrayOutputStream res = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                res.write(buffer, 0, read);
+            }
+            return res.toByteArray();
+        }
+    }
+
+    private static String getCacheKey(URL url) {
+        try {
+            return ArtifactChecksum.toHex(MessageDigest.getInstance("SHA-1").digest(url.toExternalForm().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // every jvm is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Path getBodyFile(String key) {
+        return folder.resolve(key + BODY_FILE_NAME_EXTENSION);
+    }
+
+    private Path getValidatorFile(String key) {
+        return folder.resolve(key + VALIDATOR_FILE_NAME_EXTENSION);
+    }
+
+    public Path getFolder() {
+        return folder;
+    }
+
+    /**
+     * The validators of a cached response and the parsed document
+     */
+    private class CachedDocument {
+        private final String key;
+        private final String eTag;
+        private final String lastModified;
+        private Document document;
+
+        CachedDocument(String key, @Nullable String eTag, @Nullable String lastModified, @Nullable Document document) {
+            this.key = key;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.document = document;
+        }
+
+        synchronized Document getDocument() throws JDOMException, IOException {
+            if (document == null)
+                document = new SAXBuilder().build(getBodyFile(key).toFile());
+            return document;
+        }
+    }
+
+    /**
+     * Describes the keys used in the validator files
+     */
+    public static class FileFormat {
+        public static final String URL = "url";
+        public static final String E_TAG = "eTag";
+        public static final String LAST_MODIFIED = "lastModified";
+
+        private FileFormat() {
+            throw new IllegalStateException("Class may not be instantiated");
+        }
+    }
+}
@@ -29,10 +29,14 @@ import org.jdom2.JDOMException;
 import org.jdom2.input.SAXBuilder;
 import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * In-memory representation of a local metadata file of an app.
@@ -40,6 +44,7 @@ import java.io.IOException;
 public class LocalMetadataFile {
     private MVNCoordinates mvnCoordinates;
     private VersionList versionList;
+    private final Map<String, ArtifactChecksum> checksums = new HashMap<>();
 
     /**
      * Creates a new empty instance.
@@ -66,8 +71,14 @@ public class LocalMetadataFile {
         setMvnCoordinates(new MVNCoordinates(null, null, document.getRootElement().getChild(FileFormat.GROUP_ID_TAG_NAME).getValue(), document.getRootElement().getChild(FileFormat.ARTIFACT_ID_TAG_NAME).getValue()));
 
         for (Element versionElement : document.getRootElement().getChild(FileFormat.VERSION_LIST_TAG_NAME).getChildren()) {
-            res.add(new Version(versionElement.getChild(FileFormat.VERSION_TAG_NAME).getValue(),
-                    versionElement.getChild(FileFormat.BUILD_NUMBER_TAG_NAME).getValue(), versionElement.getChild(FileFormat.TIMESTAMP_TAG_NAME).getValue()));
+            Version version = new Version(versionElement.getChild(FileFormat.VERSION_TAG_NAME).getValue(),
+                    versionElement.getChild(FileFormat.BUILD_NUMBER_TAG_NAME).getValue(), versionElement.getChild(FileFormat.TIMESTAMP_TAG_NAME).getValue());
+            res.add(version);
+
+            // files written by older versions of the launcher do not contain checksums
+            Element checksumElement = versionElement.getChild(FileFormat.CHECKSUM_TAG_NAME);
+            if (checksumElement != null && checksumElement.getAttributeValue(FileFormat.CHECKSUM_ALGORITHM_ATTRIBUTE_NAME) != null)
+                setChecksum(version, new ArtifactChecksum(checksumElement.getAttributeValue(FileFormat.CHECKSUM_ALGORITHM_ATTRIBUTE_NAME), checksumElement.getValue()));
         }
 
         setVersionList(res);
@@ -105,6 +116,33 @@ public class LocalMetadataFile {
         this.versionList = versionList;
     }
 
+    /**
+     * Returns the verified checksum of the jar file of the specified version. The checksum identifies the jar file in the {@link ArtifactStore}.
+     * @param version The version to get the checksum for
+     * @return The checksum of the jar file of the specified version or {@code null} if the jar file was not verified
+     */
+    @Nullable
+    public ArtifactChecksum getChecksum(Version version) {
+        return checksums.get(getChecksumKey(version));
+    }
+
+    /**
+     * Sets the verified checksum of the jar file of the specified version.
+     * @param version The version to set the checksum for
+     * @param checksum The checksum to set or {@code null} to remove the checksum
+     */
+    public void setChecksum(Version version, @Nullable ArtifactChecksum checksum) {
+        if (checksum == null)
+            checksums.remove(getChecksumKey(version));
+        else
+            checksums.put(getChecksumKey(version), checksum);
+    }
+
+    private static String getChecksumKey(Version version) {
+        // releases are saved with empty build numbers and timestamps
+        return version.getVersion() + "|" + Objects.toString(version.getBuildNumber(), "") + "|" + Objects.toString(version.getTimestamp(), "");
+    }
+
     /**
      * Saves this file at the specified location.
      * @param fileToSaveTo The location to save the file to.
@@ -141,6 +179,14 @@ public class LocalMetadataFile {
             versionElement.addContent(buildNumber);
             versionElement.addContent(timestamp);
 
+            ArtifactChecksum checksum = getChecksum(version);
+            if (checksum != null) {
+                Element checksumElement = new Element(FileFormat.CHECKSUM_TAG_NAME);
+                checksumElement.setAttribute(FileFormat.CHECKSUM_ALGORITHM_ATTRIBUTE_NAME, checksum.getAlgorithm());
+                checksumElement.setText(checksum.getExpectedDigest());
+                versionElement.addContent(checksumElement);
+            }
+
             versions.addContent(versionElement);
         }
 
@@ -168,5 +214,7 @@ public class LocalMetadataFile {
         public static final String VERSION_OBJECT_TAG_NAME = "version";
         public static final String BUILD_NUMBER_TAG_NAME = "buildNumber";
         public static final String TIMESTAMP_TAG_NAME = "timestamp";
+        public static final String CHECKSUM_TAG_NAME = "checksum";
+        public static final String CHECKSUM_ALGORITHM_ATTRIBUTE_NAME = "algorithm";
     }
 }
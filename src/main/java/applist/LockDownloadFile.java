@@ -23,21 +23,69 @@ package applist;
 
 import com.github.vatbub.common.core.logging.FOKLogger;
 import com.github.vatbub.common.updater.Version;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
+/**
+ * Prevents that the same version of an app is downloaded by multiple threads or launcher instances at the same time.
+ * The lock is an OS level lock ({@link FileChannel#tryLock(long, long, boolean)}) on the lock file, so it is released
+ * by the OS if the holding process crashes. The lock file itself only records who holds the lock (process id, host and
+ * start time of the process) for diagnostics and is deleted when the lock is released. A lock file that is not locked
+ * by the OS is a leftover of a crashed launcher and is ignored.
+ * <p>
+ * Locks held by this launcher instance are additionally tracked in an in-process registry, so threads of the same
+ * process never ask the OS about a lock that this process already holds. Threads that wait for a lock are woken up by
+ * the registry or by a {@link WatchService} that reports the deletion of the lock file instead of polling.
+ * <p>
+ * On file systems that do not support locks, the lock falls back to atomically creating the lock file. In that mode,
+ * locks of crashed processes on the same host are detected using the recorded process id and start time.
+ */
 public class LockDownloadFile {
-    private App app;
-    private Version versionToLock;
     private static final String LOCK_FILE_NAME_SUFFIX = "_lock";
     private static final String LOCK_FILE_NAME_EXTENSION = "lock";
+    /**
+     * The region that is locked by the OS. Lies beyond the content of the file as Windows does not allow other processes
+     * to read a locked region and the holder info should stay readable.
+     */
+    private static final long LOCK_REGION_POSITION = Long.MAX_VALUE - 1;
+    /**
+     * Waiters check the lock again after this time even if they were not notified, e. g. because the file system does
+     * not report changes.
+     */
+    private static final long MAXIMUM_WAIT_BETWEEN_CHECKS_IN_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    /**
+     * Marker files are written right after they were created, so a marker file that is still empty or unreadable after
+     * this time is a leftover of a crashed launcher.
+     */
+    private static final long UNREADABLE_MARKER_FILE_TIMEOUT_IN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    /**
+     * Set to {@code false} by tests to simulate a file system that does not support locks
+     */
+    static volatile boolean fileLocksSupported = true;
+    private static final Map<Path, HeldLock> heldLocks = new HashMap<>();
+    private static final LockInfo currentProcess = LockInfo.ofCurrentProcess();
+    private App app;
+    private Version versionToLock;
 
     public LockDownloadFile(App app, Version versionToLock) {
         setApp(app);
@@ -52,21 +100,267 @@ public class LockDownloadFile {
         this.app = app;
     }
 
+    /**
+     * Acquires the lock, waiting as long as another thread or launcher instance holds it.
+     *
+     * @throws IOException If the lock file cannot be created or locked
+     */
     public void lock() throws IOException {
-        FileUtils.writeStringToFile(getLockFile(), "locked", StandardCharsets.UTF_8);
+        try {
+            while (!tryLock()) {
+                awaitChange();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the lock " + getLockFile().getAbsolutePath(), e);
+        }
     }
 
-    public void unlock() throws IOException {
-        if (!isLocked()) return;
+    /**
+     * Acquires the lock if it is not held by anyone else.
+     *
+     * @return {@code true} if the lock was acquired, {@code false} if another thread or launcher instance holds it.
+     * @throws IOException If the lock file cannot be created or locked
+     */
+    public boolean tryLock() throws IOException {
+        Path lockPath = getLockPath();
+        synchronized (heldLocks) {
+            if (heldLocks.containsKey(lockPath))
+                return false;
+
+            HeldLock heldLock = tryLockFile(lockPath);
+            if (heldLock == null)
+                return false;
+
+            heldLocks.put(lockPath, heldLock);
+            return true;
+        }
+    }
+
+    private static HeldLock tryLockFile(Path lockPath) throws IOException {
+        Files.createDirectories(lockPath.getParent());
+        boolean fileCreated = true;
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(lockPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (FileAlreadyExistsException e) {
+            fileCreated = false;
+            try {
+                channel = FileChannel.open(lockPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (NoSuchFileException e1) {
+                // deleted by the previous holder in the meantime
+                return null;
+            }
+        }
+
+        try {
+            FileLock fileLock;
+            try {
+                if (!fileLocksSupported)
+                    throw new IOException("File locks are disabled");
+                fileLock = channel.tryLock(LOCK_REGION_POSITION, 1, false);
+            } catch (IOException e) {
+                // the file system does not support locks, the empty file we just created would look like a foreign marker file
+                channel.close();
+                if (fileCreated)
+                    Files.deleteIfExists(lockPath);
+                FOKLogger.log(LockDownloadFile.class.getName(), Level.FINE, "File locks are not supported for " + lockPath + ", falling back to a marker file", e);
+                return tryCreateMarkerFile(lockPath);
+            }
+
+            if (fileLock == null) {
+                channel.close();
+                return null;
+            }
+
+            byte[] holderInfo = currentProcess.toBytes();
+            channel.truncate(0);
+            channel.write(ByteBuffer.wrap(holderInfo), 0);
+            channel.force(true);
+
+            // The previous holder deletes the file before it releases the lock, so we might have locked a file that no longer exists.
+            if (!isLockedFile(lockPath, holderInfo)) {
+                fileLock.release();
+                channel.close();
+                return null;
+            }
+
+            return new HeldLock(channel, fileLock);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static HeldLock tryCreateMarkerFile(Path lockPath) throws IOException {
+        try {
+            Files.write(lockPath, currentProcess.toBytes(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return new HeldLock(null, null);
+        } catch (FileAlreadyExistsException e) {
+            LockInfo holder = readHolder(lockPath);
+            if (holder == null) {
+                // the marker file is either being written right now or a leftover of a crashed launcher
+                if (!isOlderThan(lockPath, UNREADABLE_MARKER_FILE_TIMEOUT_IN_MILLIS))
+                    return null;
+            } else if (holder.isAlive()) {
+                return null;
+            }
+
+            FOKLogger.info(LockDownloadFile.class.getName(), "Removing the stale lock " + lockPath + " of the crashed process " + Optional.ofNullable(holder).map(LockInfo::toString).orElse("an unknown process"));
+            Files.deleteIfExists(lockPath);
+            return tryCreateMarkerFile(lockPath);
+        }
+    }
+
+    /**
+     * Reads the lock file through its path again and checks whether it contains the holder info that was just written
+     * through the locked channel. If it does not, the locked file was deleted and the path refers to a new file.
+     */
+    private static boolean isLockedFile(Path lockPath, byte[] holderInfo) throws IOException {
+        try {
+            return Arrays.equals(Files.readAllBytes(lockPath), holderInfo);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private static boolean isOlderThan(Path path, long ageInMillis) throws IOException {
         try {
-            Files.delete(getLockFile().toPath());
+            return System.currentTimeMillis() - Files.getLastModifiedTime(path).toMillis() > ageInMillis;
         } catch (NoSuchFileException e) {
-            FOKLogger.log(getClass().getName(), Level.WARNING, "Unable to delete the lock file due to an exception", e);
+            // deleted in the meantime, the next attempt will create the file
+            return false;
+        }
+    }
+
+    /**
+     * Releases the lock if the calling thread holds it. The lock file is deleted. Does nothing if the lock is not held
+     * or held by another thread, so that a redundant call can never release a lock that another thread acquired in
+     * the meantime.
+     *
+     * @throws IOException If the lock cannot be released
+     */
+    public void unlock() throws IOException {
+        Path lockPath = getLockPath();
+        synchronized (heldLocks) {
+            HeldLock heldLock = heldLocks.get(lockPath);
+            if (heldLock == null)
+                return;
+            if (heldLock.owner != Thread.currentThread()) {
+                FOKLogger.log(getClass().getName(), Level.WARNING, "Not releasing the lock " + lockPath + " as it is held by the thread " + heldLock.owner.getName());
+                return;
+            }
+            heldLocks.remove(lockPath);
+
+            try {
+                // delete the file before releasing the lock so that waiters never lock a file that is deleted afterwards
+                Files.deleteIfExists(lockPath);
+            } catch (IOException e) {
+                // Windows does not allow deleting open files, the file is reused by the next holder
+                FOKLogger.log(getClass().getName(), Level.FINE, "Unable to delete the lock file, leaving it for the next holder", e);
+            } finally {
+                heldLock.release();
+                heldLocks.notifyAll();
+            }
         }
     }
 
+    /**
+     * Returns {@code true} if the lock is held by this or any other launcher instance.
+     *
+     * @return {@code true} if the lock is held by this or any other launcher instance.
+     */
     public boolean isLocked() {
-        return getLockFile().exists();
+        Path lockPath = getLockPath();
+        synchronized (heldLocks) {
+            if (heldLocks.containsKey(lockPath))
+                return true;
+            if (!Files.exists(lockPath))
+                return false;
+
+            try {
+                LockInfo previousHolder = readHolder(lockPath);
+                HeldLock heldLock = tryLockFile(lockPath);
+                if (heldLock == null)
+                    return true;
+
+                // nobody holds the lock, the file is a leftover
+                FOKLogger.info(getClass().getName(), "Ignoring the stale lock file " + lockPath + " of " + Optional.ofNullable(previousHolder).map(LockInfo::toString).orElse("an unknown process"));
+                Files.deleteIfExists(lockPath);
+                heldLock.release();
+                return false;
+            } catch (IOException e) {
+                FOKLogger.log(getClass().getName(), Level.WARNING, "Unable to check the lock " + lockPath + ", assuming that it is locked", e);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Blocks until the lock is not held by anyone. The caller is woken up when the lock is released in this launcher
+     * instance or when the lock file is deleted by another launcher instance.
+     *
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    public void awaitUnlocked() throws InterruptedException {
+        while (isLocked()) {
+            awaitChange();
+        }
+    }
+
+    /**
+     * Waits until the lock might have changed. Returns after {@link #MAXIMUM_WAIT_BETWEEN_CHECKS_IN_MILLIS} at the latest.
+     */
+    private void awaitChange() throws InterruptedException {
+        Path lockPath = getLockPath();
+        synchronized (heldLocks) {
+            if (heldLocks.containsKey(lockPath)) {
+                heldLocks.wait(MAXIMUM_WAIT_BETWEEN_CHECKS_IN_MILLIS);
+                return;
+            }
+        }
+
+        try (WatchService watchService = lockPath.getFileSystem().newWatchService()) {
+            lockPath.getParent().register(watchService, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            // the lock might have been released while the watch service was set up
+            if (!Files.exists(lockPath))
+                return;
+
+            long deadline = System.currentTimeMillis() + MAXIMUM_WAIT_BETWEEN_CHECKS_IN_MILLIS;
+            long remainingTime;
+            while ((remainingTime = deadline - System.currentTimeMillis()) > 0) {
+                WatchKey key = watchService.poll(remainingTime, TimeUnit.MILLISECONDS);
+                if (key == null)
+                    return;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || lockPath.getFileName().equals(event.context()))
+                        return;
+                }
+                key.reset();
+            }
+        } catch (IOException e) {
+            FOKLogger.log(getClass().getName(), Level.FINE, "Unable to watch the lock file " + lockPath + ", waiting for the timeout instead", e);
+            Thread.sleep(MAXIMUM_WAIT_BETWEEN_CHECKS_IN_MILLIS);
+        }
+    }
+
+    /**
+     * Returns information about the process that holds or held the lock.
+     *
+     * @return Information about the process that holds or held the lock or {@code null} if the lock file does not exist or cannot be read.
+     */
+    @Nullable
+    public LockInfo getHolder() {
+        return readHolder(getLockPath());
+    }
+
+    @Nullable
+    private static LockInfo readHolder(Path lockPath) {
+        try {
+            return LockInfo.fromBytes(Files.readAllBytes(lockPath));
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     public Version getVersionToLock() {
@@ -82,4 +376,154 @@ public class LockDownloadFile {
         File containingFolder = outputFile.getParentFile();
         return containingFolder.toPath().resolve(FilenameUtils.getBaseName(outputFile.getName()) + LOCK_FILE_NAME_SUFFIX + "." + LOCK_FILE_NAME_EXTENSION).toFile();
     }
+
+    private Path getLockPath() {
+        return getLockFile().toPath().toAbsolutePath().normalize();
+    }
+
+    private static class HeldLock {
+        private final FileChannel channel;
+        private final FileLock fileLock;
+        /**
+         * The thread that acquired the lock and may release it
+         */
+        private final Thread owner = Thread.currentThread();
+
+        /**
+         * @param channel  The channel of the lock file or {@code null} if the lock is a marker file
+         * @param fileLock The OS lock or {@code null} if the lock is a marker file
+         */
+        HeldLock(@Nullable FileChannel channel, @Nullable FileLock fileLock) {
+            this.channel = channel;
+            this.fileLock = fileLock;
+        }
+
+        void release() throws IOException {
+            if (channel == null)
+                return;
+            try {
+                fileLock.release();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Identifies the process that holds a lock
+     */
+    public static class LockInfo {
+        private static final String PID_KEY = "pid";
+        private static final String HOST_KEY = "host";
+        private static final String START_TIME_KEY = "startTime";
+        private final long pid;
+        private final String host;
+        private final long startTime;
+
+        public LockInfo(long pid, String host, long startTime) {
+            this.pid = pid;
+            this.host = host;
+            this.startTime = startTime;
+        }
+
+        static LockInfo ofCurrentProcess() {
+            // the name of the runtime is pid@host on all common jvms
+            String runtimeName = ManagementFactory.getRuntimeMXBean().getName();
+            long pid = -1;
+            try {
+                pid = Long.parseLong(runtimeName.substring(0, runtimeName.indexOf('@')));
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                FOKLogger.log(LockDownloadFile.class.getName(), Level.FINE, "Unable to determine the process id from " + runtimeName, e);
+            }
+
+            String host;
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (IOException e) {
+                host = runtimeName.substring(runtimeName.indexOf('@') + 1);
+            }
+            return new LockInfo(pid, host, ManagementFactory.getRuntimeMXBean().getStartTime());
+        }
+
+        @Nullable
+        static LockInfo fromBytes(byte[] bytes) throws IOException {
+            Properties properties = new Properties();
+            properties.load(new ByteArrayInputStream(bytes));
+            try {
+                return new LockInfo(Long.parseLong(properties.getProperty(PID_KEY)), properties.getProperty(HOST_KEY), Long.parseLong(properties.getProperty(START_TIME_KEY)));
+            } catch (NumberFormatException e) {
+                // e. g. a lock file of an older launcher version
+                return null;
+            }
+        }
+
+        byte[] toBytes() throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty(PID_KEY, Long.toString(getPid()));
+            properties.setProperty(HOST_KEY, getHost());
+            properties.setProperty(START_TIME_KEY, Long.toString(getStartTime()));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            properties.store(out, "Download lock of the FOK Launcher, do not edit");
+            return out.toByteArray();
+        }
+
+        /**
+         * Returns the process id of the holder or {@code -1} if it is unknown.
+         *
+         * @return The process id of the holder or {@code -1} if it is unknown.
+         */
+        public long getPid() {
+            return pid;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * Returns the time the holder process was started in milliseconds since the epoch.
+         *
+         * @return The time the holder process was started in milliseconds since the epoch.
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * Checks whether the holder process is still running. Processes on other hosts and processes that cannot be
+         * checked because the java runtime is older than Java 9 are assumed to be alive. A process id that was reused by
+         * another process is detected using the start time.
+         *
+         * @return {@code false} if the holder process is known to be gone
+         */
+        public boolean isAlive() {
+            if (!Objects.equals(getHost(), currentProcess.getHost()) || getPid() < 0)
+                return true;
+            if (getPid() == currentProcess.getPid())
+                return getStartTime() == currentProcess.getStartTime();
+
+            try {
+                // ProcessHandle.of(pid) is only available on Java 9 and newer
+                Class<?> processHandleClass = Class.forName("java.lang.ProcessHandle");
+                Optional<?> processHandle = (Optional<?>) processHandleClass.getMethod("of", long.class).invoke(null, getPid());
+                if (!processHandle.isPresent())
+                    return false;
+
+                Object info = processHandleClass.getMethod("info").invoke(processHandle.get());
+                Optional<?> startInstant = (Optional<?>) Class.forName("java.lang.ProcessHandle$Info").getMethod("startInstant").invoke(info);
+                if (!startInstant.isPresent())
+                    return true;
+                long processStartTime = ((Instant) startInstant.get()).toEpochMilli();
+                // the jvm start time is measured a bit after the process was started
+                return Math.abs(processStartTime - getStartTime()) < TimeUnit.MINUTES.toMillis(1);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return true;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "process " + getPid() + "@" + getHost() + " (started " + new java.util.Date(getStartTime()) + ")";
+        }
+    }
 }
@@ -24,6 +24,7 @@ package applist;
 import com.github.vatbub.common.updater.Version;
 
 import java.net.URL;
+import java.util.Objects;
 
 /**
  * Represents the coordinates of a maven artifact (groupId, artifactId, classifier).
@@ -213,6 +214,13 @@ public class MVNCoordinates {
         return res.toString();
     }
 
+    /**
+     * Compares the coordinates including the repo urls. The urls are compared by their string representation as
+     * {@link URL#equals(Object)} resolves the host names which blocks and may give different results over time.
+     *
+     * @param obj The object to compare to
+     * @return {@code true} if the specified object represents the same coordinates
+     */
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof MVNCoordinates)) {
@@ -220,12 +228,19 @@ public class MVNCoordinates {
         }
 
         MVNCoordinates that = (MVNCoordinates) obj;
-        boolean res = this.getGroupId().equals(that.getGroupId()) &&
-                this.getArtifactId().equals(that.getArtifactId()) &&
-                this.getRepoBaseURL().equals(that.getRepoBaseURL()) &&
-                this.getSnapshotRepoBaseURL().equals(that.getSnapshotRepoBaseURL());
+        return Objects.equals(this.getGroupId(), that.getGroupId()) &&
+                Objects.equals(this.getArtifactId(), that.getArtifactId()) &&
+                Objects.equals(toExternalForm(this.getRepoBaseURL()), toExternalForm(that.getRepoBaseURL())) &&
+                Objects.equals(toExternalForm(this.getSnapshotRepoBaseURL()), toExternalForm(that.getSnapshotRepoBaseURL())) &&
+                Objects.equals(this.getClassifier(), that.getClassifier());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getGroupId(), getArtifactId(), toExternalForm(getRepoBaseURL()), toExternalForm(getSnapshotRepoBaseURL()), getClassifier());
+    }
 
-        boolean classifierEqual = this.getClassifier() == null && that.getClassifier() == null || this.getClassifier() != null && that.getClassifier() != null && this.getClassifier().equals(that.getClassifier());
-        return res && classifierEqual;
+    private static String toExternalForm(URL url) {
+        return url == null ? null : url.toExternalForm();
     }
 }
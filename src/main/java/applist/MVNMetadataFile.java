@@ -26,18 +26,27 @@ import com.github.vatbub.common.updater.VersionList;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URL;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 /**
  * In-memory representation of the metadata file of an app retrieved from the app's maven repository.
  */
 public class MVNMetadataFile {
+    private static volatile int snapshotResolutionParallelism = 8;
+    private static volatile int snapshotMetadataTimeoutInMillis = 15000;
     private MVNCoordinates mvnCoordinates;
     private Version latest;
     private Version latestRelease;
@@ -57,14 +66,25 @@ public class MVNMetadataFile {
         getFile(enableSnapshots);
     }
 
+    /**
+     * Creates an empty metadata file without downloading anything.
+     *
+     * @param mvnCoordinates The coordinates of the app the metadata belongs to.
+     */
+    MVNMetadataFile(MVNCoordinates mvnCoordinates) {
+        setMvnCoordinates(mvnCoordinates);
+    }
+
     private void getFile(boolean enableSnapshots) throws JDOMException, IOException {
         Document mavenMetadata = getMavenMetadata(enableSnapshots);
 
+        // snapshot versions need the build number and timestamp from their own metadata file, these are fetched concurrently in the end
+        List<Version> snapshotVersions = new ArrayList<>();
         Element versioningElement = mavenMetadata.getRootElement().getChild(FileFormat.VERSIONING_TAG_NAME);
         if (versioningElement.getChild(FileFormat.LATEST_VERSION_TAG_NAME) != null) {
             setLatest(new Version(versioningElement.getChild(FileFormat.LATEST_VERSION_TAG_NAME).getValue()));
             if (getLatest().isSnapshot()) {
-                updateVersionWithSnapshotInfo(getLatest());
+                snapshotVersions.add(getLatest());
             }
         } /*else if (mavenMetadata.getRootElement().getChild(FileFormat.VERSION_TAG_NAME) != null) {
             setLatest(new Version(mavenMetadata.getRootElement().getChild(FileFormat.VERSION_TAG_NAME).getValue()));
@@ -87,23 +107,130 @@ public class MVNMetadataFile {
             Version version = new Version(versionElement.getValue());
             if (enableSnapshots == version.isSnapshot()) {
                 if (version.isSnapshot()) {
-                    updateVersionWithSnapshotInfo(version);
+                    snapshotVersions.add(version);
                 }
                 res.add(version);
             }
         }
 
+        updateVersionsWithSnapshotInfo(snapshotVersions);
         setVersionList(res);
     }
 
-    private void updateVersionWithSnapshotInfo(Version version) throws IOException, JDOMException {
-        Document snapshotMetadata = new SAXBuilder()
-                .build(new URL(this.getMvnCoordinates().getSnapshotRepoBaseURL().toString() + "/" + getMvnCoordinates().getGroupId().replace('.', '/')
-                        + "/" + getMvnCoordinates().getArtifactId() + "/" + version.getVersion() + "/maven-metadata.xml"));
+    /**
+     * Fetches the snapshot metadata of the specified versions concurrently. At most {@link #getSnapshotResolutionParallelism()}
+     * requests are in flight at once and each request times out after {@link #getSnapshotMetadataTimeoutInMillis()} milliseconds.
+     *
+     * @param versions The snapshot versions to fetch the build number and timestamp for. Versions with the same version
+     *                 string (e. g. the latest version which is also part of the version list) share one request.
+     * @throws IOException   If the metadata of a version cannot be downloaded
+     * @throws JDOMException If the metadata of a version cannot be parsed
+     */
+    private void updateVersionsWithSnapshotInfo(List<Version> versions) throws IOException, JDOMException {
+        Map<String, List<Version>> versionsByName = new LinkedHashMap<>();
+        for (Version version : versions) {
+            versionsByName.computeIfAbsent(version.getVersion(), key -> new ArrayList<>(1)).add(version);
+        }
+
+        if (versionsByName.size() <= 1) {
+            for (List<Version> sameVersions : versionsByName.values()) {
+                updateVersionsWithSnapshotInfo(sameVersions.get(0).getVersion(), sameVersions);
+            }
+            return;
+        }
+
+        Semaphore permits = new Semaphore(getSnapshotResolutionParallelism());
+        ExecutorService executorService = BlockingTasks.newThreadPerTaskExecutor("snapshotMetadataThread-");
+        try {
+            List<Future<?>> futures = new ArrayList<>(versionsByName.size());
+            for (Map.Entry<String, List<Version>> entry : versionsByName.entrySet()) {
+                futures.add(executorService.submit(() -> {
+                    permits.acquire();
+                    try {
+                        updateVersionsWithSnapshotInfo(entry.getKey(), entry.getValue());
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                waitForSnapshotInfo(future);
+            }
+        } finally {
+            // stops the remaining requests if one of them failed
+            executorService.shutdownNow();
+        }
+    }
+
+    private void waitForSnapshotInfo(Future<?> future) throws IOException, JDOMException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching the snapshot metadata of " + getMvnCoordinates());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof JDOMException)
+                throw (JDOMException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException("Unable to fetch the snapshot metadata of " + getMvnCoordinates(), e.getCause());
+        }
+    }
+
+    private void updateVersionsWithSnapshotInfo(String versionName, List<Version> versions) throws IOException, JDOMException {
+        Document snapshotMetadata = HttpMetadataCache.getInstance()
+                .getDocument(new URL(this.getMvnCoordinates().getSnapshotRepoBaseURL().toString() + "/" + getMvnCoordinates().getGroupId().replace('.', '/')
+                        + "/" + getMvnCoordinates().getArtifactId() + "/" + versionName + "/maven-metadata.xml"), getSnapshotMetadataTimeoutInMillis());
         Element snapshotVersioningElement = snapshotMetadata.getRootElement().getChild(SnapshotFileFormat.VERSIONING_TAG_NAME);
         Element latestSnapshot = snapshotVersioningElement.getChild(SnapshotFileFormat.LATEST_SNAPSHOT_TAG_NAME);
-        version.setBuildNumber(latestSnapshot.getChild(SnapshotFileFormat.BUILD_NUMBER_TAG_NAME).getValue());
-        version.setTimestamp(latestSnapshot.getChild(SnapshotFileFormat.TIMESTAMP_TAG_NAME).getValue());
+        for (Version version : versions) {
+            version.setBuildNumber(latestSnapshot.getChild(SnapshotFileFormat.BUILD_NUMBER_TAG_NAME).getValue());
+            version.setTimestamp(latestSnapshot.getChild(SnapshotFileFormat.TIMESTAMP_TAG_NAME).getValue());
+        }
+    }
+
+    /**
+     * Returns the maximum number of snapshot metadata files that are downloaded concurrently.
+     *
+     * @return The maximum number of snapshot metadata files that are downloaded concurrently.
+     */
+    public static int getSnapshotResolutionParallelism() {
+        return snapshotResolutionParallelism;
+    }
+
+    /**
+     * Sets the maximum number of snapshot metadata files that are downloaded concurrently.
+     *
+     * @param snapshotResolutionParallelism The maximum number of concurrent requests, at least {@code 1}
+     */
+    public static void setSnapshotResolutionParallelism(int snapshotResolutionParallelism) {
+        if (snapshotResolutionParallelism < 1)
+            throw new IllegalArgumentException("snapshotResolutionParallelism must be at least 1");
+        MVNMetadataFile.snapshotResolutionParallelism = snapshotResolutionParallelism;
+    }
+
+    /**
+     * Returns the connect and read timeout of a single snapshot metadata request in milliseconds.
+     *
+     * @return The connect and read timeout of a single snapshot metadata request in milliseconds.
+     */
+    public static int getSnapshotMetadataTimeoutInMillis() {
+        return snapshotMetadataTimeoutInMillis;
+    }
+
+    /**
+     * Sets the connect and read timeout of a single snapshot metadata request.
+     *
+     * @param snapshotMetadataTimeoutInMillis The timeout in milliseconds or {@code 0} to wait forever
+     */
+    public static void setSnapshotMetadataTimeoutInMillis(int snapshotMetadataTimeoutInMillis) {
+        if (snapshotMetadataTimeoutInMillis < 0)
+            throw new IllegalArgumentException("snapshotMetadataTimeoutInMillis must not be negative");
+        MVNMetadataFile.snapshotMetadataTimeoutInMillis = snapshotMetadataTimeoutInMillis;
     }
 
     /**
@@ -124,7 +251,7 @@ public class MVNMetadataFile {
             repoBaseURL = getMvnCoordinates().getRepoBaseURL().toString();
         }
 
-        return new SAXBuilder().build(new URL(repoBaseURL + "/"
+        return HttpMetadataCache.getInstance().getDocument(new URL(repoBaseURL + "/"
                 + getMvnCoordinates().getGroupId().replace('.', '/') + "/" + getMvnCoordinates().getArtifactId() + "/maven-metadata.xml"));
     }
 
@@ -0,0 +1,362 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import com.github.vatbub.common.core.logging.FOKLogger;
+import org.jdom2.JDOMException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * A process-wide cache of the {@link MVNMetadataFile}s of all apps, keyed by the maven coordinates of the app.
+ * All {@link App} instances with the same coordinates (e. g. the app in the gui and the app that is launched
+ * automatically) share the cached metadata.
+ * <ul>
+ * <li>Metadata younger than the time to live is returned without contacting the repository.</li>
+ * <li>Metadata that is older than the time to live but younger than the time to live plus the stale-while-revalidate
+ * period is returned immediately while a refresh is started in the background.</li>
+ * <li>Older metadata is reloaded and the caller waits for the reload.</li>
+ * <li>Concurrent callers that need to wait for the same metadata share a single request.</li>
+ * <li>The least recently used entries are evicted once the cache holds more than {@link #getMaximumSize()} entries.</li>
+ * </ul>
+ * Failed loads are not cached. The returned files are shared and must not be modified.
+ */
+public class MetadataCache {
+    private static MetadataCache instance;
+    private final AtomicLong revisionCounter = new AtomicLong();
+    private final Loader loader;
+    private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > getMaximumSize();
+        }
+    };
+    private volatile long timeToLiveInMillis = 60 * 1000;
+    private volatile long staleWhileRevalidateInMillis = 10 * 60 * 1000;
+    private volatile int maximumSize = 512;
+
+    /**
+     * Creates a new cache that downloads the metadata from the maven repositories.
+     */
+    public MetadataCache() {
+        this(MVNMetadataFile::new);
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param loader The loader to fetch metadata with
+     */
+    public MetadataCache(Loader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Returns the cache that is shared by all apps.
+     *
+     * @return The cache that is shared by all apps.
+     */
+    public static synchronized MetadataCache getInstance() {
+        if (instance == null)
+            instance = new MetadataCache();
+        return instance;
+    }
+
+    /**
+     * Discards the shared cache so that the next call of {@link #getInstance()} creates a new, empty one.
+     */
+    public static synchronized void resetInstance() {
+        instance = null;
+    }
+
+    /**
+     * Returns the metadata of the specified artifact, loading it if it is not cached or expired.
+     *
+     * @param mvnCoordinates  The coordinates of the artifact
+     * @param enableSnapshots {@code true} to get the metadata of the snapshot repository
+     * @return The metadata of the specified artifact. Must not be modified.
+     * @throws JDOMException If the metadata cannot be parsed
+     * @throws IOException   If the metadata cannot be downloaded
+     */
+    public MVNMetadataFile get(MVNCoordinates mvnCoordinates, boolean enableSnapshots) throws JDOMException, IOException {
+        Key key = new Key(mvnCoordinates, enableSnapshots);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.computeIfAbsent(key, Entry::new);
+        }
+        return entry.get();
+    }
+
+    /**
+     * Returns the metadata of the specified artifact if it is cached, regardless of its age. Never loads any metadata.
+     *
+     * @param mvnCoordinates  The coordinates of the artifact
+     * @param enableSnapshots {@code true} to get the metadata of the snapshot repository
+     * @return The cached metadata or {@code null} if it was not loaded yet. Must not be modified.
+     */
+    public MVNMetadataFile getIfPresent(MVNCoordinates mvnCoordinates, boolean enableSnapshots) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(new Key(mvnCoordinates, enableSnapshots));
+        }
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * Returns the revision of the metadata of the specified artifact that is currently cached. The revision changes
+     * whenever the release or snapshot metadata of the artifact is reloaded, refreshed, evicted or invalidated, so
+     * callers can compare it to a previously returned revision to find out whether data that they derived from the
+     * metadata is outdated. This method never loads any metadata.
+     *
+     * @param mvnCoordinates The coordinates of the artifact
+     * @return The revision of the cached metadata or {@code 0} if no metadata of the artifact is cached
+     */
+    public long getRevision(MVNCoordinates mvnCoordinates) {
+        synchronized (entries) {
+            long res = 0;
+            for (boolean enableSnapshots : new boolean[]{false, true}) {
+                Entry entry = entries.get(new Key(mvnCoordinates, enableSnapshots));
+                if (entry != null)
+                    res = Math.max(res, entry.getRevision());
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Removes the release and snapshot metadata of the specified artifact so that it is reloaded on the next request.
+     *
+     * @param mvnCoordinates The coordinates of the artifact
+     */
+    public void invalidate(MVNCoordinates mvnCoordinates) {
+        synchronized (entries) {
+            entries.remove(new Key(mvnCoordinates, false));
+            entries.remove(new Key(mvnCoordinates, true));
+        }
+    }
+
+    /**
+     * Removes all metadata from the cache.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the number of artifacts and repositories that metadata is cached for.
+     *
+     * @return The number of cache entries
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getTimeToLiveInMillis() {
+        return timeToLiveInMillis;
+    }
+
+    /**
+     * Sets the time after which cached metadata is refreshed.
+     *
+     * @param timeToLiveInMillis The time to live in milliseconds
+     */
+    public void setTimeToLiveInMillis(long timeToLiveInMillis) {
+        if (timeToLiveInMillis < 0)
+            throw new IllegalArgumentException("timeToLiveInMillis must not be negative");
+        this.timeToLiveInMillis = timeToLiveInMillis;
+    }
+
+    public long getStaleWhileRevalidateInMillis() {
+        return staleWhileRevalidateInMillis;
+    }
+
+    /**
+     * Sets the time after the time to live during which expired metadata is still returned while it is refreshed in the background.
+     *
+     * @param staleWhileRevalidateInMillis The stale-while-revalidate period in milliseconds, {@code 0} disables background refreshes
+     */
+    public void setStaleWhileRevalidateInMillis(long staleWhileRevalidateInMillis) {
+        if (staleWhileRevalidateInMillis < 0)
+            throw new IllegalArgumentException("staleWhileRevalidateInMillis must not be negative");
+        this.staleWhileRevalidateInMillis = staleWhileRevalidateInMillis;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Sets the maximum number of cache entries. Each artifact uses one entry for the release and one for the snapshot repository.
+     *
+     * @param maximumSize The maximum number of entries
+     */
+    public void setMaximumSize(int maximumSize) {
+        if (maximumSize < 1)
+            throw new IllegalArgumentException("maximumSize must be at least 1");
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Fetches the metadata of an artifact
+     */
+    @FunctionalInterface
+    public interface Loader {
+        MVNMetadataFile load(MVNCoordinates mvnCoordinates, boolean enableSnapshots) throws JDOMException, IOException;
+    }
+
+    /**
+     * The coordinates of an artifact and the repository the metadata is fetched from. The coordinates are copied so that
+     * later modifications of the coordinates of an app do not corrupt the cache.
+     */
+    private static class Key {
+        private final MVNCoordinates mvnCoordinates;
+        private final boolean enableSnapshots;
+
+        Key(MVNCoordinates mvnCoordinates, boolean enableSnapshots) {
+            this.mvnCoordinates = new MVNCoordinates(mvnCoordinates.getRepoBaseURL(), mvnCoordinates.getSnapshotRepoBaseURL(),
+                    mvnCoordinates.getGroupId(), mvnCoordinates.getArtifactId(), mvnCoordinates.getClassifier());
+            this.enableSnapshots = enableSnapshots;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return enableSnapshots == key.enableSnapshots && mvnCoordinates.equals(key.mvnCoordinates);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mvnCoordinates, enableSnapshots);
+        }
+    }
+
+    /**
+     * The cached metadata of one key and the load that is currently in flight for it
+     */
+    private class Entry {
+        private final Key key;
+        private MVNMetadataFile value;
+        private long loadTime;
+        private long revision;
+        private CompletableFuture<MVNMetadataFile> inFlight;
+
+        Entry(Key key) {
+            this.key = key;
+        }
+
+        synchronized long getRevision() {
+            return revision;
+        }
+
+        synchronized MVNMetadataFile getValue() {
+            return value;
+        }
+
+        MVNMetadataFile get() throws JDOMException, IOException {
+            CompletableFuture<MVNMetadataFile> future;
+            boolean leader = false;
+            synchronized (this) {
+                long age = System.currentTimeMillis() - loadTime;
+                if (value != null && age < getTimeToLiveInMillis())
+                    return value;
+                if (value != null && age < getTimeToLiveInMillis() + getStaleWhileRevalidateInMillis()) {
+                    refreshInBackground();
+                    return value;
+                }
+
+                if (inFlight == null) {
+                    inFlight = new CompletableFuture<>();
+                    leader = true;
+                }
+                future = inFlight;
+            }
+
+            // The load runs on its own thread so that interrupting the caller that started it only cancels its own wait
+            if (leader)
+                BlockingTasks.startDaemon("metadataLoadThread", () -> load(future));
+            return await(future);
+        }
+
+        /**
+         * Starts a refresh unless one is running already. Must be called while holding the lock of this entry.
+         */
+        private void refreshInBackground() {
+            if (inFlight != null)
+                return;
+
+            CompletableFuture<MVNMetadataFile> future = new CompletableFuture<>();
+            inFlight = future;
+            BlockingTasks.startDaemon("metadataRefreshThread", () -> {
+                load(future);
+                if (future.isCompletedExceptionally())
+                    FOKLogger.info(MetadataCache.class.getName(), "Unable to refresh the metadata of " + key.mvnCoordinates + ", the cached metadata is used until the next request");
+            });
+        }
+
+        private void load(CompletableFuture<MVNMetadataFile> future) {
+            try {
+                MVNMetadataFile res = loader.load(key.mvnCoordinates, key.enableSnapshots);
+                synchronized (this) {
+                    value = res;
+                    loadTime = System.currentTimeMillis();
+                    revision = revisionCounter.incrementAndGet();
+                    inFlight = null;
+                }
+                future.complete(res);
+            } catch (JDOMException | IOException | RuntimeException e) {
+                synchronized (this) {
+                    inFlight = null;
+                }
+                future.completeExceptionally(e);
+            }
+        }
+
+        private MVNMetadataFile await(CompletableFuture<MVNMetadataFile> future) throws JDOMException, IOException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the metadata of " + key.mvnCoordinates);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                if (e.getCause() instanceof JDOMException)
+                    throw (JDOMException) e.getCause();
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new IOException("Unable to load the metadata of " + key.mvnCoordinates, e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The sidecar file of a partially downloaded artifact. Records where the partial file was downloaded from, how large the
+ * complete file is, the validator (ETag or Last-Modified) of the online file and how far each segment of the file has been downloaded.
+ * This info is used to resume the download using range requests.
+ */
+public class PartialDownloadFile {
+    private static final String SIDECAR_FILE_NAME_EXTENSION = ".properties";
+    private static final String PART_FILE_NAME_EXTENSION = ".part";
+    private final File sidecarFile;
+    private String url;
+    private long expectedLength = -1;
+    private String eTag;
+    private String lastModified;
+    private List<SegmentInfo> segments = new ArrayList<>();
+
+    /**
+     * Creates a new in-memory representation of the sidecar file that belongs to the specified partial file.
+     * If the sidecar file already exists on the disk, it is read.
+     *
+     * @param partFile The partially downloaded file to create the sidecar for
+     * @throws IOException If the sidecar file exists but cannot be read
+     */
+    public PartialDownloadFile(File partFile) throws IOException {
+        sidecarFile = getSidecarFile(partFile);
+        readFile();
+    }
+
+    /**
+     * Returns the location of the sidecar file that belongs to the specified partial file.
+     *
+     * @param partFile The partially downloaded file
+     * @return The location of the sidecar file that belongs to the specified partial file.
+     */
+    public static File getSidecarFile(File partFile) {
+        return new File(partFile.getAbsolutePath() + SIDECAR_FILE_NAME_EXTENSION);
+    }
+
+    /**
+     * Returns the file that partial downloads of the specified output file are written to.
+     *
+     * @param outputFile The file that the complete download will be saved to
+     * @return The file that partial downloads of the specified output file are written to.
+     */
+    public static File getPartFile(File outputFile) {
+        return new File(outputFile.getAbsolutePath() + PART_FILE_NAME_EXTENSION);
+    }
+
+    /**
+     * Deletes the specified partial file and its sidecar file from the disk if they exist.
+     *
+     * @param partFile The partially downloaded file to delete
+     * @throws IOException If one of the files cannot be deleted
+     */
+    public static void deletePartialDownload(File partFile) throws IOException {
+        Files.deleteIfExists(partFile.toPath());
+        Files.deleteIfExists(getSidecarFile(partFile).toPath());
+    }
+
+    private void readFile() throws IOException {
+        if (!sidecarFile.exists())
+            return;
+
+        Properties properties = new Properties();
+        try (FileInputStream in = new FileInputStream(sidecarFile)) {
+            properties.load(in);
+        }
+
+        try {
+            setUrl(properties.getProperty(FileFormat.URL));
+            setExpectedLength(Long.parseLong(properties.getProperty(FileFormat.EXPECTED_LENGTH, "-1")));
+            setETag(properties.getProperty(FileFormat.E_TAG));
+            setLastModified(properties.getProperty(FileFormat.LAST_MODIFIED));
+
+            int segmentCount = Integer.parseInt(properties.getProperty(FileFormat.SEGMENT_COUNT, "0"));
+            List<SegmentInfo> res = new ArrayList<>(segmentCount);
+            for (int i = 0; i < segmentCount; i++) {
+                res.add(new SegmentInfo(
+                        Long.parseLong(properties.getProperty(FileFormat.segmentKey(i, FileFormat.SEGMENT_START))),
+                        Long.parseLong(properties.getProperty(FileFormat.segmentKey(i, FileFormat.SEGMENT_END))),
+                        Long.parseLong(properties.getProperty(FileFormat.segmentKey(i, FileFormat.SEGMENT_DOWNLOADED)))));
+            }
+            setSegments(res);
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new IOException("The partial download info in " + sidecarFile.getAbsolutePath() + " is corrupt", e);
+        }
+    }
+
+    /**
+     * Saves the sidecar file. If a file is already present at this location, it will be overwritten.
+     *
+     * @throws IOException If the file cannot be written for any reason
+     */
+    public void save() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(FileFormat.URL, getUrl());
+        properties.setProperty(FileFormat.EXPECTED_LENGTH, Long.toString(getExpectedLength()));
+        if (getETag() != null)
+            properties.setProperty(FileFormat.E_TAG, getETag());
+        if (getLastModified() != null)
+            properties.setProperty(FileFormat.LAST_MODIFIED, getLastModified());
+
+        properties.setProperty(FileFormat.SEGMENT_COUNT, Integer.toString(getSegments().size()));
+        for (int i = 0; i < getSegments().size(); i++) {
+            SegmentInfo segment = getSegments().get(i);
+            properties.setProperty(FileFormat.segmentKey(i, FileFormat.SEGMENT_START), Long.toString(segment.getStart()));
+            properties.setProperty(FileFormat.segmentKey(i, FileFormat.SEGMENT_END), Long.toString(segment.getEnd()));
+            properties.setProperty(FileFormat.segmentKey(i, FileFormat.SEGMENT_DOWNLOADED), Long.toString(segment.getDownloaded()));
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        sidecarFile.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(sidecarFile)) {
+            properties.store(out, "Partial download info of the FOK Launcher, do not edit");
+        }
+    }
+
+    /**
+     * Deletes the sidecar file from the disk if it exists.
+     *
+     * @throws IOException If the file cannot be deleted
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(sidecarFile.toPath());
+    }
+
+    /**
+     * Returns {@code true} if the sidecar file exists on the disk.
+     *
+     * @return {@code true} if the sidecar file exists on the disk.
+     */
+    public boolean exists() {
+        return sidecarFile.exists();
+    }
+
+    /**
+     * Returns the validator to send in the {@code If-Range} header when resuming. The ETag is preferred over the Last-Modified date.
+     *
+     * @return The validator to send in the {@code If-Range} header or {@code null} if the server did not send a validator.
+     */
+    public String getValidator() {
+        if (getETag() != null)
+            return getETag();
+        return getLastModified();
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public long getExpectedLength() {
+        return expectedLength;
+    }
+
+    public void setExpectedLength(long expectedLength) {
+        this.expectedLength = expectedLength;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public List<SegmentInfo> getSegments() {
+        return segments;
+    }
+
+    public void setSegments(List<SegmentInfo> segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * The persisted state of a byte range of the artifact (both ends inclusive)
+     */
+    public static class SegmentInfo {
+        private final long start;
+        private final long end;
+        private final long downloaded;
+
+        public SegmentInfo(long start, long end, long downloaded) {
+            this.start = start;
+            this.end = end;
+            this.downloaded = downloaded;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * Returns the number of bytes of this segment that were downloaded, counted from the start of the segment.
+         *
+         * @return The number of bytes of this segment that were downloaded
+         */
+        public long getDownloaded() {
+            return downloaded;
+        }
+    }
+
+    /**
+     * Describes the keys used in the sidecar file
+     */
+    public static class FileFormat {
+        public static final String URL = "url";
+        public static final String EXPECTED_LENGTH = "expectedLength";
+        public static final String E_TAG = "eTag";
+        public static final String LAST_MODIFIED = "lastModified";
+        public static final String SEGMENT_COUNT = "segmentCount";
+        public static final String SEGMENT_START = "start";
+        public static final String SEGMENT_END = "end";
+        public static final String SEGMENT_DOWNLOADED = "downloaded";
+
+        private FileFormat() {
+            throw new IllegalStateException("Class may not be instantiated");
+        }
+
+        static String segmentKey(int segmentIndex, String key) {
+            return "segment." + segmentIndex + "." + key;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import view.HidableProgressDialogWithEnqueuedNotification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Forwards all progress notifications to a group of dialogs. Used when several requests for the same download are
+ * coalesced into one {@link DownloadQueueEntry}. Dialogs that are added late are brought up to date immediately.
+ */
+class ProgressDialogGroup implements HidableProgressDialogWithEnqueuedNotification {
+    private final List<HidableProgressDialogWithEnqueuedNotification> dialogs = new CopyOnWriteArrayList<>();
+    /**
+     * The notifications that the group received so far in the order they were first received
+     */
+    private final List<Event> firedEvents = new ArrayList<>();
+    private double kilobytesDownloaded;
+    private double totalKiloBytes;
+
+    /**
+     * Adds the specified dialog to this group and replays all notifications that the group received so far in the
+     * order they were received. Only notifications that were actually received are replayed, e. g. a download that
+     * was cancelled before it started does not report a started download to the new dialog.
+     *
+     * @param dialog The dialog to add
+     */
+    synchronized void add(HidableProgressDialogWithEnqueuedNotification dialog) {
+        dialogs.add(dialog);
+
+        for (Event event : firedEvents) {
+            switch (event) {
+                case ENQUEUED:
+                    dialog.enqueued();
+                    break;
+                case PREPARE_PHASE_STARTED:
+                    dialog.preparePhaseStarted();
+                    break;
+                case DOWNLOAD_STARTED:
+                    dialog.downloadStarted();
+                    break;
+                case DOWNLOAD_PROGRESS_CHANGED:
+                    // only the latest progress is of interest
+                    dialog.downloadProgressChanged(kilobytesDownloaded, totalKiloBytes);
+                    break;
+                case INSTALL_STARTED:
+                    dialog.installStarted();
+                    break;
+                case LAUNCH_STARTED:
+                    dialog.launchStarted();
+                    break;
+                case CANCEL_REQUESTED:
+                    dialog.cancelRequested();
+                    break;
+                case CANCELLED:
+                    dialog.operationCanceled();
+                    break;
+                case DONE:
+                    dialog.hide();
+                    break;
+            }
+        }
+    }
+
+    private void recordEvent(Event event) {
+        if (!firedEvents.contains(event))
+            firedEvents.add(event);
+    }
+
+    boolean remove(HidableProgressDialogWithEnqueuedNotification dialog) {
+        return dialogs.remove(dialog);
+    }
+
+    List<HidableProgressDialogWithEnqueuedNotification> getDialogs() {
+        return dialogs;
+    }
+
+    boolean contains(HidableProgressDialogWithEnqueuedNotification dialog) {
+        return dialogs.contains(dialog);
+    }
+
+    @Override
+    public synchronized void hide() {
+        recordEvent(Event.DONE);
+        for (HidableProgressDialogWithEnqueuedNotification dialog : dialogs) {
+            dialog.hide();
+        }
+    }
+
+    @Override
+    public synchronized void enqueued() {
+        recordEvent(Event.ENQUEUED);
+        for (HidableProgressDialogWithEnqueuedNotification dialog : dialogs) {
+            dialog.enqueued();
+        }
+    }
+
+    @Override
+    public synchronized void preparePhaseStarted() {
+        recordEvent(Event.PREPARE_PHASE_STARTED);
+        for (HidableProgressDialogWithEnqueuedNotification dialog : dialogs) {
+            dialog.preparePhaseStarted();
+        }
+    }
+
+    @Override
+    public synchronized void downloadStarted() {
+        recordEvent(Event.DOWNLOAD_STARTED);
+        for (HidableProgressDialogWithEnqueuedNotification dialog : dialogs) {
+            dialog.downloadStarted();
+        }
+    }
+
+    @Override
+    public synchronized void downloadProgressChanged(double kilobytesDownloaded, double totalKiloBytes) {
+        this.kilobytesDownloaded = kilobytesDownloaded;
+        this.totalKiloBytes = totalKiloBytes;
+        recordEvent(Event.DOWNLOAD_PROGRESS_CHANGED);
+        for (HidableProgressDialogWithEnqueuedNotification dialog : dialogs) {
+            dialog.downloadProgressChanged(kilobytesDownloaded, totalKiloBytes);
+        }
+    }
+
+    @Override
+    public synchronized void installStarted() {
+        recordEvent(Event.INSTALL_STARTED);
+        for (HidableProgressDialogWithEnqueuedNotification dialog : dialogs) {
+            dialog.installStarted();
+        }
+    }
+
+    @Override
+    public synchronized void launchStarted() {
+        recordEvent(Event.LAUNCH_STARTED);
+        for (HidableProgressDialogWithEnqueuedNotification dialog : dialogs) {
+            dialog.launchStarted();
+        }
+    }
+
+    @Override
+    public synchronized void cancelRequested() {
+        recordEvent(Event.CANCEL_REQUESTED);
+        for (HidableProgressDialogWithEnqueuedNotification dialog : dialogs) {
+            dialog.cancelRequested();
+        }
+    }
+
+    @Override
+    public synchronized void operationCanceled() {
+        recordEvent(Event.CANCELLED);
+        for (HidableProgressDialogWithEnqueuedNotification dialog : dialogs) {
+            dialog.operationCanceled();
+        }
+    }
+
+    /**
+     * Shows the error message in the first dialog of the group only as most dialogs show error messages in a popup.
+     *
+     * @param s The error message to show
+     */
+    @Override
+    public void showErrorMessage(String s) {
+        for (HidableProgressDialogWithEnqueuedNotification dialog : dialogs) {
+            dialog.showErrorMessage(s);
+            return;
+        }
+    }
+
+    private enum Event {
+        ENQUEUED, PREPARE_PHASE_STARTED, DOWNLOAD_STARTED, DOWNLOAD_PROGRESS_CHANGED, INSTALL_STARTED, LAUNCH_STARTED, CANCEL_REQUESTED, CANCELLED, DONE
+    }
+}
@@ -0,0 +1,112 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the aggregate throughput of all transfers it is attached to as well as the average throughput per connection.
+ * The throughput is computed whenever {@link #sample()} is called and smoothed using an exponentially weighted moving average.
+ */
+public class ThroughputMeter implements TransferListener {
+    private static final double smoothingFactor = 0.5;
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private long lastSampleTime = System.nanoTime();
+    private long lastSampleBytes;
+    private double bytesPerSecond = -1;
+
+    @Override
+    public void connectionOpened() {
+        activeConnections.incrementAndGet();
+    }
+
+    @Override
+    public void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    @Override
+    public void bytesTransferred(long bytes) {
+        totalBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Computes the throughput since the last call of this method and merges it into the moving average.
+     *
+     * @return The smoothed aggregate throughput in bytes per second
+     */
+    public synchronized double sample() {
+        long now = System.nanoTime();
+        long bytes = totalBytes.get();
+        double elapsedSeconds = (now - lastSampleTime) / (double) TimeUnit.SECONDS.toNanos(1);
+        if (elapsedSeconds <= 0)
+            return getBytesPerSecond();
+
+        double currentBytesPerSecond = (bytes - lastSampleBytes) / elapsedSeconds;
+        lastSampleTime = now;
+        lastSampleBytes = bytes;
+        if (bytesPerSecond < 0)
+            bytesPerSecond = currentBytesPerSecond;
+        else
+            bytesPerSecond = smoothingFactor * currentBytesPerSecond + (1 - smoothingFactor) * bytesPerSecond;
+        return bytesPerSecond;
+    }
+
+    /**
+     * Returns the aggregate throughput in bytes per second as computed by the last call to {@link #sample()}.
+     *
+     * @return The aggregate throughput in bytes per second or {@code 0} if {@link #sample()} was not called yet.
+     */
+    public synchronized double getBytesPerSecond() {
+        return Math.max(0, bytesPerSecond);
+    }
+
+    /**
+     * Returns the average throughput per open connection in bytes per second.
+     *
+     * @return The average throughput per open connection in bytes per second.
+     */
+    public double getBytesPerSecondPerConnection() {
+        return getBytesPerSecond() / Math.max(1, getActiveConnections());
+    }
+
+    /**
+     * Returns the number of connections that currently transfer data.
+     *
+     * @return The number of connections that currently transfer data.
+     */
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * Returns the number of bytes transferred since this meter was created.
+     *
+     * @return The number of bytes transferred since this meter was created.
+     */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+}
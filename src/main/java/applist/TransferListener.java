@@ -0,0 +1,83 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+/**
+ * Receives notifications about the network transfers of an {@link ArtifactDownloader}.
+ * Implementations must be thread safe as segments are downloaded concurrently.
+ */
+public interface TransferListener {
+    /**
+     * A listener that ignores all notifications
+     */
+    TransferListener NONE = new TransferListener() {
+    };
+
+    /**
+     * Creates a listener that forwards all notifications to both specified listeners in the specified order.
+     *
+     * @param first  The listener to notify first
+     * @param second The listener to notify second
+     * @return A listener that notifies both specified listeners
+     */
+    static TransferListener combine(TransferListener first, TransferListener second) {
+        return new TransferListener() {
+            @Override
+            public void connectionOpened() {
+                first.connectionOpened();
+                second.connectionOpened();
+            }
+
+            @Override
+            public void connectionClosed() {
+                first.connectionClosed();
+                second.connectionClosed();
+            }
+
+            @Override
+            public void bytesTransferred(long bytes) {
+                first.bytesTransferred(bytes);
+                second.bytesTransferred(bytes);
+            }
+        };
+    }
+
+    /**
+     * Called when a connection starts to transfer data.
+     */
+    default void connectionOpened() {
+    }
+
+    /**
+     * Called when a connection stopped transferring data, regardless of whether the transfer was successful.
+     */
+    default void connectionClosed() {
+    }
+
+    /**
+     * Called after a chunk of data was received and written to the disk. Implementations may block to throttle the transfer.
+     *
+     * @param bytes The number of bytes in the chunk
+     */
+    default void bytesTransferred(long bytes) {
+    }
+}
@@ -0,0 +1,411 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import com.github.vatbub.common.core.logging.FOKLogger;
+import com.github.vatbub.common.updater.Version;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Checks all apps of an {@link AppList} for updates concurrently. At most {@link #getParallelism()} apps are checked at
+ * once. Results are passed to the {@link Listener} as soon as the check of an app completes, so the gui can show them
+ * while the remaining apps are still being checked. The metadata is fetched through the {@link MetadataCache}, so
+ * launching or selecting a checked app afterwards does not fetch it again.
+ *
+ * @see AppList#checkForUpdates(boolean, Listener)
+ */
+public class UpdateCheck {
+    private static volatile int parallelism = 16;
+    private final List<App> apps;
+    private final boolean snapshotsEnabled;
+    private final Listener listener;
+    private final Map<App, Result> results = new ConcurrentHashMap<>();
+    private final AtomicInteger remainingApps;
+    private final CountDownLatch completedLatch = new CountDownLatch(1);
+    private ExecutorService executorService;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a new check that needs to be started using {@link #start()}.
+     *
+     * @param apps             The apps to check
+     * @param snapshotsEnabled {@code true} if installed apps shall be compared to the latest snapshot instead of the latest release
+     * @param listener         The listener to notify about the results
+     */
+    UpdateCheck(Collection<App> apps, boolean snapshotsEnabled, Listener listener) {
+        this.apps = new ArrayList<>(apps);
+        this.snapshotsEnabled = snapshotsEnabled;
+        this.listener = listener;
+        remainingApps = new AtomicInteger(this.apps.size());
+    }
+
+    /**
+     * Returns the maximum number of apps that are checked concurrently.
+     *
+     * @return The maximum number of apps that are checked concurrently.
+     */
+    public static int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the maximum number of apps that are checked concurrently.
+     *
+     * @param parallelism The maximum number of apps that are checked concurrently, at least {@code 1}
+     */
+    public static void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        UpdateCheck.parallelism = parallelism;
+    }
+
+    /**
+     * Starts checking all apps. Returns immediately.
+     */
+    synchronized void start() {
+        if (executorService != null)
+            throw new IllegalStateException("The update check was already started");
+
+        FOKLogger.info(UpdateCheck.class.getName(), "Checking " + apps.size() + " apps for updates...");
+        if (apps.isEmpty()) {
+            completed();
+            return;
+        }
+
+        // Virtual threads are cheap enough to start one per app, the permits limit the number of concurrent checks.
+        // Platform threads are not, so a fixed pool limits the number of threads instead.
+        Semaphore permits = new Semaphore(getParallelism());
+        if (BlockingTasks.isVirtualThreadsEnabled())
+            executorService = BlockingTasks.newThreadPerTaskExecutor("updateCheckThread-");
+        else
+            executorService = BlockingTasks.newFixedThreadPool("updateCheckThread-", getParallelism());
+        for (App app : apps) {
+            executorService.submit(() -> {
+                try {
+                    permits.acquire();
+                    try {
+                        if (!isCancelled())
+                            resultAvailable(check(app));
+                    } finally {
+                        permits.release();
+                    }
+                } catch (InterruptedException e) {
+                    // cancelled
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (remainingApps.decrementAndGet() == 0)
+                        completed();
+                }
+            });
+        }
+        executorService.shutdown();
+    }
+
+    private Result check(App app) {
+        try {
+            if (app.downloadRequired(snapshotsEnabled))
+                return new Result(app, Status.NOT_INSTALLED, null, null, null);
+
+            Version installedVersion = app.getCurrentlyInstalledVersion(snapshotsEnabled);
+            Version onlineVersion = snapshotsEnabled ? app.getLatestOnlineSnapshotVersion() : app.getLatestOnlineVersion();
+            Status status = onlineVersion.compareTo(installedVersion) > 0 ? Status.UPDATE_AVAILABLE : Status.UP_TO_DATE;
+            return new Result(app, status, installedVersion, onlineVersion, null);
+        } catch (Exception e) {
+            FOKLogger.log(UpdateCheck.class.getName(), Level.INFO, "Unable to check " + app.getName() + " for updates", e);
+            return new Result(app, Status.ERROR, null, null, e);
+        }
+    }
+
+    private void resultAvailable(Result result) {
+        results.put(result.getApp(), result);
+        try {
+            listener.resultAvailable(result);
+        } catch (RuntimeException e) {
+            FOKLogger.log(UpdateCheck.class.getName(), Level.SEVERE, "An update check listener failed", e);
+        }
+    }
+
+    private void completed() {
+        if (!isCancelled()) {
+            Summary summary = getSummary();
+            FOKLogger.info(UpdateCheck.class.getName(), "Update check completed: " + summary);
+            try {
+                listener.checkCompleted(summary);
+            } catch (RuntimeException e) {
+                FOKLogger.log(UpdateCheck.class.getName(), Level.SEVERE, "An update check listener failed", e);
+            }
+        }
+        completedLatch.countDown();
+    }
+
+    /**
+     * Stops the check. Apps that are being checked at the moment may still be reported, but the listener is not notified
+     * about the completion of the check.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        if (executorService == null)
+            return;
+
+        // apps that were still waiting for a thread of a fixed pool are never checked
+        int droppedAppCount = executorService.shutdownNow().size();
+        if (droppedAppCount > 0 && remainingApps.addAndGet(-droppedAppCount) == 0)
+            completed();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns {@code true} if all apps were checked or the check was cancelled and all running checks stopped.
+     *
+     * @return {@code true} if the check is done
+     */
+    public boolean isDone() {
+        return completedLatch.getCount() == 0;
+    }
+
+    /**
+     * Waits until the check is done.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit    The unit of the timeout
+     * @return {@code true} if the check is done, {@code false} if the timeout elapsed before
+     * @throws InterruptedException If the current thread was interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return completedLatch.await(timeout, unit);
+    }
+
+    /**
+     * Returns the result of the specified app.
+     *
+     * @param app The app to get the result for
+     * @return The result of the specified app or {@code null} if the app was not checked yet or is not part of this check
+     */
+    @Nullable
+    public Result getResult(App app) {
+        return results.get(app);
+    }
+
+    /**
+     * Returns a summary of the results that are available so far.
+     *
+     * @return A summary of the results that are available so far.
+     */
+    public Summary getSummary() {
+        return new Summary(new ArrayList<>(results.values()), apps.size());
+    }
+
+    /**
+     * The outcome of the check of a single app
+     */
+    public enum Status {
+        /**
+         * The latest online version is installed
+         */
+        UP_TO_DATE,
+        /**
+         * A newer version is available online
+         */
+        UPDATE_AVAILABLE,
+        /**
+         * No version of the app is installed, so there is nothing to update
+         */
+        NOT_INSTALLED,
+        /**
+         * The online metadata of the app could not be fetched
+         */
+        ERROR
+    }
+
+    /**
+     * Receives the results of an {@link UpdateCheck}. Methods are called from the threads that check the apps, so
+     * implementations must be thread safe and must move gui updates to the JavaFX application thread.
+     */
+    public interface Listener {
+        /**
+         * A listener that ignores all results
+         */
+        Listener NONE = new Listener() {
+        };
+
+        /**
+         * Called as soon as the check of an app completed.
+         *
+         * @param result The result of the app
+         */
+        default void resultAvailable(Result result) {
+        }
+
+        /**
+         * Called once after all apps were checked. Not called if the check was cancelled.
+         *
+         * @param summary The summary of all results
+         */
+        default void checkCompleted(Summary summary) {
+        }
+    }
+
+    /**
+     * The result of the check of a single app
+     */
+    public static class Result {
+        private final App app;
+        private final Status status;
+        private final Version installedVersion;
+        private final Version onlineVersion;
+        private final Exception error;
+        private final long checkTime = System.nanoTime();
+
+        Result(App app, Status status, @Nullable Version installedVersion, @Nullable Version onlineVersion, @Nullable Exception error) {
+            this.app = app;
+            this.status = status;
+            this.installedVersion = installedVersion;
+            this.onlineVersion = onlineVersion;
+            this.error = error;
+        }
+
+        public App getApp() {
+            return app;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns the installed version that was compared to the online version.
+         *
+         * @return The installed version or {@code null} if the app is not installed or the check failed
+         */
+        @Nullable
+        public Version getInstalledVersion() {
+            return installedVersion;
+        }
+
+        /**
+         * Returns the latest online version.
+         *
+         * @return The latest online version or {@code null} if the app is not installed or the check failed
+         */
+        @Nullable
+        public Version getOnlineVersion() {
+            return onlineVersion;
+        }
+
+        /**
+         * Returns the reason why the check failed.
+         *
+         * @return The reason why the check failed or {@code null} if the status is not {@link Status#ERROR}
+         */
+        @Nullable
+        public Exception getError() {
+            return error;
+        }
+
+        /**
+         * Returns the time when the check of the app completed as returned by {@link System#nanoTime()}.
+         *
+         * @return The time when the check of the app completed
+         * @see App#getLastKnownUpdateAvailabilityCacheTime()
+         */
+        public long getCheckTime() {
+            return checkTime;
+        }
+
+        @Override
+        public String toString() {
+            switch (getStatus()) {
+                case UPDATE_AVAILABLE:
+                    return getApp().getName() + ": " + getInstalledVersion().toString(false) + " -> " + getOnlineVersion().toString(false);
+                case ERROR:
+                    return getApp().getName() + ": " + getError();
+                default:
+                    return getApp().getName() + ": " + getStatus();
+            }
+        }
+    }
+
+    /**
+     * The number of apps per {@link Status} and the apps that can be updated
+     */
+    public static class Summary {
+        private final Map<Status, Integer> counts = new EnumMap<>(Status.class);
+        private final List<App> appsWithUpdates = new ArrayList<>();
+        private final int appCount;
+
+        Summary(Collection<Result> results, int appCount) {
+            this.appCount = appCount;
+            for (Status status : Status.values())
+                counts.put(status, 0);
+            for (Result result : results) {
+                counts.put(result.getStatus(), counts.get(result.getStatus()) + 1);
+                if (result.getStatus() == Status.UPDATE_AVAILABLE)
+                    appsWithUpdates.add(result.getApp());
+            }
+        }
+
+        /**
+         * Returns the number of apps with the specified status.
+         *
+         * @param status The status to count
+         * @return The number of apps with the specified status
+         */
+        public int getCount(Status status) {
+            return counts.get(status);
+        }
+
+        /**
+         * Returns the number of apps that were not checked yet.
+         *
+         * @return The number of apps that were not checked yet
+         */
+        public int getPendingCount() {
+            int res = appCount;
+            for (int count : counts.values())
+                res -= count;
+            return res;
+        }
+
+        /**
+         * Returns the installed apps that have an update available.
+         *
+         * @return The installed apps that have an update available
+         */
+        public List<App> getAppsWithUpdates() {
+            return Collections.unmodifiableList(appsWithUpdates);
+        }
+
+        @Override
+        public String toString() {
+            return getCount(Status.UPDATE_AVAILABLE) + " updates available, " + getCount(Status.UP_TO_DATE) + " up to date, "
+                    + getCount(Status.NOT_INSTALLED) + " not installed, " + getCount(Status.ERROR) + " errors, " + getPendingCount() + " pending";
+        }
+    }
+}
@@ -34,8 +34,8 @@ import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class DownloadQueueEntryView extends AnchorPane implements HidableProgressDialogWithEnqueuedNotification {
     private MainWindow mainWindow;
@@ -48,7 +48,7 @@ public class DownloadQueueEntryView extends AnchorPane implements HidableProgres
     private volatile DownloadStatus currentStatus;
     private double kilobytesDownloaded;
     private double totalKiloBytes;
-    private final List<HidableProgressDialogWithEnqueuedNotification> attachedGUIs = new ArrayList<>();
+    private final List<HidableProgressDialogWithEnqueuedNotification> attachedGUIs = new CopyOnWriteArrayList<>();
 
     public DownloadQueueEntryView(MainWindow mainWindow, ListView<DownloadQueueEntryView> parent, App app) {
         // super(spacing);
@@ -107,6 +107,8 @@ public class DownloadQueueEntryView extends AnchorPane implements HidableProgres
         currentStatus = DownloadStatus.DONE;
         Platform.runLater(() -> getParentCustom().getItems().remove(this));
         getMainWindow().triggerUpdateOfDownloadQueuePaneWidthIfPaneIsExtended();
+        // the update mark of the app might have changed
+        getMainWindow().refreshAppList();
         for (HidableProgressDialogWithEnqueuedNotification gui : attachedGUIs) {
             gui.hide();
         }
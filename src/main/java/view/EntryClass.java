@@ -22,6 +22,7 @@ package view;
 
 
 import applist.App;
+import applist.BlockingTasks;
 import applist.MVNCoordinates;
 import com.github.vatbub.common.core.Common;
 import com.github.vatbub.common.core.Prefs;
@@ -507,7 +508,7 @@ public class EntryClass extends Application {
         MainWindow.setBundle(ResourceBundle.getBundle("view.MainWindow"));
 
         try {
-            Thread updateThread = new Thread(() -> {
+            BlockingTasks.start("updateThread", () -> {
                 try {
                     UpdateInfo update = UpdateChecker.isUpdateAvailable(new URL(AppConfig.getInstance().getRemoteConfig().getValue("updateRepoBaseURL")),
                             AppConfig.getInstance().getRemoteConfig().getValue("groupID"), AppConfig.getInstance().getRemoteConfig().getValue("artifactID"), AppConfig.getInstance().getUpdateFileClassifier(),
@@ -519,8 +520,6 @@ public class EntryClass extends Application {
                     FOKLogger.log(MainWindow.class.getName(), Level.SEVERE, FOKLogger.DEFAULT_ERROR_TEXT, e);
                 }
             });
-            updateThread.setName("updateThread");
-            updateThread.start();
 
             FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("MainWindow.fxml"), MainWindow.getBundle());
             Parent root = fxmlLoader.load();
@@ -23,8 +23,11 @@ package view;
 
 import applist.App;
 import applist.AppList;
+import applist.AppSearchIndex;
+import applist.BlockingTasks;
 import applist.DownloadQueue;
 import applist.DownloadQueueEntry;
+import applist.UpdateCheck;
 import com.github.vatbub.common.core.Common;
 import com.github.vatbub.common.core.StringCommon;
 import com.github.vatbub.common.core.logging.FOKLogger;
@@ -44,11 +47,13 @@ import extended.GuiLanguage;
 import javafx.animation.Interpolator;
 import javafx.animation.KeyFrame;
 import javafx.animation.KeyValue;
+import javafx.animation.PauseTransition;
 import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.Cursor;
@@ -74,16 +79,19 @@ import java.awt.*;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.time.Instant;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 
 import static org.awaitility.Awaitility.await;
@@ -98,6 +106,15 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
     private static final ImageView downButtonIconView = new ImageView(new Image(MainWindow.class.getResourceAsStream("caret-arrow-down.png")));
     // private static final EnumSet<DatadogReporter.Expansion> expansions = EnumSet.of(COUNT, RATE_1_MINUTE, RATE_15_MINUTE, MEDIAN, P95, P99);
     // private static final MetricRegistry metricsRegistry = new MetricRegistry();
+    /**
+     * The maximum number of apps that are ordered by how well they match when searching. All other apps that contain
+     * the search query are still shown, after the ranked ones.
+     */
+    private static final int MAX_RANKED_SEARCH_RESULTS = 200;
+    /**
+     * The time to wait for the app list to load before the cached app list is shown if no snapshot of the last session exists
+     */
+    private static final long APP_LIST_LOAD_DEADLINE_IN_MILLIS = 3000;
     private static ResourceBundle bundle;
     public static final Runnable showLauncherAgain = () -> {
         // reset the ui
@@ -118,12 +135,36 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
     public CheckBox launchLauncherAfterAppExitCheckbox;
     @FXML
     private Button addToDownloadQueueButton;
-    private AppList apps;
+    /**
+     * The apps currently shown in the list. Written by the thread that loads the app list and read on the JavaFX application thread.
+     */
+    private volatile AppList apps;
     private App currentlySelectedApp = null;
     private int currentlySelectedIndex = -1;
-    private Date latestProgressBarUpdate = Date.from(Instant.now());
     private Thread getAppListThread;
+    private BlockingTasks.TaskScope appStatusScope;
     private App appForAutoLaunch;
+    private volatile UpdateCheck updateCheck;
+    /**
+     * All apps currently shown in the list. Only accessed on the JavaFX application thread.
+     */
+    private final ObservableList<App> appItems = FXCollections.observableArrayList();
+    /**
+     * {@link #appItems} filtered by the search field. Only accessed on the JavaFX application thread.
+     */
+    private final FilteredList<App> filteredApps = new FilteredList<>(appItems, app -> true);
+    /**
+     * {@link #filteredApps} ordered by their search rank. Only accessed on the JavaFX application thread.
+     */
+    private final SortedList<App> rankedApps = new SortedList<>(filteredApps);
+    /**
+     * The search index of the apps currently shown in the list. Only accessed on the JavaFX application thread.
+     */
+    private AppSearchIndex searchIndex;
+    /**
+     * Delays filtering the app list until the user stopped typing for a moment
+     */
+    private final PauseTransition searchDebounce = new PauseTransition(Duration.millis(120));
     private boolean offlineModeCheckPerformed = false;
     @FXML
     private ListView<App> appList;
@@ -147,62 +188,37 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
         @Override
         public void run() {
             try {
-                int previouslySelectedIndex = getCurrentlySelectedIndex();
+                // load the app list concurrently while the last known list is shown
+                boolean offlineMode = workOffline();
+                CompletableFuture<AppList> loadedApps = new CompletableFuture<>();
+                BlockingTasks.startDaemon("appListLoadThread", () -> {
+                    try {
+                        loadedApps.complete(App.getAppList(offlineMode));
+                    } catch (JDOMException | IOException | RuntimeException e) {
+                        loadedApps.completeExceptionally(e);
+                    }
+                });
 
                 // skip the loading screen if it already contains a list
                 if (apps == null) {
-                    Platform.runLater(() -> {
-                        appList.setItems(FXCollections.observableArrayList());
-                        appList.setDisable(true);
-                        appList.setPlaceholder(new Label(bundle.getString("WaitForAppList")));
-                    });
-                }
-
-                apps = App.getAppList(workOffline());
-
-                ObservableList<App> items = FXCollections.observableArrayList();
-                FilteredList<App> filteredData = new FilteredList<>(items, s -> true);
-
-                items.addAll(apps);
-
-                // Add filter functionality
-                searchField.textProperty().addListener(obs -> {
-                    String filter = searchField.getText();
-                    if (filter == null || filter.length() == 0) {
-                        filteredData.setPredicate(s -> true);
-                    } else {
-                        filteredData.setPredicate(s -> s.getName().toLowerCase().contains(filter.toLowerCase()));
+                    AppList cachedApps = App.getCachedAppList();
+                    if (cachedApps == null) {
+                        Platform.runLater(() -> {
+                            appList.setDisable(true);
+                            appList.setPlaceholder(new Label(bundle.getString("WaitForAppList")));
+                        });
+                        cachedApps = getOfflineAppListIfLoadTakesTooLong(loadedApps, offlineMode);
                     }
-                });
-
-                // Build the context menu
-                appList.setCellFactory(lv -> {
-
-                    CustomListCell<App> cell = new CustomListCell<>();
-
-                    cell.emptyProperty().addListener((obs, wasEmpty, isNowEmpty) -> {
-                        if (isNowEmpty) {
-                            cell.setContextMenu(null);
-                        } else {
-                            cell.setContextMenu(cell.getItem().getContextMenu());
-                        }
-                    });
-                    return cell;
-                });
 
-                Platform.runLater(() -> {
-                    appList.setItems(filteredData);
-                    appList.setPlaceholder(new Label(bundle.getString("emptyAppList")));
-
-                    if (previouslySelectedIndex >= 0) {
-                        appList.getSelectionModel().select(previouslySelectedIndex);
+                    if (cachedApps != null) {
+                        showAppList(cachedApps);
                     }
+                }
 
-                    // Only enable if no download is running
-                    if (!isMainDownloadRunning()) {
-                        appList.setDisable(false);
-                    }
-                });
+                AppList loadedAppList = awaitAppList(loadedApps);
+                showAppList(loadedAppList);
+                checkAllAppsForUpdates();
+                saveAppListSnapshotInBackground(loadedAppList);
 
             } catch (FileNotFoundException e) {
                 FOKLogger.log(MainWindow.class.getName(), Level.SEVERE, "Unable to load the cached app list", e);
@@ -212,6 +228,100 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
                         .showErrorMessage(FOKLogger.DEFAULT_ERROR_TEXT + ": \n" + e.getClass().getName() + "\n" + e.getMessage());
             }
         }
+
+        /**
+         * Waits until the specified load of the app list finishes or until {@link #APP_LIST_LOAD_DEADLINE_IN_MILLIS} elapsed.
+         * If the load did not finish in time, the cached online app list and the imported apps are read without accessing
+         * the network so that the user does not have to wait for slow name resolution or connections.
+         *
+         * @param loadedApps  The running load of the app list
+         * @param offlineMode {@code true} if the running load does not access the network anyway
+         * @return The cached app list or {@code null} if the load finished in time or no cached app list is available.
+         */
+        @Nullable
+        private AppList getOfflineAppListIfLoadTakesTooLong(CompletableFuture<AppList> loadedApps, boolean offlineMode) {
+            if (offlineMode)
+                return null;
+
+            try {
+                loadedApps.get(APP_LIST_LOAD_DEADLINE_IN_MILLIS, TimeUnit.MILLISECONDS);
+                return null;
+            } catch (ExecutionException e) {
+                // reported once the load is awaited
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (TimeoutException e) {
+                FOKLogger.info(MainWindow.class.getName(), "Loading the app list takes longer than " + APP_LIST_LOAD_DEADLINE_IN_MILLIS + " ms, showing the cached app list in the meantime");
+            }
+
+            try {
+                AppList res = App.getOnlineAppList(true);
+                res.addAll(App.getImportedAppList());
+                return res;
+            } catch (JDOMException | IOException e) {
+                FOKLogger.log(MainWindow.class.getName(), Level.FINE, "No cached app list available", e);
+                return null;
+            }
+        }
+
+        private AppList awaitAppList(CompletableFuture<AppList> loadedApps) throws JDOMException, IOException {
+            try {
+                return loadedApps.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while loading the app list");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                if (e.getCause() instanceof JDOMException)
+                    throw (JDOMException) e.getCause();
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new IOException(e.getCause());
+            }
+        }
+
+        /**
+         * Shows the specified apps in the app list. Apps that were shown before and did not change are kept, so the list is
+         * updated in place and the selection is kept. The search index is built and the last known update availability of
+         * the apps is cached on the calling thread, so this should not be called on the JavaFX application thread.
+         *
+         * @param appsToShow The apps to show
+         */
+        private void showAppList(AppList appsToShow) {
+            AppList previousApps = apps;
+            if (previousApps != null) {
+                appsToShow.keepUnchangedApps(previousApps);
+            }
+
+            // build the search index and read the installed versions off the JavaFX application thread
+            AppSearchIndex newSearchIndex = new AppSearchIndex(appsToShow);
+            for (App app : appsToShow) {
+                app.cacheLastKnownUpdateAvailability();
+            }
+            apps = appsToShow;
+
+            Platform.runLater(() -> {
+                App previouslySelectedApp = appList.getSelectionModel().getSelectedItem();
+                appsToShow.applyTo(appItems);
+                searchIndex = newSearchIndex;
+                applySearchFilter();
+                appList.setPlaceholder(new Label(bundle.getString("emptyAppList")));
+
+                // apps that moved lose their selection
+                if (previouslySelectedApp != null && appList.getSelectionModel().getSelectedItem() != previouslySelectedApp
+                        && rankedApps.contains(previouslySelectedApp)) {
+                    appList.getSelectionModel().select(previouslySelectedApp);
+                }
+
+                // Only enable if no download is running
+                if (!isMainDownloadRunning()) {
+                    appList.setDisable(false);
+                }
+            });
+        }
     };
     @FXML
     private Hyperlink updateLink;
@@ -228,6 +338,10 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
     @FXML
     private Button numberOfConcurrentDownloadsDownButton;
     @FXML
+    private CheckBox numberOfConcurrentDownloadsAutomaticCheckbox;
+    @FXML
+    private TextField downloadSpeedLimitTextField;
+    @FXML
     private TitledPane downloadQueueTitledPane;
 
     public static ResourceBundle getBundle() {
@@ -307,8 +421,8 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
      */
     public void launchAppFromGUI(App appToLaunch, boolean snapshotsEnabled, boolean ignoreShowLauncherWhenAppExitsSetting, @Nullable Version versionToDownload, String... startupArgs) {
         DownloadQueueEntry entry = downloadQueue.getEntryForApp(appToLaunch);
-        if (entry != null && entry.isEnableSnapshots() == snapshotsEnabled && entry.getVersionToDownload() == versionToDownload) {
-            entry.setLaunchAfterDownload(true);
+        // If the worker already decided not to launch the app, a new entry is added below
+        if (entry != null && entry.isEnableSnapshots() == snapshotsEnabled && entry.getVersionToDownload() == versionToDownload && downloadQueue.requestLaunch(entry, startupArgs)) {
             if (launchLauncherAfterAppExitCheckbox.isSelected() && !ignoreShowLauncherWhenAppExitsSetting) {
                 entry.getApp().addEventHandlerWhenLaunchedAppExits(showLauncherAgain);
             } else {
@@ -450,6 +564,28 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
         }
     }
 
+    /**
+     * F5 refreshes the cached data of the selected app, Ctrl+F5 the cached data of all apps.
+     * Apart from that, cached data is only refreshed when it is outdated.
+     */
+    @FXML
+    void mainFrameOnKeyPressed(KeyEvent event) {
+        if (event.getCode() != KeyCode.F5 || isMainDownloadRunning())
+            return;
+
+        event.consume();
+        if (event.isShortcutDown()) {
+            FOKLogger.info(MainWindow.class.getName(), "Refreshing the cached data of all apps...");
+            if (apps != null)
+                apps.clearVersionCache();
+            checkAllAppsForUpdates();
+        } else if (currentlySelectedApp != null) {
+            FOKLogger.info(MainWindow.class.getName(), "Refreshing the cached data of " + currentlySelectedApp.getName() + "...");
+            currentlySelectedApp.clearCache();
+        }
+        updateLaunchButton();
+    }
+
     @FXML
     void mainFrameOnDragDropped(DragEvent event) {
         List<File> files = event.getDragboard().getFiles();
@@ -483,7 +619,7 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
                     });
 
 
-                    Thread t = new Thread(() -> {
+                    BlockingTasks.start("exitThread", () -> {
                         try {
                             Thread.sleep(5000);
                             Platform.exit();
@@ -491,8 +627,6 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
                             FOKLogger.log(MainWindow.class.getName(), Level.SEVERE, FOKLogger.DEFAULT_ERROR_TEXT, e);
                         }
                     });
-
-                    t.start();
                 }
             } catch (IOException | ShellLinkException e) {
                 FOKLogger.log(MainWindow.class.getName(), Level.SEVERE, FOKLogger.DEFAULT_ERROR_TEXT, e);
@@ -504,7 +638,7 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
     @FXML
     void updateLinkOnAction(@SuppressWarnings("unused") ActionEvent event) {
         // Check for new version ignoring ignored updates
-        Thread updateThread = new Thread(() -> {
+        BlockingTasks.start("manualUpdateThread", () -> {
             try {
                 UpdateInfo update = UpdateChecker.isUpdateAvailableCompareAppVersion(new URL(AppConfig.getInstance().getRemoteConfig().getValue("updateRepoBaseURL")),
                         AppConfig.getInstance().getRemoteConfig().getValue("groupID"), AppConfig.getInstance().getRemoteConfig().getValue("artifactID"), AppConfig.getInstance().getUpdateFileClassifier(),
@@ -514,8 +648,6 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
                 FOKLogger.log(MainWindow.class.getName(), Level.SEVERE, FOKLogger.DEFAULT_ERROR_TEXT, e);
             }
         });
-        updateThread.setName("manualUpdateThread");
-        updateThread.start();
     }
 
     @FXML
@@ -556,7 +688,7 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
             launchAppFromGUI(currentlySelectedApp, enableSnapshotsCheckbox.isSelected());
         } else {
             if (entry != null) {
-                entry.getApp().cancelDownloadAndLaunch(entry.getGui());
+                entry.getApp().cancelDownloadAndLaunch(entry.getProgressDialog());
             } else {
                 currentlySelectedApp.cancelDownloadAndLaunch(this);
             }
@@ -577,7 +709,15 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
     }
 
     public boolean isMainDownloadRunning(DownloadQueueEntry entry) {
-        return entry != null && entry.getGui() instanceof DownloadQueueEntryView && ((DownloadQueueEntryView) entry.getGui()).getAttachedGUIs().contains(this);
+        if (entry == null)
+            return false;
+
+        // coalesced entries have one view per request
+        for (HidableProgressDialogWithEnqueuedNotification gui : entry.getAttachedGuis()) {
+            if (gui instanceof DownloadQueueEntryView && ((DownloadQueueEntryView) gui).getAttachedGUIs().contains(this))
+                return true;
+        }
+        return false;
     }
 
     @FXML
@@ -647,10 +787,35 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
         numberOfConcurrentDownloadsTextField.setText(Integer.toString(Integer.parseInt(numberOfConcurrentDownloadsTextField.getText()) - 1));
     }
 
+    // Handler for CheckBox[fx:id="numberOfConcurrentDownloadsAutomaticCheckbox"] onAction
+    @FXML
+    void numberOfConcurrentDownloadsAutomaticCheckboxOnAction(@SuppressWarnings("unused") ActionEvent event) {
+        applyNumberOfConcurrentDownloadsAutomatic();
+        EntryClass.getPrefs().setPreference("numberOfConcurrentDownloadsAutomatic", Boolean.toString(numberOfConcurrentDownloadsAutomaticCheckbox.isSelected()));
+    }
+
+    private void applyNumberOfConcurrentDownloadsAutomatic() {
+        boolean automatic = numberOfConcurrentDownloadsAutomaticCheckbox.isSelected();
+        numberOfConcurrentDownloadsTextField.setDisable(automatic);
+        numberOfConcurrentDownloadsUpButton.setDisable(automatic);
+        numberOfConcurrentDownloadsDownButton.setDisable(automatic);
+        if (automatic) {
+            downloadQueue.setAdaptiveParallelDownloadCount(true);
+        } else {
+            // go back to the number the user chose
+            loadNumberOfConcurrentDownloadsFromThePrefs();
+            downloadQueue.setParallelDownloadCount(Integer.parseInt(numberOfConcurrentDownloadsTextField.getText()));
+        }
+    }
+
     private void loadNumberOfConcurrentDownloadsFromThePrefs() {
         numberOfConcurrentDownloadsTextField.setText(EntryClass.getPrefs().getPreference("numberOfConcurrentDownloads", "2"));
     }
 
+    private void loadDownloadSpeedLimitFromThePrefs() {
+        downloadSpeedLimitTextField.setText(EntryClass.getPrefs().getPreference("downloadSpeedLimit", "0"));
+    }
+
     private void updateDownloadQueuePaneWidth(boolean animate) {
         ListView<DownloadQueueEntryView> listView = (ListView<DownloadQueueEntryView>) downloadQueueTitledPane.getContent();
         double maxWidth = 0;
@@ -671,12 +836,20 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
         timeline.play();
     }
 
+    /**
+     * Redraws the app list, e. g. after an app was downloaded or deleted so that its update mark is up to date.
+     * Can be called from any thread.
+     */
+    public void refreshAppList() {
+        Platform.runLater(() -> appList.refresh());
+    }
+
     public void triggerUpdateOfDownloadQueuePaneWidthIfPaneIsExtended() {
         triggerUpdateOfDownloadQueuePaneWidthIfPaneIsExtended(true);
     }
 
     public void triggerUpdateOfDownloadQueuePaneWidthIfPaneIsExtended(boolean animate) {
-        new Thread(() -> {
+        BlockingTasks.startDaemon("updateDownloadQueuePaneWidthThread", () -> {
             try {
                 Thread.sleep(10);
             } catch (InterruptedException e) {
@@ -688,7 +861,7 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
                 else
                     downloadQueueTitledPane.setPrefWidth(0);
             });
-        }).start();
+        });
     }
 
     @FXML
@@ -709,6 +882,49 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
         assert linkButton != null : "fx:id=\"linkButton\" was not injected: check your FXML file 'MainWindow.fxml'.";
         assert settingsGridView != null : "fx:id=\"settingsGridView\" was not injected: check your FXML file 'MainWindow.fxml'.";
 
+        appList.setItems(rankedApps);
+        appList.setCellFactory(lv -> {
+
+            CustomListCell<App> cell = new CustomListCell<App>() {
+                @Override
+                public void updateItem(App item, boolean empty) {
+                    super.updateItem(item, empty);
+                    if (empty || item == null)
+                        return;
+
+                    // Until the update check has a result for the app, the last known online version is used. The cached
+                    // flag is also used if it is more recent than the result, e. g. because the app was downloaded or deleted after the check.
+                    UpdateCheck currentUpdateCheck = updateCheck;
+                    UpdateCheck.Result result = currentUpdateCheck == null ? null : currentUpdateCheck.getResult(item);
+                    boolean updateAvailable;
+                    if (result == null || item.getLastKnownUpdateAvailabilityCacheTime() - result.getCheckTime() > 0)
+                        updateAvailable = item.isCachedLastKnownUpdateAvailable(snapshotsEnabled());
+                    else
+                        updateAvailable = result.getStatus() == UpdateCheck.Status.UPDATE_AVAILABLE;
+                    if (updateAvailable)
+                        setText(bundle.getString("appList.updateAvailable").replace("%s", item.toString()));
+                }
+            };
+
+            cell.emptyProperty().addListener((obs, wasEmpty, isNowEmpty) -> {
+                if (isNowEmpty) {
+                    cell.setContextMenu(null);
+                } else {
+                    cell.setContextMenu(cell.getItem().getContextMenu());
+                }
+            });
+            return cell;
+        });
+
+        // filter the app list once the user stopped typing, clearing the search field takes effect immediately
+        searchDebounce.setOnFinished(event -> applySearchFilter());
+        searchField.textProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue == null || newValue.isEmpty())
+                applySearchFilter();
+            else
+                searchDebounce.playFromStart();
+        });
+
         // bind the download queue count to the label text
         downloadQueue.currentTotalDownloadCountProperty().addListener((observable, oldValue, newValue) -> updateDownloadCounter(newValue.intValue()));
 
@@ -719,6 +935,9 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
         downloadQueueTitledPane.expandedProperty().addListener((observable, oldValue, newValue) -> triggerUpdateOfDownloadQueuePaneWidthIfPaneIsExtended(false));
 
         numberOfConcurrentDownloadsTextField.textProperty().addListener((observable, oldValue, newValue) -> {
+            // in automatic mode, the text field only displays the number chosen by the download queue
+            if (numberOfConcurrentDownloadsAutomaticCheckbox.isSelected())
+                return;
             try {
                 int intValue = Integer.parseInt(numberOfConcurrentDownloadsTextField.getText());
                 downloadQueue.setParallelDownloadCount(intValue);
@@ -731,6 +950,29 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
 
         loadNumberOfConcurrentDownloadsFromThePrefs();
 
+        downloadSpeedLimitTextField.textProperty().addListener((observable, oldValue, newValue) -> {
+            try {
+                long limitInKiB = Long.parseLong(downloadSpeedLimitTextField.getText());
+                if (limitInKiB < 0)
+                    throw new NumberFormatException("The download speed limit must not be negative");
+                downloadQueue.getBandwidthLimiter().setGlobalLimit(limitInKiB * 1024);
+                EntryClass.getPrefs().setPreference("downloadSpeedLimit", Long.toString(limitInKiB));
+            } catch (NumberFormatException e) {
+                FOKLogger.log(MainWindow.class.getName(), Level.INFO, "User entered unparsable string as the download speed limit", e);
+                loadDownloadSpeedLimitFromThePrefs();
+            }
+        });
+
+        loadDownloadSpeedLimitFromThePrefs();
+
+        downloadQueue.parallelDownloadCountProperty().addListener((observable, oldValue, newValue) -> {
+            if (downloadQueue.isAdaptiveParallelDownloadCount())
+                Platform.runLater(() -> numberOfConcurrentDownloadsTextField.setText(Integer.toString(newValue.intValue())));
+        });
+        numberOfConcurrentDownloadsAutomaticCheckbox.setSelected(Boolean.parseBoolean(EntryClass.getPrefs().getPreference("numberOfConcurrentDownloadsAutomatic", "false")));
+        if (numberOfConcurrentDownloadsAutomaticCheckbox.isSelected())
+            applyNumberOfConcurrentDownloadsAutomatic();
+
         // add icons to buttons
         linkButton.setGraphic(linkIconView);
         optionButton.setGraphic(optionIconView);
@@ -793,7 +1035,7 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
         // title="Creative Commons BY 3.0" target="_blank">CC 3.0 BY</a></div>
 
         // Show messages of the day
-        Thread motdThread = new Thread(() -> {
+        BlockingTasks.startDaemon("motdThread", () -> {
             MOTD motd;
             try {
                 motd = MOTD.getLatestMOTD(new URL(AppConfig.getInstance().getRemoteConfig().getValue("motdFeedUrl")));
@@ -808,8 +1050,6 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
                 FOKLogger.log(MainWindow.class.getName(), Level.SEVERE, FOKLogger.DEFAULT_ERROR_TEXT, e);
             }
         });
-        motdThread.setName("motdThread");
-        motdThread.start();
 
         enableSnapshotsCheckbox.setSelected(Boolean.parseBoolean(EntryClass.getPrefs().getPreference(EntryClass.PrefKeys.ENABLE_SNAPSHOTS.toString(), "false")));
         launchLauncherAfterAppExitCheckbox
@@ -924,9 +1164,77 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
         }
 
         // Thread is either null or not running anymore
-        getAppListThread = new Thread(getAppListRunnable);
-        getAppListThread.setName("getAppListThread");
-        getAppListThread.start();
+        getAppListThread = BlockingTasks.startDaemon("getAppListThread", getAppListRunnable);
+    }
+
+    /**
+     * Filters the app list using the text of the search field and orders it by how well the apps match.
+     * Must be called on the JavaFX application thread.
+     */
+    private void applySearchFilter() {
+        searchDebounce.stop();
+        if (searchIndex == null)
+            return;
+
+        String query = searchField.getText();
+        if (query == null || query.trim().isEmpty()) {
+            rankedApps.setComparator(null);
+            filteredApps.setPredicate(app -> true);
+            return;
+        }
+
+        // The ranking is limited to the best matches, the apps that contain the query follow in the order of the list
+        List<App> rankedMatches = searchIndex.searchRanked(query, MAX_RANKED_SEARCH_RESULTS);
+        List<App> matches = searchIndex.search(query);
+        Map<App, Integer> ranks = new IdentityHashMap<>((rankedMatches.size() + matches.size()) * 2);
+        for (int i = 0; i < rankedMatches.size(); i++)
+            ranks.put(rankedMatches.get(i), i);
+        for (App app : matches)
+            ranks.putIfAbsent(app, ranks.size());
+        filteredApps.setPredicate(ranks::containsKey);
+        rankedApps.setComparator(Comparator.comparingInt(ranks::get));
+    }
+
+    /**
+     * Checks all apps in the list for updates in the background and marks the apps that can be updated in the list as the results arrive.
+     * Does nothing in offline mode.
+     */
+    private void checkAllAppsForUpdates() {
+        UpdateCheck previousUpdateCheck = updateCheck;
+        if (previousUpdateCheck != null)
+            previousUpdateCheck.cancel();
+
+        AppList checkedApps = apps;
+        if (checkedApps == null || workOffline()) {
+            updateCheck = null;
+            return;
+        }
+
+        updateCheck = checkedApps.checkForUpdates(snapshotsEnabled(), new UpdateCheck.Listener() {
+            @Override
+            public void resultAvailable(UpdateCheck.Result result) {
+                if (result.getStatus() == UpdateCheck.Status.UPDATE_AVAILABLE)
+                    Platform.runLater(() -> appList.refresh());
+            }
+
+            @Override
+            public void checkCompleted(UpdateCheck.Summary summary) {
+                // removes the marks of a previous check
+                Platform.runLater(() -> appList.refresh());
+                // the snapshot now contains the online versions that were just checked
+                saveAppListSnapshotInBackground(checkedApps);
+            }
+        });
+    }
+
+    /**
+     * Saves the specified app list so that it can be shown right away the next time the launcher starts.
+     *
+     * @param appListToSave The app list to save
+     * @see App#saveAppListSnapshot(AppList)
+     */
+    private void saveAppListSnapshotInBackground(AppList appListToSave) {
+        BlockingTasks.startDaemon("appListSnapshotThread", () -> App.saveAppListSnapshot(appListToSave));
     }
 
     /**
@@ -935,9 +1243,8 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
      * @see #getCurrentlySelectedApp()
      */
     public void updateLaunchButton() {
-        apps.clearVersionCache();
-
-        Thread getAppStatus = new Thread(() -> {
+        BlockingTasks.TaskScope newAppStatusScope = BlockingTasks.openScope("getAppStatus");
+        Runnable getAppStatus = () -> {
             App checkedApp = currentlySelectedApp;
             boolean progressVisibleBefore = progressBar.isVisible();
             Platform.runLater(() -> {
@@ -983,32 +1290,50 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
                     }
                 }
             } catch (JDOMException | IOException e) {
-                FOKLogger.log(MainWindow.class.getName(), Level.SEVERE, FOKLogger.DEFAULT_ERROR_TEXT, e);
+                // A newer check interrupted this one (e. g. the user selected another app), which is not a network error
+                if (newAppStatusScope.isCancelled() || e instanceof InterruptedIOException) {
+                    FOKLogger.fine(MainWindow.class.getName(), "The status check of " + checkedApp.getName() + " was cancelled");
+                    return;
+                }
 
-                // Switch to offline mode
-                workOfflineCheckbox.setSelected(true);
-                workOfflineCheckbox.setDisable(true);
+                FOKLogger.log(MainWindow.class.getName(), Level.SEVERE, FOKLogger.DEFAULT_ERROR_TEXT, e);
 
-                // update launch button accordingly
-                updateLaunchButton();
+                // Switch to offline mode and update launch button accordingly
+                Platform.runLater(() -> {
+                    workOfflineCheckbox.setSelected(true);
+                    workOfflineCheckbox.setDisable(true);
+                    updateLaunchButton();
+                });
             }
 
+            if (newAppStatusScope.isCancelled())
+                return;
+
+            // the installed version might have changed since the list was loaded, e. g. because the app was just downloaded
+            boolean markedBefore = checkedApp.isCachedLastKnownUpdateAvailable(snapshotsEnabled());
+            checkedApp.cacheLastKnownUpdateAvailability();
+            if (checkedApp.isCachedLastKnownUpdateAvailable(snapshotsEnabled()) != markedBefore)
+                Platform.runLater(() -> appList.refresh());
+
             // Do finishing touches to gui only if checkedApp still equals
             // currentlySelectedApp (make sure the user did not change the
-            // selection in the meanwhile)
-            if (checkedApp == currentlySelectedApp) {
+            // selection in the meanwhile) and no newer check was started
+            if (checkedApp == currentlySelectedApp && !newAppStatusScope.isCancelled()) {
                 Platform.runLater(() -> {
                     launchButton.setProgressText("");
                     progressBar.setVisible(progressVisibleBefore);
                 });
             }
-        });
+        };
 
         // Only update the button caption if no download is running and an app
         // is selected
         if (!isMainDownloadRunning() && currentlySelectedApp != null) {
-            getAppStatus.setName("getAppStatus");
-            getAppStatus.start();
+            // the result of a previous check is outdated now
+            if (appStatusScope != null)
+                appStatusScope.cancel();
+            appStatusScope = newAppStatusScope;
+            newAppStatusScope.fork(getAppStatus);
         } else if (currentlySelectedApp == null && appForAutoLaunch == null) {
             // disable the button
             launchButton.setDisable(true);
@@ -1053,8 +1378,8 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
             });
 
             // exit the launcher once all downloads are complete
-            downloadQueue.shutdown();
             downloadQueue.setOnShutdownCompleted(() -> Platform.runLater(() -> EntryClass.getStage().hide()));
+            downloadQueue.shutdown();
         }
     }
 
@@ -1063,6 +1388,7 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
     @SuppressWarnings("unused")
     void enableSnapshotsCheckboxOnAction(ActionEvent event) {
         updateLaunchButton();
+        checkAllAppsForUpdates();
         EntryClass.getPrefs().setPreference(EntryClass.PrefKeys.ENABLE_SNAPSHOTS.toString(), Boolean.toString(enableSnapshotsCheckbox.isSelected()));
     }
 
@@ -1134,20 +1460,12 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
             Alert alert = new Alert(alertType, finalMessage);
             alert.show();
 
-            Thread t = new Thread(() -> {
-                //noinspection StatementWithEmptyBody
-                while (alert.isShowing()) {
-                    // wait for dialog to be closed
-                }
-
+            alert.setOnHidden(event -> {
                 if (closeWhenDialogIsClosed) {
                     FOKLogger.severe(getClass().getName(), "Closing app after exception, good bye...");
                     Platform.exit();
                 }
             });
-
-            t.setName("showErrorThread");
-            t.start();
         });
     }
 
@@ -1158,7 +1476,7 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
         appList.setDisable(false);
         progressBar.setVisible(false);
         optionButton.disableProperty().bind(launchButton.disableProperty());
-        new Thread(() -> {
+        BlockingTasks.startDaemon("operationCanceledThread", () -> {
             try {
                 Thread.sleep(100);
             } catch (InterruptedException e) {
@@ -1170,7 +1488,7 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
                 settingsGridView.setDisable(false);
                 updateLaunchButton();
             });
-        }).start();
+        });
     }
 
     @Override
@@ -1185,20 +1503,16 @@ public class MainWindow implements HidableProgressDialogWithEnqueuedNotification
 
     @Override
     public void downloadProgressChanged(double kilobytesDownloaded, double totalFileSizeInKB) {
-        double timeThreshold = 500 + Math.random() * 3000;
-        if (Math.abs(Date.from(Instant.now()).getTime() - latestProgressBarUpdate.getTime()) >= (timeThreshold)
-                || kilobytesDownloaded == totalFileSizeInKB) {
-            latestProgressBarUpdate = Date.from(Instant.now());
-            Platform.runLater(() -> {
-                progressBar.setProgressAnimated(kilobytesDownloaded / totalFileSizeInKB);
+        // Updates are already rate limited by the CoalescingProgressDialog in the ArtifactDownloader
+        Platform.runLater(() -> {
+            progressBar.setProgressAnimated(kilobytesDownloaded / totalFileSizeInKB);
 
-                String downloadedString = StringCommon.convertFileSizeToReadableString(kilobytesDownloaded);
+            String downloadedString = StringCommon.convertFileSizeToReadableString(kilobytesDownloaded);
 
-                String totalString = StringCommon.convertFileSizeToReadableString(totalFileSizeInKB);
+            String totalString = StringCommon.convertFileSizeToReadableString(totalFileSizeInKB);
 
-                launchButton.setProgressText(bundle.getString("progress.downloading") + "(" + downloadedString + "/"
-                        + totalString + ")");
-            });
-        }
+            launchButton.setProgressText(bundle.getString("progress.downloading") + "(" + downloadedString + "/"
+                    + totalString + ")");
+        });
     }
 }
@@ -0,0 +1,89 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveConcurrencyControllerTest {
+    @Test
+    public void increaseWhileThroughputImprovesTest() {
+        AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(2, 1, 8);
+        Assert.assertEquals(3, controller.onSample(1000, 5));
+        Assert.assertEquals(4, controller.onSample(1500, 5));
+        Assert.assertEquals(5, controller.onSample(2000, 5));
+    }
+
+    @Test
+    public void backOffWhenAdditionalDownloadDoesNotHelpTest() {
+        AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(2, 1, 8);
+        controller.onSample(1000, 5);
+        Assert.assertEquals(4, controller.onSample(1500, 5));
+        // no significant improvement, go back by one and hold
+        Assert.assertEquals(3, controller.onSample(1520, 5));
+        Assert.assertEquals(3, controller.onSample(1510, 5));
+    }
+
+    @Test
+    public void probeAgainAfterHoldingTest() {
+        AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(2, 1, 8);
+        controller.setSamplesBeforeProbing(3);
+        controller.onSample(1000, 5);
+        Assert.assertEquals(2, controller.onSample(1000, 5));
+        Assert.assertEquals(2, controller.onSample(1000, 5));
+        Assert.assertEquals(2, controller.onSample(1000, 5));
+        Assert.assertEquals(3, controller.onSample(1000, 5));
+    }
+
+    @Test
+    public void multiplicativeDecreaseTest() {
+        AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(7, 1, 8);
+        Assert.assertEquals(8, controller.onSample(1000, 5));
+        Assert.assertEquals(6, controller.onSample(500, 5));
+        // the reference is reset after a decrease
+        Assert.assertEquals(6, controller.onSample(500, 5));
+    }
+
+    @Test
+    public void boundsTest() {
+        AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(1, 1, 2);
+        Assert.assertEquals(2, controller.onSample(1000, 5));
+        Assert.assertEquals(2, controller.onSample(5000, 5));
+        Assert.assertEquals(1, controller.onSample(100, 5));
+        Assert.assertEquals(1, controller.onSample(10, 5));
+        Assert.assertEquals(1, controller.onSample(1, 5));
+        Assert.assertEquals(5, new AdaptiveConcurrencyController(10, 1, 5).getCurrentCount());
+    }
+
+    @Test
+    public void noAdaptationWithoutBacklogTest() {
+        AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(3, 1, 8);
+        Assert.assertEquals(3, controller.onSample(1000, 0));
+        Assert.assertEquals(3, controller.onSample(10, 0));
+        Assert.assertEquals(3, controller.getCurrentCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBoundsTest() {
+        new AdaptiveConcurrencyController(2, 3, 1);
+    }
+}
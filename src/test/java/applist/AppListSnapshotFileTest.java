@@ -0,0 +1,184 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+
+import com.github.vatbub.common.updater.Version;
+import config.TestSuperClass;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+
+public class AppListSnapshotFileTest extends TestSuperClass {
+    private static final String repoBaseURL = "https://dl.bintray.com/vatbub/fokprojectsReleases";
+    private static final String snapshotRepoBaseURL = "https://oss.jfrog.org/artifactory/repo";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static AppList getTestAppList() throws IOException {
+        AppList res = new AppList();
+        App onlineApp = new App("Zork Clone", new MVNCoordinates(new URL(repoBaseURL), new URL(snapshotRepoBaseURL), "com.github.vatbub", "zorkClone", "jar-with-dependencies"),
+                new URL("https://github.com/vatbub/zorkClone"), new URL("https://github.com/vatbub/zorkClone/blob/master/CHANGELOG.md"));
+        onlineApp.setLastKnownOnlineVersion(false, new Version("1.1"));
+        onlineApp.setLastKnownOnlineVersion(true, new Version("1.2-SNAPSHOT", "12", "20170312.181902"));
+        res.add(onlineApp);
+
+        App importedApp = new App("Hangman Solver", new MVNCoordinates(new URL(repoBaseURL), new URL(snapshotRepoBaseURL), "com.github.vatbub", "hangmanSolver"));
+        importedApp.setImportFile(new File("hangmanSolver.foklauncher").getAbsoluteFile());
+        res.add(importedApp);
+        return res;
+    }
+
+    private static void assertAppEquals(App expected, App actual) {
+        Assert.assertEquals(expected, actual);
+        Assert.assertEquals(expected.getMvnCoordinates().getClassifier(), actual.getMvnCoordinates().getClassifier());
+        Assert.assertEquals(expected.getAdditionalInfoURL(), actual.getAdditionalInfoURL());
+        Assert.assertEquals(expected.getChangelogURL(), actual.getChangelogURL());
+        Assert.assertEquals(expected.getImportFile(), actual.getImportFile());
+        for (boolean snapshotsEnabled : new boolean[]{false, true}) {
+            Version expectedVersion = expected.getLastKnownOnlineVersion(snapshotsEnabled);
+            Version actualVersion = actual.getLastKnownOnlineVersion(snapshotsEnabled);
+            if (expectedVersion == null) {
+                Assert.assertNull(actualVersion);
+            } else {
+                Assert.assertEquals(expectedVersion.getVersion(), actualVersion.getVersion());
+                Assert.assertEquals(expectedVersion.getBuildNumber(), actualVersion.getBuildNumber());
+                Assert.assertEquals(expectedVersion.getTimestamp(), actualVersion.getTimestamp());
+            }
+        }
+    }
+
+    @Test
+    public void saveAndReadTest() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), AppListSnapshotFile.FILE_NAME);
+        AppList appList = getTestAppList();
+        AppListSnapshotFile.save(file, appList);
+
+        for (boolean mapFile : new boolean[]{true, false}) {
+            AppListSnapshotFile snapshotFile = new AppListSnapshotFile(file, mapFile);
+            Assert.assertTrue(snapshotFile.exists());
+            Assert.assertTrue(snapshotFile.getCreationTime() > 0);
+            Assert.assertEquals(appList.size(), snapshotFile.size());
+
+            AppList readAppList = snapshotFile.getAppList();
+            Assert.assertEquals(appList.size(), readAppList.size());
+            for (int i = 0; i < appList.size(); i++)
+                assertAppEquals(appList.get(i), readAppList.get(i));
+            Assert.assertFalse(readAppList.get(0).isImported());
+            Assert.assertTrue(readAppList.get(1).isImported());
+        }
+    }
+
+    @Test
+    public void lazyDecodingTest() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), AppListSnapshotFile.FILE_NAME);
+        AppList appList = getTestAppList();
+        AppListSnapshotFile.save(file, appList);
+
+        AppListSnapshotFile snapshotFile = new AppListSnapshotFile(file);
+        App app = snapshotFile.getApp(1);
+        assertAppEquals(appList.get(1), app);
+        Assert.assertSame(app, snapshotFile.getApp(1));
+        Assert.assertSame(app, snapshotFile.getAppList().get(1));
+    }
+
+    @Test
+    public void replaceWhileOpenTest() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), AppListSnapshotFile.FILE_NAME);
+        AppList appList = getTestAppList();
+        AppListSnapshotFile.save(file, appList);
+
+        // the snapshot that was read at startup is still reachable when the new snapshot is saved
+        AppListSnapshotFile snapshotFile = new AppListSnapshotFile(file);
+        AppList newAppList = new AppList();
+        newAppList.add(appList.get(0));
+        AppListSnapshotFile.save(file, newAppList);
+
+        assertAppEquals(appList.get(1), snapshotFile.getApp(1));
+        Assert.assertEquals(1, new AppListSnapshotFile(file).size());
+    }
+
+    @Test
+    public void sharedStringsTest() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), AppListSnapshotFile.FILE_NAME);
+        AppList appList = new AppList();
+        for (int i = 0; i < 100; i++)
+            appList.add(new App("app" + i, new MVNCoordinates(new URL(repoBaseURL), new URL(snapshotRepoBaseURL), "com.github.vatbub", "artifact" + i)));
+        AppListSnapshotFile.save(file, appList);
+
+        // the repo urls and the group id are only stored once
+        long maximumLength = AppListSnapshotFile.FileFormat.HEADER_LENGTH + 100L * AppListSnapshotFile.FileFormat.RECORD_LENGTH
+                + repoBaseURL.length() + snapshotRepoBaseURL.length() + "com.github.vatbub".length() + 100 * ("artifact99".length() + "app99".length() + 2 * Integer.BYTES) + 4 * Integer.BYTES;
+        Assert.assertTrue(file.length() <= maximumLength);
+        Assert.assertEquals(appList, new AppListSnapshotFile(file).getAppList());
+    }
+
+    @Test
+    public void nonExistentFileTest() throws IOException {
+        AppListSnapshotFile snapshotFile = new AppListSnapshotFile(new File(temporaryFolder.getRoot(), AppListSnapshotFile.FILE_NAME));
+        Assert.assertFalse(snapshotFile.exists());
+        Assert.assertEquals(0, snapshotFile.size());
+        Assert.assertTrue(snapshotFile.getAppList().isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedFormatVersionTest() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), AppListSnapshotFile.FILE_NAME);
+        AppListSnapshotFile.save(file, getTestAppList());
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(AppListSnapshotFile.FileFormat.FORMAT_VERSION_OFFSET);
+            randomAccessFile.writeInt(AppListSnapshotFile.FileFormat.FORMAT_VERSION + 1);
+        }
+        new AppListSnapshotFile(file);
+    }
+
+    @Test
+    public void corruptFileTest() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), AppListSnapshotFile.FILE_NAME);
+        FileUtils.writeStringToFile(file, "<fokLauncher><modelVersion>0.0.1</modelVersion></fokLauncher>", "UTF-8");
+        try {
+            new AppListSnapshotFile(file);
+            Assert.fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+
+        AppListSnapshotFile.save(file, getTestAppList());
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() - 1);
+        }
+        try {
+            new AppListSnapshotFile(file);
+            Assert.fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
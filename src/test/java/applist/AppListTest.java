@@ -0,0 +1,262 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import config.TestSuperClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+public class AppListTest extends TestSuperClass {
+    private static App app(String artifactId) {
+        return new App(artifactId, new MVNCoordinates("com.github.vatbub", artifactId));
+    }
+
+    private static App importedApp(String artifactId, String importFileName) {
+        File importFile = new File(importFileName);
+        return new App(artifactId, new MVNCoordinates("com.github.vatbub", artifactId)) {
+            @Override
+            public File getImportFile() {
+                return importFile;
+            }
+        };
+    }
+
+    @Test
+    public void getAppByMavenCoordinatesTest() {
+        AppList appList = new AppList();
+        App app1 = app("app1");
+        App app2 = app("app2");
+        appList.add(app1);
+        appList.add(app2);
+
+        Assert.assertSame(app1, appList.getAppByMavenCoordinates(new MVNCoordinates("com.github.vatbub", "app1")));
+        Assert.assertSame(app2, appList.getAppByMavenCoordinates(new MVNCoordinates("com.github.vatbub", "app2")));
+        Assert.assertNull(appList.getAppByMavenCoordinates(new MVNCoordinates("com.github.vatbub", "app3")));
+        Assert.assertNull(appList.getAppByMavenCoordinates(null));
+    }
+
+    @Test
+    public void firstMatchTest() {
+        App app1 = app("app");
+        App app2 = app("app");
+        AppList appList = new AppList(Arrays.asList(app1, app2));
+        Assert.assertSame(app1, appList.getAppByMavenCoordinates(app1.getMvnCoordinates()));
+
+        // the first match depends on the position in the list
+        appList.remove(0);
+        appList.add(app1);
+        Assert.assertSame(app2, appList.getAppByMavenCoordinates(app1.getMvnCoordinates()));
+    }
+
+    @Test
+    public void duplicateImportsTest() {
+        AppList appList = new AppList();
+        Assert.assertTrue(appList.addAndCheckForDuplicateImports(importedApp("app1", "app1.foklauncher")));
+        Assert.assertFalse(appList.addAndCheckForDuplicateImports(importedApp("app2", "app1.foklauncher")));
+        Assert.assertTrue(appList.addAndCheckForDuplicateImports(importedApp("app2", "app2.foklauncher")));
+        Assert.assertEquals(2, appList.size());
+
+        appList.remove(0);
+        Assert.assertTrue(appList.addAndCheckForDuplicateImports(importedApp("app1", "app1.foklauncher")));
+    }
+
+    @Test
+    public void mutatorsTest() {
+        App app1 = app("app1");
+        App app2 = app("app2");
+        App app3 = app("app3");
+        App app4 = app("app4");
+        AppList appList = new AppList();
+        appList.addAll(Arrays.asList(app1, app2, app3));
+        assertIndexed(appList, app1, app2, app3);
+
+        appList.set(1, app4);
+        assertIndexed(appList, app1, app4, app3);
+        assertNotIndexed(appList, app2);
+
+        appList.add(0, app2);
+        appList.remove(app1);
+        assertIndexed(appList, app2, app4, app3);
+        assertNotIndexed(appList, app1);
+
+        appList.removeIf(app -> app == app4);
+        assertIndexed(appList, app2, app3);
+        assertNotIndexed(appList, app4);
+
+        appList.replaceAll(app -> app == app3 ? app1 : app);
+        assertIndexed(appList, app2, app1);
+        assertNotIndexed(appList, app3);
+
+        appList.clear();
+        assertNotIndexed(appList, app1, app2, app3, app4);
+    }
+
+    @Test
+    public void iteratorTest() {
+        App app1 = app("app1");
+        App app2 = app("app2");
+        App app3 = app("app3");
+        AppList appList = new AppList(Arrays.asList(app1, app2));
+        assertIndexed(appList, app1, app2);
+
+        Iterator<App> iterator = appList.iterator();
+        iterator.next();
+        iterator.remove();
+        assertIndexed(appList, app2);
+        assertNotIndexed(appList, app1);
+
+        ListIterator<App> listIterator = appList.listIterator();
+        listIterator.next();
+        listIterator.set(app3);
+        listIterator.add(app1);
+        assertIndexed(appList, app3, app1);
+        assertNotIndexed(appList, app2);
+    }
+
+    @Test
+    public void subListTest() {
+        App app1 = app("app1");
+        App app2 = app("app2");
+        App app3 = app("app3");
+        App app4 = app("app4");
+        AppList appList = new AppList(Arrays.asList(app1, app2, app3));
+        assertIndexed(appList, app1, app2, app3);
+
+        List<App> subList = appList.subList(1, 3);
+        subList.set(0, app4);
+        assertIndexed(appList, app1, app4, app3);
+        assertNotIndexed(appList, app2);
+
+        subList.clear();
+        assertIndexed(appList, app1);
+        assertNotIndexed(appList, app3, app4);
+
+        subList.add(app2);
+        assertIndexed(appList, app1, app2);
+    }
+
+    @Test
+    public void cloneTest() {
+        App app1 = app("app1");
+        App app2 = app("app2");
+        AppList appList = new AppList(Arrays.asList(app1, app2));
+        assertIndexed(appList, app1, app2);
+
+        AppList clone = (AppList) appList.clone();
+        clone.remove(app1);
+        assertIndexed(appList, app1, app2);
+        assertIndexed(clone, app2);
+        assertNotIndexed(clone, app1);
+    }
+
+    @Test
+    public void appHashCodeTest() {
+        App app1 = importedApp("app", "app.foklauncher");
+        App app2 = importedApp("app", "app.foklauncher");
+        Assert.assertEquals(app1, app2);
+        Assert.assertEquals(app1.hashCode(), app2.hashCode());
+    }
+
+    @Test
+    public void keepUnchangedAppsTest() throws MalformedURLException {
+        App previousApp1 = app("app1");
+        previousApp1.setAdditionalInfoURL(new URL("https://github.com/vatbub/app1"));
+        previousApp1.setChangelogURL(new URL("https://github.com/vatbub/app1/releases"));
+        App previousApp2 = app("app2");
+        App previousApp3 = app("app3");
+        AppList previousApps = new AppList(Arrays.asList(previousApp1, previousApp2, previousApp3));
+
+        // equal to previousApp1, but the changelog moved
+        App changedApp1 = app("app1");
+        changedApp1.setAdditionalInfoURL(new URL("https://github.com/vatbub/app1"));
+        changedApp1.setChangelogURL(new URL("https://github.com/vatbub/app1/blob/master/CHANGELOG.md"));
+        App newApp4 = app("app4");
+        AppList loadedApps = new AppList(Arrays.asList(app("app2"), changedApp1, newApp4));
+        loadedApps.keepUnchangedApps(previousApps);
+
+        Assert.assertSame(previousApp2, loadedApps.get(0));
+        Assert.assertSame(changedApp1, loadedApps.get(1));
+        Assert.assertSame(newApp4, loadedApps.get(2));
+        assertIndexed(loadedApps, previousApp2, changedApp1, newApp4);
+    }
+
+    @Test
+    public void applyToTest() {
+        App app1 = app("app1");
+        App app2 = app("app2");
+        App app3 = app("app3");
+        App app4 = app("app4");
+        App app5 = app("app5");
+        int[] modificationCount = new int[1];
+        List<App> target = new ArrayList<App>(Arrays.asList(app1, app2, app3, app4)) {
+            @Override
+            public void add(int index, App element) {
+                modificationCount[0]++;
+                super.add(index, element);
+            }
+
+            @Override
+            public App remove(int index) {
+                modificationCount[0]++;
+                return super.remove(index);
+            }
+        };
+
+        new AppList(Arrays.asList(app2, app3, app5, app4)).applyTo(target);
+        Assert.assertEquals(Arrays.asList(app2, app3, app5, app4), target);
+        Assert.assertSame(app5, target.get(2));
+        // app1 removed, app5 inserted
+        Assert.assertEquals(2, modificationCount[0]);
+
+        modificationCount[0] = 0;
+        new AppList(Arrays.asList(app4, app2, app3)).applyTo(target);
+        Assert.assertEquals(Arrays.asList(app4, app2, app3), target);
+
+        // equal apps are replaced by the new instance
+        App newApp2 = app("app2");
+        new AppList(Arrays.asList(app4, newApp2, app3)).applyTo(target);
+        Assert.assertSame(newApp2, target.get(1));
+
+        new AppList().applyTo(target);
+        Assert.assertTrue(target.isEmpty());
+    }
+
+    private static void assertIndexed(AppList appList, App... apps) {
+        Assert.assertEquals(Arrays.asList(apps), appList);
+        for (App app : apps)
+            Assert.assertSame(app, appList.getAppByMavenCoordinates(app.getMvnCoordinates()));
+    }
+
+    private static void assertNotIndexed(AppList appList, App... apps) {
+        for (App app : apps)
+            Assert.assertNull(appList.getAppByMavenCoordinates(app.getMvnCoordinates()));
+    }
+}
@@ -0,0 +1,109 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import com.github.vatbub.common.core.logging.FOKLogger;
+import config.TestSuperClass;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long ranked searches take on large synthetic catalogs and logs the times. The benchmarks depend on the
+ * speed of the machine, so they are ignored in the regular build and need to be run manually. Only the ranking on a
+ * large catalog is checked in the regular build.
+ */
+public class AppSearchIndexBenchmarkTest extends TestSuperClass {
+    private static final String[] words = {"launcher", "hangman", "solver", "tic", "tac", "toe", "chess", "editor", "viewer",
+            "music", "player", "photo", "manager", "backup", "sync", "client", "server", "tools", "converter", "calculator",
+            "weather", "notes", "todo", "timer", "clock", "paint", "reader", "browser", "terminal", "monitor"};
+    private static final String[] queries = {"l", "la", "laun", "launcher", "lanucher", "hangman solver", "hangmn solvr",
+            "tictactoe", "ptm", "group42", "artifact12345", "music player 77", "com.example", "xyzzy"};
+    private static final int maxResults = 50;
+
+    private static List<App> createCatalog(int size) {
+        Random random = new Random(42);
+        List<App> res = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String name = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)] + " " + i;
+            String groupId = "com.example.group" + random.nextInt(1000);
+            String artifactId = words[random.nextInt(words.length)] + "-artifact" + i;
+            String classifier = random.nextInt(4) == 0 ? "jar-with-dependencies" : null;
+            res.add(new App(name, new MVNCoordinates(null, null, groupId, artifactId, classifier)));
+        }
+        return res;
+    }
+
+    private static void benchmark(int catalogSize) {
+        List<App> catalog = createCatalog(catalogSize);
+        long start = System.nanoTime();
+        AppSearchIndex searchIndex = new AppSearchIndex(catalog);
+        long indexMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // warm up
+        for (String query : queries)
+            searchIndex.searchRanked(query, maxResults);
+
+        int rounds = 5;
+        StringBuilder report = new StringBuilder("Ranked search over " + catalogSize + " apps (indexed in " + indexMillis + " ms):");
+        long totalNanos = 0;
+        for (String query : queries) {
+            long queryStart = System.nanoTime();
+            List<App> res = null;
+            for (int round = 0; round < rounds; round++)
+                res = searchIndex.searchRanked(query, maxResults);
+            long queryNanos = (System.nanoTime() - queryStart) / rounds;
+            totalNanos += queryNanos;
+            Assert.assertTrue(res.size() <= maxResults);
+            report.append("\n  '").append(query).append("': ").append(String.format("%.2f", queryNanos / 1e6)).append(" ms, ")
+                    .append(res.size()).append(" results");
+        }
+        report.append("\n  average: ").append(String.format("%.2f", totalNanos / 1e6 / queries.length)).append(" ms");
+        FOKLogger.info(AppSearchIndexBenchmarkTest.class.getName(), report.toString());
+    }
+
+    @Ignore("Benchmark, run manually")
+    @Test
+    public void benchmark10kTest() {
+        benchmark(10000);
+    }
+
+    @Ignore("Benchmark, run manually")
+    @Test
+    public void benchmark100kTest() {
+        benchmark(100000);
+    }
+
+    @Test
+    public void rankingOnLargeCatalogTest() {
+        List<App> catalog = createCatalog(10000);
+        AppSearchIndex searchIndex = new AppSearchIndex(catalog);
+        App expected = catalog.get(1234);
+        Assert.assertSame(expected, searchIndex.searchRanked(expected.getMvnCoordinates().getArtifactId(), maxResults).get(0));
+        Assert.assertSame(expected, searchIndex.searchRanked(expected.getName(), maxResults).get(0));
+    }
+}
@@ -0,0 +1,170 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import config.TestSuperClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class AppSearchIndexTest extends TestSuperClass {
+    private static final App fokLauncher = new App("FOK Launcher", new MVNCoordinates(null, null, "com.github.vatbub", "foklauncher", "jar-with-dependencies"));
+    private static final App hangman = new App("Hangman Solver", new MVNCoordinates("com.github.vatbub", "hangmanSolver"));
+    private static final App zoe = new App("Zoë's Tool", new MVNCoordinates("org.example", "zoes-tool"));
+    private static final List<App> apps = Arrays.asList(fokLauncher, hangman, zoe);
+
+    @Test
+    public void normalizeTest() {
+        Assert.assertEquals("zoe's tool", AppSearchIndex.normalize("  Zoë's \t Tool "));
+        Assert.assertEquals("", AppSearchIndex.normalize(null));
+    }
+
+    @Test
+    public void emptyQueryTest() {
+        AppSearchIndex searchIndex = new AppSearchIndex(apps);
+        Assert.assertEquals(apps, searchIndex.search(""));
+        Assert.assertEquals(apps, searchIndex.search("   "));
+    }
+
+    @Test
+    public void nameTest() {
+        AppSearchIndex searchIndex = new AppSearchIndex(apps);
+        Assert.assertEquals(Collections.singletonList(fokLauncher), searchIndex.search("launcher"));
+        Assert.assertEquals(Collections.singletonList(hangman), searchIndex.search("HANGMAN"));
+        Assert.assertEquals(Collections.singletonList(zoe), searchIndex.search("zoe"));
+        Assert.assertEquals(Arrays.asList(fokLauncher, hangman), searchIndex.search("n"));
+    }
+
+    @Test
+    public void coordinatesTest() {
+        AppSearchIndex searchIndex = new AppSearchIndex(apps);
+        Assert.assertEquals(Arrays.asList(fokLauncher, hangman), searchIndex.search("vatbub"));
+        Assert.assertEquals(Collections.singletonList(hangman), searchIndex.search("solver"));
+        Assert.assertEquals(Collections.singletonList(fokLauncher), searchIndex.search("dependencies"));
+        Assert.assertEquals(Collections.singletonList(zoe), searchIndex.search("org.example"));
+    }
+
+    @Test
+    public void matchesDoNotSpanFieldsTest() {
+        AppSearchIndex searchIndex = new AppSearchIndex(apps);
+        // name and group id of the hangman solver are adjacent in the searchable text
+        Assert.assertTrue(searchIndex.search("solvercom").isEmpty());
+        Assert.assertTrue(searchIndex.search("solver com").isEmpty());
+    }
+
+    @Test
+    public void refinementTest() {
+        AppSearchIndex searchIndex = new AppSearchIndex(apps);
+        Assert.assertEquals(Arrays.asList(fokLauncher, hangman), searchIndex.search("vat"));
+        Assert.assertEquals(Arrays.asList(fokLauncher, hangman), searchIndex.search("vatb"));
+        Assert.assertEquals(Collections.singletonList(hangman), searchIndex.search("hangman"));
+        Assert.assertEquals(Collections.singletonList(hangman), searchIndex.search("hangman solver"));
+        Assert.assertTrue(searchIndex.search("hangman solvers").isEmpty());
+        // widening the query again searches all apps
+        Assert.assertEquals(apps, searchIndex.search("o"));
+        Assert.assertTrue(searchIndex.search("nothing matches this").isEmpty());
+        Assert.assertEquals(Collections.singletonList(zoe), searchIndex.search("tool"));
+    }
+
+    @Test
+    public void rankedRefinementTest() {
+        AppSearchIndex searchIndex = new AppSearchIndex(apps);
+        // the substring matches of the ranked search are refined, typos are still tolerated
+        Assert.assertEquals(Arrays.asList(fokLauncher, hangman), searchIndex.searchRanked("vat", 10));
+        Assert.assertEquals(Collections.singletonList(hangman), searchIndex.searchRanked("hangman", 10));
+        Assert.assertEquals(Collections.singletonList(hangman), searchIndex.searchRanked("hangmann", 10));
+        Assert.assertEquals(Collections.singletonList(hangman), searchIndex.search("hangman solver"));
+        Assert.assertEquals(Collections.singletonList(hangman), searchIndex.searchRanked("hangman solver", 10));
+        // widening the query again searches all apps
+        Assert.assertEquals(Collections.singletonList(fokLauncher), searchIndex.searchRanked("launcher", 10));
+        Assert.assertEquals(Collections.singletonList(zoe), searchIndex.searchRanked("tool", 10));
+    }
+
+    @Test
+    public void largeCatalogTest() {
+        List<App> largeCatalog = new ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+            largeCatalog.add(new App("App number " + i, new MVNCoordinates("com.example.group" + (i % 50), "artifact" + i)));
+        AppSearchIndex searchIndex = new AppSearchIndex(largeCatalog);
+
+        Assert.assertEquals(5000, searchIndex.search("app").size());
+        Assert.assertEquals(100, searchIndex.search("group17").size());
+        List<App> res = searchIndex.search("artifact4321");
+        Assert.assertEquals(1, res.size());
+        Assert.assertSame(largeCatalog.get(4321), res.get(0));
+    }
+
+    @Test
+    public void typoDistanceTest() {
+        Assert.assertEquals(0, AppSearchIndex.getTypoDistance("launcher", "launcher", 2));
+        Assert.assertEquals(1, AppSearchIndex.getTypoDistance("launcher", "lanucher", 2));
+        Assert.assertEquals(1, AppSearchIndex.getTypoDistance("launcher", "launchr", 2));
+        Assert.assertEquals(1, AppSearchIndex.getTypoDistance("launcher", "launchers", 2));
+        Assert.assertEquals(2, AppSearchIndex.getTypoDistance("launcher", "lantcher", 2));
+        Assert.assertEquals(3, AppSearchIndex.getTypoDistance("launcher", "hangman", 2));
+    }
+
+    @Test
+    public void rankedExactAndPrefixTest() {
+        App launcher = new App("Launcher", new MVNCoordinates("org.example", "launcher"));
+        App launcherTools = new App("Launcher Tools", new MVNCoordinates("org.example", "launcher-tools"));
+        App fokLauncherCopy = new App("FOK Launcher", new MVNCoordinates("com.github.vatbub", "foklauncher"));
+        AppSearchIndex searchIndex = new AppSearchIndex(Arrays.asList(fokLauncherCopy, launcherTools, launcher));
+        Assert.assertEquals(Arrays.asList(launcher, launcherTools, fokLauncherCopy), searchIndex.searchRanked("launcher", 10));
+        Assert.assertEquals(Arrays.asList(launcher, launcherTools), searchIndex.searchRanked("launcher", 2));
+    }
+
+    @Test
+    public void rankedFieldsTest() {
+        AppSearchIndex searchIndex = new AppSearchIndex(apps);
+        Assert.assertEquals(Collections.singletonList(hangman), searchIndex.searchRanked("hangmansolver", 10));
+        Assert.assertEquals(Collections.singletonList(fokLauncher), searchIndex.searchRanked("jar-with-dependencies", 10));
+        Assert.assertEquals(Arrays.asList(fokLauncher, hangman), searchIndex.searchRanked("com.github.vatbub", 10));
+    }
+
+    @Test
+    public void rankedTypoTest() {
+        AppSearchIndex searchIndex = new AppSearchIndex(apps);
+        Assert.assertEquals(Collections.singletonList(fokLauncher), searchIndex.searchRanked("lanucher", 10));
+        Assert.assertEquals(Collections.singletonList(hangman), searchIndex.searchRanked("hangmn", 10));
+        Assert.assertEquals(Collections.singletonList(hangman), searchIndex.searchRanked("hangamn solvr", 10));
+        Assert.assertTrue(searchIndex.searchRanked("xyzzy", 10).isEmpty());
+    }
+
+    @Test
+    public void rankedSubsequenceTest() {
+        AppSearchIndex searchIndex = new AppSearchIndex(apps);
+        Assert.assertEquals(fokLauncher, searchIndex.searchRanked("fkl", 10).get(0));
+        Assert.assertEquals(hangman, searchIndex.searchRanked("hgs", 10).get(0));
+    }
+
+    @Test
+    public void rankedEmptyQueryTest() {
+        AppSearchIndex searchIndex = new AppSearchIndex(apps);
+        Assert.assertEquals(apps, searchIndex.searchRanked("", 10));
+        Assert.assertEquals(apps.subList(0, 2), searchIndex.searchRanked(" ", 2));
+    }
+}
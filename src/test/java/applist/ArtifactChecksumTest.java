@@ -0,0 +1,104 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import config.TestSuperClass;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+public class ArtifactChecksumTest extends TestSuperClass {
+    private static final String sha1OfHelloWorld = "2aae6c35c94fcfb415dbe95f408b9ce91ee846ed";
+    private static final String sha256OfHelloWorld = "b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void parseBareDigestTest() {
+        ArtifactChecksum checksum = ArtifactChecksum.parse("SHA-1", sha1OfHelloWorld.toUpperCase() + "\n");
+        Assert.assertNotNull(checksum);
+        Assert.assertEquals("SHA-1", checksum.getAlgorithm());
+        Assert.assertEquals(sha1OfHelloWorld, checksum.getExpectedDigest());
+    }
+
+    @Test
+    public void parseDigestWithFileNameTest() {
+        ArtifactChecksum checksum = ArtifactChecksum.parse("SHA-256", sha256OfHelloWorld + "  zorkClone-1.0.jar\n");
+        Assert.assertNotNull(checksum);
+        Assert.assertEquals(sha256OfHelloWorld, checksum.getExpectedDigest());
+    }
+
+    @Test
+    public void parseMalformedDigestTest() {
+        Assert.assertNull(ArtifactChecksum.parse("SHA-1", ""));
+        Assert.assertNull(ArtifactChecksum.parse("SHA-1", sha256OfHelloWorld));
+        Assert.assertNull(ArtifactChecksum.parse("SHA-1", "<html>Not found</html>"));
+        Assert.assertNull(ArtifactChecksum.parse("SHA-1", sha1OfHelloWorld.replace('a', 'x')));
+    }
+
+    @Test
+    public void matchesTest() throws IOException {
+        ArtifactChecksum checksum = new ArtifactChecksum("SHA-1", sha1OfHelloWorld);
+        MessageDigest digest = checksum.newMessageDigest();
+        digest.update("hello ".getBytes(StandardCharsets.US_ASCII));
+        digest.update("world".getBytes(StandardCharsets.US_ASCII));
+        Assert.assertTrue(checksum.matches(ArtifactChecksum.toHex(digest.digest())));
+        Assert.assertTrue(checksum.matches(sha1OfHelloWorld.toUpperCase()));
+        Assert.assertFalse(checksum.matches(sha1OfHelloWorld.replace('a', 'b')));
+    }
+
+    @Test
+    public void unsupportedAlgorithmTest() {
+        try {
+            new ArtifactChecksum("SHA-42", sha1OfHelloWorld).newMessageDigest();
+            Assert.fail("IOException expected");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("SHA-42"));
+        }
+    }
+
+    @Test
+    public void fetchPrefersStrongestChecksumTest() throws IOException {
+        File artifact = temporaryFolder.newFile("zorkClone-1.0.jar");
+        FileUtils.writeStringToFile(new File(artifact.getAbsolutePath() + ".sha1"), sha1OfHelloWorld, StandardCharsets.US_ASCII);
+        Assert.assertEquals("SHA-1", ArtifactChecksum.fetch(artifact.toURI().toURL()).getAlgorithm());
+
+        FileUtils.writeStringToFile(new File(artifact.getAbsolutePath() + ".sha256"), sha256OfHelloWorld, StandardCharsets.US_ASCII);
+        ArtifactChecksum checksum = ArtifactChecksum.fetch(artifact.toURI().toURL());
+        Assert.assertNotNull(checksum);
+        Assert.assertEquals("SHA-256", checksum.getAlgorithm());
+        Assert.assertEquals(sha256OfHelloWorld, checksum.getExpectedDigest());
+    }
+
+    @Test
+    public void fetchWithoutChecksumTest() throws IOException {
+        File artifact = temporaryFolder.newFile("noChecksum-1.0.jar");
+        Assert.assertNull(ArtifactChecksum.fetch(artifact.toURI().toURL()));
+    }
+}
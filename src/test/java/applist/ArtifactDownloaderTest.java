@@ -0,0 +1,323 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import config.TestSuperClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+public class ArtifactDownloaderTest extends TestSuperClass {
+    private static final String artifactPath = "/com/github/vatbub/testApp/1.0/testApp-1.0.jar";
+    private static final int artifactSize = 256 * 1024;
+    private static final int segmentSize = 64 * 1024;
+    private static final int chunkSize = 4 * 1024;
+    private final RangeResponseTransformer server = new RangeResponseTransformer();
+    @Rule
+    public final WireMockRule wireMockRule = new WireMockRule(options().port(8089).extensions(server));
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private URL artifactURL;
+    private File outputFile;
+    private File partFile;
+
+    private static byte[] randomBytes(long seed) {
+        byte[] res = new byte[artifactSize];
+        new Random(seed).nextBytes(res);
+        return res;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server.data = randomBytes(1);
+        server.eTag = "\"v1\"";
+        server.advertiseRanges = true;
+        server.honorRanges = true;
+        stubFor(get(urlEqualTo(artifactPath)).willReturn(aResponse().withTransformers(RangeResponseTransformer.NAME)));
+        stubFor(get(urlMatching(artifactPath + "\\.(sha256|sha1|md5)")).willReturn(aResponse().withStatus(404)));
+
+        artifactURL = new URL("http://localhost:8089" + artifactPath);
+        outputFile = new File(temporaryFolder.newFolder("apps"), "testApp-1.0.jar");
+        partFile = PartialDownloadFile.getPartFile(outputFile);
+    }
+
+    private ArtifactDownloader newDownloader(App app) {
+        ArtifactDownloader res = new ArtifactDownloader(app, artifactURL, outputFile, null);
+        res.setSegmentCount(4);
+        res.setMinimumSegmentSize(segmentSize);
+        res.setChunkSize(chunkSize);
+        return res;
+    }
+
+    private static App newApp() {
+        return new App("testApp", new MVNCoordinates("com.github.vatbub", "testApp"));
+    }
+
+    /**
+     * Starts a download that is cancelled once the specified number of bytes were transferred.
+     *
+     * @return The value returned by {@link ArtifactDownloader#download()}
+     */
+    private boolean downloadAndCancelAfter(long bytes) throws IOException {
+        App app = newApp();
+        ArtifactDownloader downloader = newDownloader(app);
+        AtomicLong transferredBytes = new AtomicLong();
+        downloader.setTransferListener(new TransferListener() {
+            @Override
+            public void bytesTransferred(long count) {
+                if (transferredBytes.addAndGet(count) >= bytes)
+                    app.cancelDownloadAndLaunch();
+            }
+        });
+        return downloader.download();
+    }
+
+    private static void publishSha1(byte[] data) throws NoSuchAlgorithmException {
+        String sha1 = ArtifactChecksum.toHex(MessageDigest.getInstance("SHA-1").digest(data));
+        stubFor(get(urlEqualTo(artifactPath + ".sha1")).willReturn(aResponse().withBody(sha1.getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    private void assertNoPartialDownload() {
+        Assert.assertFalse(partFile.exists());
+        Assert.assertFalse(PartialDownloadFile.getSidecarFile(partFile).exists());
+    }
+
+    @Test
+    public void segmentedDownloadTest() throws IOException {
+        ArtifactDownloader downloader = newDownloader(newApp());
+        Assert.assertTrue(downloader.download());
+        Assert.assertArrayEquals(server.data, Files.readAllBytes(outputFile.toPath()));
+        Assert.assertEquals(artifactSize, downloader.getCompleteFileSize());
+        assertNoPartialDownload();
+        // one initial request and a range request for each further segment
+        verify(4, getRequestedFor(urlEqualTo(artifactPath)));
+    }
+
+    @Test
+    public void noRangeSupportTest() throws IOException {
+        server.advertiseRanges = false;
+        server.honorRanges = false;
+        Assert.assertTrue(newDownloader(newApp()).download());
+        Assert.assertArrayEquals(server.data, Files.readAllBytes(outputFile.toPath()));
+        assertNoPartialDownload();
+        verify(1, getRequestedFor(urlEqualTo(artifactPath)));
+    }
+
+    @Test
+    public void rangeRequestIgnoredTest() throws IOException {
+        // the server advertises byte ranges but answers range requests with 200 and the whole file
+        server.honorRanges = false;
+        ArtifactDownloader downloader = newDownloader(newApp());
+        Assert.assertTrue(downloader.download());
+        Assert.assertArrayEquals(server.data, Files.readAllBytes(outputFile.toPath()));
+        Assert.assertEquals(artifactSize, downloader.getDownloadedBytes());
+        assertNoPartialDownload();
+    }
+
+    @Test
+    public void resumeWithoutRangeSupportTest() throws IOException {
+        Assert.assertFalse(downloadAndCancelAfter(3 * chunkSize));
+        Assert.assertTrue(partFile.exists());
+
+        server.advertiseRanges = false;
+        server.honorRanges = false;
+        Assert.assertTrue(newDownloader(newApp()).download());
+        Assert.assertArrayEquals(server.data, Files.readAllBytes(outputFile.toPath()));
+        assertNoPartialDownload();
+    }
+
+    @Test
+    public void cancelAndResumeTest() throws IOException {
+        Assert.assertFalse(downloadAndCancelAfter(3 * chunkSize));
+        Assert.assertFalse(outputFile.exists());
+        Assert.assertTrue(partFile.exists());
+
+        PartialDownloadFile partialDownloadFile = new PartialDownloadFile(partFile);
+        Assert.assertEquals(server.eTag, partialDownloadFile.getETag());
+        Assert.assertEquals(4, partialDownloadFile.getSegments().size());
+        long downloaded = 0;
+        boolean segmentInterrupted = false;
+        for (PartialDownloadFile.SegmentInfo segment : partialDownloadFile.getSegments()) {
+            downloaded += segment.getDownloaded();
+            segmentInterrupted |= segment.getDownloaded() > 0 && segment.getDownloaded() < segmentSize;
+        }
+        Assert.assertTrue(downloaded > 0);
+        Assert.assertTrue(segmentInterrupted);
+
+        // the second session only requests the missing bytes
+        wireMockRule.resetRequests();
+        ArtifactDownloader downloader = newDownloader(newApp());
+        AtomicLong transferredBytes = new AtomicLong();
+        downloader.setTransferListener(new TransferListener() {
+            @Override
+            public void bytesTransferred(long count) {
+                transferredBytes.addAndGet(count);
+            }
+        });
+        Assert.assertTrue(downloader.download());
+        Assert.assertArrayEquals(server.data, Files.readAllBytes(outputFile.toPath()));
+        Assert.assertEquals(artifactSize - downloaded, transferredBytes.get());
+        verify(0, getRequestedFor(urlEqualTo(artifactPath)).withoutHeader("Range"));
+        assertNoPartialDownload();
+    }
+
+    @Test
+    public void ifRangeMismatchTest() throws IOException {
+        Assert.assertFalse(downloadAndCancelAfter(3 * chunkSize));
+        Assert.assertTrue(partFile.exists());
+
+        // a new build with the same size was published in the meantime
+        server.data = randomBytes(2);
+        server.eTag = "\"v2\"";
+        Assert.assertTrue(newDownloader(newApp()).download());
+        Assert.assertArrayEquals(server.data, Files.readAllBytes(outputFile.toPath()));
+        assertNoPartialDownload();
+    }
+
+    @Test
+    public void nonResumableCancelTest() throws IOException {
+        server.advertiseRanges = false;
+        Assert.assertFalse(downloadAndCancelAfter(3 * chunkSize));
+        Assert.assertFalse(outputFile.exists());
+        assertNoPartialDownload();
+    }
+
+    @Test
+    public void stalePartialDownloadTest() throws IOException {
+        Assert.assertFalse(downloadAndCancelAfter(3 * chunkSize));
+        PartialDownloadFile partialDownloadFile = new PartialDownloadFile(partFile);
+        // e. g. a partial download of a previous snapshot build that is saved to the same file
+        partialDownloadFile.setUrl("http://localhost:8089/com/github/vatbub/testApp/0.9/testApp-0.9.jar");
+        partialDownloadFile.save();
+
+        wireMockRule.resetRequests();
+        Assert.assertTrue(newDownloader(newApp()).download());
+        Assert.assertArrayEquals(server.data, Files.readAllBytes(outputFile.toPath()));
+        assertNoPartialDownload();
+        // the stale partial download was not resumed
+        verify(1, getRequestedFor(urlEqualTo(artifactPath)).withoutHeader("Range"));
+    }
+
+    @Test
+    public void verifiedResumeTest() throws IOException, NoSuchAlgorithmException {
+        publishSha1(server.data);
+        Assert.assertFalse(downloadAndCancelAfter(3 * chunkSize));
+
+        // the bytes of the first session are read back from the part file into the digest
+        ArtifactDownloader downloader = newDownloader(newApp());
+        Assert.assertTrue(downloader.download());
+        Assert.assertNotNull(downloader.getChecksum());
+        Assert.assertEquals("SHA-1", downloader.getChecksum().getAlgorithm());
+        Assert.assertArrayEquals(server.data, Files.readAllBytes(outputFile.toPath()));
+    }
+
+    @Test
+    public void digestMismatchTest() throws IOException, NoSuchAlgorithmException {
+        publishSha1(randomBytes(2));
+        try {
+            newDownloader(newApp()).download();
+            Assert.fail("IOException expected");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("checksum"));
+        }
+        Assert.assertFalse(outputFile.exists());
+        // the corrupt bytes must not be resumed
+        assertNoPartialDownload();
+    }
+
+    /**
+     * Serves {@link #data} like a web server that supports byte ranges and {@code If-Range} requests
+     */
+    private static class RangeResponseTransformer extends ResponseDefinitionTransformer {
+        static final String NAME = "range";
+        volatile byte[] data;
+        volatile String eTag;
+        /**
+         * Whether the server sends {@code Accept-Ranges: bytes}
+         */
+        volatile boolean advertiseRanges;
+        /**
+         * Whether the server answers range requests with {@code 206 Partial Content}
+         */
+        volatile boolean honorRanges;
+
+        @Override
+        public ResponseDefinition transform(Request request, ResponseDefinition responseDefinition, FileSource files, Parameters parameters) {
+            byte[] currentData = data;
+            boolean partial = honorRanges && request.containsHeader("Range")
+                    && (!request.containsHeader("If-Range") || request.getHeader("If-Range").equals(eTag));
+            if (!partial)
+                return responseFor(200, currentData, null);
+
+            String[] range = request.getHeader("Range").substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(range[0]);
+            int end = range.length < 2 || range[1].isEmpty() ? currentData.length - 1 : Math.min(Integer.parseInt(range[1]), currentData.length - 1);
+            return responseFor(206, Arrays.copyOfRange(currentData, start, end + 1), "bytes " + start + "-" + end + "/" + currentData.length);
+        }
+
+        private ResponseDefinition responseFor(int status, byte[] body, String contentRange) {
+            com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder res = aResponse()
+                    .withStatus(status)
+                    .withHeader("ETag", eTag)
+                    .withHeader("Content-Length", Integer.toString(body.length))
+                    .withBody(body);
+            if (advertiseRanges)
+                res.withHeader("Accept-Ranges", "bytes");
+            if (contentRange != null)
+                res.withHeader("Content-Range", contentRange);
+            return res.build();
+        }
+
+        @Override
+        public String getName() {
+            return NAME;
+        }
+
+        @Override
+        public boolean applyGlobally() {
+            return false;
+        }
+    }
+}
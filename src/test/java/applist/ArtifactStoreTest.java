@@ -0,0 +1,133 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import config.TestSuperClass;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class ArtifactStoreTest extends TestSuperClass {
+    private static final ArtifactChecksum checksum = new ArtifactChecksum("SHA-1", "2aae6c35c94fcfb415dbe95f408b9ce91ee846ed");
+    private static final String content = "hello world";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private ArtifactStore artifactStore;
+
+    @Before
+    public void setUp() throws IOException {
+        artifactStore = new ArtifactStore(temporaryFolder.newFolder("blobs").toPath());
+    }
+
+    @Test
+    public void blobPathTest() {
+        Assert.assertEquals(artifactStore.getRoot().resolve("sha1").resolve("2a").resolve(checksum.getExpectedDigest()), artifactStore.getBlobPath(checksum));
+    }
+
+    @Test
+    public void linkMissingBlobTest() throws IOException {
+        File target = new File(temporaryFolder.getRoot(), "app1.jar");
+        Assert.assertFalse(artifactStore.contains(checksum));
+        Assert.assertFalse(artifactStore.linkTo(checksum, target.toPath()));
+        Assert.assertFalse(target.exists());
+    }
+
+    @Test
+    public void addAndLinkTest() throws IOException {
+        File app1Jar = writeArtifact("app1/app1-1.0.jar");
+        artifactStore.add(checksum, app1Jar.toPath());
+        Assert.assertTrue(artifactStore.contains(checksum));
+
+        File app2Jar = new File(temporaryFolder.getRoot(), "app2/app2-1.0.jar");
+        Assert.assertTrue(artifactStore.linkTo(checksum, app2Jar.toPath()));
+        Assert.assertEquals(content, FileUtils.readFileToString(app2Jar, StandardCharsets.UTF_8));
+        assumeHardLinksSupported();
+        Assert.assertTrue(Files.isSameFile(app1Jar.toPath(), app2Jar.toPath()));
+    }
+
+    @Test
+    public void deduplicateTest() throws IOException {
+        File app1Jar = writeArtifact("app1/app1-1.0.jar");
+        File app2Jar = writeArtifact("app2/app2-1.0-classifier.jar");
+        artifactStore.add(checksum, app1Jar.toPath());
+        artifactStore.add(checksum, app2Jar.toPath());
+
+        Assert.assertEquals(content, FileUtils.readFileToString(app2Jar, StandardCharsets.UTF_8));
+        assumeHardLinksSupported();
+        Assert.assertTrue(Files.isSameFile(app1Jar.toPath(), app2Jar.toPath()));
+        Assert.assertEquals(3, ArtifactStore.getLinkCount(artifactStore.getBlobPath(checksum)));
+    }
+
+    @Test
+    public void releaseTest() throws IOException {
+        File app1Jar = writeArtifact("app1/app1-1.0.jar");
+        File app2Jar = writeArtifact("app2/app2-1.0.jar");
+        artifactStore.add(checksum, app1Jar.toPath());
+        artifactStore.add(checksum, app2Jar.toPath());
+        assumeHardLinksSupported();
+
+        Files.delete(app1Jar.toPath());
+        Assert.assertFalse(artifactStore.release(checksum));
+        Assert.assertTrue(artifactStore.contains(checksum));
+
+        Files.delete(app2Jar.toPath());
+        Assert.assertTrue(artifactStore.release(checksum));
+        Assert.assertFalse(artifactStore.contains(checksum));
+    }
+
+    @Test
+    public void releaseReplacedLinkTest() throws IOException {
+        File app1Jar = writeArtifact("app1/app1-1.0.jar");
+        artifactStore.add(checksum, app1Jar.toPath());
+        assumeHardLinksSupported();
+
+        // the recorded link now points to a different file
+        Files.delete(app1Jar.toPath());
+        FileUtils.writeStringToFile(app1Jar, "another artifact", StandardCharsets.UTF_8);
+        Assert.assertTrue(artifactStore.release(checksum));
+        Assert.assertFalse(artifactStore.contains(checksum));
+        Assert.assertTrue(app1Jar.exists());
+    }
+
+    private File writeArtifact(String relativePath) throws IOException {
+        File res = new File(temporaryFolder.getRoot(), relativePath);
+        FileUtils.writeStringToFile(res, content, StandardCharsets.UTF_8);
+        return res;
+    }
+
+    private void assumeHardLinksSupported() throws IOException {
+        try {
+            ArtifactStore.getLinkCount(artifactStore.getBlobPath(checksum));
+        } catch (UnsupportedOperationException e) {
+            Assume.assumeNoException(e);
+        }
+    }
+}
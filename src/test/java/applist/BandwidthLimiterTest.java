@@ -0,0 +1,104 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class BandwidthLimiterTest {
+    private static final int chunkSize = 16 * 1024;
+
+    /**
+     * Transfers the specified number of bytes in chunks through the specified listener
+     *
+     * @return The time it took in milliseconds
+     */
+    private static long transfer(TransferListener listener, long bytes) {
+        long start = System.nanoTime();
+        for (long transferred = 0; transferred < bytes; transferred += chunkSize) {
+            listener.bytesTransferred(chunkSize);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Test
+    public void unlimitedTest() {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        Assert.assertTrue(transfer(limiter.newDownload(true), 100 * 1024 * 1024) < 1000);
+    }
+
+    @Test
+    public void globalLimitTest() {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setGlobalLimit(512 * 1024);
+        // the first chunks are paid off after 1 second at 512 KiB/s
+        long duration = transfer(limiter.newDownload(false), 512 * 1024);
+        Assert.assertTrue("Transfer took " + duration + " ms", duration >= 800 && duration < 3000);
+    }
+
+    @Test
+    public void limitsAreSharedTest() throws InterruptedException {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setBackgroundLimit(512 * 1024);
+        Thread otherDownload = new Thread(() -> transfer(limiter.newDownload(false), 256 * 1024));
+        otherDownload.start();
+        long duration = transfer(limiter.newDownload(false), 256 * 1024);
+        otherDownload.join();
+        Assert.assertTrue("Transfer took " + duration + " ms", duration >= 800);
+
+        // interactive downloads do not share the background budget
+        Assert.assertTrue(transfer(limiter.newDownload(true), 10 * 1024 * 1024) < 1000);
+    }
+
+    @Test
+    public void perDownloadLimitTest() {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setPerDownloadLimit(256 * 1024);
+        long duration = transfer(limiter.newDownload(true), 256 * 1024);
+        Assert.assertTrue("Transfer took " + duration + " ms", duration >= 800);
+    }
+
+    @Test
+    public void changeLimitAtRuntimeTest() throws InterruptedException {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setGlobalLimit(1024);
+        Thread download = new Thread(() -> transfer(limiter.newDownload(true), 10 * chunkSize));
+        download.start();
+        Thread.sleep(200);
+        // would take more than two minutes at the old limit
+        limiter.setGlobalLimit(0);
+        download.join(2000);
+        Assert.assertFalse(download.isAlive());
+    }
+
+    @Test
+    public void sampleDeliveredBytesPerSecondTest() throws InterruptedException {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.sampleDeliveredBytesPerSecond();
+        transfer(limiter.newDownload(true), 1024 * 1024);
+        Thread.sleep(100);
+        Assert.assertTrue(limiter.sampleDeliveredBytesPerSecond(true) > 0);
+        Assert.assertEquals(0, limiter.sampleDeliveredBytesPerSecond(false), 0);
+    }
+}
@@ -0,0 +1,113 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class BlockingTasksTest {
+    @Test
+    public void startTest() throws InterruptedException {
+        AtomicBoolean taskRun = new AtomicBoolean();
+        Thread thread = BlockingTasks.start("testThread", () -> taskRun.set(true));
+        thread.join(5000);
+        Assert.assertTrue(taskRun.get());
+        Assert.assertEquals("testThread", thread.getName());
+        // e. g. the thread that waits for a launched app must keep the launcher alive
+        Assert.assertFalse(thread.isDaemon());
+    }
+
+    @Test
+    public void startDaemonTest() throws InterruptedException {
+        AtomicBoolean taskRun = new AtomicBoolean();
+        Thread thread = BlockingTasks.startDaemon("testDaemonThread", () -> taskRun.set(true));
+        thread.join(5000);
+        Assert.assertTrue(taskRun.get());
+        Assert.assertEquals("testDaemonThread", thread.getName());
+        Assert.assertTrue(thread.isDaemon());
+    }
+
+    @Test
+    public void platformThreadFallbackTest() throws InterruptedException {
+        boolean virtualThreadsEnabledBefore = BlockingTasks.isVirtualThreadsEnabled();
+        try {
+            BlockingTasks.setVirtualThreadsEnabled(false);
+            Assert.assertFalse(BlockingTasks.isVirtualThreadsEnabled());
+            startTest();
+            startDaemonTest();
+        } finally {
+            BlockingTasks.setVirtualThreadsEnabled(virtualThreadsEnabledBefore);
+        }
+    }
+
+    @Test
+    public void threadPerTaskExecutorTest() throws InterruptedException, ExecutionException, TimeoutException {
+        ExecutorService executorService = BlockingTasks.newThreadPerTaskExecutor("testExecutor-");
+        try {
+            // more tasks than any fixed pool in the launcher, all of them block at the same time
+            int numberOfTasks = 200;
+            CountDownLatch allTasksStarted = new CountDownLatch(numberOfTasks);
+            for (int i = 0; i < numberOfTasks; i++) {
+                executorService.submit(() -> {
+                    allTasksStarted.countDown();
+                    allTasksStarted.await();
+                    return null;
+                });
+            }
+            Assert.assertTrue(allTasksStarted.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(executorService.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS).startsWith("testExecutor-"));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void scopeCancelTest() throws InterruptedException {
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch taskStarted = new CountDownLatch(1);
+        BlockingTasks.TaskScope scope = BlockingTasks.openScope("testScope");
+        scope.fork(() -> {
+            try {
+                taskStarted.countDown();
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+
+        Assert.assertTrue(taskStarted.await(5, TimeUnit.SECONDS));
+        scope.close();
+        Assert.assertTrue(scope.isCancelled());
+        Assert.assertTrue(interrupted.get());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void forkAfterCancelTest() {
+        BlockingTasks.TaskScope scope = BlockingTasks.openScope("testScope");
+        scope.cancel();
+        scope.fork(() -> {
+        });
+    }
+}
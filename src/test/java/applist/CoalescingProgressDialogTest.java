@@ -0,0 +1,131 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import com.github.vatbub.common.updater.HidableUpdateProgressDialog;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+public class CoalescingProgressDialogTest {
+    @Test
+    public void rateLimitTest() {
+        RecordingDialog recordingDialog = new RecordingDialog();
+        CoalescingProgressDialog dialog = new CoalescingProgressDialog(recordingDialog, 5);
+
+        for (int i = 1; i < 10000; i++) {
+            dialog.downloadProgressChanged(i, 10000);
+        }
+
+        // only the first update passes immediately, the rest is held back
+        Assert.assertEquals(1, recordingDialog.getProgressUpdates().size());
+        Assert.assertEquals(1, recordingDialog.getProgressUpdates().get(0), 0);
+
+        // the latest update is delivered once the interval is over
+        await().atMost(2, TimeUnit.SECONDS).until(() -> recordingDialog.getProgressUpdates().size() == 2);
+        Assert.assertEquals(9999, recordingDialog.getProgressUpdates().get(1), 0);
+    }
+
+    @Test
+    public void finalValueIsDeliveredImmediatelyTest() {
+        RecordingDialog recordingDialog = new RecordingDialog();
+        CoalescingProgressDialog dialog = new CoalescingProgressDialog(recordingDialog, 1);
+
+        dialog.downloadProgressChanged(1, 100);
+        dialog.downloadProgressChanged(50, 100);
+        dialog.downloadProgressChanged(100, 100);
+
+        Assert.assertEquals(2, recordingDialog.getProgressUpdates().size());
+        Assert.assertEquals(100, recordingDialog.getProgressUpdates().get(1), 0);
+    }
+
+    @Test
+    public void otherCallbacksFlushTest() {
+        RecordingDialog recordingDialog = new RecordingDialog();
+        CoalescingProgressDialog dialog = new CoalescingProgressDialog(recordingDialog, 1);
+
+        dialog.downloadProgressChanged(1, 100);
+        dialog.downloadProgressChanged(50, 100);
+        dialog.operationCanceled();
+
+        Assert.assertEquals(2, recordingDialog.getProgressUpdates().size());
+        Assert.assertEquals(50, recordingDialog.getProgressUpdates().get(1), 0);
+        Assert.assertTrue(recordingDialog.isOperationCanceled());
+    }
+
+    private static class RecordingDialog implements HidableUpdateProgressDialog {
+        private final List<Double> progressUpdates = Collections.synchronizedList(new ArrayList<>());
+        private boolean operationCanceled;
+
+        List<Double> getProgressUpdates() {
+            return progressUpdates;
+        }
+
+        boolean isOperationCanceled() {
+            return operationCanceled;
+        }
+
+        @Override
+        public void hide() {
+        }
+
+        @Override
+        public void preparePhaseStarted() {
+        }
+
+        @Override
+        public void downloadStarted() {
+        }
+
+        @Override
+        public void downloadProgressChanged(double kilobytesDownloaded, double totalFileSizeInKB) {
+            progressUpdates.add(kilobytesDownloaded);
+        }
+
+        @Override
+        public void installStarted() {
+        }
+
+        @Override
+        public void launchStarted() {
+        }
+
+        @Override
+        public void cancelRequested() {
+        }
+
+        @Override
+        public void operationCanceled() {
+            operationCanceled = true;
+        }
+
+        @Override
+        public void showErrorMessage(String s) {
+        }
+    }
+}
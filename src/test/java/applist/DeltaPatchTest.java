@@ -0,0 +1,120 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import config.TestSuperClass;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class DeltaPatchTest extends TestSuperClass {
+    private static final int numberOfEntries = 200;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void rebuildChangedJarTest() throws IOException {
+        File baseJar = writeJar("app-1.0.jar", 1000L, -1);
+        File targetJar = writeJar("app-1.1.jar", 2000L, 42);
+
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        DeltaPatch.create(baseJar, targetJar, patch);
+        // only the changed entry and the entry headers need to be transferred
+        Assert.assertTrue("Patch is " + patch.size() + " bytes", patch.size() * 10 < targetJar.length());
+
+        ByteArrayOutputStream rebuilt = new ByteArrayOutputStream();
+        long written = DeltaPatch.apply(baseJar, new ByteArrayInputStream(patch.toByteArray()), rebuilt);
+        Assert.assertEquals(targetJar.length(), written);
+        Assert.assertArrayEquals(Files.readAllBytes(targetJar.toPath()), rebuilt.toByteArray());
+    }
+
+    @Test
+    public void rebuildUnrelatedFileTest() throws IOException {
+        File baseFile = temporaryFolder.newFile("base.bin");
+        File targetFile = temporaryFolder.newFile("target.bin");
+        Files.write(baseFile.toPath(), randomBytes(1, 10000));
+        Files.write(targetFile.toPath(), randomBytes(2, 5000));
+
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        DeltaPatch.create(baseFile, targetFile, patch);
+        ByteArrayOutputStream rebuilt = new ByteArrayOutputStream();
+        DeltaPatch.apply(baseFile, new ByteArrayInputStream(patch.toByteArray()), rebuilt);
+        Assert.assertArrayEquals(Files.readAllBytes(targetFile.toPath()), rebuilt.toByteArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongBaseTest() throws IOException {
+        File baseJar = writeJar("app-1.0.jar", 1000L, -1);
+        File targetJar = writeJar("app-1.1.jar", 2000L, 42);
+        File otherJar = writeJar("other-1.0.jar", 1000L, 7);
+        Files.write(otherJar.toPath(), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        DeltaPatch.create(baseJar, targetJar, patch);
+        DeltaPatch.apply(otherJar, new ByteArrayInputStream(patch.toByteArray()), new ByteArrayOutputStream());
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedPatchTest() throws IOException {
+        File baseJar = writeJar("app-1.0.jar", 1000L, -1);
+        DeltaPatch.apply(baseJar, new ByteArrayInputStream(randomBytes(3, 100)), new ByteArrayOutputStream());
+    }
+
+    /**
+     * Writes a jar whose entries have random, but reproducible content.
+     *
+     * @param fileName     The name of the jar file
+     * @param entryTime    The modification time of all entries, consecutive builds differ in this time
+     * @param changedEntry The index of the entry that gets a different content or {@code -1}
+     */
+    private File writeJar(String fileName, long entryTime, int changedEntry) throws IOException {
+        File res = new File(temporaryFolder.getRoot(), fileName);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(res))) {
+            for (int i = 0; i < numberOfEntries; i++) {
+                ZipEntry entry = new ZipEntry("com/github/vatbub/Class" + i + ".class");
+                entry.setTime(entryTime);
+                out.putNextEntry(entry);
+                out.write(randomBytes(i == changedEntry ? -i : i, 2000));
+                out.closeEntry();
+            }
+        }
+        return res;
+    }
+
+    private static byte[] randomBytes(long seed, int length) {
+        byte[] res = new byte[length];
+        new Random(seed).nextBytes(res);
+        return res;
+    }
+}
@@ -0,0 +1,220 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import config.TestSuperClass;
+import org.junit.Assert;
+import org.junit.Test;
+import view.TestProgressView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.awaitility.Awaitility.await;
+
+public class DownloadQueueTest extends TestSuperClass {
+    @Test
+    public void burstTest() {
+        DownloadQueue downloadQueue = new DownloadQueue(3);
+        AtomicBoolean onEmptyCalled = new AtomicBoolean();
+        downloadQueue.setOnEmpty(() -> onEmptyCalled.set(true));
+
+        List<TestProgressView> guis = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            TestProgressView gui = new TestProgressView();
+            guis.add(gui);
+            // downloads are disabled, so the workers only process the entries without accessing the network
+            downloadQueue.add(new DownloadQueueEntry(new App("testApp" + i), gui, false, true));
+        }
+
+        await().atMost(30, TimeUnit.SECONDS).until(() -> downloadQueue.getCurrentTotalDownloadCount() == 0);
+        Assert.assertTrue(onEmptyCalled.get());
+        Assert.assertEquals(0, downloadQueue.getCurrentQueueCount());
+        for (TestProgressView gui : guis) {
+            Assert.assertTrue(gui.isEnqueuedCalled());
+            Assert.assertTrue(gui.isHideCalled());
+        }
+    }
+
+    @Test
+    public void getEntryForAppTest() {
+        DownloadQueue downloadQueue = new DownloadQueue(0);
+        App app = new App("testApp", new MVNCoordinates("com.github.vatbub", "testApp"));
+        DownloadQueueEntry entry = new DownloadQueueEntry(app, new TestProgressView(), false, true);
+        downloadQueue.add(entry);
+
+        Assert.assertSame(entry, downloadQueue.getEntryForApp(app));
+        Assert.assertNull(downloadQueue.getEntryForApp(new App("otherApp", new MVNCoordinates("com.github.vatbub", "otherApp"))));
+
+        Assert.assertTrue(downloadQueue.remove(entry));
+        Assert.assertNull(downloadQueue.getEntryForApp(app));
+        Assert.assertEquals(0, downloadQueue.getCurrentTotalDownloadCount());
+    }
+
+    @Test
+    public void coalesceDuplicateEntriesTest() {
+        DownloadQueue downloadQueue = new DownloadQueue(0);
+        App app = new App("testApp", new MVNCoordinates("com.github.vatbub", "testApp"));
+        TestProgressView gui1 = new TestProgressView();
+        TestProgressView gui2 = new TestProgressView();
+        DownloadQueueEntry entry = new DownloadQueueEntry(app, gui1, false, true);
+        downloadQueue.add(entry);
+
+        downloadQueue.add(new DownloadQueueEntry(app, gui2, false, true));
+
+        Assert.assertEquals(1, downloadQueue.size());
+        Assert.assertEquals(1, downloadQueue.getCurrentTotalDownloadCount());
+        Assert.assertSame(entry, downloadQueue.getEntryForApp(app));
+        Assert.assertTrue(entry.getAttachedGuis().contains(gui2));
+        Assert.assertTrue(gui2.isEnqueuedCalled());
+
+        // entries for a different version are not coalesced
+        downloadQueue.add(new DownloadQueueEntry(app, new TestProgressView(), true, true));
+        Assert.assertEquals(2, downloadQueue.size());
+
+        // both guis are notified when the entry is done
+        downloadQueue.setParallelDownloadCount(1);
+        await().atMost(30, TimeUnit.SECONDS).until(() -> downloadQueue.getCurrentTotalDownloadCount() == 0);
+        Assert.assertTrue(gui1.isHideCalled());
+        Assert.assertTrue(gui2.isHideCalled());
+    }
+
+    @Test
+    public void coalesceLaunchEntryTest() {
+        DownloadQueue downloadQueue = new DownloadQueue(0);
+        App app = new App("testApp", new MVNCoordinates("com.github.vatbub", "testApp"));
+        DownloadQueueEntry backgroundEntry = new DownloadQueueEntry(app, new TestProgressView(), false, true);
+        downloadQueue.add(backgroundEntry);
+
+        DownloadQueueEntry launchEntry = new DownloadQueueEntry(app, new TestProgressView(), false, true, "arg1");
+        launchEntry.setLaunchAfterDownload(true);
+        downloadQueue.addFirst(launchEntry);
+
+        // the existing entry launches the app now
+        Assert.assertEquals(1, downloadQueue.size());
+        Assert.assertTrue(backgroundEntry.isLaunchAfterDownload());
+        Assert.assertArrayEquals(new String[]{"arg1"}, backgroundEntry.getStartupArgs());
+        downloadQueue.clear();
+        Assert.assertNull(downloadQueue.getEntryForApp(app));
+    }
+
+    @Test
+    public void coalesceLaunchEntryOrderTest() throws InterruptedException {
+        for (DownloadSchedulingPolicy schedulingPolicy : new DownloadSchedulingPolicy[]{DownloadSchedulingPolicy.LAUNCH_FIRST, DownloadSchedulingPolicy.SHORTEST_JOB_FIRST}) {
+            DownloadQueue downloadQueue = new DownloadQueue(0);
+            downloadQueue.setSchedulingPolicy(schedulingPolicy);
+            List<DownloadQueueEntry> backgroundEntries = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                App app = new App("testApp" + i, new MVNCoordinates("com.github.vatbub", "testApp" + i));
+                DownloadQueueEntry backgroundEntry = new DownloadQueueEntry(app, new TestProgressView(), false, true);
+                backgroundEntry.setExpectedDownloadSize(100 * (i + 1));
+                backgroundEntries.add(backgroundEntry);
+                downloadQueue.add(backgroundEntry);
+            }
+
+            // the launch flag of the waiting entry changes, which changes its position in the queue
+            DownloadQueueEntry launchEntry = new DownloadQueueEntry(backgroundEntries.get(5).getApp(), new TestProgressView(), false, true, "arg1");
+            launchEntry.setLaunchAfterDownload(true);
+            downloadQueue.add(launchEntry);
+            Assert.assertEquals(8, downloadQueue.size());
+
+            Assert.assertSame(backgroundEntries.get(5), downloadQueue.takeNextEntry());
+            for (int i = 0; i < 8; i++) {
+                if (i != 5)
+                    Assert.assertSame(backgroundEntries.get(i), downloadQueue.takeNextEntry());
+            }
+        }
+    }
+
+    @Test
+    public void coalesceLaunchEntryAfterLaunchDecisionTest() throws InterruptedException {
+        DownloadQueue downloadQueue = new DownloadQueue(0);
+        App app = new App("testApp", new MVNCoordinates("com.github.vatbub", "testApp"));
+        DownloadQueueEntry backgroundEntry = new DownloadQueueEntry(app, new TestProgressView(), false, true);
+        downloadQueue.add(backgroundEntry);
+        Assert.assertSame(backgroundEntry, downloadQueue.takeNextEntry());
+
+        // the worker already decided not to launch the app, so the launch request must not get lost
+        Assert.assertFalse(backgroundEntry.decideLaunch());
+        DownloadQueueEntry launchEntry = new DownloadQueueEntry(app, new TestProgressView(), false, true, "arg1");
+        launchEntry.setLaunchAfterDownload(true);
+        downloadQueue.add(launchEntry);
+
+        Assert.assertFalse(backgroundEntry.isLaunchAfterDownload());
+        Assert.assertEquals(1, downloadQueue.size());
+        Assert.assertSame(launchEntry, downloadQueue.takeNextEntry());
+    }
+
+    @Test
+    public void requestLaunchTest() throws InterruptedException {
+        DownloadQueue downloadQueue = new DownloadQueue(0);
+        downloadQueue.setSchedulingPolicy(DownloadSchedulingPolicy.FIFO);
+        List<DownloadQueueEntry> backgroundEntries = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            App app = new App("testApp" + i, new MVNCoordinates("com.github.vatbub", "testApp" + i));
+            DownloadQueueEntry backgroundEntry = new DownloadQueueEntry(app, new TestProgressView(), false, true);
+            backgroundEntries.add(backgroundEntry);
+            downloadQueue.add(backgroundEntry);
+        }
+
+        // the user launches an app that is already waiting in the queue
+        Assert.assertTrue(downloadQueue.requestLaunch(backgroundEntries.get(2), "arg1"));
+        Assert.assertTrue(backgroundEntries.get(2).isLaunchAfterDownload());
+        Assert.assertArrayEquals(new String[]{"arg1"}, backgroundEntries.get(2).getStartupArgs());
+        Assert.assertEquals(3, downloadQueue.size());
+
+        Assert.assertSame(backgroundEntries.get(2), downloadQueue.takeNextEntry());
+        Assert.assertSame(backgroundEntries.get(0), downloadQueue.takeNextEntry());
+
+        // the worker already decided not to launch the app
+        Assert.assertFalse(backgroundEntries.get(0).decideLaunch());
+        Assert.assertFalse(downloadQueue.requestLaunch(backgroundEntries.get(0), "arg1"));
+        Assert.assertFalse(backgroundEntries.get(0).isLaunchAfterDownload());
+    }
+
+    @Test
+    public void shutdownEmptyQueueTest() {
+        DownloadQueue downloadQueue = new DownloadQueue();
+        AtomicBoolean onShutdownCompletedCalled = new AtomicBoolean();
+        downloadQueue.setOnShutdownCompleted(() -> onShutdownCompletedCalled.set(true));
+
+        downloadQueue.shutdown();
+        Assert.assertTrue(downloadQueue.isShutdown());
+        Assert.assertTrue(onShutdownCompletedCalled.get());
+    }
+
+    @Test
+    public void addAfterShutdownTest() {
+        DownloadQueue downloadQueue = new DownloadQueue();
+        downloadQueue.shutdown();
+
+        try {
+            downloadQueue.add(new DownloadQueueEntry(new App("testApp"), new TestProgressView(), false, true));
+            Assert.fail("RejectedExecutionException expected");
+        } catch (RejectedExecutionException e) {
+            Assert.assertEquals(0, downloadQueue.getCurrentTotalDownloadCount());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DownloadSchedulingPolicyTest {
+    private static DownloadQueueEntry createEntry(boolean launchAfterDownload, long expectedDownloadSize) {
+        DownloadQueueEntry entry = new DownloadQueueEntry(new App("testApp"));
+        entry.setLaunchAfterDownload(launchAfterDownload);
+        entry.setExpectedDownloadSize(expectedDownloadSize);
+        return entry;
+    }
+
+    @Test
+    public void fifoTest() {
+        Assert.assertEquals(0, DownloadSchedulingPolicy.FIFO.compare(createEntry(false, 10), createEntry(true, 1)));
+        Assert.assertFalse(DownloadSchedulingPolicy.FIFO.requiresExpectedDownloadSize());
+    }
+
+    @Test
+    public void launchFirstTest() {
+        DownloadQueueEntry launchEntry = createEntry(true, 300 * 1024 * 1024);
+        DownloadQueueEntry backgroundEntry = createEntry(false, 2 * 1024 * 1024);
+        Assert.assertTrue(DownloadSchedulingPolicy.LAUNCH_FIRST.compare(launchEntry, backgroundEntry) < 0);
+        Assert.assertTrue(DownloadSchedulingPolicy.LAUNCH_FIRST.compare(backgroundEntry, launchEntry) > 0);
+        Assert.assertEquals(0, DownloadSchedulingPolicy.LAUNCH_FIRST.compare(backgroundEntry, createEntry(false, 1)));
+    }
+
+    @Test
+    public void shortestJobFirstTest() {
+        DownloadQueueEntry smallEntry = createEntry(false, 2 * 1024 * 1024);
+        DownloadQueueEntry largeEntry = createEntry(false, 300 * 1024 * 1024);
+        DownloadQueueEntry unknownSizeEntry = createEntry(false, -1);
+        DownloadQueueEntry launchEntry = createEntry(true, 400 * 1024 * 1024);
+
+        Assert.assertTrue(DownloadSchedulingPolicy.SHORTEST_JOB_FIRST.requiresExpectedDownloadSize());
+        Assert.assertTrue(DownloadSchedulingPolicy.SHORTEST_JOB_FIRST.compare(smallEntry, largeEntry) < 0);
+        Assert.assertTrue(DownloadSchedulingPolicy.SHORTEST_JOB_FIRST.compare(largeEntry, unknownSizeEntry) < 0);
+        // entries that the user wants to launch always come first
+        Assert.assertTrue(DownloadSchedulingPolicy.SHORTEST_JOB_FIRST.compare(launchEntry, smallEntry) < 0);
+    }
+}
@@ -0,0 +1,113 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import config.TestSuperClass;
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+
+public class HttpMetadataCacheTest extends TestSuperClass {
+    private static final String path = "/com/github/vatbub/testArtifact/maven-metadata.xml";
+    private static final String eTag = "\"5a3f-1b2c\"";
+    private static final String lastModified = "Fri, 02 Dec 2016 01:12:18 GMT";
+    private static final String body = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<metadata><artifactId>testArtifact</artifactId></metadata>";
+
+    @Rule
+    public final WireMockRule wireMockRule = new WireMockRule(8089);
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private HttpMetadataCache cache;
+    private URL url;
+
+    @Before
+    public void setUp() throws MalformedURLException {
+        cache = new HttpMetadataCache(temporaryFolder.getRoot().toPath());
+        url = new URL("http://localhost:8089" + path);
+    }
+
+    @Test
+    public void notModifiedTest() throws JDOMException, IOException {
+        stubFor(get(urlEqualTo(path)).willReturn(aResponse().withStatus(200).withHeader("ETag", eTag).withBody(body)));
+        stubFor(get(urlEqualTo(path)).withHeader("If-None-Match", equalTo(eTag)).willReturn(aResponse().withStatus(304)));
+
+        Document first = cache.getDocument(url);
+        Assert.assertEquals("testArtifact", first.getRootElement().getChildText("artifactId"));
+        Assert.assertSame(first, cache.getDocument(url));
+        verify(1, getRequestedFor(urlEqualTo(path)).withHeader("If-None-Match", equalTo(eTag)));
+    }
+
+    @Test
+    public void lastModifiedTest() throws JDOMException, IOException {
+        stubFor(get(urlEqualTo(path)).willReturn(aResponse().withStatus(200).withHeader("Last-Modified", lastModified).withBody(body)));
+        stubFor(get(urlEqualTo(path)).withHeader("If-Modified-Since", equalTo(lastModified)).willReturn(aResponse().withStatus(304)));
+
+        Document first = cache.getDocument(url);
+        Assert.assertSame(first, cache.getDocument(url));
+    }
+
+    @Test
+    public void persistedValidatorsTest() throws JDOMException, IOException {
+        stubFor(get(urlEqualTo(path)).willReturn(aResponse().withStatus(200).withHeader("ETag", eTag).withBody(body)));
+        cache.getDocument(url);
+
+        stubFor(get(urlEqualTo(path)).withHeader("If-None-Match", equalTo(eTag)).willReturn(aResponse().withStatus(304)));
+        // a new instance simulates a restart of the launcher
+        Document document = new HttpMetadataCache(temporaryFolder.getRoot().toPath()).getDocument(url);
+        Assert.assertEquals("testArtifact", document.getRootElement().getChildText("artifactId"));
+        verify(1, getRequestedFor(urlEqualTo(path)).withHeader("If-None-Match", equalTo(eTag)));
+    }
+
+    @Test
+    public void modifiedTest() throws JDOMException, IOException {
+        stubFor(get(urlEqualTo(path)).willReturn(aResponse().withStatus(200).withHeader("ETag", eTag).withBody(body)));
+        cache.getDocument(url);
+
+        stubFor(get(urlEqualTo(path)).willReturn(aResponse().withStatus(200).withHeader("ETag", "\"new\"").withBody(body.replace("testArtifact", "newArtifact"))));
+        Assert.assertEquals("newArtifact", cache.getDocument(url).getRootElement().getChildText("artifactId"));
+    }
+
+    @Test
+    public void noValidatorsTest() throws JDOMException, IOException {
+        stubFor(get(urlEqualTo(path)).willReturn(aResponse().withStatus(200).withBody(body)));
+        Document first = cache.getDocument(url);
+        Assert.assertNotSame(first, cache.getDocument(url));
+        verify(0, getRequestedFor(urlEqualTo(path)).withHeader("If-None-Match", matching(".*")));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void notFoundTest() throws JDOMException, IOException {
+        stubFor(get(urlEqualTo(path)).willReturn(aResponse().withStatus(404)));
+        cache.getDocument(url);
+    }
+}
@@ -107,6 +107,30 @@ public class LocalMetadataFileTest extends TestSuperClass {
         }
     }
 
+    @Test
+    public void checksumTest() throws IOException, JDOMException {
+        VersionList versions = new VersionList();
+        versions.add(version0);
+        ArtifactChecksum checksum = new ArtifactChecksum("SHA-1", "2aae6c35c94fcfb415dbe95f408b9ce91ee846ed");
+
+        LocalMetadataFile localMetadataFile = new LocalMetadataFile();
+        localMetadataFile.setMvnCoordinates(new MVNCoordinates(groupId, artifactId));
+        localMetadataFile.setVersionList(versions);
+        localMetadataFile.setChecksum(version0, checksum);
+
+        File testFile = temporaryFolder.newFile("localMetadataFileWithChecksum.xml");
+        localMetadataFile.saveFile(testFile);
+
+        ArtifactChecksum readChecksum = new LocalMetadataFile(testFile).getChecksum(version0);
+        Assert.assertNotNull(readChecksum);
+        Assert.assertEquals(checksum.getAlgorithm(), readChecksum.getAlgorithm());
+        Assert.assertEquals(checksum.getExpectedDigest(), readChecksum.getExpectedDigest());
+
+        localMetadataFile.setChecksum(version0, null);
+        localMetadataFile.saveFile(testFile);
+        Assert.assertNull(new LocalMetadataFile(testFile).getChecksum(version0));
+    }
+
     private String getFileContent(VersionList versions) {
         StringBuilder res = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
                 "<artifactInfo>\n" +
@@ -25,12 +25,20 @@ import com.github.vatbub.common.core.Common;
 import com.github.vatbub.common.updater.Version;
 import org.junit.After;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class LockDownloadFileTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
     private App sampleApp = new App("sampleTestApp", new MVNCoordinates("com.github.vatbub", "sampleApp"));
     private Version versionToTest = new Version("0.0.1");
 
@@ -51,4 +59,156 @@ public class LockDownloadFileTest {
         sampleApp.getLockFile(versionToTest).unlock();
         Assert.assertFalse(sampleApp.getLockFile(versionToTest).isLocked());
     }
+
+    private LockDownloadFile createLockFile(File file) {
+        return new LockDownloadFile(sampleApp, versionToTest) {
+            @Override
+            public File getLockFile() {
+                return file;
+            }
+        };
+    }
+
+    @Test
+    public void holderTest() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "holder_lock.lock");
+        LockDownloadFile lockDownloadFile = createLockFile(file);
+        Assert.assertTrue(lockDownloadFile.tryLock());
+        Assert.assertNotNull(lockDownloadFile.getHolder());
+        Assert.assertTrue(lockDownloadFile.getHolder().isAlive());
+
+        // a second lock on the same file must fail
+        Assert.assertFalse(createLockFile(file).tryLock());
+
+        lockDownloadFile.unlock();
+        Assert.assertFalse(file.exists());
+        Assert.assertTrue(createLockFile(file).tryLock());
+        createLockFile(file).unlock();
+    }
+
+    @Test
+    public void staleLockFileTest() throws IOException {
+        // a lock file of a crashed launcher that is not locked by the os
+        File file = new File(temporaryFolder.getRoot(), "stale_lock.lock");
+        Files.write(file.toPath(), new LockDownloadFile.LockInfo(Long.MAX_VALUE, "someHost", 0).toBytes());
+        LockDownloadFile lockDownloadFile = createLockFile(file);
+        Assert.assertFalse(lockDownloadFile.isLocked());
+
+        Files.write(file.toPath(), "locked".getBytes());
+        Assert.assertFalse(lockDownloadFile.isLocked());
+        Assert.assertTrue(lockDownloadFile.tryLock());
+        lockDownloadFile.unlock();
+    }
+
+    @Test
+    public void unlockByOtherThreadTest() throws IOException, InterruptedException {
+        File file = new File(temporaryFolder.getRoot(), "owner_lock.lock");
+        LockDownloadFile lockDownloadFile = createLockFile(file);
+        Assert.assertTrue(lockDownloadFile.tryLock());
+
+        // e. g. a redundant unlock of a thread that held the lock before
+        AtomicReference<Exception> exception = new AtomicReference<>();
+        Thread otherThread = new Thread(() -> {
+            try {
+                createLockFile(file).unlock();
+            } catch (IOException e) {
+                exception.set(e);
+            }
+        });
+        otherThread.start();
+        otherThread.join();
+        Assert.assertNull(exception.get());
+        Assert.assertTrue(lockDownloadFile.isLocked());
+        Assert.assertTrue(file.exists());
+
+        lockDownloadFile.unlock();
+        Assert.assertFalse(lockDownloadFile.isLocked());
+    }
+
+    @Test
+    public void waitForUnlockTest() throws IOException, InterruptedException {
+        File file = new File(temporaryFolder.getRoot(), "wait_lock.lock");
+        LockDownloadFile lockDownloadFile = createLockFile(file);
+        lockDownloadFile.lock();
+
+        CountDownLatch waiterStarted = new CountDownLatch(1);
+        CountDownLatch lockAcquired = new CountDownLatch(1);
+        AtomicReference<Exception> exception = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                waiterStarted.countDown();
+                createLockFile(file).lock();
+                lockAcquired.countDown();
+                createLockFile(file).unlock();
+            } catch (IOException e) {
+                exception.set(e);
+            }
+        });
+        waiter.start();
+
+        Assert.assertTrue(waiterStarted.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(lockAcquired.await(200, TimeUnit.MILLISECONDS));
+        lockDownloadFile.unlock();
+        // the waiter is notified, it must not wait for the timeout
+        Assert.assertTrue(lockAcquired.await(2, TimeUnit.SECONDS));
+        waiter.join();
+        Assert.assertNull(exception.get());
+    }
+
+    @Test
+    public void noFileLockSupportTest() throws IOException {
+        LockDownloadFile.fileLocksSupported = false;
+        try {
+            File file = new File(temporaryFolder.getRoot(), "marker_lock.lock");
+            LockDownloadFile lockDownloadFile = createLockFile(file);
+            Assert.assertTrue(lockDownloadFile.tryLock());
+            Assert.assertTrue(file.exists());
+            Assert.assertNotNull(lockDownloadFile.getHolder());
+            Assert.assertTrue(lockDownloadFile.isLocked());
+            Assert.assertFalse(createLockFile(file).tryLock());
+
+            lockDownloadFile.unlock();
+            Assert.assertFalse(file.exists());
+            Assert.assertFalse(lockDownloadFile.isLocked());
+
+            // lock() must not wait for the marker file it created itself
+            lockDownloadFile.lock();
+            Assert.assertTrue(lockDownloadFile.isLocked());
+            lockDownloadFile.unlock();
+        } finally {
+            LockDownloadFile.fileLocksSupported = true;
+        }
+    }
+
+    @Test
+    public void unreadableMarkerFileTest() throws IOException {
+        LockDownloadFile.fileLocksSupported = false;
+        try {
+            File file = new File(temporaryFolder.getRoot(), "unreadable_lock.lock");
+            Assert.assertTrue(file.createNewFile());
+            LockDownloadFile lockDownloadFile = createLockFile(file);
+
+            // the marker file might be written right now
+            Assert.assertFalse(lockDownloadFile.tryLock());
+
+            // an old empty marker file is a leftover of a crashed launcher
+            Assert.assertTrue(file.setLastModified(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1)));
+            Assert.assertTrue(lockDownloadFile.tryLock());
+            Assert.assertNotNull(lockDownloadFile.getHolder());
+            lockDownloadFile.unlock();
+        } finally {
+            LockDownloadFile.fileLocksSupported = true;
+        }
+    }
+
+    @Test
+    public void emptyLockFileTest() throws IOException {
+        // e. g. left behind by a launcher that crashed right after creating the file
+        File file = new File(temporaryFolder.getRoot(), "empty_lock.lock");
+        Assert.assertTrue(file.createNewFile());
+        LockDownloadFile lockDownloadFile = createLockFile(file);
+        Assert.assertTrue(lockDownloadFile.tryLock());
+        Assert.assertNotNull(lockDownloadFile.getHolder());
+        lockDownloadFile.unlock();
+    }
 }
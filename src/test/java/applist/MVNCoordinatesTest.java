@@ -125,6 +125,7 @@ public class MVNCoordinatesTest extends TestSuperClass {
         MVNCoordinates mvnCoordinates1 = new MVNCoordinates(repoBaseURL, snapshotRepoBaseURL, groupId, artifactId, classifier);
         MVNCoordinates mvnCoordinates2 = new MVNCoordinates(repoBaseURL, snapshotRepoBaseURL, groupId, artifactId, classifier);
         Assert.assertTrue(mvnCoordinates1.equals(mvnCoordinates2));
+        Assert.assertEquals(mvnCoordinates1.hashCode(), mvnCoordinates2.hashCode());
     }
 
     @Test
@@ -176,6 +177,22 @@ public class MVNCoordinatesTest extends TestSuperClass {
         Assert.assertFalse(mvnCoordinates1.equals("testString"));
     }
 
+    @Test
+    public void hashCodeTest() {
+        MVNCoordinates mvnCoordinates1 = new MVNCoordinates(repoBaseURL, snapshotRepoBaseURL, groupId, artifactId, classifier);
+        MVNCoordinates mvnCoordinates2 = new MVNCoordinates(repoBaseURL, snapshotRepoBaseURL, groupId, artifactId, classifier);
+        Assert.assertEquals(mvnCoordinates1.hashCode(), mvnCoordinates2.hashCode());
+    }
+
+    @Test
+    public void equalsWithoutURLsTest() {
+        MVNCoordinates mvnCoordinates1 = new MVNCoordinates(groupId, artifactId);
+        MVNCoordinates mvnCoordinates2 = new MVNCoordinates(groupId, artifactId);
+        Assert.assertTrue(mvnCoordinates1.equals(mvnCoordinates2));
+        Assert.assertEquals(mvnCoordinates1.hashCode(), mvnCoordinates2.hashCode());
+        Assert.assertFalse(mvnCoordinates1.equals(new MVNCoordinates(repoBaseURL, snapshotRepoBaseURL, groupId, artifactId)));
+    }
+
     private void assertToString(String actual, Version version, boolean testClassifier) {
         String versionText = "<version>";
         if (version != null) {
@@ -22,6 +22,7 @@ package applist;
 
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.vatbub.common.core.logging.FOKLogger;
 import com.github.vatbub.common.updater.Version;
 import com.github.vatbub.common.updater.VersionList;
 import config.TestSuperClass;
@@ -38,6 +39,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.logging.Level;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 
@@ -226,4 +228,77 @@ public class MVNMetadataFileTest extends TestSuperClass {
         DateTimeFormatter f = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
         Assert.assertEquals(LocalDateTime.from(f.parse(lastUpdated)), mvnMetadataFile.getLastUpdated());
     }
+
+    @Test
+    public void concurrentSnapshotResolutionTest() throws JDOMException, IOException {
+        int numberOfVersions = 12;
+        int delayInMillis = 300;
+        VersionList versions = new VersionList(numberOfVersions);
+        for (int i = 0; i < numberOfVersions; i++) {
+            versions.add(new Version("0.0." + i + "-SNAPSHOT", Integer.toString(i + 1), "20161106.2322" + (10 + i)));
+        }
+        List<String> extensions = new ArrayList<>(1);
+        extensions.add("jar");
+
+        stubFor(get(urlEqualTo(getStubURLString(true)))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/xml")
+                        .withBody(getRepoMetadataContent(versions))));
+        for (Version version : versions) {
+            stubFor(get(urlEqualTo(getStubURLString(true, version)))
+                    .willReturn(aResponse()
+                            .withStatus(200)
+                            .withFixedDelay(delayInMillis)
+                            .withHeader("Content-Type", "text/xml")
+                            .withBody(getSnapshotMetadataContent(version, extensions))));
+        }
+
+        MVNCoordinates mvnCoordinates = new MVNCoordinates(getRepoURL(false), getRepoURL(true), groupId, artifactId);
+        long startTime = System.currentTimeMillis();
+        MVNMetadataFile mvnMetadataFile = new MVNMetadataFile(mvnCoordinates, true);
+        long duration = System.currentTimeMillis() - startTime;
+
+        // the requests are issued concurrently, so the whole file takes much less than the sum of all delays
+        Assert.assertTrue("Resolving the snapshots took " + duration + " ms", duration < numberOfVersions * delayInMillis / 2);
+        Assert.assertEquals(numberOfVersions, mvnMetadataFile.getVersionList().size());
+        for (Version version : versions) {
+            Assert.assertTrue(mvnMetadataFile.getVersionList().contains(version));
+        }
+        Assert.assertEquals(Collections.max(versions), mvnMetadataFile.getLatest());
+        // the latest version is part of the version list, its metadata is only requested once
+        verify(1, getRequestedFor(urlEqualTo(getStubURLString(true, Collections.max(versions)))));
+    }
+
+    @Test
+    public void snapshotMetadataTimeoutTest() throws JDOMException {
+        VersionList versions = new VersionList(1);
+        Version version = new Version("0.0.3-SNAPSHOT", "1", "20161106.232243");
+        versions.add(version);
+        List<String> extensions = new ArrayList<>(1);
+        extensions.add("jar");
+
+        stubFor(get(urlEqualTo(getStubURLString(true)))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/xml")
+                        .withBody(getRepoMetadataContent(versions))));
+        stubFor(get(urlEqualTo(getStubURLString(true, version)))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(2000)
+                        .withHeader("Content-Type", "text/xml")
+                        .withBody(getSnapshotMetadataContent(version, extensions))));
+
+        int previousTimeout = MVNMetadataFile.getSnapshotMetadataTimeoutInMillis();
+        MVNMetadataFile.setSnapshotMetadataTimeoutInMillis(200);
+        try {
+            new MVNMetadataFile(new MVNCoordinates(getRepoURL(false), getRepoURL(true), groupId, artifactId), true);
+            Assert.fail("IOException expected");
+        } catch (IOException e) {
+            FOKLogger.log(MVNMetadataFileTest.class.getName(), Level.INFO, "Expected exception", e);
+        } finally {
+            MVNMetadataFile.setSnapshotMetadataTimeoutInMillis(previousTimeout);
+        }
+    }
 }
@@ -0,0 +1,220 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import config.TestSuperClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MetadataCacheTest extends TestSuperClass {
+    private final MVNCoordinates mvnCoordinates = new MVNCoordinates("com.github.vatbub", "foklauncher");
+    private final AtomicInteger loadCount = new AtomicInteger();
+    private volatile CountDownLatch loadGate;
+    private volatile boolean failLoads;
+    private MetadataCache metadataCache;
+
+    @Before
+    public void setUp() {
+        loadCount.set(0);
+        loadGate = null;
+        failLoads = false;
+        metadataCache = new MetadataCache(this::load);
+    }
+
+    private MVNMetadataFile load(MVNCoordinates mvnCoordinates, boolean enableSnapshots) throws IOException {
+        loadCount.incrementAndGet();
+        if (loadGate != null) {
+            try {
+                loadGate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+        if (failLoads)
+            throw new IOException("Simulated failure");
+        return new MVNMetadataFile(mvnCoordinates);
+    }
+
+    @Test
+    public void cacheHitTest() throws Exception {
+        MVNMetadataFile first = metadataCache.get(mvnCoordinates, false);
+        MVNMetadataFile second = metadataCache.get(new MVNCoordinates("com.github.vatbub", "foklauncher"), false);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, loadCount.get());
+
+        // release and snapshot metadata are cached separately
+        Assert.assertNotSame(first, metadataCache.get(mvnCoordinates, true));
+        Assert.assertEquals(2, loadCount.get());
+    }
+
+    @Test
+    public void expiryTest() throws Exception {
+        metadataCache.setTimeToLiveInMillis(0);
+        metadataCache.setStaleWhileRevalidateInMillis(0);
+        MVNMetadataFile first = metadataCache.get(mvnCoordinates, false);
+        Assert.assertNotSame(first, metadataCache.get(mvnCoordinates, false));
+        Assert.assertEquals(2, loadCount.get());
+    }
+
+    @Test
+    public void staleWhileRevalidateTest() throws Exception {
+        metadataCache.setTimeToLiveInMillis(0);
+        MVNMetadataFile first = metadataCache.get(mvnCoordinates, false);
+
+        loadGate = new CountDownLatch(1);
+        // the stale value is returned immediately while the refresh is blocked
+        Assert.assertSame(first, metadataCache.get(mvnCoordinates, false));
+        Assert.assertSame(first, metadataCache.get(mvnCoordinates, false));
+        loadGate.countDown();
+
+        long deadline = System.currentTimeMillis() + 10000;
+        MVNMetadataFile refreshed = first;
+        while (refreshed == first && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            metadataCache.setTimeToLiveInMillis(60000);
+            refreshed = metadataCache.get(mvnCoordinates, false);
+            metadataCache.setTimeToLiveInMillis(0);
+        }
+        Assert.assertNotSame(first, refreshed);
+        Assert.assertEquals(2, loadCount.get());
+    }
+
+    @Test
+    public void singleFlightTest() throws Exception {
+        int callerCount = 8;
+        loadGate = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(callerCount);
+        try {
+            List<Future<MVNMetadataFile>> results = new ArrayList<>();
+            for (int i = 0; i < callerCount; i++)
+                results.add(executorService.submit(() -> metadataCache.get(mvnCoordinates, false)));
+
+            Thread.sleep(200);
+            loadGate.countDown();
+
+            MVNMetadataFile first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<MVNMetadataFile> result : results)
+                Assert.assertSame(first, result.get(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, loadCount.get());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void interruptedCallerTest() throws Exception {
+        loadGate = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Future<MVNMetadataFile> leader = executorService.submit(() -> metadataCache.get(mvnCoordinates, false));
+            long deadline = System.currentTimeMillis() + 10000;
+            while (loadCount.get() == 0 && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            Future<MVNMetadataFile> waiter = executorService.submit(() -> metadataCache.get(mvnCoordinates, false));
+            Thread.sleep(200);
+
+            // interrupts the caller that started the load
+            leader.cancel(true);
+            loadGate.countDown();
+
+            Assert.assertNotNull(waiter.get(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, loadCount.get());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failuresAreNotCachedTest() throws Exception {
+        failLoads = true;
+        try {
+            metadataCache.get(mvnCoordinates, false);
+            Assert.fail("IOException expected");
+        } catch (IOException e) {
+            Assert.assertEquals("Simulated failure", e.getMessage());
+        }
+
+        failLoads = false;
+        Assert.assertNotNull(metadataCache.get(mvnCoordinates, false));
+        Assert.assertEquals(2, loadCount.get());
+    }
+
+    @Test
+    public void evictionTest() throws Exception {
+        metadataCache.setMaximumSize(2);
+        MVNCoordinates other1 = new MVNCoordinates("com.github.vatbub", "other1");
+        MVNCoordinates other2 = new MVNCoordinates("com.github.vatbub", "other2");
+
+        metadataCache.get(mvnCoordinates, false);
+        metadataCache.get(other1, false);
+        // touch the first entry so that other1 is the least recently used one
+        metadataCache.get(mvnCoordinates, false);
+        metadataCache.get(other2, false);
+        Assert.assertEquals(2, metadataCache.size());
+        Assert.assertEquals(3, loadCount.get());
+
+        metadataCache.get(mvnCoordinates, false);
+        Assert.assertEquals(3, loadCount.get());
+        metadataCache.get(other1, false);
+        Assert.assertEquals(4, loadCount.get());
+    }
+
+    @Test
+    public void invalidateTest() throws Exception {
+        metadataCache.get(mvnCoordinates, false);
+        metadataCache.get(mvnCoordinates, true);
+        Assert.assertEquals(2, metadataCache.size());
+
+        metadataCache.invalidate(mvnCoordinates);
+        Assert.assertEquals(0, metadataCache.size());
+        metadataCache.get(mvnCoordinates, false);
+        Assert.assertEquals(3, loadCount.get());
+    }
+
+    @Test
+    public void revisionTest() throws Exception {
+        Assert.assertEquals(0, metadataCache.getRevision(mvnCoordinates));
+        metadataCache.get(mvnCoordinates, false);
+        long revision = metadataCache.getRevision(mvnCoordinates);
+        Assert.assertNotEquals(0, revision);
+
+        // cache hits do not change the revision
+        metadataCache.get(mvnCoordinates, false);
+        Assert.assertEquals(revision, metadataCache.getRevision(mvnCoordinates));
+
+        metadataCache.get(mvnCoordinates, true);
+        long snapshotRevision = metadataCache.getRevision(mvnCoordinates);
+        Assert.assertNotEquals(revision, snapshotRevision);
+
+        metadataCache.invalidate(mvnCoordinates);
+        Assert.assertEquals(0, metadataCache.getRevision(mvnCoordinates));
+        metadataCache.get(mvnCoordinates, false);
+        Assert.assertNotEquals(snapshotRevision, metadataCache.getRevision(mvnCoordinates));
+    }
+}
@@ -0,0 +1,102 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import config.TestSuperClass;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PartialDownloadFileTest extends TestSuperClass {
+    private static final String url = "https://dl.bintray.com/vatbub/fokprojectsReleases/com/github/vatbub/zorkClone/1.0/zorkClone-1.0.jar";
+    private static final String eTag = "\"5a3f-1b2c\"";
+    private static final String lastModified = "Fri, 02 Dec 2016 01:12:18 GMT";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void saveAndReadTest() throws IOException {
+        File partFile = PartialDownloadFile.getPartFile(new File(temporaryFolder.getRoot(), "zorkClone-1.0.jar"));
+        PartialDownloadFile partialDownloadFile = new PartialDownloadFile(partFile);
+        Assert.assertFalse(partialDownloadFile.exists());
+
+        List<PartialDownloadFile.SegmentInfo> segments = new ArrayList<>();
+        segments.add(new PartialDownloadFile.SegmentInfo(0, 999, 500));
+        segments.add(new PartialDownloadFile.SegmentInfo(1000, 1999, 1000));
+        partialDownloadFile.setUrl(url);
+        partialDownloadFile.setExpectedLength(2000);
+        partialDownloadFile.setETag(eTag);
+        partialDownloadFile.setLastModified(lastModified);
+        partialDownloadFile.setSegments(segments);
+        partialDownloadFile.save();
+        Assert.assertTrue(partialDownloadFile.exists());
+
+        PartialDownloadFile readFile = new PartialDownloadFile(partFile);
+        Assert.assertEquals(url, readFile.getUrl());
+        Assert.assertEquals(2000, readFile.getExpectedLength());
+        Assert.assertEquals(eTag, readFile.getETag());
+        Assert.assertEquals(lastModified, readFile.getLastModified());
+        Assert.assertEquals(segments.size(), readFile.getSegments().size());
+        for (int i = 0; i < segments.size(); i++) {
+            Assert.assertEquals(segments.get(i).getStart(), readFile.getSegments().get(i).getStart());
+            Assert.assertEquals(segments.get(i).getEnd(), readFile.getSegments().get(i).getEnd());
+            Assert.assertEquals(segments.get(i).getDownloaded(), readFile.getSegments().get(i).getDownloaded());
+        }
+
+        readFile.delete();
+        Assert.assertFalse(readFile.exists());
+    }
+
+    @Test
+    public void validatorTest() throws IOException {
+        PartialDownloadFile partialDownloadFile = new PartialDownloadFile(temporaryFolder.newFile("validatorTest.jar.part"));
+        Assert.assertNull(partialDownloadFile.getValidator());
+
+        partialDownloadFile.setLastModified(lastModified);
+        Assert.assertEquals(lastModified, partialDownloadFile.getValidator());
+
+        partialDownloadFile.setETag(eTag);
+        Assert.assertEquals(eTag, partialDownloadFile.getValidator());
+    }
+
+    @Test
+    public void readCorruptFileTest() throws IOException {
+        File partFile = temporaryFolder.newFile("corrupt.jar.part");
+        File sidecarFile = PartialDownloadFile.getSidecarFile(partFile);
+        FileUtils.writeStringToFile(sidecarFile, "url=" + url + "\nsegmentCount=1\n", "UTF-8");
+
+        try {
+            new PartialDownloadFile(partFile);
+            Assert.fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
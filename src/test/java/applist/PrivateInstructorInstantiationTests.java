@@ -39,10 +39,13 @@ public class PrivateInstructorInstantiationTests extends TestSuperClass {
     public void instantiationTest() throws IllegalAccessException, InstantiationException, NoSuchMethodException {
         List<Class> classesToTest = new ArrayList<>();
         classesToTest.add(AppListFile.FileFormat.class);
+        classesToTest.add(AppListSnapshotFile.FileFormat.class);
         classesToTest.add(ImportedAppListFile.FileFormat.class);
         classesToTest.add(LocalMetadataFile.FileFormat.class);
         classesToTest.add(MVNMetadataFile.FileFormat.class);
         classesToTest.add(MVNMetadataFile.SnapshotFileFormat.class);
+        classesToTest.add(PartialDownloadFile.FileFormat.class);
+        classesToTest.add(BlockingTasks.class);
 
         for (Class clazz : classesToTest) {
             try {
@@ -0,0 +1,67 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+
+import org.junit.Assert;
+import org.junit.Test;
+import view.TestProgressView;
+
+public class ProgressDialogGroupTest {
+    @Test
+    public void replayOnlyFiredEventsTest() {
+        ProgressDialogGroup group = new ProgressDialogGroup();
+        group.enqueued();
+        group.downloadStarted();
+        group.downloadProgressChanged(10, 100);
+        group.downloadProgressChanged(20, 100);
+        group.operationCanceled();
+
+        TestProgressView lateDialog = new TestProgressView();
+        group.add(lateDialog);
+
+        Assert.assertTrue(lateDialog.isEnqueuedCalled());
+        Assert.assertTrue(lateDialog.isDownloadStartedCalled());
+        Assert.assertTrue(lateDialog.isDownloadProgressChangedCalled());
+        Assert.assertEquals(20, lateDialog.getLastKBDownloaded(), 0);
+        Assert.assertEquals(100, lateDialog.getLastTotalKB(), 0);
+        Assert.assertTrue(lateDialog.isOperationCancelledCalled());
+
+        // these were never fired and must not be replayed
+        Assert.assertFalse(lateDialog.isPreparePhaseStartedCalled());
+        Assert.assertFalse(lateDialog.isInstallStartedCalled());
+        Assert.assertFalse(lateDialog.isLaunchStartedCalled());
+        Assert.assertFalse(lateDialog.isCancelRequestedCalled());
+        Assert.assertFalse(lateDialog.isHideCalled());
+    }
+
+    @Test
+    public void noEventsTest() {
+        ProgressDialogGroup group = new ProgressDialogGroup();
+        TestProgressView dialog = new TestProgressView();
+        group.add(dialog);
+        Assert.assertFalse(dialog.isEnqueuedCalled());
+        Assert.assertFalse(dialog.isDownloadProgressChangedCalled());
+        Assert.assertFalse(dialog.isHideCalled());
+        Assert.assertTrue(group.contains(dialog));
+    }
+}
@@ -0,0 +1,187 @@
+package applist;
+
+/*-
+ * #%L
+ * FOK Launcher
+ * %%
+ * Copyright (C) 2016 - 2017 Frederik Kammel
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import com.github.vatbub.common.updater.Version;
+import config.TestSuperClass;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UpdateCheckTest extends TestSuperClass {
+    private final AtomicInteger runningChecks = new AtomicInteger();
+    private final AtomicInteger maxRunningChecks = new AtomicInteger();
+
+    @After
+    public void resetParallelism() {
+        UpdateCheck.setParallelism(16);
+    }
+
+    private App fakeApp(String name, String installedVersion, String onlineVersion) {
+        return new App(name) {
+            @Override
+            public boolean downloadRequired(boolean snapshotsEnabled) {
+                return installedVersion == null;
+            }
+
+            @Override
+            public Version getCurrentlyInstalledVersion(boolean snapshotsEnabled) {
+                return new Version(installedVersion);
+            }
+
+            @Override
+            public Version getLatestOnlineVersion() throws IOException {
+                maxRunningChecks.accumulateAndGet(runningChecks.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                } finally {
+                    runningChecks.decrementAndGet();
+                }
+                if (onlineVersion == null)
+                    throw new IOException("Simulated failure");
+                return new Version(onlineVersion);
+            }
+        };
+    }
+
+    @Test
+    public void resultsTest() throws InterruptedException {
+        App upToDate = fakeApp("upToDate", "1.0", "1.0");
+        App outdated = fakeApp("outdated", "1.0", "1.1");
+        App notInstalled = fakeApp("notInstalled", null, "1.0");
+        App failing = fakeApp("failing", "1.0", null);
+        AppList apps = new AppList();
+        apps.add(upToDate);
+        apps.add(outdated);
+        apps.add(notInstalled);
+        apps.add(failing);
+
+        List<UpdateCheck.Result> streamedResults = new CopyOnWriteArrayList<>();
+        List<UpdateCheck.Summary> summaries = new CopyOnWriteArrayList<>();
+        UpdateCheck updateCheck = apps.checkForUpdates(false, new UpdateCheck.Listener() {
+            @Override
+            public void resultAvailable(UpdateCheck.Result result) {
+                streamedResults.add(result);
+            }
+
+            @Override
+            public void checkCompleted(UpdateCheck.Summary summary) {
+                summaries.add(summary);
+            }
+        });
+
+        Assert.assertTrue(updateCheck.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(updateCheck.isDone());
+        Assert.assertEquals(4, streamedResults.size());
+        Assert.assertEquals(1, summaries.size());
+
+        Assert.assertEquals(UpdateCheck.Status.UP_TO_DATE, updateCheck.getResult(upToDate).getStatus());
+        Assert.assertEquals(UpdateCheck.Status.UPDATE_AVAILABLE, updateCheck.getResult(outdated).getStatus());
+        Assert.assertEquals(new Version("1.1"), updateCheck.getResult(outdated).getOnlineVersion());
+        Assert.assertEquals(UpdateCheck.Status.NOT_INSTALLED, updateCheck.getResult(notInstalled).getStatus());
+        Assert.assertEquals(UpdateCheck.Status.ERROR, updateCheck.getResult(failing).getStatus());
+        Assert.assertTrue(updateCheck.getResult(failing).getError() instanceof IOException);
+
+        UpdateCheck.Summary summary = summaries.get(0);
+        Assert.assertEquals(1, summary.getCount(UpdateCheck.Status.UP_TO_DATE));
+        Assert.assertEquals(1, summary.getCount(UpdateCheck.Status.UPDATE_AVAILABLE));
+        Assert.assertEquals(1, summary.getCount(UpdateCheck.Status.NOT_INSTALLED));
+        Assert.assertEquals(1, summary.getCount(UpdateCheck.Status.ERROR));
+        Assert.assertEquals(0, summary.getPendingCount());
+        Assert.assertEquals(1, summary.getAppsWithUpdates().size());
+        Assert.assertSame(outdated, summary.getAppsWithUpdates().get(0));
+    }
+
+    @Test
+    public void parallelismTest() throws InterruptedException {
+        UpdateCheck.setParallelism(4);
+        AppList apps = new AppList();
+        for (int i = 0; i < 40; i++)
+            apps.add(fakeApp("app" + i, "1.0", "1.0"));
+
+        long startTime = System.currentTimeMillis();
+        UpdateCheck updateCheck = apps.checkForUpdates(false, UpdateCheck.Listener.NONE);
+        Assert.assertTrue(updateCheck.await(10, TimeUnit.SECONDS));
+        long duration = System.currentTimeMillis() - startTime;
+
+        Assert.assertEquals(40, updateCheck.getSummary().getCount(UpdateCheck.Status.UP_TO_DATE));
+        Assert.assertTrue("Too many concurrent checks: " + maxRunningChecks.get(), maxRunningChecks.get() <= 4);
+        Assert.assertTrue("Apps were not checked concurrently: " + maxRunningChecks.get(), maxRunningChecks.get() > 1);
+        // 40 checks of 50 ms each would take 2 seconds if checked serially
+        Assert.assertTrue("Check took " + duration + " ms", duration < 1500);
+    }
+
+    @Test
+    public void platformThreadParallelismTest() throws InterruptedException {
+        boolean virtualThreadsEnabledBefore = BlockingTasks.isVirtualThreadsEnabled();
+        try {
+            BlockingTasks.setVirtualThreadsEnabled(false);
+            parallelismTest();
+        } finally {
+            BlockingTasks.setVirtualThreadsEnabled(virtualThreadsEnabledBefore);
+        }
+    }
+
+    @Test
+    public void emptyListTest() throws InterruptedException {
+        AtomicInteger completedCount = new AtomicInteger();
+        UpdateCheck updateCheck = new AppList().checkForUpdates(false, new UpdateCheck.Listener() {
+            @Override
+            public void checkCompleted(UpdateCheck.Summary summary) {
+                completedCount.incrementAndGet();
+            }
+        });
+        Assert.assertTrue(updateCheck.await(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, completedCount.get());
+    }
+
+    @Test
+    public void cancelTest() throws InterruptedException {
+        UpdateCheck.setParallelism(1);
+        AppList apps = new AppList();
+        for (int i = 0; i < 20; i++)
+            apps.add(fakeApp("app" + i, "1.0", "1.0"));
+
+        AtomicInteger completedCount = new AtomicInteger();
+        UpdateCheck updateCheck = apps.checkForUpdates(false, new UpdateCheck.Listener() {
+            @Override
+            public void checkCompleted(UpdateCheck.Summary summary) {
+                completedCount.incrementAndGet();
+            }
+        });
+        Thread.sleep(120);
+        updateCheck.cancel();
+
+        Assert.assertTrue(updateCheck.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(updateCheck.isCancelled());
+        Assert.assertEquals(0, completedCount.get());
+        Assert.assertTrue(updateCheck.getSummary().getPendingCount() > 0);
+    }
+}